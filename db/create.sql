@@ -1,6 +1,48 @@
 USE [OnlineShop]
 go
 
+-- Keeps the row versions that the SNAPSHOT reads of 'ReadConnections' see, so that they do not wait for the writers.
+-- The 'rcsi' reads also need: ALTER DATABASE CURRENT SET READ_COMMITTED_SNAPSHOT ON WITH ROLLBACK IMMEDIATE
+ALTER DATABASE CURRENT SET ALLOW_SNAPSHOT_ISOLATION ON
+go
+
+-- Tracks the changed rows of the cached tables, which 'InvalidationBus' polls to invalidate the caches of every JVM
+IF NOT EXISTS (SELECT * FROM sys.change_tracking_databases WHERE database_id = DB_ID())
+ALTER DATABASE CURRENT SET CHANGE_TRACKING = ON (CHANGE_RETENTION = 2 DAYS, AUTO_CLEANUP = ON)
+go
+
+IF OBJECT_ID('StockReservation', 'U') IS NOT NULL
+DROP TABLE [StockReservation]
+go
+
+IF OBJECT_ID('SettlementCursor', 'U') IS NOT NULL
+DROP TABLE [SettlementCursor]
+go
+
+IF OBJECT_ID('ReplicaHeartbeat', 'U') IS NOT NULL
+DROP TABLE [ReplicaHeartbeat]
+go
+
+IF OBJECT_ID('BuyerDailySpend', 'U') IS NOT NULL
+DROP TABLE [BuyerDailySpend]
+go
+
+IF OBJECT_ID('ShopDailyRevenue', 'U') IS NOT NULL
+DROP TABLE [ShopDailyRevenue]
+go
+
+IF OBJECT_ID('TransactionArchive', 'U') IS NOT NULL
+DROP TABLE [TransactionArchive]
+go
+
+IF OBJECT_ID('OrderItemArchive', 'U') IS NOT NULL
+DROP TABLE [OrderItemArchive]
+go
+
+IF OBJECT_ID('OrderArchive', 'U') IS NOT NULL
+DROP TABLE [OrderArchive]
+go
+
 IF OBJECT_ID('Line', 'U') IS NOT NULL
 DROP TABLE [Line]
 go
@@ -17,6 +59,10 @@ IF OBJECT_ID('Article', 'U') IS NOT NULL
 DROP TABLE [Article]
 go
 
+IF OBJECT_ID('ShopBalanceStripe', 'U') IS NOT NULL
+DROP TABLE [ShopBalanceStripe]
+go
+
 IF OBJECT_ID('Shop', 'U') IS NOT NULL
 DROP TABLE [Shop]
 go
@@ -124,6 +170,16 @@ CREATE TABLE [Shop]
 )
 go
 
+CREATE TABLE [ShopBalanceStripe]
+( 
+	[IdShop]             integer  NOT NULL ,
+	[Stripe]             integer  NOT NULL ,
+	[Balance]            decimal(10,3)  NOT NULL 
+	CONSTRAINT [DEFAULT_ZERO_1093361844]
+		 DEFAULT  0
+)
+go
+
 CREATE TABLE [Transaction]
 ( 
 	[Id]                 integer  IDENTITY  NOT NULL ,
@@ -133,7 +189,94 @@ CREATE TABLE [Transaction]
 	[IdOrder]            integer  NOT NULL ,
 	[IdShop]            integer  NULL ,
 	[Date]               datetime  NOT NULL ,
-	[IdBuyer]         integer  NULL
+	[IdBuyer]         integer  NULL ,
+	[Version]            rowversion  NOT NULL
+)
+go
+
+CREATE TABLE [ShopDailyRevenue]
+( 
+	[IdShop]             integer  NOT NULL ,
+	[Day]                date  NOT NULL ,
+	[Stripe]             integer  NOT NULL ,
+	[Amount]             decimal(12,3)  NOT NULL ,
+	[OrderCount]         integer  NOT NULL ,
+	[Profit]             decimal(12,3)  NOT NULL 
+)
+go
+
+CREATE TABLE [BuyerDailySpend]
+( 
+	[IdBuyer]            integer  NOT NULL ,
+	[Day]                date  NOT NULL ,
+	[Stripe]             integer  NOT NULL ,
+	[Amount]             decimal(12,3)  NOT NULL ,
+	[OrderCount]         integer  NOT NULL ,
+	[Profit]             decimal(12,3)  NOT NULL 
+)
+go
+
+CREATE TABLE [OrderArchive]
+( 
+	[Id]                 integer  NOT NULL ,
+	[Status]             varchar(100)  NOT NULL ,
+	[TotalPrice]         decimal(10,3)  NULL ,
+	[IdBuyer]            integer  NOT NULL ,
+	[BuyerDiscount]      integer  NOT NULL ,
+	[DiscountedPrice]    decimal(10,3)  NULL ,
+	[DateNearest]        datetime  NULL ,
+	[DateArrived]        datetime  NULL ,
+	[IdNearestCity]      integer  NULL ,
+	[DateSent]           datetime  NULL ,
+	[DaysToAssemble]     integer  NULL 
+)
+go
+
+CREATE TABLE [OrderItemArchive]
+( 
+	[Id]                 integer  NOT NULL ,
+	[IdOrder]            integer  NOT NULL ,
+	[Quantity]           integer  NOT NULL ,
+	[IdArticle]          integer  NOT NULL
+)
+go
+
+CREATE TABLE [TransactionArchive]
+( 
+	[Id]                 integer  NOT NULL ,
+	[Amount]             decimal(10,3)  NOT NULL ,
+	[IdOrder]            integer  NOT NULL ,
+	[IdShop]             integer  NULL ,
+	[Date]               datetime  NOT NULL ,
+	[IdBuyer]            integer  NULL ,
+	[Version]            binary(8)  NOT NULL
+)
+go
+
+--'ReplicaRouter' writes a beat per JVM, the replica holding a beat has all the transactions committed before it
+CREATE TABLE [ReplicaHeartbeat]
+( 
+	[Node]               varchar(100)  NOT NULL ,
+	[Beat]               datetime2  NOT NULL
+)
+go
+
+--'SettlementQueue' keeps the last shop transaction of each shard that was credited to the shop balances
+CREATE TABLE [SettlementCursor]
+( 
+	[Shard]              integer  NOT NULL ,
+	[LastIdTransaction]  integer  NOT NULL
+)
+go
+
+--'ShardedOrderOperations' keeps the stock it took for an order until the order is sent on its shard or the stock
+--is returned, and 'StockReservations' settles the reservations left behind by the failed attempts
+CREATE TABLE [StockReservation]
+( 
+	[IdOrder]            integer  NOT NULL ,
+	[IdArticle]          integer  NOT NULL ,
+	[Quantity]           integer  NOT NULL ,
+	[Created]            datetime2  NOT NULL
 )
 go
 
@@ -141,6 +284,18 @@ ALTER TABLE [City]
 	ADD CONSTRAINT [XPKCity] PRIMARY KEY  CLUSTERED ([Id] ASC)
 go
 
+ALTER TABLE [ReplicaHeartbeat]
+	ADD CONSTRAINT [XPKReplicaHeartbeat] PRIMARY KEY  CLUSTERED ([Node] ASC)
+go
+
+ALTER TABLE [SettlementCursor]
+	ADD CONSTRAINT [XPKSettlementCursor] PRIMARY KEY  CLUSTERED ([Shard] ASC)
+go
+
+ALTER TABLE [StockReservation]
+	ADD CONSTRAINT [XPKStockReservation] PRIMARY KEY  CLUSTERED ([IdOrder] ASC,[IdArticle] ASC)
+go
+
 ALTER TABLE [City]
 	ADD CONSTRAINT [XAK1City] UNIQUE ([Name]  ASC)
 go
@@ -177,6 +332,72 @@ ALTER TABLE [Transaction]
 	ADD CONSTRAINT [XPKTransaction] PRIMARY KEY  CLUSTERED ([Id] ASC)
 go
 
+ALTER TABLE [ShopBalanceStripe]
+	ADD CONSTRAINT [XPKShopBalanceStripe] PRIMARY KEY  CLUSTERED ([IdShop] ASC,[Stripe] ASC)
+go
+
+CREATE NONCLUSTERED INDEX [XIF1Transaction] ON [Transaction] ([IdBuyer] ASC,[Id] ASC)
+go
+
+CREATE NONCLUSTERED INDEX [XIF2Transaction] ON [Transaction] ([IdShop] ASC,[Id] ASC)
+go
+
+CREATE NONCLUSTERED INDEX [XIF1Order] ON [Order] ([IdBuyer] ASC,[Id] ASC)
+go
+
+CREATE NONCLUSTERED INDEX [XIF1Article] ON [Article] ([IdShop] ASC,[Id] ASC)
+go
+
+--'time()' looks for the sent orders that have arrived
+CREATE NONCLUSTERED INDEX [XIF2Order] ON [Order] ([Status] ASC,[DateArrived] ASC)
+go
+
+--'SP_FINAL_PRICE' looks for the buyer's transactions in the last 30 days
+CREATE NONCLUSTERED INDEX [XIF3Transaction] ON [Transaction] ([IdBuyer] ASC,[Date] ASC) INCLUDE ([Amount])
+go
+
+--'TransactionLedgerExporter' reads the transactions committed after its watermark in the order of their versions
+CREATE NONCLUSTERED INDEX [XIF4Transaction] ON [Transaction] ([Version] ASC)
+go
+
+ALTER TABLE [ShopDailyRevenue]
+	ADD CONSTRAINT [XPKShopDailyRevenue] PRIMARY KEY  CLUSTERED ([IdShop] ASC,[Day] ASC,[Stripe] ASC)
+go
+
+ALTER TABLE [BuyerDailySpend]
+	ADD CONSTRAINT [XPKBuyerDailySpend] PRIMARY KEY  CLUSTERED ([IdBuyer] ASC,[Day] ASC,[Stripe] ASC)
+go
+
+ALTER TABLE [OrderArchive]
+	ADD CONSTRAINT [XPKOrderArchive] PRIMARY KEY  CLUSTERED ([Id] ASC)
+go
+
+ALTER TABLE [OrderItemArchive]
+	ADD CONSTRAINT [XPKOrderItemArchive] PRIMARY KEY  CLUSTERED ([Id] ASC)
+go
+
+ALTER TABLE [TransactionArchive]
+	ADD CONSTRAINT [XPKTransactionArchive] PRIMARY KEY  CLUSTERED ([Id] ASC)
+go
+
+CREATE NONCLUSTERED INDEX [XIF1OrderArchive] ON [OrderArchive] ([IdBuyer] ASC,[Id] ASC)
+go
+
+CREATE NONCLUSTERED INDEX [XIF1OrderItemArchive] ON [OrderItemArchive] ([IdOrder] ASC)
+go
+
+CREATE NONCLUSTERED INDEX [XIF1TransactionArchive] ON [TransactionArchive] ([IdBuyer] ASC,[Id] ASC)
+go
+
+CREATE NONCLUSTERED INDEX [XIF2TransactionArchive] ON [TransactionArchive] ([IdShop] ASC,[Id] ASC)
+go
+
+CREATE NONCLUSTERED INDEX [XIF3TransactionArchive] ON [TransactionArchive] ([IdOrder] ASC)
+go
+
+CREATE NONCLUSTERED INDEX [XIF4TransactionArchive] ON [TransactionArchive] ([Version] ASC)
+go
+
 
 ALTER TABLE [Buyer]
 	ADD CONSTRAINT [R_9] FOREIGN KEY ([IdCity]) REFERENCES [City]([Id])
@@ -238,6 +459,13 @@ ALTER TABLE [Shop]
 go
 
 
+ALTER TABLE [ShopBalanceStripe]
+	ADD CONSTRAINT [R_18] FOREIGN KEY ([IdShop]) REFERENCES [Shop]([Id])
+		ON DELETE NO ACTION
+		ON UPDATE NO ACTION
+go
+
+
 ALTER TABLE [Transaction]
 	ADD CONSTRAINT [R_6] FOREIGN KEY ([IdOrder]) REFERENCES [Order]([Id])
 		ON DELETE NO ACTION
@@ -256,6 +484,21 @@ ALTER TABLE [Transaction]
 		ON UPDATE NO ACTION
 go
 
+ALTER TABLE [Article] ENABLE CHANGE_TRACKING
+go
+
+ALTER TABLE [Shop] ENABLE CHANGE_TRACKING
+go
+
+ALTER TABLE [City] ENABLE CHANGE_TRACKING
+go
+
+ALTER TABLE [Line] ENABLE CHANGE_TRACKING
+go
+
+ALTER TABLE [Buyer] ENABLE CHANGE_TRACKING
+go
+
 /****** Object:  StoredProcedure [dbo].[SP_FINAL_PRICE] ******/
 CREATE PROCEDURE [dbo].[SP_FINAL_PRICE]
 	@IdOrder INT,
@@ -368,13 +611,15 @@ BEGIN
 			WHILE @@FETCH_STATUS = 0
 			BEGIN
 				--update the shop's account balance
-				UPDATE Shop
+				--only one of the shop's balance stripes (picked by the order) is locked,
+				--so concurrent settlements for the same shop do not queue behind a single row
+				UPDATE ShopBalanceStripe
 				SET
 					Balance = Balance + CASE
 						WHEN (@BuyerDiscount = 0) THEN @ShopItemsPrice * 0.95
 						ELSE @ShopItemsPrice * 0.97
 					END
-				WHERE Id = @IdShop
+				WHERE IdShop = @IdShop AND Stripe = @IdOrder % 8 --there are 8 stripes per shop
 
 				--create a new transaction
 				INSERT INTO [dbo].[Transaction] (Date, Amount, IdOrder, IdShop, IdBuyer)
@@ -401,4 +646,273 @@ BEGIN
 	CLOSE @Cursor1
 	DEALLOCATE @Cursor1
 END
-go
\ No newline at end of file
+go
+
+/****** Object:  Trigger [dbo].[TR_CREATE_SHOP_BALANCE_STRIPES] ******/
+CREATE TRIGGER [dbo].[TR_CREATE_SHOP_BALANCE_STRIPES]
+   ON [dbo].[Shop]
+   AFTER INSERT
+AS 
+BEGIN
+	SET NOCOUNT ON
+
+	--every shop gets 8 balance stripes, the shop's balance is 'Shop.Balance' + sum of its stripes
+	INSERT INTO ShopBalanceStripe (IdShop, Stripe, Balance)
+	SELECT I.Id, N.Stripe, 0
+	FROM inserted I
+		CROSS JOIN (VALUES (0), (1), (2), (3), (4), (5), (6), (7)) AS N(Stripe)
+END
+go
+
+/****** Object:  View [dbo].[V_SHOP_BALANCE] ******/
+CREATE VIEW [dbo].[V_SHOP_BALANCE]
+AS
+	SELECT S.Id AS 'IdShop', S.Balance + COALESCE(SUM(SBS.Balance), 0) AS 'Balance'
+	FROM Shop S
+		LEFT JOIN ShopBalanceStripe SBS ON (SBS.IdShop = S.Id)
+	GROUP BY S.Id, S.Balance
+go
+
+/****** Object:  StoredProcedure [dbo].[SP_FOLD_SHOP_BALANCES] ******/
+CREATE PROCEDURE [dbo].[SP_FOLD_SHOP_BALANCES]
+AS
+BEGIN
+	SET NOCOUNT ON
+	SET XACT_ABORT ON
+
+	BEGIN TRANSACTION
+
+	--move the sum of the stripes into 'Shop.Balance', the stripes stay locked until the commit
+	UPDATE S
+	SET Balance = S.Balance + X.StripesBalance
+	FROM Shop S
+		JOIN (
+			SELECT IdShop, SUM(Balance) AS 'StripesBalance'
+			FROM ShopBalanceStripe WITH (UPDLOCK, HOLDLOCK)
+			GROUP BY IdShop
+			HAVING SUM(Balance) <> 0
+		) X ON (X.IdShop = S.Id)
+
+	UPDATE ShopBalanceStripe
+	SET Balance = 0
+	WHERE Balance <> 0
+
+	COMMIT TRANSACTION
+END
+go
+
+/****** Object:  View [dbo].[V_ORDER] ******/
+CREATE VIEW [dbo].[V_ORDER]
+AS
+	SELECT Id, Status, TotalPrice, IdBuyer, BuyerDiscount, DiscountedPrice,
+		DateNearest, DateArrived, IdNearestCity, DateSent, DaysToAssemble
+	FROM [Order]
+	UNION ALL
+	SELECT Id, Status, TotalPrice, IdBuyer, BuyerDiscount, DiscountedPrice,
+		DateNearest, DateArrived, IdNearestCity, DateSent, DaysToAssemble
+	FROM OrderArchive
+go
+
+/****** Object:  View [dbo].[V_ORDER_ITEM] ******/
+CREATE VIEW [dbo].[V_ORDER_ITEM]
+AS
+	SELECT Id, IdOrder, Quantity, IdArticle FROM OrderItem
+	UNION ALL
+	SELECT Id, IdOrder, Quantity, IdArticle FROM OrderItemArchive
+go
+
+/****** Object:  View [dbo].[V_TRANSACTION] ******/
+CREATE VIEW [dbo].[V_TRANSACTION]
+AS
+	SELECT Id, Amount, IdOrder, IdShop, Date, IdBuyer, Version FROM [Transaction]
+	UNION ALL
+	SELECT Id, Amount, IdOrder, IdShop, Date, IdBuyer, Version FROM TransactionArchive
+go
+
+/****** Object:  StoredProcedure [dbo].[SP_ARCHIVE_ORDERS] ******/
+CREATE PROCEDURE [dbo].[SP_ARCHIVE_ORDERS]
+	@Before DATETIME,
+	@ArchivedOrders INT OUTPUT
+AS
+BEGIN
+	SET NOCOUNT ON
+	SET XACT_ABORT ON
+
+	DECLARE @Archived TABLE ([Id] INT PRIMARY KEY)
+
+	BEGIN TRANSACTION
+
+	--only the orders that arrived before the given date are moved, their money has already been transferred
+	INSERT INTO @Archived (Id)
+	SELECT Id
+	FROM [Order] WITH (UPDLOCK, HOLDLOCK)
+	WHERE Status = 'arrived' AND DateArrived < @Before
+
+	SET @ArchivedOrders = @@ROWCOUNT
+
+	--move the rows referencing the orders first, because of the foreign keys
+	DELETE FROM [Transaction]
+	OUTPUT deleted.Id, deleted.Amount, deleted.IdOrder, deleted.IdShop, deleted.Date, deleted.IdBuyer, deleted.Version
+	INTO TransactionArchive (Id, Amount, IdOrder, IdShop, Date, IdBuyer, Version)
+	WHERE IdOrder IN (SELECT Id FROM @Archived)
+
+	DELETE FROM OrderItem
+	OUTPUT deleted.Id, deleted.IdOrder, deleted.Quantity, deleted.IdArticle
+	INTO OrderItemArchive (Id, IdOrder, Quantity, IdArticle)
+	WHERE IdOrder IN (SELECT Id FROM @Archived)
+
+	DELETE FROM [Order]
+	OUTPUT deleted.Id, deleted.Status, deleted.TotalPrice, deleted.IdBuyer, deleted.BuyerDiscount,
+		deleted.DiscountedPrice, deleted.DateNearest, deleted.DateArrived, deleted.IdNearestCity,
+		deleted.DateSent, deleted.DaysToAssemble
+	INTO OrderArchive (Id, Status, TotalPrice, IdBuyer, BuyerDiscount, DiscountedPrice,
+		DateNearest, DateArrived, IdNearestCity, DateSent, DaysToAssemble)
+	WHERE Id IN (SELECT Id FROM @Archived)
+
+	COMMIT TRANSACTION
+END
+go
+
+/****** Object:  Trigger [dbo].[TR_ROLL_UP_TRANSACTIONS] ******/
+CREATE TRIGGER [dbo].[TR_ROLL_UP_TRANSACTIONS]
+   ON [dbo].[Transaction]
+   AFTER INSERT
+AS 
+BEGIN
+	SET NOCOUNT ON
+
+	--the system keeps 5% of the full price, or 3% if the buyer got the 2% discount
+	--shop transactions are 95% or 97% of the price, buyer transactions are 100% or 98% of it
+	--like the shop balances, every rollup row is split into 8 stripes (picked by the order),
+	--so concurrent settlements for the same shop and day do not queue behind a single row
+	DECLARE @Rows TABLE (
+		[IdShop] INT NULL, [IdBuyer] INT NULL, [Day] DATE NOT NULL, [Stripe] INT NOT NULL,
+		[Amount] DECIMAL(12,3) NOT NULL, [Profit] DECIMAL(12,3) NOT NULL
+	)
+
+	INSERT INTO @Rows (IdShop, IdBuyer, Day, Stripe, Amount, Profit)
+	SELECT I.IdShop, I.IdBuyer, CAST(I.Date AS DATE), I.IdOrder % 8, I.Amount,
+		CASE
+			WHEN (I.IdShop IS NOT NULL AND O.BuyerDiscount = 0) THEN I.Amount * 0.05 / 0.95
+			WHEN (I.IdShop IS NOT NULL) THEN I.Amount * 0.03 / 0.97
+			ELSE I.Amount * (1 / (1 - O.BuyerDiscount / 100.0)) * (0.05 - O.BuyerDiscount / 100.0)
+		END
+	FROM inserted I JOIN [Order] O ON (I.IdOrder = O.Id)
+
+	MERGE ShopDailyRevenue WITH (HOLDLOCK) AS T
+	USING (
+		SELECT IdShop, Day, Stripe, SUM(Amount), COUNT(*), SUM(Profit)
+		FROM @Rows
+		WHERE IdShop IS NOT NULL
+		GROUP BY IdShop, Day, Stripe
+	) AS R (IdShop, Day, Stripe, Amount, OrderCount, Profit)
+	ON (T.IdShop = R.IdShop AND T.Day = R.Day AND T.Stripe = R.Stripe)
+	WHEN MATCHED THEN
+		UPDATE SET
+			Amount = T.Amount + R.Amount,
+			OrderCount = T.OrderCount + R.OrderCount,
+			Profit = T.Profit + R.Profit
+	WHEN NOT MATCHED THEN
+		INSERT (IdShop, Day, Stripe, Amount, OrderCount, Profit)
+		VALUES (R.IdShop, R.Day, R.Stripe, R.Amount, R.OrderCount, R.Profit);
+
+	MERGE BuyerDailySpend WITH (HOLDLOCK) AS T
+	USING (
+		SELECT IdBuyer, Day, Stripe, SUM(Amount), COUNT(*), SUM(Profit)
+		FROM @Rows
+		WHERE IdBuyer IS NOT NULL
+		GROUP BY IdBuyer, Day, Stripe
+	) AS R (IdBuyer, Day, Stripe, Amount, OrderCount, Profit)
+	ON (T.IdBuyer = R.IdBuyer AND T.Day = R.Day AND T.Stripe = R.Stripe)
+	WHEN MATCHED THEN
+		UPDATE SET
+			Amount = T.Amount + R.Amount,
+			OrderCount = T.OrderCount + R.OrderCount,
+			Profit = T.Profit + R.Profit
+	WHEN NOT MATCHED THEN
+		INSERT (IdBuyer, Day, Stripe, Amount, OrderCount, Profit)
+		VALUES (R.IdBuyer, R.Day, R.Stripe, R.Amount, R.OrderCount, R.Profit);
+END
+go
+
+/****** Object:  StoredProcedure [dbo].[SP_REBUILD_ROLLUPS] ******/
+CREATE PROCEDURE [dbo].[SP_REBUILD_ROLLUPS]
+AS
+BEGIN
+	SET NOCOUNT ON
+	SET XACT_ABORT ON
+
+	BEGIN TRANSACTION
+
+	--recomputes the rollups from all the transactions, including the archived ones
+	DELETE FROM ShopDailyRevenue WITH (TABLOCKX)
+	DELETE FROM BuyerDailySpend WITH (TABLOCKX)
+
+	INSERT INTO ShopDailyRevenue (IdShop, Day, Stripe, Amount, OrderCount, Profit)
+	SELECT T.IdShop, CAST(T.Date AS DATE), T.IdOrder % 8, SUM(T.Amount), COUNT(*),
+		SUM(CASE WHEN (O.BuyerDiscount = 0) THEN T.Amount * 0.05 / 0.95 ELSE T.Amount * 0.03 / 0.97 END)
+	FROM V_TRANSACTION T JOIN V_ORDER O ON (T.IdOrder = O.Id)
+	WHERE T.IdShop IS NOT NULL
+	GROUP BY T.IdShop, CAST(T.Date AS DATE), T.IdOrder % 8
+
+	INSERT INTO BuyerDailySpend (IdBuyer, Day, Stripe, Amount, OrderCount, Profit)
+	SELECT T.IdBuyer, CAST(T.Date AS DATE), T.IdOrder % 8, SUM(T.Amount), COUNT(*),
+		SUM(T.Amount * (1 / (1 - O.BuyerDiscount / 100.0)) * (0.05 - O.BuyerDiscount / 100.0))
+	FROM V_TRANSACTION T JOIN V_ORDER O ON (T.IdOrder = O.Id)
+	WHERE T.IdBuyer IS NOT NULL
+	GROUP BY T.IdBuyer, CAST(T.Date AS DATE), T.IdOrder % 8
+
+	COMMIT TRANSACTION
+END
+go
+
+/****** Object:  StoredProcedure [dbo].[SP_ERASE_ALL] ******/
+CREATE PROCEDURE [dbo].[SP_ERASE_ALL]
+AS
+BEGIN
+	SET NOCOUNT ON
+	SET XACT_ABORT ON
+
+	DECLARE @DropForeignKeys NVARCHAR(MAX) = N''
+	DECLARE @TruncateTables NVARCHAR(MAX) = N''
+	DECLARE @CreateForeignKeys NVARCHAR(MAX) = N''
+
+	--'TRUNCATE' is not allowed on a table referenced by a foreign key,
+	--so the foreign keys are saved, dropped and created again after the tables are truncated
+	SELECT
+		@DropForeignKeys = @DropForeignKeys
+			+ N'ALTER TABLE ' + QUOTENAME(OBJECT_SCHEMA_NAME(FK.parent_object_id)) + N'.' + QUOTENAME(OBJECT_NAME(FK.parent_object_id))
+			+ N' DROP CONSTRAINT ' + QUOTENAME(FK.name) + N'; ',
+		@CreateForeignKeys = @CreateForeignKeys
+			+ N'ALTER TABLE ' + QUOTENAME(OBJECT_SCHEMA_NAME(FK.parent_object_id)) + N'.' + QUOTENAME(OBJECT_NAME(FK.parent_object_id))
+			+ N' ADD CONSTRAINT ' + QUOTENAME(FK.name) + N' FOREIGN KEY (' + C.ParentColumns + N')'
+			+ N' REFERENCES ' + QUOTENAME(OBJECT_SCHEMA_NAME(FK.referenced_object_id)) + N'.' + QUOTENAME(OBJECT_NAME(FK.referenced_object_id))
+			+ N' (' + C.ReferencedColumns + N')'
+			+ N' ON DELETE ' + REPLACE(FK.delete_referential_action_desc, N'_', N' ')
+			+ N' ON UPDATE ' + REPLACE(FK.update_referential_action_desc, N'_', N' ') + N'; '
+	FROM sys.foreign_keys FK
+		CROSS APPLY (
+			SELECT
+				STRING_AGG(CAST(QUOTENAME(COL_NAME(FKC.parent_object_id, FKC.parent_column_id)) AS NVARCHAR(MAX)), N', ')
+					WITHIN GROUP (ORDER BY FKC.constraint_column_id),
+				STRING_AGG(CAST(QUOTENAME(COL_NAME(FKC.referenced_object_id, FKC.referenced_column_id)) AS NVARCHAR(MAX)), N', ')
+					WITHIN GROUP (ORDER BY FKC.constraint_column_id)
+			FROM sys.foreign_key_columns FKC
+			WHERE FKC.constraint_object_id = FK.object_id
+		) AS C (ParentColumns, ReferencedColumns)
+
+	--'TRUNCATE' does not fire the triggers, and resets the identity values to their seeds
+	SELECT @TruncateTables = @TruncateTables
+		+ N'TRUNCATE TABLE ' + QUOTENAME(SCHEMA_NAME(T.schema_id)) + N'.' + QUOTENAME(T.name) + N'; '
+	FROM sys.tables T
+	WHERE T.is_ms_shipped = 0
+
+	BEGIN TRANSACTION
+
+	EXEC sp_executesql @DropForeignKeys
+	EXEC sp_executesql @TruncateTables
+	EXEC sp_executesql @CreateForeignKeys
+
+	COMMIT TRANSACTION
+END
+go
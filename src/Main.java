@@ -4,15 +4,72 @@ import rs.etf.sab.solution.*;
 import rs.etf.sab.tests.TestHandler;
 import rs.etf.sab.tests.TestRunner;
 
+import java.nio.file.Path;
+import java.util.Arrays;
+
 public class Main {
     public static void main(String[] args) {
-        ArticleOperations articleOperations = new SolutionArticleOperations();
-        BuyerOperations buyerOperations = new SolutionBuyerOperations();
-        CityOperations cityOperations = new SolutionCityOperations();
-        GeneralOperations generalOperations = new SolutionGeneralOperations();
-        OrderOperations orderOperations = new SolutionOrderOperations();
-        ShopOperations shopOperations = new SolutionShopOperations();
-        TransactionOperations transactionOperations = new SolutionTransactionOperations();
+        // '--parallel N' runs the tests in N worker JVMs, each with its own database
+        if (args.length == 2 && args[0].equals("--parallel")) {
+            ParallelTestRunner runner = new ParallelTestRunner(Integer.parseInt(args[1]), Path.of("db", "create.sql"));
+            System.exit(runner.run() ? 0 : 1);
+        }
+
+        // '--bench [options]' runs the benchmarks instead of the tests, see 'BenchmarkSuite'
+        if (args.length >= 1 && args[0].equals("--bench")) {
+            BenchmarkSuite.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        // '--memory' runs the tests against the in-memory engine, without a database
+        if (args.length == 1 && args[0].equals("--memory")) {
+            MemoryStore store = new MemoryStore();
+
+            TestHandler.createInstance(
+                    new MemoryArticleOperations(store),
+                    new MemoryBuyerOperations(store),
+                    new MemoryCityOperations(store),
+                    new MemoryGeneralOperations(store),
+                    new MemoryOrderOperations(store),
+                    new MemoryShopOperations(store),
+                    new MemoryTransactionOperations(store)
+            );
+
+            TestRunner.runTests();
+            return;
+        }
+
+        // '-Donlineshop.shards=...' runs the tests against the reference database and the shards, see 'ShardMap'
+        if (ShardMap.isEnabled()) {
+            ReferenceReplicator replicator = ShardMap.getInstance().getReplicator();
+
+            TestHandler.createInstance(
+                    replicator.replicating(ArticleOperations.class, new SolutionArticleOperations()),
+                    new ShardedBuyerOperations(),
+                    replicator.replicating(CityOperations.class, new SolutionCityOperations()),
+                    new ShardedGeneralOperations(),
+                    new ShardedOrderOperations(),
+                    replicator.replicating(ShopOperations.class, new SolutionShopOperations()),
+                    new ShardedTransactionOperations()
+            );
+
+            TestRunner.runTests();
+            return;
+        }
+
+        // '-Donlineshop.partitions=N' completes the orders on N city partitions, see 'OrderPartitions'
+        if (OrderPartitions.isEnabled()) {
+            SolutionOrderOperations.setOrderPartitions(OrderPartitions.getInstance());
+            SolutionGeneralOperations.setOrderPartitions(OrderPartitions.getInstance());
+        }
+
+        ArticleOperations articleOperations = Metrics.instrument(ArticleOperations.class, new SolutionArticleOperations());
+        BuyerOperations buyerOperations = Metrics.instrument(BuyerOperations.class, new SolutionBuyerOperations());
+        CityOperations cityOperations = Metrics.instrument(CityOperations.class, new SolutionCityOperations());
+        GeneralOperations generalOperations = Metrics.instrument(GeneralOperations.class, new SolutionGeneralOperations());
+        OrderOperations orderOperations = Metrics.instrument(OrderOperations.class, new SolutionOrderOperations());
+        ShopOperations shopOperations = Metrics.instrument(ShopOperations.class, new SolutionShopOperations());
+        TransactionOperations transactionOperations = Metrics.instrument(TransactionOperations.class, new SolutionTransactionOperations());
 
         TestHandler.createInstance(
                 articleOperations,
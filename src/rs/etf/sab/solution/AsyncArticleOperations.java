@@ -0,0 +1,37 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.ArticleOperations;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Provides asynchronous counterparts of the ArticleOperations methods, running on an AsyncExecutor.
+ */
+public class AsyncArticleOperations {
+    private final AsyncExecutor executor;
+
+    /**
+     * Creates the asynchronous operations running on the given executor.
+     *
+     * @param executor the executor running the operations
+     */
+    public AsyncArticleOperations(AsyncExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Asynchronous counterpart of {@link ArticleOperations#createArticle(int, String, int)}.
+     *
+     * @param idShop       the ID of the shop to associate the article with
+     * @param articleName  the name of the article
+     * @param articlePrice the price of the article
+     * @return a future completed with the ID of the created article, or -1 otherwise
+     */
+    public CompletableFuture<Integer> createArticle(int idShop, String articleName, int articlePrice) {
+        return executor.submit(
+                "ArticleOperations.createArticle",
+                SolutionArticleOperations::new,
+                o -> o.createArticle(idShop, articleName, articlePrice)
+        );
+    }
+}
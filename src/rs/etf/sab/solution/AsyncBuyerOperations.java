@@ -0,0 +1,124 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.BuyerOperations;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Provides asynchronous counterparts of the BuyerOperations methods, running on an AsyncExecutor.
+ */
+public class AsyncBuyerOperations {
+    private final AsyncExecutor executor;
+
+    /**
+     * Creates the asynchronous operations running on the given executor.
+     *
+     * @param executor the executor running the operations
+     */
+    public AsyncBuyerOperations(AsyncExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Asynchronous counterpart of {@link BuyerOperations#createBuyer(String, int)}.
+     *
+     * @param buyerName the name of the buyer
+     * @param idCity    the ID of the city
+     * @return a future completed with the generated key of the created buyer, or -1 otherwise
+     */
+    public CompletableFuture<Integer> createBuyer(String buyerName, int idCity) {
+        return executor.submit(
+                "BuyerOperations.createBuyer",
+                SolutionBuyerOperations::new,
+                o -> o.createBuyer(buyerName, idCity)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link BuyerOperations#setCity(int, int)}.
+     *
+     * @param idBuyer the ID of the buyer
+     * @param idCity  the ID of the city
+     * @return a future completed with 1 if the city is set successfully, or -1 otherwise
+     */
+    public CompletableFuture<Integer> setCity(int idBuyer, int idCity) {
+        return executor.submit(
+                "BuyerOperations.setCity",
+                SolutionBuyerOperations::new,
+                o -> o.setCity(idBuyer, idCity)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link BuyerOperations#getCity(int)}.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return a future completed with the ID of the city, or -1 otherwise
+     */
+    public CompletableFuture<Integer> getCity(int idBuyer) {
+        return executor.submit(
+                "BuyerOperations.getCity",
+                SolutionBuyerOperations::new,
+                o -> o.getCity(idBuyer)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link BuyerOperations#increaseCredit(int, BigDecimal)}.
+     *
+     * @param idBuyer the ID of the buyer
+     * @param credit  the credit amount to increase
+     * @return a future completed with the updated balance of the buyer, or null otherwise
+     */
+    public CompletableFuture<BigDecimal> increaseCredit(int idBuyer, BigDecimal credit) {
+        return executor.submit(
+                "BuyerOperations.increaseCredit",
+                SolutionBuyerOperations::new,
+                o -> o.increaseCredit(idBuyer, credit)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link BuyerOperations#createOrder(int)}.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return a future completed with the generated key of the created order, or -1 otherwise
+     */
+    public CompletableFuture<Integer> createOrder(int idBuyer) {
+        return executor.submit(
+                "BuyerOperations.createOrder",
+                SolutionBuyerOperations::new,
+                o -> o.createOrder(idBuyer)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link BuyerOperations#getOrders(int)}.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return a future completed with a list of order IDs, or null otherwise
+     */
+    public CompletableFuture<List<Integer>> getOrders(int idBuyer) {
+        return executor.submit(
+                "BuyerOperations.getOrders",
+                SolutionBuyerOperations::new,
+                o -> o.getOrders(idBuyer)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link BuyerOperations#getCredit(int)}.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return a future completed with the credit balance of the buyer, or null otherwise
+     */
+    public CompletableFuture<BigDecimal> getCredit(int idBuyer) {
+        return executor.submit(
+                "BuyerOperations.getCredit",
+                SolutionBuyerOperations::new,
+                o -> o.getCredit(idBuyer)
+        );
+    }
+}
@@ -0,0 +1,93 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.CityOperations;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Provides asynchronous counterparts of the CityOperations methods, running on an AsyncExecutor.
+ */
+public class AsyncCityOperations {
+    private final AsyncExecutor executor;
+
+    /**
+     * Creates the asynchronous operations running on the given executor.
+     *
+     * @param executor the executor running the operations
+     */
+    public AsyncCityOperations(AsyncExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Asynchronous counterpart of {@link CityOperations#createCity(String)}.
+     *
+     * @param cityName the name of the city to create
+     * @return a future completed with the ID of the newly created city, or -1 otherwise
+     */
+    public CompletableFuture<Integer> createCity(String cityName) {
+        return executor.submit(
+                "CityOperations.createCity",
+                SolutionCityOperations::new,
+                o -> o.createCity(cityName)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link CityOperations#getCities()}.
+     *
+     * @return a future completed with a list of all city IDs, or null otherwise
+     */
+    public CompletableFuture<List<Integer>> getCities() {
+        return executor.submit(
+                "CityOperations.getCities",
+                SolutionCityOperations::new,
+                o -> o.getCities()
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link CityOperations#connectCities(int, int, int)}.
+     *
+     * @param idCity1  the ID of the first city
+     * @param idCity2  the ID of the second city
+     * @param distance the distance between the cities (measured in days)
+     * @return a future completed with the ID of the newly created connection, or -1 otherwise
+     */
+    public CompletableFuture<Integer> connectCities(int idCity1, int idCity2, int distance) {
+        return executor.submit(
+                "CityOperations.connectCities",
+                SolutionCityOperations::new,
+                o -> o.connectCities(idCity1, idCity2, distance)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link CityOperations#getConnectedCities(int)}.
+     *
+     * @param idCity the ID of the specified city
+     * @return a future completed with a list of IDs of cities connected to the specified city, or null otherwise
+     */
+    public CompletableFuture<List<Integer>> getConnectedCities(int idCity) {
+        return executor.submit(
+                "CityOperations.getConnectedCities",
+                SolutionCityOperations::new,
+                o -> o.getConnectedCities(idCity)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link CityOperations#getShops(int)}.
+     *
+     * @param idCity the ID of the specified city
+     * @return a future completed with a list of shop IDs in the specified city, or null otherwise
+     */
+    public CompletableFuture<List<Integer>> getShops(int idCity) {
+        return executor.submit(
+                "CityOperations.getShops",
+                SolutionCityOperations::new,
+                o -> o.getShops(idCity)
+        );
+    }
+}
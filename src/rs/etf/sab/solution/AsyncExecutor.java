@@ -0,0 +1,184 @@
+package rs.etf.sab.solution;
+
+import java.sql.Connection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Runs the Solution operations asynchronously over a pool of database connections.
+ * <p>
+ * Every call runs as its own task, on a virtual thread when the runtime supports them (Java 21+),
+ * or on a cached pool of daemon threads otherwise. Each call borrows a connection from the pool
+ * and runs on a Solution instance bound to that connection.
+ * <p>
+ * The number of calls in flight is bounded per operation type. Calls over the bound wait in a queue
+ * without occupying a thread, and start as soon as a call of the same type completes.
+ * Once the executor is closed, the calls that have not started yet fail with a 'RejectedExecutionException'.
+ */
+public class AsyncExecutor implements AutoCloseable {
+    private final ExecutorService executor = newTaskExecutor();
+    private final ConnectionPool pool;
+    private final int defaultMaxInFlight;
+    private final Map<String, Integer> maxInFlight = new ConcurrentHashMap<>();
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * Represents a queued call, which fails its future if it can not be started.
+     */
+    private interface Task extends Runnable {
+        void reject(RuntimeException e);
+    }
+
+    /**
+     * Represents the bound on the number of calls in flight for one operation type.
+     */
+    private class Limiter {
+        final Semaphore permits;
+        final Queue<Task> waiting = new ConcurrentLinkedQueue<>();
+
+        Limiter(int permits) {
+            this.permits = new Semaphore(permits);
+        }
+
+        /**
+         * Queues the task and starts as many queued tasks as there are free permits.
+         *
+         * @param task the task to run
+         */
+        void submit(Task task) {
+            waiting.add(task);
+            drain();
+        }
+
+        /**
+         * Starts queued tasks while there are free permits.
+         * It is called after a task is queued and after a permit is released, so no task is left behind.
+         * A task the closed executor does not accept gives its permit back and fails.
+         */
+        void drain() {
+            while (!waiting.isEmpty() && permits.tryAcquire()) {
+                Task next = waiting.poll();
+
+                if (next == null) {
+                    permits.release(); // Another thread took the task
+                    continue;
+                }
+
+                try {
+                    executor.execute(() -> {
+                        try {
+                            next.run();
+                        } finally {
+                            permits.release();
+                            drain();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    next.reject(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the executor over the given pool of connections.
+     *
+     * @param pool               the pool of database connections
+     * @param defaultMaxInFlight the maximum number of calls in flight per operation type
+     */
+    public AsyncExecutor(ConnectionPool pool, int defaultMaxInFlight) {
+        if (defaultMaxInFlight <= 0) throw new IllegalArgumentException("The bound must be positive");
+
+        this.pool = pool;
+        this.defaultMaxInFlight = defaultMaxInFlight;
+    }
+
+    /**
+     * Sets the maximum number of calls in flight for one operation type, e.g. 'OrderOperations.getState'.
+     * It has to be set before the first call of that type.
+     *
+     * @param operation   the operation type
+     * @param maxInFlight the maximum number of calls in flight
+     */
+    public void setMaxInFlight(String operation, int maxInFlight) {
+        if (maxInFlight <= 0) throw new IllegalArgumentException("The bound must be positive");
+
+        this.maxInFlight.put(operation, maxInFlight);
+    }
+
+    /**
+     * Runs the call asynchronously, on a Solution instance bound to a pooled connection.
+     *
+     * @param operation the operation type, used for bounding the calls in flight
+     * @param factory   the factory of the Solution instance, given the connection
+     * @param call      the call to run on the Solution instance
+     * @param <T>       the type of the Solution instance
+     * @param <R>       the type of the result
+     * @return a future completed with the result of the call
+     */
+    public <T, R> CompletableFuture<R> submit(String operation, Function<Connection, T> factory, Function<T, R> call) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        Limiter limiter = limiters.computeIfAbsent(
+                operation,
+                k -> new Limiter(maxInFlight.getOrDefault(k, defaultMaxInFlight))
+        );
+
+        limiter.submit(new Task() {
+            @Override
+            public void run() {
+                Connection connection = null;
+
+                try {
+                    connection = pool.borrow();
+                    future.complete(call.apply(factory.apply(connection)));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                } finally {
+                    if (connection != null) pool.release(connection);
+                }
+            }
+
+            @Override
+            public void reject(RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Stops accepting new tasks. Tasks that are already running are allowed to finish,
+     * and the queued ones fail once they would be started.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Creates the executor of the tasks, using virtual threads when the runtime supports them.
+     *
+     * @return the executor of the tasks
+     */
+    private static ExecutorService newTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "async-operations");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
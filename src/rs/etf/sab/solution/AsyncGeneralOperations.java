@@ -0,0 +1,82 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.GeneralOperations;
+
+import java.util.Calendar;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Provides asynchronous counterparts of the GeneralOperations methods, running on an AsyncExecutor.
+ */
+public class AsyncGeneralOperations {
+    private final AsyncExecutor executor;
+
+    /**
+     * Creates the asynchronous operations running on the given executor.
+     *
+     * @param executor the executor running the operations
+     */
+    public AsyncGeneralOperations(AsyncExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Asynchronous counterpart of {@link GeneralOperations#setInitialTime(Calendar)}.
+     *
+     * @param calendar the calendar object representing the initial time
+     * @return a future completed when the operation is done
+     */
+    public CompletableFuture<Void> setInitialTime(Calendar calendar) {
+        return executor.submit(
+                "GeneralOperations.setInitialTime",
+                SolutionGeneralOperations::new,
+                o -> {
+                    o.setInitialTime(calendar);
+                    return null;
+                }
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link GeneralOperations#time(int)}.
+     *
+     * @param numberOfDays the number of days to add
+     * @return a future completed with the updated currentDateTime object
+     */
+    public CompletableFuture<Calendar> time(int numberOfDays) {
+        return executor.submit(
+                "GeneralOperations.time",
+                SolutionGeneralOperations::new,
+                o -> o.time(numberOfDays)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link GeneralOperations#getCurrentTime()}.
+     *
+     * @return a future completed with the current time
+     */
+    public CompletableFuture<Calendar> getCurrentTime() {
+        return executor.submit(
+                "GeneralOperations.getCurrentTime",
+                SolutionGeneralOperations::new,
+                o -> o.getCurrentTime()
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link GeneralOperations#eraseAll()}.
+     *
+     * @return a future completed when the operation is done
+     */
+    public CompletableFuture<Void> eraseAll() {
+        return executor.submit(
+                "GeneralOperations.eraseAll",
+                SolutionGeneralOperations::new,
+                o -> {
+                    o.eraseAll();
+                    return null;
+                }
+        );
+    }
+}
@@ -0,0 +1,181 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.OrderOperations;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Provides asynchronous counterparts of the OrderOperations methods, running on an AsyncExecutor.
+ */
+public class AsyncOrderOperations {
+    private final AsyncExecutor executor;
+
+    /**
+     * Creates the asynchronous operations running on the given executor.
+     *
+     * @param executor the executor running the operations
+     */
+    public AsyncOrderOperations(AsyncExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Asynchronous counterpart of {@link OrderOperations#addArticle(int, int, int)}.
+     *
+     * @param idOrder   the ID of the order
+     * @param idArticle the ID of the article
+     * @param quantity  the quantity of the article
+     * @return a future completed with the ID of the newly added item if successful, or -1 otherwise
+     */
+    public CompletableFuture<Integer> addArticle(int idOrder, int idArticle, int quantity) {
+        return executor.submit(
+                "OrderOperations.addArticle",
+                SolutionOrderOperations::new,
+                o -> o.addArticle(idOrder, idArticle, quantity)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link OrderOperations#removeArticle(int, int)}.
+     *
+     * @param idOrder   the ID of the order
+     * @param idArticle the ID of the article
+     * @return a future completed with 1 if successful, or -1 otherwise
+     */
+    public CompletableFuture<Integer> removeArticle(int idOrder, int idArticle) {
+        return executor.submit(
+                "OrderOperations.removeArticle",
+                SolutionOrderOperations::new,
+                o -> o.removeArticle(idOrder, idArticle)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link OrderOperations#getItems(int)}.
+     *
+     * @param idOrder the ID of the order
+     * @return a future completed with a list of item IDs if items exist, or null otherwise
+     */
+    public CompletableFuture<List<Integer>> getItems(int idOrder) {
+        return executor.submit(
+                "OrderOperations.getItems",
+                SolutionOrderOperations::new,
+                o -> o.getItems(idOrder)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link OrderOperations#completeOrder(int)}.
+     *
+     * @param idOrder the ID of the order
+     * @return a future completed with 1 if successful, or -1 otherwise
+     */
+    public CompletableFuture<Integer> completeOrder(int idOrder) {
+        return executor.submit(
+                "OrderOperations.completeOrder",
+                SolutionOrderOperations::new,
+                o -> o.completeOrder(idOrder)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link OrderOperations#getFinalPrice(int)}.
+     *
+     * @param idOrder the ID of the order
+     * @return a future completed with the final price if successful, or -1 otherwise
+     */
+    public CompletableFuture<BigDecimal> getFinalPrice(int idOrder) {
+        return executor.submit(
+                "OrderOperations.getFinalPrice",
+                SolutionOrderOperations::new,
+                o -> o.getFinalPrice(idOrder)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link OrderOperations#getDiscountSum(int)}.
+     *
+     * @param idOrder the ID of the order
+     * @return a future completed with the discount sum if successful, or -1 otherwise
+     */
+    public CompletableFuture<BigDecimal> getDiscountSum(int idOrder) {
+        return executor.submit(
+                "OrderOperations.getDiscountSum",
+                SolutionOrderOperations::new,
+                o -> o.getDiscountSum(idOrder)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link OrderOperations#getState(int)}.
+     *
+     * @param idOrder the ID of the order
+     * @return a future completed with the state of the order if successful, or null otherwise
+     */
+    public CompletableFuture<String> getState(int idOrder) {
+        return executor.submit(
+                "OrderOperations.getState",
+                SolutionOrderOperations::new,
+                o -> o.getState(idOrder)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link OrderOperations#getSentTime(int)}.
+     *
+     * @param idOrder the ID of the order
+     * @return a future completed with the sent time of the order if successful, or null otherwise
+     */
+    public CompletableFuture<Calendar> getSentTime(int idOrder) {
+        return executor.submit(
+                "OrderOperations.getSentTime",
+                SolutionOrderOperations::new,
+                o -> o.getSentTime(idOrder)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link OrderOperations#getRecievedTime(int)}.
+     *
+     * @param idOrder the ID of the order
+     * @return a future completed with the received time of the order if successful, or null otherwise
+     */
+    public CompletableFuture<Calendar> getRecievedTime(int idOrder) {
+        return executor.submit(
+                "OrderOperations.getRecievedTime",
+                SolutionOrderOperations::new,
+                o -> o.getRecievedTime(idOrder)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link OrderOperations#getBuyer(int)}.
+     *
+     * @param idOrder the ID of the order
+     * @return a future completed with the ID of the buyer if successful, or -1 otherwise
+     */
+    public CompletableFuture<Integer> getBuyer(int idOrder) {
+        return executor.submit(
+                "OrderOperations.getBuyer",
+                SolutionOrderOperations::new,
+                o -> o.getBuyer(idOrder)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link OrderOperations#getLocation(int)}.
+     *
+     * @param idOrder the ID of the order
+     * @return a future completed with the ID of the location if successful, or -1 otherwise
+     */
+    public CompletableFuture<Integer> getLocation(int idOrder) {
+        return executor.submit(
+                "OrderOperations.getLocation",
+                SolutionOrderOperations::new,
+                o -> o.getLocation(idOrder)
+        );
+    }
+}
@@ -0,0 +1,138 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.ShopOperations;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Provides asynchronous counterparts of the ShopOperations methods, running on an AsyncExecutor.
+ */
+public class AsyncShopOperations {
+    private final AsyncExecutor executor;
+
+    /**
+     * Creates the asynchronous operations running on the given executor.
+     *
+     * @param executor the executor running the operations
+     */
+    public AsyncShopOperations(AsyncExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Asynchronous counterpart of {@link ShopOperations#createShop(String, String)}.
+     *
+     * @param shopName the name of the shop
+     * @param cityName the name of the city
+     * @return a future completed with the ID of the newly created shop, or -1 otherwise
+     */
+    public CompletableFuture<Integer> createShop(String shopName, String cityName) {
+        return executor.submit(
+                "ShopOperations.createShop",
+                SolutionShopOperations::new,
+                o -> o.createShop(shopName, cityName)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link ShopOperations#setCity(int, String)}.
+     *
+     * @param idShop   the ID of the shop
+     * @param cityName the name of the city
+     * @return a future completed with the number of rows affected by the update, or -1 otherwise
+     */
+    public CompletableFuture<Integer> setCity(int idShop, String cityName) {
+        return executor.submit(
+                "ShopOperations.setCity",
+                SolutionShopOperations::new,
+                o -> o.setCity(idShop, cityName)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link ShopOperations#getCity(int)}.
+     *
+     * @param idShop the ID of the shop
+     * @return a future completed with the ID of the city associated with the shop, or -1 otherwise
+     */
+    public CompletableFuture<Integer> getCity(int idShop) {
+        return executor.submit(
+                "ShopOperations.getCity",
+                SolutionShopOperations::new,
+                o -> o.getCity(idShop)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link ShopOperations#setDiscount(int, int)}.
+     *
+     * @param idShop             the ID of the shop
+     * @param discountPercentage the discount percentage to set
+     * @return a future completed with the number of rows affected by the update, or -1 otherwise
+     */
+    public CompletableFuture<Integer> setDiscount(int idShop, int discountPercentage) {
+        return executor.submit(
+                "ShopOperations.setDiscount",
+                SolutionShopOperations::new,
+                o -> o.setDiscount(idShop, discountPercentage)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link ShopOperations#increaseArticleCount(int, int)}.
+     *
+     * @param idArticle the ID of the article
+     * @param increment the amount to increase the article count by
+     * @return a future completed with the new article count, or -1 otherwise
+     */
+    public CompletableFuture<Integer> increaseArticleCount(int idArticle, int increment) {
+        return executor.submit(
+                "ShopOperations.increaseArticleCount",
+                SolutionShopOperations::new,
+                o -> o.increaseArticleCount(idArticle, increment)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link ShopOperations#getArticleCount(int)}.
+     *
+     * @param idArticle the ID of the article
+     * @return a future completed with the article count, or -1 otherwise
+     */
+    public CompletableFuture<Integer> getArticleCount(int idArticle) {
+        return executor.submit(
+                "ShopOperations.getArticleCount",
+                SolutionShopOperations::new,
+                o -> o.getArticleCount(idArticle)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link ShopOperations#getArticles(int)}.
+     *
+     * @param idShop the ID of the shop
+     * @return a future completed with the list of article IDs, or null otherwise
+     */
+    public CompletableFuture<List<Integer>> getArticles(int idShop) {
+        return executor.submit(
+                "ShopOperations.getArticles",
+                SolutionShopOperations::new,
+                o -> o.getArticles(idShop)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link ShopOperations#getDiscount(int)}.
+     *
+     * @param idShop the ID of the shop
+     * @return a future completed with the discount percentage, or -1 otherwise
+     */
+    public CompletableFuture<Integer> getDiscount(int idShop) {
+        return executor.submit(
+                "ShopOperations.getDiscount",
+                SolutionShopOperations::new,
+                o -> o.getDiscount(idShop)
+        );
+    }
+}
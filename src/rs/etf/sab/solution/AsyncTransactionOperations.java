@@ -0,0 +1,179 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.TransactionOperations;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Provides asynchronous counterparts of the TransactionOperations methods, running on an AsyncExecutor.
+ */
+public class AsyncTransactionOperations {
+    private final AsyncExecutor executor;
+
+    /**
+     * Creates the asynchronous operations running on the given executor.
+     *
+     * @param executor the executor running the operations
+     */
+    public AsyncTransactionOperations(AsyncExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Asynchronous counterpart of {@link TransactionOperations#getBuyerTransactionsAmmount(int)}.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return a future completed with the total amount paid in the transactions, or -1 otherwise
+     */
+    public CompletableFuture<BigDecimal> getBuyerTransactionsAmmount(int idBuyer) {
+        return executor.submit(
+                "TransactionOperations.getBuyerTransactionsAmmount",
+                SolutionTransactionOperations::new,
+                o -> o.getBuyerTransactionsAmmount(idBuyer)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link TransactionOperations#getShopTransactionsAmmount(int)}.
+     *
+     * @param idShop the ID of the shop
+     * @return a future completed with the total amount of transactions made by the shop, or -1 otherwise
+     */
+    public CompletableFuture<BigDecimal> getShopTransactionsAmmount(int idShop) {
+        return executor.submit(
+                "TransactionOperations.getShopTransactionsAmmount",
+                SolutionTransactionOperations::new,
+                o -> o.getShopTransactionsAmmount(idShop)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link TransactionOperations#getTransationsForBuyer(int)}.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return a future completed with the list of transaction IDs for the buyer, or null otherwise
+     */
+    public CompletableFuture<List<Integer>> getTransationsForBuyer(int idBuyer) {
+        return executor.submit(
+                "TransactionOperations.getTransationsForBuyer",
+                SolutionTransactionOperations::new,
+                o -> o.getTransationsForBuyer(idBuyer)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link TransactionOperations#getTransactionForBuyersOrder(int)}.
+     *
+     * @param idOrder the ID of the buyer's order
+     * @return a future completed with the transaction ID for the buyer's order, or -1 otherwise
+     */
+    public CompletableFuture<Integer> getTransactionForBuyersOrder(int idOrder) {
+        return executor.submit(
+                "TransactionOperations.getTransactionForBuyersOrder",
+                SolutionTransactionOperations::new,
+                o -> o.getTransactionForBuyersOrder(idOrder)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link TransactionOperations#getTransactionForShopAndOrder(int, int)}.
+     *
+     * @param idOrder the ID of the order
+     * @param idShop  the ID of the shop
+     * @return a future completed with the transaction ID for the shop and order, or -1 otherwise
+     */
+    public CompletableFuture<Integer> getTransactionForShopAndOrder(int idOrder, int idShop) {
+        return executor.submit(
+                "TransactionOperations.getTransactionForShopAndOrder",
+                SolutionTransactionOperations::new,
+                o -> o.getTransactionForShopAndOrder(idOrder, idShop)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link TransactionOperations#getTransationsForShop(int)}.
+     *
+     * @param idShop the ID of the shop
+     * @return a future completed with the list of transaction IDs for the shop, or null otherwise
+     */
+    public CompletableFuture<List<Integer>> getTransationsForShop(int idShop) {
+        return executor.submit(
+                "TransactionOperations.getTransationsForShop",
+                SolutionTransactionOperations::new,
+                o -> o.getTransationsForShop(idShop)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link TransactionOperations#getTimeOfExecution(int)}.
+     *
+     * @param idTransaction the ID of the transaction
+     * @return a future completed with the date and time of execution, or null otherwise
+     */
+    public CompletableFuture<Calendar> getTimeOfExecution(int idTransaction) {
+        return executor.submit(
+                "TransactionOperations.getTimeOfExecution",
+                SolutionTransactionOperations::new,
+                o -> o.getTimeOfExecution(idTransaction)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link TransactionOperations#getAmmountThatBuyerPayedForOrder(int)}.
+     *
+     * @param idOrder the ID of the order
+     * @return a future completed with the amount paid by the buyer for the order, or -1 otherwise
+     */
+    public CompletableFuture<BigDecimal> getAmmountThatBuyerPayedForOrder(int idOrder) {
+        return executor.submit(
+                "TransactionOperations.getAmmountThatBuyerPayedForOrder",
+                SolutionTransactionOperations::new,
+                o -> o.getAmmountThatBuyerPayedForOrder(idOrder)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link TransactionOperations#getAmmountThatShopRecievedForOrder(int, int)}.
+     *
+     * @param idShop  the ID of the shop
+     * @param idOrder the ID of the order
+     * @return a future completed with the amount received by the shop for the order, or -1 otherwise
+     */
+    public CompletableFuture<BigDecimal> getAmmountThatShopRecievedForOrder(int idShop, int idOrder) {
+        return executor.submit(
+                "TransactionOperations.getAmmountThatShopRecievedForOrder",
+                SolutionTransactionOperations::new,
+                o -> o.getAmmountThatShopRecievedForOrder(idShop, idOrder)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link TransactionOperations#getTransactionAmount(int)}.
+     *
+     * @param idTransaction the ID of the transaction
+     * @return a future completed with the amount of the transaction, or -1 otherwise
+     */
+    public CompletableFuture<BigDecimal> getTransactionAmount(int idTransaction) {
+        return executor.submit(
+                "TransactionOperations.getTransactionAmount",
+                SolutionTransactionOperations::new,
+                o -> o.getTransactionAmount(idTransaction)
+        );
+    }
+
+    /**
+     * Asynchronous counterpart of {@link TransactionOperations#getSystemProfit()}.
+     *
+     * @return a future completed with the system profit, or -1 otherwise
+     */
+    public CompletableFuture<BigDecimal> getSystemProfit() {
+        return executor.submit(
+                "TransactionOperations.getSystemProfit",
+                SolutionTransactionOperations::new,
+                o -> o.getSystemProfit()
+        );
+    }
+}
@@ -0,0 +1,203 @@
+package rs.etf.sab.solution;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent single-ID lookups into batched lookups.
+ * <p>
+ * Requested IDs are collected until the batch window closes or the batch is full,
+ * and then loaded all at once by the batch function. Requests for an ID that is already
+ * waiting or being loaded share the same future.
+ * <p>
+ * Batches are loaded one by one, on the scheduler thread. If the scheduler rejects a batch, or the loader
+ * is closed, the futures of the IDs that are not loaded yet are failed, so that no caller waits forever.
+ *
+ * @param <V> the type of the loaded values
+ */
+public class BatchLoader<V> {
+    private final Function<List<Integer>, Map<Integer, V>> batchFunction;
+    private final V missingValue;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final ScheduledExecutorService scheduler;
+
+    // All requested IDs that are not loaded yet, waiting or being loaded
+    private final HashMap<Integer, CompletableFuture<V>> futures = new HashMap<>();
+
+    // IDs waiting for the next batch
+    private List<Integer> waiting = new ArrayList<>();
+
+    private boolean closed = false;
+
+    /**
+     * Creates a new batch loader.
+     *
+     * @param batchFunction the function loading the values for a list of IDs, missing IDs are left out of the map
+     * @param missingValue  the value for the IDs that are left out of the map
+     * @param maxBatchSize  the maximum number of IDs in one batch
+     * @param window        the maximum time the first ID of a batch waits for the batch to fill
+     * @param unit          the time unit of the window
+     * @param scheduler     the scheduler running the batches
+     */
+    public BatchLoader(
+            Function<List<Integer>, Map<Integer, V>> batchFunction,
+            V missingValue,
+            int maxBatchSize,
+            long window,
+            TimeUnit unit,
+            ScheduledExecutorService scheduler
+    ) {
+        if (maxBatchSize <= 0) throw new IllegalArgumentException("The batch size must be positive");
+
+        this.batchFunction = batchFunction;
+        this.missingValue = missingValue;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = unit.toNanos(window);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Requests the value for the given ID.
+     *
+     * @param id the ID
+     * @return a future completed with the value, or with the missing value if there is no such ID,
+     * and failed if the loader is closed or the batch can not be scheduled
+     */
+    public CompletableFuture<V> load(int id) {
+        List<CompletableFuture<V>> rejected;
+        RejectedExecutionException failure;
+        CompletableFuture<V> future;
+
+        synchronized (this) {
+            if (closed) return CompletableFuture.failedFuture(new IllegalStateException("The loader is closed"));
+
+            future = futures.get(id);
+            if (future != null) return future; // Share the future of the same ID
+
+            future = new CompletableFuture<>();
+            futures.put(id, future);
+            waiting.add(id);
+
+            List<Integer> batch = waiting.size() >= maxBatchSize ? takeWaiting() : null;
+
+            try {
+                if (batch != null) {
+                    scheduler.execute(() -> loadBatch(batch));
+                } else if (waiting.size() == 1) {
+                    scheduler.schedule(this::loadWaiting, windowNanos, TimeUnit.NANOSECONDS);
+                }
+
+                return future;
+            } catch (RejectedExecutionException e) {
+                // The IDs have no scheduled load, so their futures are removed, and not shared with the later lookups
+                rejected = removeAll(batch != null ? batch : takeWaiting());
+                failure = e;
+            }
+        }
+
+        // Futures are completed outside the lock, as completion runs the callers' callbacks
+        rejected.forEach(rejectedFuture -> rejectedFuture.completeExceptionally(failure));
+        return future;
+    }
+
+    /**
+     * Stops accepting lookups, and fails the futures of all the IDs that are not loaded yet.
+     * A batch that is being loaded meanwhile completes only the futures that are still left, i.e. none.
+     */
+    public void close() {
+        List<CompletableFuture<V>> pending;
+
+        synchronized (this) {
+            closed = true;
+            waiting = new ArrayList<>();
+            pending = new ArrayList<>(futures.values());
+            futures.clear();
+        }
+
+        IllegalStateException failure = new IllegalStateException("The loader is closed");
+        pending.forEach(future -> future.completeExceptionally(failure));
+    }
+
+    /**
+     * Loads the IDs that are waiting, if the batch has not been loaded already because it was full.
+     */
+    private void loadWaiting() {
+        List<Integer> batch;
+
+        synchronized (this) {
+            if (waiting.isEmpty()) return;
+            batch = takeWaiting();
+        }
+
+        loadBatch(batch);
+    }
+
+    /**
+     * Takes all the waiting IDs, starting a new batch.
+     *
+     * @return the waiting IDs
+     */
+    private List<Integer> takeWaiting() {
+        List<Integer> batch = waiting;
+        waiting = new ArrayList<>();
+        return batch;
+    }
+
+    /**
+     * Removes the futures of the IDs, so that the later lookups of the IDs start new ones.
+     *
+     * @param ids the IDs
+     * @return the removed futures, in the order of the IDs, null for an ID that has none
+     */
+    private List<CompletableFuture<V>> removeAll(List<Integer> ids) {
+        List<CompletableFuture<V>> removed = new ArrayList<>(ids.size());
+
+        for (Integer id : ids) {
+            removed.add(futures.remove(id));
+        }
+
+        return removed;
+    }
+
+    /**
+     * Loads the values for the batch and completes the futures of its IDs.
+     *
+     * @param batch the IDs to load
+     */
+    private void loadBatch(List<Integer> batch) {
+        Map<Integer, V> values = null;
+        RuntimeException failure = null;
+
+        try {
+            values = batchFunction.apply(batch);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        List<CompletableFuture<V>> batchFutures;
+
+        synchronized (this) {
+            batchFutures = removeAll(batch);
+        }
+
+        // Futures are completed outside the lock, as completion runs the callers' callbacks
+        for (int i = 0; i < batch.size(); i++) {
+            // The future was failed already if the loader was closed meanwhile
+            if (batchFutures.get(i) == null) continue;
+
+            if (failure != null) {
+                batchFutures.get(i).completeExceptionally(failure);
+            } else {
+                batchFutures.get(i).complete(values.getOrDefault(batch.get(i), missingValue));
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package rs.etf.sab.solution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Collects items from any number of threads in a bounded queue, and hands them to a single flusher thread in batches.
+ * <p>
+ * A batch is flushed when it reaches the maximum batch size, or when its oldest item has waited for the maximum
+ * latency. Closing the queue stops accepting items and waits for the flusher to flush all the accepted ones.
+ * An item is either flushed or rejected, never left behind: the items that are added while the queue is being
+ * closed are refused, and the items the flusher could not flush are rejected once it has stopped.
+ *
+ * @param <T> the type of the items
+ */
+public class BatchingQueue<T> implements AutoCloseable {
+    private final BlockingQueue<T> queue;
+    private final int maxBatchSize;
+    private final long maxLatencyNanos;
+    private final Consumer<List<T>> flush;
+    private final BiConsumer<T, RuntimeException> reject;
+    private final Thread flusher;
+
+    // Adding holds the read lock, so that closing, which takes the write lock, waits for the items being added
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a new queue and starts its flusher thread.
+     *
+     * @param name          the name of the flusher thread
+     * @param queueCapacity the maximum number of items waiting to be flushed
+     * @param maxBatchSize  the maximum number of items flushed in one batch
+     * @param maxLatency    the maximum time the oldest item of a batch waits for the batch to fill
+     * @param unit          the time unit of the maximum latency
+     * @param flush         flushes a batch of items, in the order they were added
+     * @param reject        fails an item that will not be flushed, given the reason
+     */
+    public BatchingQueue(String name, int queueCapacity, int maxBatchSize, long maxLatency, TimeUnit unit,
+                         Consumer<List<T>> flush, BiConsumer<T, RuntimeException> reject) {
+        if (queueCapacity <= 0 || maxBatchSize <= 0 || maxLatency < 0) {
+            throw new IllegalArgumentException("Capacity and batch size must be positive, latency non-negative");
+        }
+
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxLatencyNanos = unit.toNanos(maxLatency);
+        this.flush = flush;
+        this.reject = reject;
+
+        this.flusher = new Thread(this::flushLoop, name);
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Adds the item to the queue. Blocks while the queue is full.
+     * If the calling thread is interrupted while waiting, the item is rejected and the interrupt is kept.
+     *
+     * @param item the item
+     * @throws IllegalStateException if the queue has been closed
+     */
+    public void add(T item) {
+        closeLock.readLock().lock();
+
+        try {
+            if (closed) throw new IllegalStateException("The queue has been closed");
+
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reject.accept(item, new RuntimeException(e));
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stops accepting items, and waits for the flusher to flush all the accepted ones.
+     * The items left in the queue, if the flusher stopped early, are rejected.
+     */
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (T item; (item = queue.poll()) != null; ) {
+            reject.accept(item, new IllegalStateException("The queue has been closed"));
+        }
+    }
+
+    /**
+     * Collects the items into batches and flushes them, until the queue is closed and drained.
+     * <p>
+     * Once 'closed' is set, no item can be added anymore, so an empty queue means all the items are flushed.
+     * The flusher is only interrupted from outside, so it keeps flushing and restores the interrupt when it ends.
+     */
+    private void flushLoop() {
+        List<T> batch = new ArrayList<>(maxBatchSize);
+        boolean interrupted = false;
+
+        while (!closed || !queue.isEmpty()) {
+            try {
+                T first = queue.poll(10, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+
+                batch.add(first);
+                long deadline = System.nanoTime() + maxLatencyNanos;
+
+                // Fill the batch until it is full, or until the oldest item has waited long enough
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) continue;
+
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+
+                    T next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+
+            if (!batch.isEmpty()) {
+                try {
+                    flush.accept(batch);
+                } catch (RuntimeException e) {
+                    for (T item : batch) {
+                        reject.accept(item, e);
+                    }
+                }
+                batch.clear();
+            }
+        }
+
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+}
@@ -0,0 +1,523 @@
+package rs.etf.sab.solution;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the hot paths of the operations on generated datasets, and compares the scores with a baseline.
+ * <p>
+ * Every benchmark is a pair of an untimed preparation, e.g. creating the order to complete, and the timed operation.
+ * A benchmark runs its warmup iterations, and then its measured iterations, each for the given time.
+ * The score is the number of timed operations per second of timed work, averaged over the measured iterations,
+ * with the half-width of its 99.9% confidence interval as the error. The latencies of the measured iterations
+ * are reported as p50/p99/p999.
+ * <p>
+ * The results are written in the JSON format of JMH. With a baseline, the benchmarks whose score dropped by more than
+ * the threshold are reported as regressions, and the exit code is 1. The baseline in 'bench/baseline.json'
+ * was taken on the in-memory engine with the default options, so it is only comparable on similar hardware.
+ * <p>
+ * Usage: BenchmarkSuite [--database] [--scale 1,4] [--warmup 2] [--iterations 5] [--time 1]
+ * [--include regex] [--output file] [--baseline file] [--threshold 0.2]
+ */
+public class BenchmarkSuite {
+    private static final long SEED = 42;
+
+    // Completed orders for the read benchmarks, and the sent orders kept pending for 'time'
+    private static final int ORDER_POOL = 200;
+    private static final int PENDING_ARRIVALS = 500;
+    private static final int ARTICLES_PER_ORDER = 3;
+    private static final int ARTICLES_PER_CREATED_ORDER = 50;
+
+    // The two-sided 99.9% quantile of the normal distribution
+    private static final double Z_999 = 3.291;
+
+    private final Marketplace marketplace;
+    private final Supplier<DijkstraAlgorithm> dijkstraAlgorithms;
+    private final Random random = new Random(SEED);
+
+    private DatasetGenerator.Dataset dataset;
+    private int[] orderPool;
+
+    /**
+     * Represents a benchmark: an untimed preparation giving the argument of the timed operation.
+     */
+    private static class Benchmark {
+        private final IntSupplier prepare;
+        private final IntConsumer measure;
+
+        Benchmark(IntSupplier prepare, IntConsumer measure) {
+            this.prepare = prepare;
+            this.measure = measure;
+        }
+    }
+
+    /**
+     * Represents the result of a benchmark at a scale factor.
+     */
+    public static class Result {
+        private final String name;
+        private final int scaleFactor;
+        private final double[] scores;
+        private final LatencyHistogram histogram;
+
+        Result(String name, int scaleFactor, double[] scores, LatencyHistogram histogram) {
+            this.name = name;
+            this.scaleFactor = scaleFactor;
+            this.scores = scores;
+            this.histogram = histogram;
+        }
+
+        /**
+         * Retrieves the name of the benchmark.
+         *
+         * @return the name of the benchmark
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Retrieves the scale factor of the dataset.
+         *
+         * @return the scale factor
+         */
+        public int getScaleFactor() {
+            return scaleFactor;
+        }
+
+        /**
+         * Retrieves the mean score of the measured iterations.
+         *
+         * @return the score in operations per second
+         */
+        public double getScore() {
+            double sum = 0;
+            for (double score : scores) sum += score;
+
+            return sum / scores.length;
+        }
+
+        /**
+         * Retrieves the half-width of the 99.9% confidence interval of the score, under a normal approximation.
+         *
+         * @return the error in operations per second, 0 for a single iteration
+         */
+        public double getScoreError() {
+            if (scores.length < 2) return 0;
+
+            double mean = getScore();
+            double sumOfSquares = 0;
+            for (double score : scores) sumOfSquares += (score - mean) * (score - mean);
+
+            return Z_999 * Math.sqrt(sumOfSquares / (scores.length - 1)) / Math.sqrt(scores.length);
+        }
+
+        /**
+         * Retrieves the latencies of the measured iterations.
+         *
+         * @return the histogram of the latencies
+         */
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        /**
+         * Retrieves the key of the result in a baseline.
+         *
+         * @return the name and the scale factor
+         */
+        String key() {
+            return name + "@" + scaleFactor;
+        }
+    }
+
+    /**
+     * Creates a suite running the benchmarks through the given operations.
+     *
+     * @param marketplace        the operations to benchmark
+     * @param dijkstraAlgorithms the supplier of the algorithm over the same engine
+     */
+    public BenchmarkSuite(Marketplace marketplace, Supplier<DijkstraAlgorithm> dijkstraAlgorithms) {
+        this.marketplace = marketplace;
+        this.dijkstraAlgorithms = dijkstraAlgorithms;
+    }
+
+    /**
+     * Generates a dataset at the scale factor and runs the benchmarks whose names match the pattern.
+     *
+     * @param scaleFactor the scale factor of the dataset
+     * @param include     the pattern of the benchmark names to run
+     * @param warmup      the number of warmup iterations
+     * @param iterations  the number of measured iterations
+     * @param seconds     the duration of an iteration in seconds
+     * @return the results, in the order the benchmarks ran
+     */
+    public List<Result> run(int scaleFactor, Pattern include, int warmup, int iterations, double seconds) {
+        List<Result> results = new ArrayList<>();
+
+        for (Map.Entry<String, Supplier<Benchmark>> entry : benchmarks().entrySet()) {
+            if (!include.matcher(entry.getKey()).find()) continue;
+
+            // Every benchmark gets a fresh dataset, so that the earlier ones do not slow it down
+            setUp(scaleFactor);
+            Benchmark benchmark = entry.getValue().get();
+
+            for (int i = 0; i < warmup; i++) {
+                iterate(benchmark, seconds, new LatencyHistogram());
+            }
+
+            double[] scores = new double[iterations];
+            LatencyHistogram histogram = new LatencyHistogram();
+            for (int i = 0; i < iterations; i++) {
+                scores[i] = iterate(benchmark, seconds, histogram);
+            }
+
+            Result result = new Result(entry.getKey(), scaleFactor, scores, histogram);
+            results.add(result);
+
+            System.out.printf(Locale.ROOT, "%-20s sf=%-3d %14.1f +- %10.1f ops/s  p50=%.1fus p99=%.1fus p999=%.1fus%n",
+                    result.getName(), scaleFactor, result.getScore(), result.getScoreError(),
+                    histogram.getValueAtPercentile(50) / 1e3,
+                    histogram.getValueAtPercentile(99) / 1e3,
+                    histogram.getValueAtPercentile(99.9) / 1e3);
+        }
+
+        return results;
+    }
+
+    /**
+     * Generates the dataset and the pool of completed orders, and lets them arrive, so that the shops have
+     * transactions too.
+     *
+     * @param scaleFactor the scale factor of the dataset
+     */
+    private void setUp(int scaleFactor) {
+        random.setSeed(SEED);
+        dataset = new DatasetGenerator(marketplace, SEED).generate(scaleFactor, 1.0);
+
+        orderPool = new int[ORDER_POOL];
+        for (int i = 0; i < ORDER_POOL; i++) {
+            orderPool[i] = createOrder();
+            marketplace.getOrderOperations().completeOrder(orderPool[i]);
+        }
+
+        marketplace.getGeneralOperations().time(365);
+    }
+
+    /**
+     * Defines the benchmarks, by name.
+     *
+     * @return the suppliers of the benchmarks, called after the dataset is generated
+     */
+    private Map<String, Supplier<Benchmark>> benchmarks() {
+        Map<String, Supplier<Benchmark>> benchmarks = new LinkedHashMap<>();
+
+        benchmarks.put("dijkstra", () -> new Benchmark(
+                () -> random.nextInt(dataset.getCities().length),
+                index -> dijkstraAlgorithms.get().dijkstraAlgorithm(
+                        dataset.getCities()[index], orderPool[index % orderPool.length])));
+
+        int[] created = {-1, 0};
+        benchmarks.put("addArticle", () -> new Benchmark(
+                () -> {
+                    if (created[1]++ % ARTICLES_PER_CREATED_ORDER == 0) {
+                        created[0] = marketplace.getBuyerOperations().createOrder(dataset.sampleBuyer(random));
+                    }
+                    return created[0];
+                },
+                idOrder -> marketplace.getOrderOperations().addArticle(idOrder, dataset.sampleArticle(random), 1)));
+
+        benchmarks.put("completeOrder", () -> new Benchmark(
+                this::createOrder,
+                idOrder -> marketplace.getOrderOperations().completeOrder(idOrder)));
+
+        benchmarks.put("getFinalPrice", () -> new Benchmark(
+                () -> orderPool[random.nextInt(orderPool.length)],
+                idOrder -> marketplace.getOrderOperations().getFinalPrice(idOrder)));
+
+        benchmarks.put("getLocation", () -> new Benchmark(
+                () -> orderPool[random.nextInt(orderPool.length)],
+                idOrder -> marketplace.getOrderOperations().getLocation(idOrder)));
+
+        benchmarks.put("time", () -> {
+            ArrayDeque<Integer> pending = new ArrayDeque<>();
+
+            return new Benchmark(
+                    () -> {
+                        // Approximately, as the orders do not arrive in the order they were sent
+                        while (!pending.isEmpty()
+                                && marketplace.getOrderOperations().getState(pending.peekFirst()).equals("arrived")) {
+                            pending.pollFirst();
+                        }
+                        while (pending.size() < PENDING_ARRIVALS) {
+                            int idOrder = createOrder();
+                            marketplace.getOrderOperations().completeOrder(idOrder);
+                            pending.addLast(idOrder);
+                        }
+                        return 1;
+                    },
+                    days -> marketplace.getGeneralOperations().time(days));
+        });
+
+        benchmarks.put("buyerTransactions", () -> new Benchmark(
+                () -> dataset.sampleBuyer(random),
+                idBuyer -> marketplace.getTransactionOperations().getBuyerTransactionsAmmount(idBuyer)));
+
+        benchmarks.put("shopTransactions", () -> new Benchmark(
+                () -> dataset.sampleShop(random),
+                idShop -> marketplace.getTransactionOperations().getShopTransactionsAmmount(idShop)));
+
+        benchmarks.put("systemProfit", () -> new Benchmark(
+                () -> 0,
+                ignored -> marketplace.getTransactionOperations().getSystemProfit()));
+
+        return benchmarks;
+    }
+
+    /**
+     * Creates an order of popular articles, and gives its buyer enough credit to complete it.
+     *
+     * @return the ID of the order
+     */
+    private int createOrder() {
+        int idBuyer = dataset.sampleBuyer(random);
+        int idOrder = marketplace.getBuyerOperations().createOrder(idBuyer);
+
+        for (int i = 0; i < ARTICLES_PER_ORDER; i++) {
+            marketplace.getOrderOperations().addArticle(idOrder, dataset.sampleArticle(random), 1);
+        }
+        marketplace.getBuyerOperations().increaseCredit(idBuyer, BigDecimal.valueOf(10000));
+
+        return idOrder;
+    }
+
+    /**
+     * Runs one iteration of the benchmark.
+     *
+     * @param benchmark the benchmark
+     * @param seconds   the duration of the iteration in seconds
+     * @param histogram the histogram to record the latencies into
+     * @return the number of timed operations per second of timed work
+     */
+    private static double iterate(Benchmark benchmark, double seconds, LatencyHistogram histogram) {
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        long operations = 0;
+        long timed = 0;
+
+        while (System.nanoTime() < end) {
+            int argument = benchmark.prepare.getAsInt();
+
+            long start = System.nanoTime();
+            benchmark.measure.accept(argument);
+            long elapsed = System.nanoTime() - start;
+
+            histogram.record(elapsed);
+            timed += elapsed;
+            operations++;
+        }
+
+        return timed == 0 ? 0 : operations / (timed / 1e9);
+    }
+
+    /**
+     * Writes the results in the JSON format of JMH.
+     *
+     * @param results    the results
+     * @param warmup     the number of warmup iterations
+     * @param iterations the number of measured iterations
+     * @param seconds    the duration of an iteration in seconds
+     * @param file       the file to write
+     * @throws UncheckedIOException if the file can not be written
+     */
+    public static void write(List<Result> results, int warmup, int iterations, double seconds, Path file) {
+        StringBuilder json = new StringBuilder("[\n");
+
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            LatencyHistogram histogram = result.getHistogram();
+            StringBuilder rawData = new StringBuilder();
+
+            for (double score : result.scores) {
+                if (rawData.length() > 0) rawData.append(", ");
+                rawData.append(String.format(Locale.ROOT, "%.3f", score));
+            }
+
+            json.append("    {\n")
+                    .append("        \"benchmark\" : \"").append(BenchmarkSuite.class.getName()).append('.')
+                    .append(result.getName()).append("\",\n")
+                    .append("        \"mode\" : \"thrpt\",\n")
+                    .append("        \"threads\" : 1,\n")
+                    .append("        \"warmupIterations\" : ").append(warmup).append(",\n")
+                    .append("        \"warmupTime\" : \"").append(seconds).append(" s\",\n")
+                    .append("        \"measurementIterations\" : ").append(iterations).append(",\n")
+                    .append("        \"measurementTime\" : \"").append(seconds).append(" s\",\n")
+                    .append("        \"params\" : {\n")
+                    .append("            \"scaleFactor\" : \"").append(result.getScaleFactor()).append("\"\n")
+                    .append("        },\n")
+                    .append("        \"primaryMetric\" : {\n")
+                    .append(String.format(Locale.ROOT, "            \"score\" : %.3f,%n", result.getScore()))
+                    .append(String.format(Locale.ROOT, "            \"scoreError\" : %.3f,%n", result.getScoreError()))
+                    .append("            \"scoreUnit\" : \"ops/s\",\n")
+                    .append("            \"rawData\" : [\n")
+                    .append("                [").append(rawData).append("]\n")
+                    .append("            ]\n")
+                    .append("        },\n")
+                    .append("        \"secondaryMetrics\" : {\n")
+                    .append(latency("p50", histogram.getValueAtPercentile(50))).append(",\n")
+                    .append(latency("p99", histogram.getValueAtPercentile(99))).append(",\n")
+                    .append(latency("p999", histogram.getValueAtPercentile(99.9))).append("\n")
+                    .append("        }\n")
+                    .append("    }").append(i < results.size() - 1 ? "," : "").append('\n');
+        }
+
+        json.append("]\n");
+
+        try {
+            if (file.getParent() != null) Files.createDirectories(file.getParent());
+            Files.writeString(file, json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Formats a latency as a secondary metric.
+     *
+     * @param name  the name of the metric
+     * @param nanos the latency in nanoseconds
+     * @return the JSON of the metric
+     */
+    private static String latency(String name, long nanos) {
+        return String.format(Locale.ROOT,
+                "            \"%s\" : { \"score\" : %.3f, \"scoreUnit\" : \"us/op\" }", name, nanos / 1e3);
+    }
+
+    /**
+     * Reads the scores of a baseline written by 'write'.
+     *
+     * @param file the baseline file
+     * @return the map (name@scaleFactor -> score, ...)
+     * @throws UncheckedIOException if the file can not be read
+     */
+    public static Map<String, Double> readBaseline(Path file) {
+        Map<String, Double> scores = new HashMap<>();
+        Pattern pattern = Pattern.compile(
+                "\"benchmark\" : \"[\\w.]+\\.(\\w+)\".*?\"scaleFactor\" : \"(\\d+)\".*?\"score\" : ([-0-9.E]+)",
+                Pattern.DOTALL);
+
+        try {
+            Matcher matcher = pattern.matcher(Files.readString(file));
+
+            while (matcher.find()) {
+                scores.put(matcher.group(1) + "@" + matcher.group(2), Double.parseDouble(matcher.group(3)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return scores;
+    }
+
+    /**
+     * Compares the results with the baseline, and prints the change of every score.
+     *
+     * @param results   the results
+     * @param baseline  the scores of the baseline
+     * @param threshold the highest allowed drop of a score, e.g. 0.2 for 20%
+     * @return the number of regressions
+     */
+    public static int compare(List<Result> results, Map<String, Double> baseline, double threshold) {
+        int regressions = 0;
+
+        for (Result result : results) {
+            Double score = baseline.get(result.key());
+
+            if (score == null) {
+                System.out.printf("%-20s sf=%-3d not in the baseline%n", result.getName(), result.getScaleFactor());
+                continue;
+            }
+
+            double change = result.getScore() / score - 1;
+            boolean regression = change < -threshold;
+            if (regression) regressions++;
+
+            System.out.printf(Locale.ROOT, "%-20s sf=%-3d %+7.1f%%%s%n",
+                    result.getName(), result.getScaleFactor(), change * 100, regression ? "  REGRESSION" : "");
+        }
+
+        return regressions;
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args the options, see the class description
+     */
+    public static void main(String[] args) {
+        boolean database = false;
+        String scaleFactors = "1,4";
+        int warmup = 2;
+        int iterations = 5;
+        double seconds = 1;
+        Pattern include = Pattern.compile("");
+        Path output = null;
+        Path baseline = null;
+        double threshold = 0.2;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--database" -> database = true;
+                case "--scale" -> scaleFactors = args[++i];
+                case "--warmup" -> warmup = Integer.parseInt(args[++i]);
+                case "--iterations" -> iterations = Integer.parseInt(args[++i]);
+                case "--time" -> seconds = Double.parseDouble(args[++i]);
+                case "--include" -> include = Pattern.compile(args[++i]);
+                case "--output" -> output = Path.of(args[++i]);
+                case "--baseline" -> baseline = Path.of(args[++i]);
+                case "--threshold" -> threshold = Double.parseDouble(args[++i]);
+                default -> {
+                    System.out.println("Usage: BenchmarkSuite [--database] [--scale 1,4] [--warmup 2] [--iterations 5]"
+                            + " [--time 1] [--include regex] [--output file] [--baseline file] [--threshold 0.2]");
+                    return;
+                }
+            }
+        }
+
+        BenchmarkSuite suite;
+        if (database) {
+            Connection c = DB.getInstance().getConnection();
+            suite = new BenchmarkSuite(Marketplace.database(c), () -> new DijkstraAlgorithm(c));
+        } else {
+            MemoryStore store = new MemoryStore();
+            suite = new BenchmarkSuite(Marketplace.memory(store), () -> new DijkstraAlgorithm(store.graph()));
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (String scaleFactor : scaleFactors.split(",")) {
+            results.addAll(suite.run(Integer.parseInt(scaleFactor.trim()), include, warmup, iterations, seconds));
+        }
+
+        if (output != null) write(results, warmup, iterations, seconds, output);
+
+        if (baseline != null && compare(results, readBaseline(baseline), threshold) > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package rs.etf.sab.solution;
+
+import java.sql.*;
+import java.util.HashMap;
+
+/**
+ * Represents a singleton in-memory cache of the transport lines between the cities.
+ * <p>
+ * The cached map is never modified after it has been built. Any write to the 'Line' table
+ * invalidates the cache, and the next reader loads a fresh copy from the database.
+ * The writes of the other JVMs invalidate it through the 'InvalidationBus', if it is enabled.
+ */
+public class CityGraph {
+    private static final Connection c = DB.getInstance().getConnection();
+    private static CityGraph cityGraph = null;
+
+    // Look: (idCity -> (idNeighborCity -> distance, ...), ...)
+    private volatile HashMap<Integer, HashMap<Integer, Integer>> distances = null;
+
+    /**
+     * Private constructor to create a new, empty instance of the cache.
+     */
+    private CityGraph() {
+        InvalidationBus.register(InvalidationBus.Table.LINE, (table, key) -> invalidate());
+    }
+
+    /**
+     * Returns the instance of the city graph.
+     * If the instance does not exist, it creates a new one and returns it.
+     *
+     * @return the instance of the city graph
+     */
+    public static synchronized CityGraph getInstance() {
+        return cityGraph == null ? (cityGraph = new CityGraph()) : cityGraph;
+    }
+
+    /**
+     * Retrieves all distances between cities, loading them from the database if the cache is empty.
+     * The returned map must be treated as read-only.
+     *
+     * @return a map of distances between cities
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public HashMap<Integer, HashMap<Integer, Integer>> getDistances() {
+        HashMap<Integer, HashMap<Integer, Integer>> current = distances;
+        if (current != null) return current;
+
+        synchronized (this) {
+            if (distances == null) distances = loadDistances();
+            return distances;
+        }
+    }
+
+    /**
+     * Discards the cached distances. The next call to 'getDistances()' reloads them.
+     */
+    public synchronized void invalidate() {
+        distances = null;
+    }
+
+    /**
+     * Reloads the cached distances from the database right away.
+     *
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public synchronized void rebuild() {
+        distances = loadDistances();
+    }
+
+    /**
+     * Loads all distances between cities from the database.
+     *
+     * @return a map of distances between cities
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private HashMap<Integer, HashMap<Integer, Integer>> loadDistances() {
+        HashMap<Integer, HashMap<Integer, Integer>> loaded = new HashMap<>();
+        String query = "SELECT Id1, Id2, Distance FROM Line";
+
+        try (
+                PreparedStatement ps = c.prepareStatement(query);
+                ResultSet rs = ps.executeQuery()
+        ) {
+            while (rs.next()) {
+                int idCity1 = rs.getInt(1);
+                int idCity2 = rs.getInt(2);
+                int distance = rs.getInt(3);
+
+                loaded.computeIfAbsent(idCity1, k -> new HashMap<>()).put(idCity2, distance);
+                loaded.computeIfAbsent(idCity2, k -> new HashMap<>()).put(idCity1, distance);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return loaded;
+    }
+}
@@ -0,0 +1,391 @@
+package rs.etf.sab.solution;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Imports large sets of cities and transport lines directly into the 'City' and 'Line' tables.
+ * <p>
+ * Files are read through memory-mapped windows and deduplicated in memory, so that every entity
+ * costs a fraction of a round-trip instead of the existence check and insert done by 'createCity()'
+ * and 'connectCities()'.
+ * <p>
+ * Cities file: one city name per line.
+ * Lines file: one line per connection, in the form 'cityName1,cityName2,distance'.
+ * Cities referenced by the lines file that do not exist yet are created as well.
+ * Blank lines and lines starting with '#' are skipped in both files.
+ */
+public class CityLineImporter {
+    private static final Connection c = DB.getInstance().getConnection();
+
+    // SQL Server accepts at most 2100 parameters per statement
+    private static final int CITIES_PER_INSERT = 1000;
+    private static final int LINES_PER_INSERT = 699;
+
+    // The size of a single memory-mapped window of the input file
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final HashMap<String, Integer> cityIds = new HashMap<>();
+    private final HashSet<Long> existingLines = new HashSet<>();
+    private boolean loaded = false;
+
+    /**
+     * Represents a consumer of a single line of an input file.
+     */
+    @FunctionalInterface
+    private interface LineConsumer {
+        void accept(byte[] buffer, int length);
+    }
+
+    /**
+     * Imports all cities from the given file, skipping the ones that already exist.
+     *
+     * @param citiesFile the path of the cities file
+     * @return the number of newly created cities
+     * @throws RuntimeException if an I/O or SQL exception occurs during the operation
+     */
+    public int importCities(Path citiesFile) {
+        loadExisting();
+
+        List<String> newCities = new ArrayList<>();
+        HashSet<String> seen = new HashSet<>();
+
+        readLines(citiesFile, (buffer, length) -> {
+            String name = new String(buffer, 0, length, StandardCharsets.UTF_8).trim();
+            if (name.isEmpty() || name.startsWith("#")) return;
+
+            if (!cityIds.containsKey(name) && seen.add(name)) newCities.add(name);
+        });
+
+        insertCities(newCities);
+        return newCities.size();
+    }
+
+    /**
+     * Imports all lines from the given file, skipping the ones that already exist.
+     * The in-memory city graph is rebuilt once, after all lines have been inserted.
+     *
+     * @param linesFile the path of the lines file
+     * @return the number of newly created lines
+     * @throws RuntimeException if an I/O or SQL exception occurs, or if the file is malformed
+     */
+    public int importLines(Path linesFile) {
+        loadExisting();
+
+        /* Step 1:
+         * Parse the file, giving every city name a local index.
+         * Look: lines = [localIndex1, localIndex2, distance, ...]
+         */
+        HashMap<String, Integer> localIndices = new HashMap<>();
+        List<String> localNames = new ArrayList<>();
+        int[][] lines = {new int[3 * 1024]};
+        int[] lineCount = {0};
+
+        readLines(linesFile, (buffer, length) -> {
+            String line = new String(buffer, 0, length, StandardCharsets.UTF_8).trim();
+            if (line.isEmpty() || line.startsWith("#")) return;
+
+            String[] parts = line.split(",");
+            if (parts.length != 3) throw new RuntimeException("Malformed line: " + line);
+
+            int index1 = localIndices.computeIfAbsent(parts[0].trim(), name -> addName(localNames, name));
+            int index2 = localIndices.computeIfAbsent(parts[1].trim(), name -> addName(localNames, name));
+            int distance = Integer.parseInt(parts[2].trim());
+
+            if (3 * lineCount[0] + 3 > lines[0].length) lines[0] = Arrays.copyOf(lines[0], 2 * lines[0].length);
+
+            lines[0][3 * lineCount[0]] = index1;
+            lines[0][3 * lineCount[0] + 1] = index2;
+            lines[0][3 * lineCount[0] + 2] = distance;
+            lineCount[0]++;
+        });
+
+        // Step 2: Create all the cities that are referenced, but do not exist yet
+        List<String> newCities = new ArrayList<>();
+        for (String name : localNames) {
+            if (!cityIds.containsKey(name)) newCities.add(name);
+        }
+        insertCities(newCities);
+
+        // Step 3: Resolve the local indices to the city IDs
+        int[] idOfIndex = new int[localNames.size()];
+        for (int i = 0; i < idOfIndex.length; i++) {
+            idOfIndex[i] = cityIds.get(localNames.get(i));
+        }
+
+        // Step 4: Keep only the lines that are not in the database, nor earlier in the file
+        HashSet<Long> newLineKeys = new HashSet<>();
+        int[] newLines = new int[3 * lineCount[0]];
+        int newLineCount = 0;
+
+        for (int i = 0; i < lineCount[0]; i++) {
+            int idCity1 = idOfIndex[lines[0][3 * i]];
+            int idCity2 = idOfIndex[lines[0][3 * i + 1]];
+
+            long key = lineKey(idCity1, idCity2);
+            if (idCity1 == idCity2 || existingLines.contains(key) || !newLineKeys.add(key)) continue;
+
+            newLines[3 * newLineCount] = idCity1;
+            newLines[3 * newLineCount + 1] = idCity2;
+            newLines[3 * newLineCount + 2] = lines[0][3 * i + 2];
+            newLineCount++;
+        }
+
+        // Step 5: Insert the lines and rebuild the city graph once, the lines are known to exist only after the commit
+        insertLines(newLines, newLineCount);
+        existingLines.addAll(newLineKeys);
+        CityGraph.getInstance().rebuild();
+
+        return newLineCount;
+    }
+
+    /**
+     * Appends the name to the list of local names.
+     *
+     * @param localNames the list of local names
+     * @param name       the name to append
+     * @return the local index of the name
+     */
+    private static int addName(List<String> localNames, String name) {
+        localNames.add(name);
+        return localNames.size() - 1;
+    }
+
+    /**
+     * Creates a key for a line, independent of the order of the cities.
+     *
+     * @param idCity1 the ID of the first city
+     * @param idCity2 the ID of the second city
+     * @return the key of the line
+     */
+    private static long lineKey(int idCity1, int idCity2) {
+        int min = Math.min(idCity1, idCity2), max = Math.max(idCity1, idCity2);
+        return ((long) min << 32) | (max & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Loads the existing cities and lines from the database, once per importer.
+     *
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private void loadExisting() {
+        if (loaded) return;
+
+        String query1 = "SELECT Id, Name FROM City";
+        String query2 = "SELECT Id1, Id2 FROM Line";
+        HashMap<String, Integer> loadedCityIds = new HashMap<>();
+        HashSet<Long> loadedLines = new HashSet<>();
+
+        try (
+                PreparedStatement ps1 = c.prepareStatement(query1);
+                PreparedStatement ps2 = c.prepareStatement(query2)
+        ) {
+            ps1.setFetchSize(10_000);
+            try (ResultSet rs1 = ps1.executeQuery()) {
+                while (rs1.next()) {
+                    loadedCityIds.put(rs1.getString(2), rs1.getInt(1));
+                }
+            }
+
+            ps2.setFetchSize(10_000);
+            try (ResultSet rs2 = ps2.executeQuery()) {
+                while (rs2.next()) {
+                    loadedLines.add(lineKey(rs2.getInt(1), rs2.getInt(2)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        // The caches are filled only once both reads succeed, so that a failed load is done again in full
+        cityIds.putAll(loadedCityIds);
+        existingLines.addAll(loadedLines);
+        loaded = true;
+    }
+
+    /**
+     * Inserts the cities using multi-row inserts inside a single transaction.
+     * The IDs of the created cities are added to the map of city IDs once the transaction commits,
+     * so that a rolled back import does not leave cities that were never written in it.
+     *
+     * @param names the names of the cities to insert
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private void insertCities(List<String> names) {
+        if (names.isEmpty()) return;
+
+        HashMap<String, Integer> insertedIds = new HashMap<>();
+        inTransaction(() -> {
+            for (int from = 0; from < names.size(); from += CITIES_PER_INSERT) {
+                int to = Math.min(from + CITIES_PER_INSERT, names.size());
+                String query = "INSERT INTO City (Name) OUTPUT inserted.Id, inserted.Name VALUES "
+                        + String.join(", ", Collections.nCopies(to - from, "(?)"));
+
+                try (PreparedStatement ps = c.prepareStatement(query)) {
+                    for (int i = from; i < to; i++) {
+                        ps.setString(i - from + 1, names.get(i));
+                    }
+
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            insertedIds.put(rs.getString(2), rs.getInt(1));
+                        }
+                    }
+                }
+            }
+        });
+
+        cityIds.putAll(insertedIds);
+    }
+
+    /**
+     * Inserts the lines using multi-row inserts inside a single transaction.
+     *
+     * @param lines     the lines to insert, as [idCity1, idCity2, distance, ...]
+     * @param lineCount the number of lines to insert
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private void insertLines(int[] lines, int lineCount) {
+        if (lineCount == 0) return;
+
+        inTransaction(() -> {
+            String fullQuery = insertLinesQuery(LINES_PER_INSERT);
+
+            try (PreparedStatement fullPs = c.prepareStatement(fullQuery)) {
+                for (int from = 0; from < lineCount; from += LINES_PER_INSERT) {
+                    int to = Math.min(from + LINES_PER_INSERT, lineCount);
+
+                    if (to - from == LINES_PER_INSERT) {
+                        bindLines(fullPs, lines, from, to);
+                        fullPs.executeUpdate();
+                    } else {
+                        try (PreparedStatement ps = c.prepareStatement(insertLinesQuery(to - from))) {
+                            bindLines(ps, lines, from, to);
+                            ps.executeUpdate();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates a multi-row insert query for the given number of lines.
+     *
+     * @param rows the number of lines
+     * @return the insert query
+     */
+    private static String insertLinesQuery(int rows) {
+        return "INSERT INTO Line (Id1, Id2, Distance) VALUES "
+                + String.join(", ", Collections.nCopies(rows, "(?, ?, ?)"));
+    }
+
+    /**
+     * Binds the lines in the range [from, to) to the parameters of the prepared statement.
+     *
+     * @param ps    the prepared statement
+     * @param lines the lines, as [idCity1, idCity2, distance, ...]
+     * @param from  the index of the first line
+     * @param to    the index after the last line
+     * @throws SQLException if a parameter can not be set
+     */
+    private static void bindLines(PreparedStatement ps, int[] lines, int from, int to) throws SQLException {
+        int parameter = 1;
+
+        for (int i = from; i < to; i++) {
+            ps.setInt(parameter++, lines[3 * i]);
+            ps.setInt(parameter++, lines[3 * i + 1]);
+            ps.setInt(parameter++, lines[3 * i + 2]);
+        }
+    }
+
+    /**
+     * Represents a unit of work executed inside a database transaction.
+     */
+    @FunctionalInterface
+    private interface SqlWork {
+        void run() throws SQLException;
+    }
+
+    /**
+     * Executes the work inside a single transaction, rolling it back if the work fails.
+     *
+     * @param work the work to execute
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private static void inTransaction(SqlWork work) {
+        try {
+            boolean autoCommit = c.getAutoCommit();
+            c.setAutoCommit(false);
+
+            try {
+                work.run();
+                c.commit();
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the file line by line through memory-mapped windows.
+     * The consumer receives a reused buffer, holding the bytes of the line without the line terminator.
+     *
+     * @param file     the path of the file
+     * @param consumer the consumer of the lines
+     * @throws RuntimeException if an I/O exception occurs during the operation
+     */
+    private static void readLines(Path file, LineConsumer consumer) {
+        byte[] line = new byte[256];
+        int length = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            for (long position = 0; position < size; position += WINDOW_SIZE) {
+                MappedByteBuffer window = channel.map(
+                        FileChannel.MapMode.READ_ONLY,
+                        position,
+                        Math.min(WINDOW_SIZE, size - position)
+                );
+
+                while (window.hasRemaining()) {
+                    byte b = window.get();
+
+                    if (b == '\n') {
+                        if (length > 0 && line[length - 1] == '\r') length--;
+                        consumer.accept(line, length);
+                        length = 0;
+                    } else {
+                        if (length == line.length) line = Arrays.copyOf(line, 2 * line.length);
+                        line[length++] = b;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        // The last line may not end with a line terminator
+        if (length > 0) {
+            if (line[length - 1] == '\r') length--;
+            consumer.accept(line, length);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package rs.etf.sab.solution;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides the hot single-ID reads, coalescing concurrent lookups into one query per entity type.
+ * <p>
+ * Lookups arriving at the same time are collected for a short window, or until the batch is full,
+ * and loaded with a single 'WHERE Id IN (...)' query. The order state and the order buyer are
+ * read from the same batch of 'Order' rows. The results are the same as the ones returned by
+ * the matching Solution methods.
+ */
+public class CoalescingLookups implements AutoCloseable {
+    // SQL Server accepts at most 2100 parameters per statement
+    private static final int MAX_BATCH_SIZE = 2000;
+    private static final OrderRow MISSING_ORDER = new OrderRow(null, -1);
+
+    private final Connection c;
+    private final ScheduledExecutorService scheduler;
+
+    private final BatchLoader<OrderRow> orders;
+    private final BatchLoader<Integer> articleCounts;
+    private final BatchLoader<BigDecimal> credits;
+
+    /**
+     * Represents the columns of an 'Order' row needed by the lookups.
+     */
+    private static class OrderRow {
+        final String status;
+        final int idBuyer;
+
+        OrderRow(String status, int idBuyer) {
+            this.status = status;
+            this.idBuyer = idBuyer;
+        }
+    }
+
+    /**
+     * Creates the lookups over the given connection.
+     *
+     * @param c            the database connection used by the lookups
+     * @param maxBatchSize the maximum number of IDs in one query
+     * @param window       the maximum time the first lookup of a batch waits for the batch to fill
+     * @param unit         the time unit of the window
+     */
+    public CoalescingLookups(Connection c, int maxBatchSize, long window, TimeUnit unit) {
+        int batchSize = Math.min(maxBatchSize, MAX_BATCH_SIZE);
+
+        this.c = c;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "coalescing-lookups");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.orders = new BatchLoader<>(this::loadOrders, MISSING_ORDER, batchSize, window, unit, scheduler);
+        this.articleCounts = new BatchLoader<>(this::loadArticleCounts, -1, batchSize, window, unit, scheduler);
+        this.credits = new BatchLoader<>(this::loadCredits, null, batchSize, window, unit, scheduler);
+    }
+
+    /**
+     * Retrieves the status of an order, like 'SolutionOrderOperations.getState()'.
+     *
+     * @param idOrder the ID of the order
+     * @return a future completed with the state of the order if successful, or null otherwise
+     */
+    public CompletableFuture<String> getState(int idOrder) {
+        return orders.load(idOrder).thenApply(order -> order.status);
+    }
+
+    /**
+     * Retrieves the buyer of an order, like 'SolutionOrderOperations.getBuyer()'.
+     *
+     * @param idOrder the ID of the order
+     * @return a future completed with the ID of the buyer if successful, or -1 otherwise
+     */
+    public CompletableFuture<Integer> getBuyer(int idOrder) {
+        return orders.load(idOrder).thenApply(order -> order.idBuyer);
+    }
+
+    /**
+     * Retrieves the article count, like 'SolutionShopOperations.getArticleCount()'.
+     *
+     * @param idArticle the ID of the article
+     * @return a future completed with the article count, or -1 otherwise
+     */
+    public CompletableFuture<Integer> getArticleCount(int idArticle) {
+        return articleCounts.load(idArticle);
+    }
+
+    /**
+     * Retrieves the credit balance of a buyer, like 'SolutionBuyerOperations.getCredit()'.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return a future completed with the credit balance of the buyer, or null otherwise
+     */
+    public CompletableFuture<BigDecimal> getCredit(int idBuyer) {
+        return credits.load(idBuyer);
+    }
+
+    /**
+     * Stops the scheduler. Lookups that are still waiting are not loaded, and their futures are failed.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+
+        orders.close();
+        articleCounts.close();
+        credits.close();
+    }
+
+    /**
+     * Loads the 'Order' rows for the given IDs.
+     *
+     * @param ids the IDs of the orders
+     * @return the rows per order ID
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private Map<Integer, OrderRow> loadOrders(List<Integer> ids) {
+        String query = "SELECT Id, Status, IdBuyer FROM V_ORDER WHERE Id IN (" + parameters(ids.size()) + ")";
+        HashMap<Integer, OrderRow> rows = new HashMap<>();
+
+        try (PreparedStatement ps = c.prepareStatement(query)) {
+            bindIds(ps, ids);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.put(rs.getInt(1), new OrderRow(rs.getString(2), rs.getInt(3)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return rows;
+    }
+
+    /**
+     * Loads the article counts for the given IDs.
+     *
+     * @param ids the IDs of the articles
+     * @return the article counts per article ID
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private Map<Integer, Integer> loadArticleCounts(List<Integer> ids) {
+        String query = "SELECT Id, Quantity FROM Article WHERE Id IN (" + parameters(ids.size()) + ")";
+        HashMap<Integer, Integer> counts = new HashMap<>();
+
+        try (PreparedStatement ps = c.prepareStatement(query)) {
+            bindIds(ps, ids);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return counts;
+    }
+
+    /**
+     * Loads the credit balances for the given IDs.
+     *
+     * @param ids the IDs of the buyers
+     * @return the credit balances per buyer ID
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private Map<Integer, BigDecimal> loadCredits(List<Integer> ids) {
+        String query = "SELECT Id, Balance FROM Buyer WHERE Id IN (" + parameters(ids.size()) + ")";
+        HashMap<Integer, BigDecimal> balances = new HashMap<>();
+
+        try (PreparedStatement ps = c.prepareStatement(query)) {
+            bindIds(ps, ids);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    balances.put(rs.getInt(1), rs.getBigDecimal(2));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return balances;
+    }
+
+    /**
+     * Creates a comma-separated list of parameter placeholders.
+     *
+     * @param count the number of placeholders
+     * @return the list of placeholders
+     */
+    private static String parameters(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * Binds the IDs to the parameters of the prepared statement.
+     *
+     * @param ps  the prepared statement
+     * @param ids the IDs to bind
+     * @throws SQLException if a parameter can not be set
+     */
+    private static void bindIds(PreparedStatement ps, List<Integer> ids) throws SQLException {
+        for (int i = 0; i < ids.size(); i++) {
+            ps.setInt(i + 1, ids.get(i));
+        }
+    }
+}
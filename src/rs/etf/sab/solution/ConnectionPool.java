@@ -0,0 +1,122 @@
+package rs.etf.sab.solution;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Represents a fixed-size pool of database connections.
+ * <p>
+ * All connections are opened when the pool is created. A borrowed connection must be released
+ * back to the pool by the same caller, in auto-commit mode.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private final List<Connection> connections = new ArrayList<>();
+    private final BlockingQueue<Connection> idle;
+
+    /**
+     * Creates a pool of connections to the database described in 'DB'.
+     *
+     * @param size the number of connections in the pool
+     * @throws RuntimeException if an SQL exception occurs during the connection process
+     */
+    public ConnectionPool(int size) {
+        this(size, () -> DB.getInstance().newConnection());
+    }
+
+    /**
+     * Creates a pool of connections opened by the given factory.
+     *
+     * @param size    the number of connections in the pool
+     * @param factory the factory that opens a new connection
+     * @throws RuntimeException if the factory fails to open a connection
+     */
+    public ConnectionPool(int size, Supplier<Connection> factory) {
+        if (size <= 0) throw new IllegalArgumentException("The pool size must be positive");
+
+        idle = new ArrayBlockingQueue<>(size);
+
+        try {
+            for (int i = 0; i < size; i++) {
+                Connection connection = factory.get();
+                connections.add(connection);
+                idle.add(connection);
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool, waiting while all connections are in use.
+     *
+     * @return the borrowed connection
+     * @throws RuntimeException if interrupted while waiting
+     */
+    public Connection borrow() {
+        try {
+            return idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the pool.
+     *
+     * @param connection the borrowed connection
+     */
+    public void release(Connection connection) {
+        idle.add(connection);
+    }
+
+    /**
+     * Checks if the connection belongs to the pool.
+     *
+     * @param connection the connection
+     * @return true if the connection was opened by the pool, or false otherwise
+     */
+    public boolean owns(Connection connection) {
+        // Compared by identity, as an instrumented connection forwards 'equals()' to the connection it wraps
+        for (Connection owned : connections) {
+            if (owned == connection) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Retrieves the number of connections in the pool.
+     *
+     * @return the number of connections
+     */
+    public int size() {
+        return connections.size();
+    }
+
+    /**
+     * Closes all connections of the pool.
+     *
+     * @throws RuntimeException if an SQL exception occurs while closing a connection
+     */
+    @Override
+    public void close() {
+        SQLException failure = null;
+
+        for (Connection connection : connections) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                failure = e;
+            }
+        }
+
+        if (failure != null) throw new RuntimeException(failure);
+    }
+}
@@ -0,0 +1,166 @@
+package rs.etf.sab.solution;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects buyer credit top-ups and applies them to the database in batches.
+ * <p>
+ * Top-ups are queued in a bounded queue, and a single flusher thread applies them, see 'BatchingQueue'.
+ * A batch is flushed when it reaches the maximum batch size, or when its oldest top-up
+ * has waited for the maximum latency. All top-ups for the same buyer within a batch are
+ * coalesced into one row of a single 'UPDATE ... OUTPUT inserted.Balance' statement.
+ * <p>
+ * Every caller receives the balance the buyer would have had if the top-ups were applied
+ * one by one, in submission order, through 'SolutionBuyerOperations.increaseCredit()'.
+ */
+public class CreditTopUpPipeline implements AutoCloseable {
+    // SQL Server accepts at most 2100 parameters per statement, there are 2 parameters per buyer
+    private static final int BUYERS_PER_UPDATE = 1000;
+
+    private final Connection connection;
+    private final BatchingQueue<TopUp> queue;
+
+    /**
+     * Represents a single top-up, waiting to be applied.
+     */
+    private static class TopUp {
+        final int idBuyer;
+        final BigDecimal credit;
+        final CompletableFuture<BigDecimal> future = new CompletableFuture<>();
+
+        TopUp(int idBuyer, BigDecimal credit) {
+            this.idBuyer = idBuyer;
+            this.credit = credit;
+        }
+    }
+
+    /**
+     * Creates a new pipeline with its own database connection and starts the flusher thread.
+     *
+     * @param queueCapacity the maximum number of top-ups waiting to be applied
+     * @param maxBatchSize  the maximum number of top-ups applied in one batch
+     * @param maxLatency    the maximum time the oldest top-up of a batch waits for the batch to fill
+     * @param unit          the time unit of the maximum latency
+     */
+    public CreditTopUpPipeline(int queueCapacity, int maxBatchSize, long maxLatency, TimeUnit unit) {
+        this.queue = new BatchingQueue<>("credit-top-up-flusher", queueCapacity, maxBatchSize, maxLatency, unit,
+                this::flush, (topUp, e) -> topUp.future.completeExceptionally(e));
+        this.connection = DB.getInstance().newConnection();
+    }
+
+    /**
+     * Submits a top-up of the buyer's credit. Blocks while the queue is full.
+     *
+     * @param idBuyer the ID of the buyer
+     * @param credit  the credit amount to increase
+     * @return a future completed with the updated balance of the buyer, or with null if the buyer does not exist
+     * @throws IllegalStateException if the pipeline has been closed
+     */
+    public CompletableFuture<BigDecimal> increaseCredit(int idBuyer, BigDecimal credit) {
+        TopUp topUp = new TopUp(idBuyer, credit);
+
+        queue.add(topUp);
+        return topUp.future;
+    }
+
+    /**
+     * Stops accepting top-ups, applies all the queued ones and closes the connection.
+     */
+    @Override
+    public void close() {
+        queue.close();
+
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Applies a batch of top-ups and completes their futures.
+     *
+     * @param batch the top-ups to apply, in submission order
+     */
+    private void flush(List<TopUp> batch) {
+        // Coalesce the top-ups of the same buyer, keeping the order of the first appearance
+        LinkedHashMap<Integer, BigDecimal> creditPerBuyer = new LinkedHashMap<>();
+        for (TopUp topUp : batch) {
+            creditPerBuyer.merge(topUp.idBuyer, topUp.credit, BigDecimal::add);
+        }
+
+        Map<Integer, BigDecimal> balances;
+        try {
+            balances = applyCredits(creditPerBuyer);
+        } catch (RuntimeException e) {
+            for (TopUp topUp : batch) {
+                topUp.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        /* Every caller gets the balance right after its own top-up.
+         * Walking the batch backwards, the balance before a top-up is the balance after it minus its credit.
+         */
+        HashMap<Integer, BigDecimal> balanceAfter = new HashMap<>(balances);
+
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            TopUp topUp = batch.get(i);
+            BigDecimal balance = balanceAfter.get(topUp.idBuyer);
+
+            if (balance == null) {
+                topUp.future.complete(null); // Same as 'increaseCredit()' for a buyer that does not exist
+            } else {
+                topUp.future.complete(balance);
+                balanceAfter.put(topUp.idBuyer, balance.subtract(topUp.credit));
+            }
+        }
+    }
+
+    /**
+     * Adds the credits to the buyers' balances, using one update statement per chunk of buyers.
+     *
+     * @param creditPerBuyer the credit to add per buyer
+     * @return the updated balance per buyer, only for the buyers that exist
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private Map<Integer, BigDecimal> applyCredits(LinkedHashMap<Integer, BigDecimal> creditPerBuyer) {
+        List<Map.Entry<Integer, BigDecimal>> credits = new ArrayList<>(creditPerBuyer.entrySet());
+        HashMap<Integer, BigDecimal> balances = new HashMap<>();
+
+        for (int from = 0; from < credits.size(); from += BUYERS_PER_UPDATE) {
+            int to = Math.min(from + BUYERS_PER_UPDATE, credits.size());
+            String values = String.join(", ", Collections.nCopies(to - from, "(?, CAST(? AS DECIMAL(10,3)))"));
+            String query = "UPDATE B SET Balance = B.Balance + V.Amount OUTPUT inserted.Id, inserted.Balance "
+                    + "FROM Buyer B JOIN (VALUES " + values + ") AS V(Id, Amount) ON (V.Id = B.Id)";
+
+            try (PreparedStatement ps = connection.prepareStatement(query)) {
+                int parameter = 1;
+
+                for (int i = from; i < to; i++) {
+                    ps.setInt(parameter++, credits.get(i).getKey());
+                    ps.setBigDecimal(parameter++, credits.get(i).getValue());
+                }
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        balances.put(rs.getInt(1), rs.getBigDecimal(2));
+                    }
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        return balances;
+    }
+}
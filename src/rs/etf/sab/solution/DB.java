@@ -6,12 +6,15 @@ import java.sql.SQLException;
 
 /**
  * Represents a singleton database connection.
+ * <p>
+ * The connections are instrumented when the metrics are enabled, see 'Metrics'.
  */
 public class DB {
     // Attributes necessary to connect to a database
     private static final String USERNAME = "sa";
     private static final String PASSWORD = "123";
-    private static final String DATABASE = "OnlineShop";
+    // The database can be overridden with '-Donlineshop.database=...', e.g. by the parallel test workers
+    private static final String DATABASE = System.getProperty("onlineshop.database", "OnlineShop");
     private static final int PORT = 1433;
     private static final String SERVER_NAME = "localhost";
 
@@ -19,10 +22,7 @@ public class DB {
     private static DB db = null;
 
     // Connection string
-    private static final String CONNECTION_STRING = "jdbc:sqlserver://" + SERVER_NAME
-            + ":" + PORT
-            + ";databaseName=" + DATABASE
-            + ";encrypt=true;trustServerCertificate=true;";
+    private static final String CONNECTION_STRING = connectionString(DATABASE);
 
     /**
      * Private constructor to create a new instance of the database connection.
@@ -32,7 +32,7 @@ public class DB {
      */
     private DB() {
         try {
-            connection = DriverManager.getConnection(CONNECTION_STRING, USERNAME, PASSWORD);
+            connection = Metrics.instrument(DriverManager.getConnection(CONNECTION_STRING, USERNAME, PASSWORD));
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -56,4 +56,95 @@ public class DB {
     public Connection getConnection() {
         return connection;
     }
-}
\ No newline at end of file
+
+    /**
+     * Opens a new connection to the database, separate from the shared one.
+     * The caller is responsible for closing it.
+     *
+     * @return the new connection object
+     * @throws RuntimeException if an SQL exception occurs during the connection process.
+     */
+    public Connection newConnection() {
+        try {
+            return Metrics.instrument(DriverManager.getConnection(CONNECTION_STRING, USERNAME, PASSWORD));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Opens a new connection to the given database on the same server.
+     * The caller is responsible for closing it.
+     *
+     * @param database the name of the database, e.g. 'master'
+     * @return the new connection object
+     * @throws RuntimeException if an SQL exception occurs during the connection process.
+     */
+    public static Connection connect(String database) {
+        try {
+            return Metrics.instrument(DriverManager.getConnection(connectionString(database), USERNAME, PASSWORD));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Opens a new connection to the given database on another server, e.g. a replica.
+     * The caller is responsible for closing it.
+     *
+     * @param server   the name of the server
+     * @param port     the port of the server
+     * @param database the name of the database
+     * @return the new connection object
+     * @throws RuntimeException if an SQL exception occurs during the connection process.
+     */
+    public static Connection connect(String server, int port, String database) {
+        try {
+            String connectionString = connectionString(server, port, database);
+            return Metrics.instrument(DriverManager.getConnection(connectionString, USERNAME, PASSWORD));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Opens a new connection with the given URL, without instrumenting it, e.g. to inspect the server
+     * of another connection. The caller is responsible for closing it.
+     *
+     * @param url the URL of the connection, e.g. from 'DatabaseMetaData.getURL()'
+     * @return the new connection object
+     * @throws RuntimeException if an SQL exception occurs during the connection process
+     */
+    static Connection connectUninstrumented(String url) {
+        try {
+            return DriverManager.getConnection(url, USERNAME, PASSWORD);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Creates the connection string for the given database on the server.
+     *
+     * @param database the name of the database
+     * @return the connection string
+     */
+    private static String connectionString(String database) {
+        return connectionString(SERVER_NAME, PORT, database);
+    }
+
+    /**
+     * Creates the connection string for the given database on the given server.
+     *
+     * @param server   the name of the server
+     * @param port     the port of the server
+     * @param database the name of the database
+     * @return the connection string
+     */
+    private static String connectionString(String server, int port, String database) {
+        return "jdbc:sqlserver://" + server
+                + ":" + port
+                + ";databaseName=" + database
+                + ";encrypt=true;trustServerCertificate=true;";
+    }
+}
@@ -0,0 +1,227 @@
+package rs.etf.sab.solution;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Creates and drops databases with the schema of 'db/create.sql', e.g. one database per parallel test worker.
+ * <p>
+ * The batches of the script can be rewritten before they are run, e.g. to give the tables of a shard
+ * their own identity values, see 'ShardProvisioner'.
+ */
+public class DatabaseProvisioner {
+    private final Path script;
+    private final UnaryOperator<String> rewrite;
+
+    /**
+     * Creates a provisioner using the given schema script.
+     *
+     * @param script the path to the schema script, e.g. 'db/create.sql'
+     */
+    public DatabaseProvisioner(Path script) {
+        this(script, UnaryOperator.identity());
+    }
+
+    /**
+     * Creates a provisioner using the given schema script, with its batches rewritten before they are run.
+     *
+     * @param script  the path to the schema script, e.g. 'db/create.sql'
+     * @param rewrite the rewrite of a batch
+     */
+    public DatabaseProvisioner(Path script, UnaryOperator<String> rewrite) {
+        this.script = script;
+        this.rewrite = rewrite;
+    }
+
+    /**
+     * Creates the database if it does not exist and runs the schema script in it,
+     * which drops and creates all the tables.
+     *
+     * @param database the name of the database
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     * @throws UncheckedIOException if the script can not be read
+     */
+    public void provision(String database) {
+        provision(DB::connect, database);
+    }
+
+    /**
+     * Creates the database on the given server if it does not exist and runs the schema script in it,
+     * e.g. for a shard on another local instance.
+     *
+     * @param server   the name of the server
+     * @param port     the port of the server
+     * @param database the name of the database
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     * @throws UncheckedIOException if the script can not be read
+     */
+    public void provision(String server, int port, String database) {
+        provision(name -> DB.connect(server, port, name), database);
+    }
+
+    /**
+     * Creates the database if it does not exist and runs the schema script in it.
+     *
+     * @param connect  opens a connection to the database of the given name on the server
+     * @param database the name of the database
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     * @throws UncheckedIOException if the script can not be read
+     */
+    private void provision(Function<String, Connection> connect, String database) {
+        String query = "IF DB_ID(?) IS NULL EXEC ('CREATE DATABASE ' + ?)";
+
+        try (
+                Connection master = connect.apply("master");
+                PreparedStatement ps = master.prepareStatement(query)
+        ) {
+            ps.setString(1, database);
+            ps.setString(2, quoteName(database));
+            ps.execute();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        try (
+                Connection connection = connect.apply(database);
+                Statement st = connection.createStatement()
+        ) {
+            // Procedures, views and triggers are created again by the script
+            st.execute(dropProgrammableObjectsQuery());
+
+            for (String batch : readBatches()) {
+                st.execute(batch);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Drops the database, closing the connections to it.
+     *
+     * @param database the name of the database
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public void drop(String database) {
+        drop(DB::connect, database);
+    }
+
+    /**
+     * Drops the database on the given server, closing the connections to it.
+     *
+     * @param server   the name of the server
+     * @param port     the port of the server
+     * @param database the name of the database
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public void drop(String server, int port, String database) {
+        drop(name -> DB.connect(server, port, name), database);
+    }
+
+    /**
+     * Drops the database, closing the connections to it.
+     *
+     * @param connect  opens a connection to the database of the given name on the server
+     * @param database the name of the database
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private void drop(Function<String, Connection> connect, String database) {
+        String query = """
+                IF DB_ID(?) IS NOT NULL
+                BEGIN
+                    EXEC ('ALTER DATABASE ' + ? + ' SET SINGLE_USER WITH ROLLBACK IMMEDIATE')
+                    EXEC ('DROP DATABASE ' + ?)
+                END""";
+
+        try (
+                Connection master = connect.apply("master");
+                PreparedStatement ps = master.prepareStatement(query)
+        ) {
+            ps.setString(1, database);
+            ps.setString(2, quoteName(database));
+            ps.setString(3, quoteName(database));
+            ps.execute();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Splits the script into the batches separated by the 'go' lines, leaving out the 'USE' batches,
+     * as the script is run in the connected database, and rewrites them.
+     *
+     * @return the batches of the script
+     * @throws UncheckedIOException if the script can not be read
+     */
+    private List<String> readBatches() {
+        List<String> batches = new ArrayList<>();
+        StringBuilder batch = new StringBuilder();
+
+        try {
+            for (String line : Files.readAllLines(script, StandardCharsets.UTF_8)) {
+                if (line.trim().equalsIgnoreCase("go")) {
+                    addBatch(batches, batch.toString());
+                    batch.setLength(0);
+                } else {
+                    batch.append(line).append('\n');
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        addBatch(batches, batch.toString());
+        return batches;
+    }
+
+    /**
+     * Adds the rewritten batch to the list, unless it is empty or a 'USE' statement.
+     *
+     * @param batches the list of the batches
+     * @param batch   the batch
+     */
+    private void addBatch(List<String> batches, String batch) {
+        String trimmed = batch.trim();
+
+        if (trimmed.isEmpty() || trimmed.regionMatches(true, 0, "USE ", 0, 4)) return;
+        batches.add(rewrite.apply(trimmed));
+    }
+
+    /**
+     * Creates the query dropping all the procedures, views and triggers of the connected database.
+     *
+     * @return the query
+     */
+    private static String dropProgrammableObjectsQuery() {
+        return """
+                DECLARE @Drop NVARCHAR(MAX) = N''
+
+                SELECT @Drop = @Drop + N'DROP ' + CASE O.type
+                        WHEN 'P' THEN N'PROCEDURE '
+                        WHEN 'V' THEN N'VIEW '
+                        ELSE N'TRIGGER '
+                    END + QUOTENAME(SCHEMA_NAME(O.schema_id)) + N'.' + QUOTENAME(O.name) + N'; '
+                FROM sys.objects O
+                WHERE O.type IN ('P', 'V', 'TR') AND O.is_ms_shipped = 0
+
+                EXEC sp_executesql @Drop""";
+    }
+
+    /**
+     * Quotes the name of a database, like 'QUOTENAME()'.
+     *
+     * @param name the name
+     * @return the quoted name
+     */
+    private static String quoteName(String name) {
+        return "[" + name.replace("]", "]]") + "]";
+    }
+}
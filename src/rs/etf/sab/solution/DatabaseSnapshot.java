@@ -0,0 +1,478 @@
+package rs.etf.sab.solution;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkData;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static rs.etf.sab.solution.SnapshotFormat.*;
+
+/**
+ * Saves the whole marketplace to a snapshot file, described in 'SnapshotFormat', and restores it with bulk loads.
+ * <p>
+ * Building a large dataset through the Solution classes takes hours, restoring its snapshot takes seconds.
+ * The rows are streamed from the database in ascending order of their IDs, so the same data always gives the same
+ * file. The archived orders, items and transactions are saved too, and restored into the hot tables.
+ * The snapshot should be saved while nothing else writes to the database, the tables are read one after another.
+ * <p>
+ * The restore erases all the data first, then bulk loads every table with its IDs kept, the constraints checked and
+ * the triggers not fired. The balance stripes of the shops are created empty, as the shop balances are saved whole,
+ * and the revenue rollups, the city graph and the cached paths of the sent orders are rebuilt from the restored rows.
+ * A snapshot of 'MemoryStore' can be restored into the database and the other way around.
+ */
+public class DatabaseSnapshot {
+    // The number of rows the driver fetches per round-trip
+    private static final int FETCH_SIZE = 10000;
+
+    private static final String[] SELECT_QUERIES = {
+            "SELECT Id, Name FROM City ORDER BY Id",
+            "SELECT Id1, Id2, Distance FROM Line ORDER BY Id1, Id2",
+            """
+            SELECT S.Id, S.Name, S.Discount, S.IdCity, B.Balance
+            FROM Shop S JOIN V_SHOP_BALANCE B ON (B.IdShop = S.Id)
+            ORDER BY S.Id""",
+            "SELECT Id, Name, Price, Quantity, IdShop FROM Article ORDER BY Id",
+            "SELECT Id, Name, IdCity, Balance FROM Buyer ORDER BY Id",
+            """
+            SELECT Id, Status, IdBuyer, TotalPrice, DiscountedPrice, BuyerDiscount,
+                DateSent, DateNearest, DateArrived, IdNearestCity, DaysToAssemble
+            FROM V_ORDER
+            ORDER BY Id""",
+            "SELECT Id, IdOrder, IdArticle, Quantity FROM V_ORDER_ITEM ORDER BY Id",
+            "SELECT Id, Amount, IdOrder, IdShop, IdBuyer, Date FROM V_TRANSACTION ORDER BY Id"
+    };
+
+    private static final String[] TABLE_NAMES = {
+            "City", "Line", "Shop", "Article", "Buyer", "[Order]", "OrderItem", "[Transaction]"
+    };
+
+    // The columns of every table, in the order of the snapshot rows
+    private static final Column[][] COLUMNS = {
+            {intColumn("Id"), varcharColumn("Name")},
+            {intColumn("Id1"), intColumn("Id2"), intColumn("Distance")},
+            {
+                    intColumn("Id"), varcharColumn("Name"), decimalColumn("Discount"),
+                    intColumn("IdCity"), decimalColumn("Balance")
+            },
+            {
+                    intColumn("Id"), varcharColumn("Name"), decimalColumn("Price"),
+                    intColumn("Quantity"), intColumn("IdShop")
+            },
+            {intColumn("Id"), varcharColumn("Name"), intColumn("IdCity"), decimalColumn("Balance")},
+            {
+                    intColumn("Id"), varcharColumn("Status"), intColumn("IdBuyer"),
+                    decimalColumn("TotalPrice"), decimalColumn("DiscountedPrice"), intColumn("BuyerDiscount"),
+                    datetimeColumn("DateSent"), datetimeColumn("DateNearest"), datetimeColumn("DateArrived"),
+                    intColumn("IdNearestCity"), intColumn("DaysToAssemble")
+            },
+            {intColumn("Id"), intColumn("IdOrder"), intColumn("IdArticle"), intColumn("Quantity")},
+            {
+                    intColumn("Id"), decimalColumn("Amount"), intColumn("IdOrder"),
+                    intColumn("IdShop"), intColumn("IdBuyer"), datetimeColumn("Date")
+            }
+    };
+
+    private final Connection c;
+
+    /**
+     * Represents a column of a table, as described to the bulk copy.
+     */
+    private static class Column {
+        final String name;
+        final int type;
+        final int precision;
+        final int scale;
+
+        Column(String name, int type, int precision, int scale) {
+            this.name = name;
+            this.type = type;
+            this.precision = precision;
+            this.scale = scale;
+        }
+    }
+
+    /**
+     * Creates the snapshot operations over the given connection.
+     *
+     * @param c the database connection to use
+     */
+    public DatabaseSnapshot(Connection c) {
+        this.c = c;
+    }
+
+    /**
+     * Saves all the data of the database to a snapshot file.
+     *
+     * @param file the snapshot file, overwritten if it exists
+     * @return the number of saved rows
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     * @throws UncheckedIOException if the file can not be written
+     */
+    public long save(Path file) {
+        long rows = 0;
+
+        try (Writer writer = new Writer(file)) {
+            for (int table = 0; table < TABLES; table++) {
+                writer.startSection(table);
+
+                try (PreparedStatement ps = c.prepareStatement(SELECT_QUERIES[table])) {
+                    ps.setFetchSize(FETCH_SIZE);
+
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            writeRow(writer, table, rs);
+                            rows++;
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return rows;
+    }
+
+    /**
+     * Replaces all the data of the database with the data of a snapshot file.
+     *
+     * @param file the snapshot file
+     * @return the number of restored rows
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     * @throws UncheckedIOException if the file can not be read
+     */
+    public long restore(Path file) {
+        String query = """
+                INSERT INTO ShopBalanceStripe (IdShop, Stripe, Balance)
+                SELECT S.Id, N.Stripe, 0
+                FROM Shop S
+                    CROSS JOIN (VALUES (0), (1), (2), (3), (4), (5), (6), (7)) AS N(Stripe)""";
+        String callableQuery1 = "{ call SP_ERASE_ALL }";
+        String callableQuery2 = "{ call SP_REBUILD_ROLLUPS }";
+        Map<Integer, List<Integer>> paths = new HashMap<>();
+        long rows = 0;
+
+        try (
+                Reader reader = new Reader(file);
+                CallableStatement cs1 = c.prepareCall(callableQuery1);
+                CallableStatement cs2 = c.prepareCall(callableQuery2);
+                PreparedStatement ps = c.prepareStatement(query)
+        ) {
+            cs1.execute();
+
+            SQLServerBulkCopyOptions options = new SQLServerBulkCopyOptions();
+            options.setKeepIdentity(true);
+            options.setKeepNulls(true);
+            options.setTableLock(true);
+            options.setCheckConstraints(true);
+            options.setFireTriggers(false); // The rows were already processed by the triggers
+            options.setBulkCopyTimeout(0);
+
+            for (int table = 0; table < TABLES; table++) {
+                reader.openSection(table);
+
+                try (SQLServerBulkCopy bulkCopy = new SQLServerBulkCopy(c.unwrap(SQLServerConnection.class))) {
+                    bulkCopy.setBulkCopyOptions(options);
+                    bulkCopy.setDestinationTableName(TABLE_NAMES[table]);
+
+                    for (Column column : COLUMNS[table]) {
+                        bulkCopy.addColumnMapping(column.name, column.name);
+                    }
+
+                    bulkCopy.writeToServer(new SectionData(reader, table, paths));
+                }
+
+                rows += reader.count(table);
+            }
+
+            ps.executeUpdate();
+            cs2.execute();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        CityGraph.getInstance().rebuild();
+        SolutionOrderOperations.replacePaths(paths);
+
+        return rows;
+    }
+
+    /**
+     * Writes the current row of the result set to the snapshot.
+     *
+     * @param writer the snapshot writer
+     * @param table  the table constant
+     * @param rs     the result set of the table's query
+     * @throws SQLException if the row can not be read
+     */
+    private static void writeRow(Writer writer, int table, ResultSet rs) throws SQLException {
+        switch (table) {
+            case CITY -> {
+                String name = rs.getString(2);
+
+                writer.startRow(Integer.BYTES + Writer.maxLength(name));
+                writer.putInt(rs.getInt(1));
+                writer.putString(name);
+            }
+            case LINE -> {
+                writer.startRow(3 * Integer.BYTES);
+                writer.putInt(rs.getInt(1));
+                writer.putInt(rs.getInt(2));
+                writer.putInt(rs.getInt(3));
+            }
+            case SHOP -> {
+                String name = rs.getString(2);
+
+                writer.startRow(2 * Integer.BYTES + 2 * Long.BYTES + Writer.maxLength(name));
+                writer.putInt(rs.getInt(1));
+                writer.putString(name);
+                writer.putLong(money(rs, 3));
+                writer.putInt(rs.getInt(4));
+                writer.putLong(money(rs, 5));
+            }
+            case ARTICLE -> {
+                String name = rs.getString(2);
+
+                writer.startRow(3 * Integer.BYTES + Long.BYTES + Writer.maxLength(name));
+                writer.putInt(rs.getInt(1));
+                writer.putString(name);
+                writer.putLong(money(rs, 3));
+                writer.putInt(rs.getInt(4));
+                writer.putInt(rs.getInt(5));
+            }
+            case BUYER -> {
+                String name = rs.getString(2);
+
+                writer.startRow(2 * Integer.BYTES + Long.BYTES + Writer.maxLength(name));
+                writer.putInt(rs.getInt(1));
+                writer.putString(name);
+                writer.putInt(rs.getInt(3));
+                writer.putLong(money(rs, 4));
+            }
+            case ORDER -> {
+                int id = rs.getInt(1);
+                List<Integer> path = SolutionOrderOperations.getPath(id);
+                int[] cities = path == null ? null : path.stream().mapToInt(Integer::intValue).toArray();
+
+                writer.startRow(1 + 5 * Integer.BYTES + 5 * Long.BYTES + Short.BYTES
+                        + (cities == null ? 0 : cities.length * Integer.BYTES));
+                writer.putInt(id);
+                writer.putByte(Arrays.asList(MemoryStore.STATUS).indexOf(rs.getString(2)));
+                writer.putInt(rs.getInt(3));
+                writer.putLong(money(rs, 4));
+                writer.putLong(money(rs, 5));
+                writer.putInt(rs.getInt(6));
+                writer.putLong(date(rs, 7));
+                writer.putLong(date(rs, 8));
+                writer.putLong(date(rs, 9));
+                writer.putInt(nullableInt(rs, 10));
+                writer.putInt(nullableInt(rs, 11));
+                writer.putPath(cities);
+            }
+            case ITEM -> {
+                writer.startRow(4 * Integer.BYTES);
+                writer.putInt(rs.getInt(1));
+                writer.putInt(rs.getInt(2));
+                writer.putInt(rs.getInt(3));
+                writer.putInt(rs.getInt(4));
+            }
+            default -> {
+                writer.startRow(4 * Integer.BYTES + 2 * Long.BYTES);
+                writer.putInt(rs.getInt(1));
+                writer.putLong(money(rs, 2));
+                writer.putInt(rs.getInt(3));
+                writer.putInt(nullableInt(rs, 4));
+                writer.putInt(nullableInt(rs, 5));
+                writer.putLong(date(rs, 6));
+            }
+        }
+    }
+
+    /**
+     * Represents the rows of one section of the snapshot, as the source of a bulk copy.
+     * The paths of the sent orders are collected as the orders are read.
+     */
+    @SuppressWarnings("serial") // Never serialized, the interface extends 'Serializable'
+    private static class SectionData implements ISQLServerBulkData {
+        private final Reader reader;
+        private final int table;
+        private final Map<Integer, List<Integer>> paths;
+        private final Object[] row;
+        private long remaining;
+
+        SectionData(Reader reader, int table, Map<Integer, List<Integer>> paths) {
+            this.reader = reader;
+            this.table = table;
+            this.paths = paths;
+            this.row = new Object[COLUMNS[table].length];
+            this.remaining = reader.count(table);
+        }
+
+        @Override
+        public Set<Integer> getColumnOrdinals() {
+            Set<Integer> ordinals = new LinkedHashSet<>();
+
+            for (int i = 1; i <= COLUMNS[table].length; i++) {
+                ordinals.add(i);
+            }
+
+            return ordinals;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[table][column - 1].name;
+        }
+
+        @Override
+        public int getColumnType(int column) {
+            return COLUMNS[table][column - 1].type;
+        }
+
+        @Override
+        public int getPrecision(int column) {
+            return COLUMNS[table][column - 1].precision;
+        }
+
+        @Override
+        public int getScale(int column) {
+            return COLUMNS[table][column - 1].scale;
+        }
+
+        @Override
+        public Object[] getRowData() {
+            return row;
+        }
+
+        @Override
+        public boolean next() {
+            if (remaining == 0) return false;
+
+            remaining--;
+            readRow();
+            return true;
+        }
+
+        /**
+         * Reads the next row of the section into the row array, in the order of the table's columns.
+         */
+        private void readRow() {
+            switch (table) {
+                case CITY -> {
+                    row[0] = reader.getInt();
+                    row[1] = reader.getString();
+                }
+                case LINE -> {
+                    row[0] = reader.getInt();
+                    row[1] = reader.getInt();
+                    row[2] = reader.getInt();
+                }
+                case SHOP -> {
+                    row[0] = reader.getInt();
+                    row[1] = reader.getString();
+                    row[2] = decimal(reader.getLong());
+                    row[3] = reader.getInt();
+                    row[4] = decimal(reader.getLong());
+                }
+                case ARTICLE -> {
+                    row[0] = reader.getInt();
+                    row[1] = reader.getString();
+                    row[2] = decimal(reader.getLong());
+                    row[3] = reader.getInt();
+                    row[4] = reader.getInt();
+                }
+                case BUYER -> {
+                    row[0] = reader.getInt();
+                    row[1] = reader.getString();
+                    row[2] = reader.getInt();
+                    row[3] = decimal(reader.getLong());
+                }
+                case ORDER -> {
+                    row[0] = reader.getInt();
+                    row[1] = MemoryStore.STATUS[reader.getByte()];
+                    row[2] = reader.getInt();
+                    row[3] = decimal(reader.getLong());
+                    row[4] = decimal(reader.getLong());
+                    row[5] = reader.getInt();
+                    row[6] = timestamp(reader.getLong());
+                    row[7] = timestamp(reader.getLong());
+                    row[8] = timestamp(reader.getLong());
+                    row[9] = integer(reader.getInt());
+                    row[10] = integer(reader.getInt());
+
+                    int[] path = reader.getPath();
+                    if (path != null) paths.put((Integer) row[0], Arrays.stream(path).boxed().collect(Collectors.toList()));
+                }
+                case ITEM -> {
+                    row[0] = reader.getInt();
+                    row[1] = reader.getInt();
+                    row[2] = reader.getInt();
+                    row[3] = reader.getInt();
+                }
+                default -> {
+                    row[0] = reader.getInt();
+                    row[1] = decimal(reader.getLong());
+                    row[2] = reader.getInt();
+                    row[3] = integer(reader.getInt());
+                    row[4] = integer(reader.getInt());
+                    row[5] = timestamp(reader.getLong());
+                }
+            }
+        }
+    }
+
+    private static Column intColumn(String name) {
+        return new Column(name, Types.INTEGER, 10, 0);
+    }
+
+    private static Column varcharColumn(String name) {
+        return new Column(name, Types.VARCHAR, 100, 0);
+    }
+
+    private static Column decimalColumn(String name) {
+        return new Column(name, Types.DECIMAL, 10, 3);
+    }
+
+    private static Column datetimeColumn(String name) {
+        return new Column(name, Types.TIMESTAMP, 23, 3);
+    }
+
+    private static long money(ResultSet rs, int column) throws SQLException {
+        BigDecimal value = rs.getBigDecimal(column);
+        return value == null ? NULL_LONG : MemoryStore.toMoney(value);
+    }
+
+    private static long date(ResultSet rs, int column) throws SQLException {
+        Timestamp value = rs.getTimestamp(column);
+        return value == null ? NULL_LONG : value.getTime();
+    }
+
+    private static int nullableInt(ResultSet rs, int column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? NULL_INT : value;
+    }
+
+    private static BigDecimal decimal(long money) {
+        return money == NULL_LONG ? null : MemoryStore.toDecimal(money);
+    }
+
+    private static Timestamp timestamp(long millis) {
+        return millis == NULL_LONG ? null : new Timestamp(millis);
+    }
+
+    private static Integer integer(int value) {
+        return value == NULL_INT ? null : value;
+    }
+}
@@ -0,0 +1,293 @@
+package rs.etf.sab.solution;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Random;
+
+/**
+ * Generates synthetic datasets through the operations, at a given scale factor.
+ * <p>
+ * Every unit of the scale factor adds 20 cities, about 30 shops, 1000 articles and 200 buyers:
+ * <ul>
+ *     <li>The cities form a sparse road graph: every city is connected to one of the 5 cities before it,
+ *     so the graph is connected, and half of them get a second road to one of the 10 cities before them.
+ *     The roads are 1 to 10 days long.</li>
+ *     <li>A city has 0 to 3 shops, and about a third of the shops give a discount of up to 20%.</li>
+ *     <li>The articles are spread over the shops, with prices from 10 to 1000, and are popular by a Zipf
+ *     distribution: the article of rank k is picked with a probability proportional to 1 / k^exponent.
+ *     The ranks are shuffled, so the popular articles are spread over the shops.</li>
+ *     <li>Every buyer lives in a random city, with a credit of 1000 to 100000.</li>
+ * </ul>
+ * The same seed and scale factor give the same dataset. All the data is erased first,
+ * and the time is set to the start of 2018.
+ */
+public class DatasetGenerator {
+    // Per unit of the scale factor
+    private static final int CITIES = 20;
+    private static final int ARTICLES = 1000;
+    private static final int BUYERS = 200;
+
+    // Large enough that the popular articles do not run out during a workload
+    private static final int STOCK = 1_000_000;
+
+    private final Marketplace marketplace;
+    private final Random random;
+
+    /**
+     * Represents the IDs of a generated dataset, and the popularity of its articles.
+     */
+    public static class Dataset {
+        private final int[] cities;
+        private final int[] shops;
+        private final int[] articles;
+        private final int[] buyers;
+
+        // The articles ordered by popularity, and the cumulative probabilities of their ranks
+        private final int[] articlesByRank;
+        private final double[] rankDistribution;
+
+        Dataset(int[] cities, int[] shops, int[] articles, int[] buyers, int[] articlesByRank, double exponent) {
+            this.cities = cities;
+            this.shops = shops;
+            this.articles = articles;
+            this.buyers = buyers;
+            this.articlesByRank = articlesByRank;
+            this.rankDistribution = new double[articlesByRank.length];
+
+            double sum = 0;
+            for (int k = 0; k < rankDistribution.length; k++) {
+                sum += 1 / Math.pow(k + 1, exponent);
+                rankDistribution[k] = sum;
+            }
+            for (int k = 0; k < rankDistribution.length; k++) {
+                rankDistribution[k] /= sum;
+            }
+        }
+
+        /**
+         * Retrieves the IDs of the cities, in the order they were created.
+         *
+         * @return the IDs of the cities
+         */
+        public int[] getCities() {
+            return cities;
+        }
+
+        /**
+         * Retrieves the IDs of the shops, in the order they were created.
+         *
+         * @return the IDs of the shops
+         */
+        public int[] getShops() {
+            return shops;
+        }
+
+        /**
+         * Retrieves the IDs of the articles, in the order they were created.
+         *
+         * @return the IDs of the articles
+         */
+        public int[] getArticles() {
+            return articles;
+        }
+
+        /**
+         * Retrieves the IDs of the buyers, in the order they were created.
+         *
+         * @return the IDs of the buyers
+         */
+        public int[] getBuyers() {
+            return buyers;
+        }
+
+        /**
+         * Picks an article by its popularity.
+         *
+         * @param random the random generator to use
+         * @return the ID of the article
+         */
+        public int sampleArticle(Random random) {
+            int rank = Arrays.binarySearch(rankDistribution, random.nextDouble());
+            if (rank < 0) rank = -rank - 1;
+
+            return articlesByRank[Math.min(rank, articlesByRank.length - 1)];
+        }
+
+        /**
+         * Picks a buyer uniformly.
+         *
+         * @param random the random generator to use
+         * @return the ID of the buyer
+         */
+        public int sampleBuyer(Random random) {
+            return buyers[random.nextInt(buyers.length)];
+        }
+
+        /**
+         * Picks a shop uniformly.
+         *
+         * @param random the random generator to use
+         * @return the ID of the shop
+         */
+        public int sampleShop(Random random) {
+            return shops[random.nextInt(shops.length)];
+        }
+    }
+
+    /**
+     * Creates a generator writing through the given operations.
+     *
+     * @param marketplace the operations to generate the data with
+     * @param seed        the seed of the random generator
+     */
+    public DatasetGenerator(Marketplace marketplace, long seed) {
+        this.marketplace = marketplace;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Erases all the data and generates a dataset.
+     *
+     * @param scaleFactor the scale factor, at least 1
+     * @param exponent    the exponent of the Zipf distribution of the article popularity, e.g. 1.0
+     * @return the generated dataset
+     */
+    public Dataset generate(int scaleFactor, double exponent) {
+        if (scaleFactor < 1) throw new IllegalArgumentException("The scale factor must be at least 1");
+
+        marketplace.getGeneralOperations().eraseAll();
+
+        Calendar initialTime = Calendar.getInstance();
+        initialTime.clear();
+        initialTime.set(2018, Calendar.JANUARY, 1);
+        marketplace.getGeneralOperations().setInitialTime(initialTime);
+
+        int[] cities = generateCities(scaleFactor * CITIES);
+        int[] shops = generateShops(cities);
+        int[] articles = generateArticles(shops, scaleFactor * ARTICLES);
+        int[] buyers = generateBuyers(cities, scaleFactor * BUYERS);
+
+        int[] articlesByRank = articles.clone();
+        shuffle(articlesByRank);
+
+        return new Dataset(cities, shops, articles, buyers, articlesByRank, exponent);
+    }
+
+    /**
+     * Creates the cities and the roads between them.
+     *
+     * @param count the number of cities
+     * @return the IDs of the cities
+     */
+    private int[] generateCities(int count) {
+        int[] cities = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            cities[i] = marketplace.getCityOperations().createCity(cityName(i));
+
+            if (i > 0) {
+                int neighbor = i - 1 - random.nextInt(Math.min(i, 5));
+                marketplace.getCityOperations().connectCities(cities[neighbor], cities[i], 1 + random.nextInt(10));
+            }
+
+            if (i > 1 && random.nextBoolean()) {
+                // Skipped with -1 if the two cities are already connected
+                int neighbor = i - 1 - random.nextInt(Math.min(i, 10));
+                marketplace.getCityOperations().connectCities(cities[neighbor], cities[i], 1 + random.nextInt(10));
+            }
+        }
+
+        return cities;
+    }
+
+    /**
+     * Creates the shops of the cities, at least one.
+     *
+     * @param cities the IDs of the cities
+     * @return the IDs of the shops
+     */
+    private int[] generateShops(int[] cities) {
+        int[] shops = new int[cities.length * 3];
+        int count = 0;
+
+        for (int i = 0; i < cities.length; i++) {
+            int shopsInCity = i == 0 ? 1 + random.nextInt(3) : random.nextInt(4);
+
+            for (int j = 0; j < shopsInCity; j++) {
+                int idShop = marketplace.getShopOperations().createShop("Shop" + count, cityName(i));
+
+                if (random.nextInt(3) == 0) {
+                    marketplace.getShopOperations().setDiscount(idShop, 1 + random.nextInt(20));
+                }
+
+                shops[count++] = idShop;
+            }
+        }
+
+        return Arrays.copyOf(shops, count);
+    }
+
+    /**
+     * Creates the articles, spread over the shops, and stocks them.
+     *
+     * @param shops the IDs of the shops
+     * @param count the number of articles
+     * @return the IDs of the articles
+     */
+    private int[] generateArticles(int[] shops, int count) {
+        int[] articles = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            int idShop = shops[random.nextInt(shops.length)];
+            int price = (int) Math.round(10 * Math.pow(100, random.nextDouble())); // Log-uniform from 10 to 1000
+
+            articles[i] = marketplace.getArticleOperations().createArticle(idShop, "Article" + i, price);
+            marketplace.getShopOperations().increaseArticleCount(articles[i], STOCK);
+        }
+
+        return articles;
+    }
+
+    /**
+     * Creates the buyers and gives them credit.
+     *
+     * @param cities the IDs of the cities
+     * @param count  the number of buyers
+     * @return the IDs of the buyers
+     */
+    private int[] generateBuyers(int[] cities, int count) {
+        int[] buyers = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            buyers[i] = marketplace.getBuyerOperations().createBuyer("Buyer" + i, cities[random.nextInt(cities.length)]);
+            marketplace.getBuyerOperations().increaseCredit(buyers[i], BigDecimal.valueOf(1000 + random.nextInt(99001)));
+        }
+
+        return buyers;
+    }
+
+    /**
+     * Shuffles the values in place.
+     *
+     * @param values the values
+     */
+    private void shuffle(int[] values) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+
+    /**
+     * Retrieves the name of the city of the given index.
+     *
+     * @param index the index of the city
+     * @return the name of the city
+     */
+    private static String cityName(int index) {
+        return "City" + index;
+    }
+}
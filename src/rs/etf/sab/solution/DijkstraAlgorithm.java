@@ -9,12 +9,103 @@ import java.util.*;
  * Represents a Dijkstra algorithm implementation for calculating shortest paths in a graph.
  */
 public class DijkstraAlgorithm {
-    private static final Connection c = DB.getInstance().getConnection();
-    private static final CityOperations co = new SolutionCityOperations();
+    private final Connection c;
+    private final CityOperations co;
+    private final Graph graph;
 
     private int idNearestCity = -1;
     private int maxDistanceToNearestCity = 0;
     private int minDistanceFromBuyerToNearestCity = -1;
+    private int relaxations = 0;
+
+    /**
+     * Creates the algorithm over the shared database connection.
+     */
+    public DijkstraAlgorithm() {
+        this(DB.getInstance().getConnection());
+    }
+
+    /**
+     * Creates the algorithm over the given database connection.
+     *
+     * @param c the database connection to use
+     */
+    public DijkstraAlgorithm(Connection c) {
+        this.c = c;
+        this.co = new SolutionCityOperations(c);
+        this.graph = new DatabaseGraph();
+    }
+
+    /**
+     * Creates the algorithm over the given graph, e.g. the in-memory tables of 'MemoryStore'.
+     *
+     * @param graph the graph to run on
+     */
+    DijkstraAlgorithm(Graph graph) {
+        this.c = null;
+        this.co = null;
+        this.graph = graph;
+    }
+
+    /**
+     * Provides the cities, the lines and the shops the algorithm runs on.
+     */
+    interface Graph {
+        /**
+         * Retrieves the distances between the connected cities.
+         *
+         * @return the map (idCity -> (idNeighborCity -> distance, ...), ...)
+         */
+        HashMap<Integer, HashMap<Integer, Integer>> getDistances();
+
+        /**
+         * Retrieves the IDs of all the cities.
+         *
+         * @return the list of city IDs
+         */
+        List<Integer> getCities();
+
+        /**
+         * Checks if there are shops in the city.
+         *
+         * @param idCity the ID of the city
+         * @return true if there is at least one shop in the city, or false otherwise
+         */
+        boolean hasShops(int idCity);
+
+        /**
+         * Retrieves the cities of all shops from which one or more items are ordered.
+         *
+         * @param idOrder the ID of the order
+         * @return the list of distinct city IDs
+         */
+        List<Integer> getOrderCities(int idOrder);
+    }
+
+    /**
+     * Implements the graph over the database.
+     */
+    private class DatabaseGraph implements Graph {
+        @Override
+        public HashMap<Integer, HashMap<Integer, Integer>> getDistances() {
+            return CityGraph.getInstance().getDistances();
+        }
+
+        @Override
+        public List<Integer> getCities() {
+            return co.getCities();
+        }
+
+        @Override
+        public boolean hasShops(int idCity) {
+            return co.getShops(idCity) != null;
+        }
+
+        @Override
+        public List<Integer> getOrderCities(int idOrder) {
+            return DijkstraAlgorithm.this.getOrderCities(idOrder);
+        }
+    }
 
     /**
      * Represents a container class for distance and previous city information.
@@ -57,11 +148,14 @@ public class DijkstraAlgorithm {
      * @return the list of city IDs representing the shortest path from the nearest city to the buyer city
      */
     public List<Integer> dijkstraAlgorithm(int idBuyerCity, int idOrder) {
+        FlightEvents.DijkstraRun event = new FlightEvents.DijkstraRun();
+        event.begin();
+
         /* Step 1:
          * Create map to store distances between the cities.
          * Look: (idCity -> (idNeighborCity -> distance, ...), ...)
          */
-        HashMap<Integer, HashMap<Integer, Integer>> distances = getAllDistances();
+        HashMap<Integer, HashMap<Integer, Integer>> distances = graph.getDistances();
 
         /* Step 2:
          * Create map to store distances and paths from the start city to each city.
@@ -79,13 +173,14 @@ public class DijkstraAlgorithm {
          * Create two lists with all the city ids of the cities yet to be visited.
          * Create a list of the cities to be processed in a breadth-first search (BFS) manner.
          */
-        List<Integer> citiesToBeVisited = co.getCities();
+        List<Integer> citiesToBeVisited = graph.getCities();
         List<Integer> citiesToBeVisitedCopy = new ArrayList<>(citiesToBeVisited);
+        int cityCount = citiesToBeVisited.size();
 
         Queue<Integer> queue = new LinkedList<>();
         queue.offer(idBuyerCity);
 
-        if (co.getShops(idBuyerCity) == null) {
+        if (!graph.hasShops(idBuyerCity)) {
             while (!queue.isEmpty()) {
                 // Retrieve and remove the first city from the queue, indicate that it has been visited
                 int idCurrentCity = queue.poll();
@@ -118,9 +213,10 @@ public class DijkstraAlgorithm {
                         dpc.setDistance(distanceNeighborCityThroughCurrent);
                         dpc.setPrevious(idCurrentCity);
                         fromBuyerToEachCity.put(idNeighbor, dpc);
+                        relaxations++;
 
                         // If neighbor contains a shop, and it is closer to buyerCity, it becomes 'nearest city'
-                        if (co.getShops(idNeighbor) != null
+                        if (graph.hasShops(idNeighbor)
                                 && (minDistanceFromBuyerToNearestCity > distanceNeighborCityThroughCurrent
                                 || minDistanceFromBuyerToNearestCity == -1)) {
                             minDistanceFromBuyerToNearestCity = distanceNeighborCityThroughCurrent;
@@ -166,12 +262,13 @@ public class DijkstraAlgorithm {
                 if (distanceNeighborCity == -1 || distanceNeighborCity > distanceNeighborCityThroughCurrent) {
                     // Add for 'idNeighbor' (the first || overwritten) value minDistanceFromNearestCity
                     minDistanceFromNearestToEach.put(idNeighbor, distanceNeighborCityThroughCurrent);
+                    relaxations++;
                 }
             }
         }
 
         // Step 6: Retrieve the list of distinct cities of the shops from which items are ordered
-        List<Integer> orderCities = getOrderCities(idOrder);
+        List<Integer> orderCities = graph.getOrderCities(idOrder);
 
         /* Step 7:
          * Iterate over each of these cities, finding the maxDistance to any of the cities where the order was made.
@@ -186,35 +283,19 @@ public class DijkstraAlgorithm {
         }
 
         // Step 8: Define the path from the 'nearest city' to the 'buyer city'
-        return constructPath(idBuyerCity, fromBuyerToEachCity);
-    }
-
-    /**
-     * Retrieves all distances between cities from the database.
-     *
-     * @return a map of distances between cities
-     */
-    private HashMap<Integer, HashMap<Integer, Integer>> getAllDistances() {
-        HashMap<Integer, HashMap<Integer, Integer>> distances = new HashMap<>();
-        String query = "SELECT * FROM Line";
-
-        try (
-                PreparedStatement ps = c.prepareStatement(query);
-                ResultSet rs = ps.executeQuery()
-        ) {
-            while (rs.next()) {
-                int idCity1 = rs.getInt("Id1");
-                int idCity2 = rs.getInt("Id2");
-                int distance = rs.getInt("Distance");
-
-                distances.computeIfAbsent(idCity1, k -> new HashMap<>()).put(idCity2, distance);
-                distances.computeIfAbsent(idCity2, k -> new HashMap<>()).put(idCity1, distance);
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+        List<Integer> path = constructPath(idBuyerCity, fromBuyerToEachCity);
+
+        if (event.shouldCommit()) {
+            event.idOrder = idOrder;
+            event.idBuyerCity = idBuyerCity;
+            event.idNearestCity = idNearestCity;
+            event.cities = cityCount;
+            event.edges = distances.values().stream().mapToInt(HashMap::size).sum() / 2; // Every line is in both directions
+            event.relaxations = relaxations;
+            event.commit();
         }
 
-        return distances;
+        return path;
     }
 
     /**
@@ -0,0 +1,131 @@
+package rs.etf.sab.solution;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Defines the Java Flight Recorder events of the order lifecycle, the routing and the SQL executions,
+ * so that a recording can tie the samples of a latency spike to the business operation behind it.
+ * <p>
+ * The events are disabled by default and cost nothing then. They are enabled by the settings in
+ * 'jfr/onlineshop.jfc', e.g. with '-XX:StartFlightRecording:settings=default,settings=jfr/onlineshop.jfc'.
+ * The SQL executions are only seen on instrumented connections, e.g. with '-Donlineshop.jfr.sql=true'.
+ */
+final class FlightEvents {
+    /**
+     * Private constructor, as the class only groups the events.
+     */
+    private FlightEvents() {
+
+    }
+
+    /**
+     * Represents one phase of 'completeOrder': validation, stock, routing, pricing or debit.
+     */
+    @Name("rs.etf.sab.CheckoutPhase")
+    @Label("Checkout Phase")
+    @Category({"Online Shop", "Orders"})
+    @Description("A phase of completing an order")
+    @StackTrace(false)
+    static class CheckoutPhase extends Event {
+        @Label("Order")
+        int idOrder;
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Succeeded")
+        boolean succeeded;
+
+        /**
+         * Starts timing a phase.
+         *
+         * @param idOrder the ID of the order
+         * @param phase   the name of the phase
+         * @return the started event
+         */
+        static CheckoutPhase begin(int idOrder, String phase) {
+            CheckoutPhase event = new CheckoutPhase();
+            event.idOrder = idOrder;
+            event.phase = phase;
+            event.begin();
+
+            return event;
+        }
+
+        /**
+         * Ends the phase and commits the event, if it is enabled and over its threshold.
+         *
+         * @param succeeded whether the phase succeeded
+         */
+        void end(boolean succeeded) {
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+
+    /**
+     * Represents a run of the routing algorithm for an order.
+     */
+    @Name("rs.etf.sab.DijkstraRun")
+    @Label("Dijkstra Run")
+    @Category({"Online Shop", "Routing"})
+    @Description("A run of the shortest path algorithm for an order")
+    @StackTrace(false)
+    static class DijkstraRun extends Event {
+        @Label("Order")
+        int idOrder;
+
+        @Label("Buyer City")
+        int idBuyerCity;
+
+        @Label("Nearest City")
+        int idNearestCity;
+
+        @Label("Cities")
+        int cities;
+
+        @Label("Edges")
+        int edges;
+
+        @Label("Relaxations")
+        @Description("The number of times a shorter distance to a city was found")
+        int relaxations;
+    }
+
+    /**
+     * Represents the orders arriving after the time moved on.
+     */
+    @Name("rs.etf.sab.ArrivalBatch")
+    @Label("Arrival Batch")
+    @Category({"Online Shop", "Orders"})
+    @Description("The orders arriving when the time moves on")
+    @StackTrace(false)
+    static class ArrivalBatch extends Event {
+        @Label("Days")
+        int days;
+
+        @Label("Arrived Orders")
+        int arrivedOrders;
+    }
+
+    /**
+     * Represents one execution of an SQL statement, batch or transaction end.
+     */
+    @Name("rs.etf.sab.SqlExecution")
+    @Label("SQL Execution")
+    @Category({"Online Shop", "SQL"})
+    @Description("A round-trip to the database")
+    static class SqlExecution extends Event {
+        @Label("Statement")
+        @Description("The start of the statement, with the whitespace collapsed")
+        String statement;
+
+        @Label("Method")
+        String method;
+    }
+}
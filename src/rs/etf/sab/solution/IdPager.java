@@ -0,0 +1,161 @@
+package rs.etf.sab.solution;
+
+import java.sql.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the IDs of a table, optionally filtered by a key column, in ascending order of the IDs.
+ * <p>
+ * Pages are read with keyset pagination ('Id > afterId'), so reading any page costs the same,
+ * no matter how far into the table it is. Neither of the reading methods keeps more than
+ * one page of IDs in memory, and the IDs are never boxed. A page grows as its rows arrive,
+ * so a large limit costs only as much memory as there are IDs.
+ * <p>
+ * The IDs are read on the connections of 'ReadConnections', like the other query-only operations.
+ */
+public class IdPager {
+    // The default number of IDs read per page by the streams
+    public static final int PAGE_SIZE = 1000;
+
+    // The number of rows the driver fetches per round-trip while scanning
+    private static final int FETCH_SIZE = 1000;
+
+    private final ReadConnections reads;
+    private final String keyColumn;
+    private final String pageQuery;
+    private final String scanQuery;
+
+    /**
+     * Creates a pager over the IDs of the given table.
+     *
+     * @param c         the database connection to use
+     * @param table     the name of the table, e.g. 'V_TRANSACTION'
+     * @param keyColumn the column the IDs are filtered by, e.g. 'IdBuyer', or null to read all the IDs
+     */
+    public IdPager(Connection c, String table, String keyColumn) {
+        String filter = keyColumn == null ? "" : keyColumn + " = ? AND ";
+
+        this.reads = new ReadConnections(c);
+        this.keyColumn = keyColumn;
+        this.pageQuery = "SELECT TOP (?) Id FROM " + table + " WHERE " + filter + "Id > ? ORDER BY Id";
+        this.scanQuery = "SELECT Id FROM " + table + " WHERE " + filter + "Id > ? ORDER BY Id";
+    }
+
+    /**
+     * Retrieves a page of IDs.
+     *
+     * @param key     the value of the key column, ignored when there is no key column
+     * @param afterId the ID after which the page starts, any negative value for the first page
+     * @param limit   the maximum number of IDs in the page
+     * @return the IDs of the page in ascending order, empty after the last page
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public int[] page(int key, int afterId, int limit) {
+        if (limit <= 0) return new int[0];
+
+        int[] ids = new int[Math.min(limit, PAGE_SIZE)];
+        int count = 0;
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(pageQuery)) {
+            int parameter = 1;
+
+            ps.setInt(parameter++, limit);
+            if (keyColumn != null) ps.setInt(parameter++, key);
+            ps.setInt(parameter, afterId);
+            ps.setFetchSize(Math.min(limit, FETCH_SIZE));
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (count == ids.length) ids = Arrays.copyOf(ids, (int) Math.min(2L * ids.length, limit));
+                    ids[count++] = rs.getInt(1);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
+        }
+
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Passes all the IDs to the consumer, reading them with a single query.
+     *
+     * @param key      the value of the key column, ignored when there is no key column
+     * @param consumer the consumer of the IDs
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public void forEach(int key, IntConsumer consumer) {
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(scanQuery)) {
+            int parameter = 1;
+
+            if (keyColumn != null) ps.setInt(parameter++, key);
+            ps.setInt(parameter, -1); // -1 is a sentinel below every identity value
+            ps.setFetchSize(FETCH_SIZE);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(rs.getInt(1));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
+        }
+    }
+
+    /**
+     * Creates a lazy stream of all the IDs, reading one page whenever the previous one is consumed.
+     * No statement is left open between the pages, so the stream does not have to be closed.
+     *
+     * @param key      the value of the key column, ignored when there is no key column
+     * @param pageSize the number of IDs read per page
+     * @return the stream of the IDs in ascending order
+     */
+    public IntStream stream(int key, int pageSize) {
+        if (pageSize <= 0) throw new IllegalArgumentException("The page size must be positive");
+
+        Spliterator.OfInt spliterator = new Spliterators.AbstractIntSpliterator(
+                Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL
+        ) {
+            private int[] page = new int[0];
+            private int position = 0;
+            private boolean last = false;
+
+            @Override
+            public boolean tryAdvance(IntConsumer action) {
+                if (position == page.length) {
+                    if (last) return false;
+
+                    page = page(key, page.length == 0 ? -1 : page[page.length - 1], pageSize);
+                    position = 0;
+                    last = page.length < pageSize;
+
+                    if (page.length == 0) return false;
+                }
+
+                action.accept(page[position++]);
+                return true;
+            }
+
+            @Override
+            public Comparator<? super Integer> getComparator() {
+                return null; // Natural order
+            }
+        };
+
+        return StreamSupport.intStream(spliterator, false);
+    }
+}
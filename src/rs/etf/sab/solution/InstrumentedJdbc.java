@@ -0,0 +1,208 @@
+package rs.etf.sab.solution;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wraps the JDBC objects so that their SQL work is recorded for the operation running on the current thread.
+ * <p>
+ * Every execution, batch, commit and rollback is a round-trip, every executed or batched statement is a statement,
+ * and every row a result set moves to is a row read. The statements and result sets the wrapped objects create
+ * are wrapped too. Every round-trip is also a flight recorder event, labeled with its statement.
+ * The executions are timed for the slow query log, with the parameters set on the statements, if it is enabled.
+ * The writes are recorded for the replica routing, so that the thread's next reads see them: every statement
+ * except a plain SELECT counts as a write, also the queries that write and return rows, e.g. 'UPDATE ... OUTPUT'.
+ */
+class InstrumentedJdbc {
+    /**
+     * Private constructor, as the class only has static methods.
+     */
+    private InstrumentedJdbc() {
+
+    }
+
+    /**
+     * Wraps the connection.
+     *
+     * @param connection the connection to wrap
+     * @return the wrapped connection
+     */
+    static Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new Handler(connection, connection, null)
+        );
+    }
+
+    /**
+     * Records the SQL work of the calls, and wraps the returned statements and result sets.
+     */
+    private static class Handler implements InvocationHandler {
+        // The longest statement text kept in a flight recorder event
+        private static final int MAX_LABEL_LENGTH = 200;
+
+        private final Object target;
+        private final Connection connection;
+        private final String sql;
+
+        // The parameters set on the statement, by index from 1, only kept for the slow query log
+        private final List<Object> parameters;
+
+        Handler(Object target, Connection connection, String sql) {
+            this.target = target;
+            this.connection = connection;
+            this.sql = sql;
+
+            if (SlowQueryLog.isEnabled() && target instanceof Statement) {
+                parameters = new ArrayList<>();
+                parameters.add(null);
+            } else {
+                parameters = null;
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            FlightEvents.SqlExecution event = null;
+
+            if (isRoundTrip(name)) {
+                event = new FlightEvents.SqlExecution();
+                event.begin();
+            }
+
+            if (parameters != null) setParameter(name, args);
+
+            Object result;
+            long start = System.nanoTime();
+
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+
+            long elapsed = System.nanoTime() - start;
+
+            // The statement is the argument of 'prepareStatement()' or 'execute()', or the one this one was prepared with
+            String text = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+
+            switch (name) {
+                case "executeQuery" -> {
+                    Metrics.current().recordStatement();
+                    Metrics.current().recordRoundTrip();
+
+                    // A call or a query that is not a plain SELECT, e.g. 'UPDATE ... OUTPUT', may have written
+                    if (target instanceof CallableStatement || !isSelect(text)) {
+                        ReplicaRouter.recordWrite();
+                    }
+                }
+                case "execute", "executeUpdate", "executeLargeUpdate" -> {
+                    Metrics.current().recordStatement();
+                    Metrics.current().recordRoundTrip();
+
+                    // A call or a statement returning an update count may have written
+                    if (!name.equals("execute") || target instanceof CallableStatement || !(Boolean) result) {
+                        ReplicaRouter.recordWrite();
+                    }
+                }
+                case "executeBatch", "executeLargeBatch", "commit" -> {
+                    Metrics.current().recordRoundTrip();
+                    ReplicaRouter.recordWrite();
+                }
+                case "rollback" -> Metrics.current().recordRoundTrip();
+                case "addBatch" -> Metrics.current().recordStatement();
+                case "next" -> {
+                    if ((Boolean) result) Metrics.current().recordRow();
+                }
+                default -> {
+                }
+            }
+
+            if (parameters != null && name.startsWith("execute") && text != null) {
+                SlowQueryLog.record(connection, text, args == null || args.length == 0 ? parameters : null, name, elapsed);
+            }
+
+            if (event != null && event.shouldCommit()) {
+                event.statement = text == null ? name.toUpperCase() : label(text);
+                event.method = name;
+                event.commit();
+            }
+
+            // Statements and result sets are wrapped as the interface the method declares, e.g. 'PreparedStatement'
+            Class<?> type = method.getReturnType();
+            if (result != null && type.isInterface()
+                    && (Statement.class.isAssignableFrom(type) || ResultSet.class.isAssignableFrom(type))) {
+                Handler handler = new Handler(result, connection, text);
+                return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+            }
+
+            return result;
+        }
+
+        /**
+         * Keeps the parameter set by the method, if it sets one.
+         *
+         * @param name the name of the method
+         * @param args the arguments of the method
+         */
+        private void setParameter(String name, Object[] args) {
+            if (name.equals("clearParameters")) {
+                parameters.subList(1, parameters.size()).clear();
+                return;
+            }
+
+            if (!name.startsWith("set") || args == null || args.length < 2 || !(args[0] instanceof Integer)) return;
+
+            int index = (Integer) args[0];
+            while (parameters.size() <= index) parameters.add(null);
+
+            // The second argument of 'setNull()' is the SQL type, not the value
+            parameters.set(index, name.equals("setNull") ? null : args[1]);
+        }
+
+        /**
+         * Checks if the method makes a round-trip to the database.
+         *
+         * @param name the name of the method
+         * @return true if the method makes a round-trip, or false otherwise
+         */
+        private static boolean isRoundTrip(String name) {
+            return switch (name) {
+                case "execute", "executeQuery", "executeUpdate", "executeLargeUpdate",
+                        "executeBatch", "executeLargeBatch", "commit", "rollback" -> true;
+                default -> false;
+            };
+        }
+
+        /**
+         * Checks if the statement is a plain SELECT, which only reads.
+         *
+         * @param sql the statement, or null if it is not known
+         * @return true if it is a SELECT, or false otherwise
+         */
+        private static boolean isSelect(String sql) {
+            return sql != null && sql.stripLeading().regionMatches(true, 0, "SELECT", 0, "SELECT".length());
+        }
+
+        /**
+         * Collapses the whitespace of the statement and cuts it to a readable length.
+         *
+         * @param sql the statement
+         * @return the label of the statement
+         */
+        private static String label(String sql) {
+            String label = sql.strip().replaceAll("\\s+", " ");
+            return label.length() > MAX_LABEL_LENGTH ? label.substring(0, MAX_LABEL_LENGTH) : label;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package rs.etf.sab.solution;
+
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishes the rows changed in the database by any JVM to the in-process caches, so that the caches of several JVMs
+ * over one database stay coherent.
+ * <p>
+ * The bus is enabled with '-Donlineshop.invalidation.poll=...', the milliseconds between polls, e.g. 500.
+ * It then polls the Change Tracking of the tables enabled in 'db/create.sql', in a SNAPSHOT transaction, and passes
+ * the primary key of every row changed since the last poll to the listeners of its table, on the polling thread.
+ * The key is null when the changes are lost, e.g. after a truncate or when the retention ran out, and the listeners
+ * must then drop everything they cached from the table.
+ * <p>
+ * The invalidations arrive one poll after the commit. If the polls fail for longer than 5 seconds, or
+ * '-Donlineshop.invalidation.maxLag=...' milliseconds, every table is invalidated after each failed poll,
+ * so that the caches never serve rows older than that bound. Without the property, registering does nothing.
+ * <p>
+ * Usage: java -Donlineshop.invalidation.poll=... InvalidationBus, prints the invalidations as they arrive
+ */
+public class InvalidationBus {
+    private static final long POLL_MILLIS = Long.getLong("onlineshop.invalidation.poll", -1);
+    private static final boolean ENABLED = POLL_MILLIS > 0;
+    private static final long MAX_LAG_MILLIS = Long.getLong("onlineshop.invalidation.maxLag", 5000);
+
+    private static final Map<Table, List<Listener>> listeners = new EnumMap<>(Table.class);
+    private static final LongAdder invalidations = new LongAdder();
+
+    // The time of the last successful poll, read by 'getLagMillis()'
+    private static volatile long lastPoll = 0;
+
+    // The connection and the last polled version, only used by the polling thread once it is started
+    private static Connection connection = null;
+    private static long version = -1;
+
+    static {
+        for (Table table : Table.values()) {
+            listeners.put(table, new CopyOnWriteArrayList<>());
+        }
+    }
+
+    /**
+     * Represents a table whose changes are tracked, with the columns of its primary key.
+     */
+    public enum Table {
+        ARTICLE("Article", "Id"),
+        SHOP("Shop", "Id"),
+        CITY("City", "Id"),
+        LINE("Line", "Id1", "Id2"),
+        BUYER("Buyer", "Id");
+
+        private final String name;
+        private final String[] key;
+
+        Table(String name, String... key) {
+            this.name = name;
+            this.key = key;
+        }
+
+        /**
+         * Retrieves the name of the table.
+         *
+         * @return the name of the table
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * Represents a cache that drops its entries when their rows change.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * Drops the cached entries of a changed row.
+         *
+         * @param table the table of the row
+         * @param key   the primary key of the row, in the order of the key columns,
+         *              or null if any row of the table may have changed
+         */
+        void invalidate(Table table, int[] key);
+    }
+
+    /**
+     * Private constructor, as the class only has static methods.
+     */
+    private InvalidationBus() {
+
+    }
+
+    /**
+     * Checks if the bus is enabled.
+     *
+     * @return true if the bus is enabled, or false otherwise
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Registers the listener for the changes of the table, and starts polling on the first registration.
+     *
+     * @param table    the table
+     * @param listener the listener
+     * @throws RuntimeException if an SQL exception occurs while starting to poll
+     */
+    public static synchronized void register(Table table, Listener listener) {
+        if (!ENABLED) return;
+
+        listeners.get(table).add(listener);
+        if (connection == null) start();
+    }
+
+    /**
+     * Unregisters the listener, e.g. when its cache is closed. The polls skip the tables without listeners.
+     *
+     * @param table    the table
+     * @param listener the listener, as it was registered
+     */
+    public static synchronized void unregister(Table table, Listener listener) {
+        listeners.get(table).remove(listener);
+    }
+
+    /**
+     * Retrieves how long ago the last successful poll was.
+     *
+     * @return the lag in milliseconds, or -1 if the bus is not polling
+     */
+    public static long getLagMillis() {
+        long polled = lastPoll;
+        return polled == 0 ? -1 : System.currentTimeMillis() - polled;
+    }
+
+    /**
+     * Retrieves the number of published invalidations.
+     *
+     * @return the number of invalidations
+     */
+    public static long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * Opens the connection of the bus, reads the current version and starts the polling thread.
+     * The connection is opened on the calling thread, so that it does not race the creation of 'DB'.
+     *
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private static void start() {
+        connection = DB.getInstance().newConnection();
+
+        try {
+            connection.setTransactionIsolation(SQLServerConnection.TRANSACTION_SNAPSHOT);
+            version = currentVersion();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        lastPoll = System.currentTimeMillis();
+
+        ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "invalidation-bus");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        poller.scheduleWithFixedDelay(
+                InvalidationBus::pollOrInvalidateAll, POLL_MILLIS, POLL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Polls the changes, or invalidates every table if the polls have failed for longer than the bound.
+     */
+    private static void pollOrInvalidateAll() {
+        try {
+            poll();
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Invalidation poll failed: " + e.getMessage());
+
+            if (System.currentTimeMillis() - lastPoll > MAX_LAG_MILLIS) {
+                for (Table table : Table.values()) {
+                    publish(table, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the changes since the last poll in one SNAPSHOT transaction, so that all the tables are read
+     * up to the same version, and publishes them.
+     *
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    private static void poll() throws SQLException {
+        Map<Table, List<int[]>> changes = new EnumMap<>(Table.class);
+        long current;
+
+        connection.setAutoCommit(false);
+
+        try {
+            current = currentVersion();
+
+            for (Table table : Table.values()) {
+                if (!listeners.get(table).isEmpty()) changes.put(table, readChanges(table));
+            }
+
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+
+        version = current;
+        lastPoll = System.currentTimeMillis();
+
+        for (Map.Entry<Table, List<int[]>> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                publish(change.getKey(), null);
+                continue;
+            }
+
+            for (int[] key : change.getValue()) {
+                publish(change.getKey(), key);
+            }
+        }
+    }
+
+    /**
+     * Reads the primary keys of the rows of the table changed since the last poll.
+     *
+     * @param table the table
+     * @return the primary keys, or null if the changes since the last poll are lost
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    private static List<int[]> readChanges(Table table) throws SQLException {
+        String query1 = "SELECT CHANGE_TRACKING_MIN_VALID_VERSION(OBJECT_ID(?))";
+        String query2 = "SELECT CT." + String.join(", CT.", table.key)
+                + " FROM CHANGETABLE(CHANGES [" + table.name + "], ?) AS CT";
+        List<int[]> keys = new ArrayList<>();
+
+        try (PreparedStatement ps = connection.prepareStatement(query1)) {
+            ps.setString(1, table.name);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                long minValidVersion = rs.getLong(1);
+
+                // No version when the tracking is off, e.g. while the table is created again
+                if (rs.wasNull() || minValidVersion > version) return null;
+            }
+        }
+
+        try (PreparedStatement ps = connection.prepareStatement(query2)) {
+            ps.setLong(1, version);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int[] key = new int[table.key.length];
+                    for (int i = 0; i < key.length; i++) {
+                        key[i] = rs.getInt(i + 1);
+                    }
+                    keys.add(key);
+                }
+            }
+        }
+
+        return keys;
+    }
+
+    /**
+     * Reads the current Change Tracking version of the database.
+     *
+     * @return the current version
+     * @throws SQLException if an SQL exception occurs during the operation
+     * @throws IllegalStateException if the Change Tracking is not enabled
+     */
+    private static long currentVersion() throws SQLException {
+        String query = "SELECT CHANGE_TRACKING_CURRENT_VERSION()";
+
+        try (
+                PreparedStatement ps = connection.prepareStatement(query);
+                ResultSet rs = ps.executeQuery()
+        ) {
+            rs.next();
+            long current = rs.getLong(1);
+            if (rs.wasNull()) throw new IllegalStateException("The database does not have Change Tracking enabled");
+
+            return current;
+        }
+    }
+
+    /**
+     * Passes the changed row to the listeners of its table. A failing listener does not stop the others.
+     *
+     * @param table the table
+     * @param key   the primary key of the row, or null for all the rows
+     */
+    private static void publish(Table table, int[] key) {
+        for (Listener listener : listeners.get(table)) {
+            try {
+                listener.invalidate(table, key);
+            } catch (RuntimeException e) {
+                System.err.println("Invalidation listener failed: " + e.getMessage());
+            }
+        }
+
+        invalidations.increment();
+    }
+
+    /**
+     * Prints the invalidations of all the tables as they arrive, e.g. to watch the writes of another JVM.
+     *
+     * @param args unused
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (!ENABLED) {
+            System.out.println("Usage: java -Donlineshop.invalidation.poll=... InvalidationBus");
+            return;
+        }
+
+        for (Table table : Table.values()) {
+            register(table, (changed, key) -> System.out.println(
+                    changed.getName() + " " + (key == null ? "all rows" : Arrays.toString(key))));
+        }
+
+        Thread.currentThread().join();
+    }
+}
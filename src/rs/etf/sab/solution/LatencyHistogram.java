@@ -0,0 +1,170 @@
+package rs.etf.sab.solution;
+
+import java.io.PrintStream;
+
+/**
+ * Represents a histogram of latencies in nanoseconds, with the bucket layout of HdrHistogram
+ * and 3 significant digits: every power of two is split into 1024 equal sub-buckets.
+ * <p>
+ * Recording is a few shifts and an array increment, without allocation or synchronization,
+ * so every thread records into its own histogram and the histograms are added together at the end.
+ * The percentile distribution is printed in the text format of HdrHistogram, which its plotting tools read.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 10;
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_COUNT = 2 * SUB_BUCKET_HALF_COUNT;
+
+    // Values over an hour are recorded as an hour
+    private static final long MAX_VALUE = 3_600_000_000_000L;
+    private static final int TICKS_PER_HALF_DISTANCE = 5;
+
+    private final long[] counts = new long[index(MAX_VALUE) + 1];
+    private long totalCount = 0;
+    private long max = 0;
+    private double sum = 0;
+    private double sumOfSquares = 0;
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+
+        counts[index(value)]++;
+        totalCount++;
+        max = Math.max(max, value);
+        sum += value;
+        sumOfSquares += (double) value * value;
+    }
+
+    /**
+     * Adds all the latencies of the other histogram to this one.
+     *
+     * @param other the other histogram
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+
+        totalCount += other.totalCount;
+        max = Math.max(max, other.max);
+        sum += other.sum;
+        sumOfSquares += other.sumOfSquares;
+    }
+
+    /**
+     * Retrieves the number of recorded latencies.
+     *
+     * @return the number of latencies
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Retrieves the highest recorded latency.
+     *
+     * @return the highest latency in nanoseconds, 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Retrieves the mean of the recorded latencies.
+     *
+     * @return the mean in nanoseconds, 0 if nothing was recorded
+     */
+    public double getMean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    /**
+     * Retrieves the latency at the given percentile, as the highest value equivalent to it.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the latency in nanoseconds, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * totalCount));
+        long cumulative = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= countAtPercentile) return Math.min(highestEquivalentValue(i), max);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Prints the percentile distribution in the text format of HdrHistogram.
+     *
+     * @param out   the stream to print to
+     * @param scale the number of nanoseconds per printed unit, e.g. 1e6 for milliseconds
+     */
+    public void outputPercentileDistribution(PrintStream out, double scale) {
+        out.printf("%12s %14s %10s %14s%n%n", "Value", "Percentile", "TotalCount", "1/(1-Percentile)");
+
+        long cumulative = 0;
+        double percentileToReport = 0;
+
+        for (int i = 0; i < counts.length && totalCount > 0; i++) {
+            if (counts[i] == 0) continue;
+
+            cumulative += counts[i];
+            double value = Math.min(highestEquivalentValue(i), max) / scale;
+
+            while (100.0 * cumulative / totalCount >= percentileToReport) {
+                if (cumulative == totalCount) {
+                    out.printf("%12.3f %2.12f %10d%n", value, 1.0, cumulative);
+                    break;
+                }
+
+                out.printf("%12.3f %2.12f %10d %14.2f%n",
+                        value, percentileToReport / 100, cumulative, 1 / (1 - percentileToReport / 100));
+
+                // Every halving of the distance to 100% is reported with the same number of ticks
+                long halvings = (long) (Math.log(100 / (100 - percentileToReport)) / Math.log(2)) + 1;
+                percentileToReport += 100.0 / (TICKS_PER_HALF_DISTANCE * Math.pow(2, halvings));
+            }
+        }
+
+        double mean = getMean();
+        double deviation = totalCount == 0 ? 0 : Math.sqrt(Math.max(0, sumOfSquares / totalCount - mean * mean));
+
+        out.printf("#[Mean    = %12.3f, StdDeviation   = %12.3f]%n", mean / scale, deviation / scale);
+        out.printf("#[Max     = %12.3f, Total count    = %12d]%n", max / scale, totalCount);
+        out.printf("#[Buckets = %12d, SubBuckets     = %12d]%n",
+                counts.length / SUB_BUCKET_HALF_COUNT - 1, SUB_BUCKET_COUNT);
+    }
+
+    /**
+     * Retrieves the index of the bucket the value is counted in.
+     * The first 2048 values have a bucket each, and every next power of two is split into 1024 buckets.
+     *
+     * @param value the value
+     * @return the index of the bucket
+     */
+    private static int index(long value) {
+        int magnitude = Math.max(0, 63 - Long.numberOfLeadingZeros(value | 1) - SUB_BUCKET_BITS);
+        return (magnitude << SUB_BUCKET_BITS) + (int) (value >>> magnitude);
+    }
+
+    /**
+     * Retrieves the highest value counted in the bucket.
+     *
+     * @param index the index of the bucket
+     * @return the highest value
+     */
+    private static long highestEquivalentValue(int index) {
+        int magnitude = Math.max(0, (index >>> SUB_BUCKET_BITS) - 1);
+        long subBucket = index - ((long) magnitude << SUB_BUCKET_BITS);
+
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+}
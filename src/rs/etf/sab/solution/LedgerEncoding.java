@@ -0,0 +1,167 @@
+package rs.etf.sab.solution;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Provides the encodings shared by 'TransactionLedgerExporter' and 'TransactionLedgerReader'.
+ * <p>
+ * A ledger file starts with the 4 magic bytes 'TXL2', followed by blocks of up to 'BLOCK_SIZE' rows.
+ * Every block has a fixed header (row count, raw length, compressed length, the row version of its last row)
+ * and a deflated payload, in which the six columns are stored one after another,
+ * each of them prefixed with its length:
+ * <ul>
+ *     <li>Id - delta from the previous ID, zigzag varint, as the rows are in the order of their versions</li>
+ *     <li>Amount - the unscaled value at scale 3, zigzag varint</li>
+ *     <li>IdOrder - delta from the previous order ID, zigzag varint</li>
+ *     <li>IdShop - a dictionary of the block's shops, then an index into it per row, 0 for NULL</li>
+ *     <li>IdBuyer - a dictionary of the block's buyers, then an index into it per row, 0 for NULL</li>
+ *     <li>Date - delta in milliseconds from the previous date, zigzag varint</li>
+ * </ul>
+ */
+class LedgerEncoding {
+    static final byte[] MAGIC = {'T', 'X', 'L', '2'};
+    static final int BLOCK_SIZE = 65536;
+    static final int BLOCK_HEADER_SIZE = 3 * Integer.BYTES + Long.BYTES;
+    static final int AMOUNT_SCALE = 3;
+
+    // The order of the columns in the payload
+    static final int ID = 0, AMOUNT = 1, ORDER = 2, SHOP = 3, BUYER = 4, DATE = 5, COLUMNS = 6;
+
+    private LedgerEncoding() {
+    }
+
+    /**
+     * Represents a growable byte array that the varints are written to.
+     */
+    static class Sink {
+        byte[] bytes;
+        int size;
+
+        Sink(int capacity) {
+            bytes = new byte[Math.max(capacity, 16)];
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        void putVarLong(long value) {
+            ensure(10);
+
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void putZigZag(long value) {
+            putVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void put(Sink other) {
+            ensure(other.size);
+            System.arraycopy(other.bytes, 0, bytes, size, other.size);
+            size += other.size;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+
+    /**
+     * Represents a position in a byte array that the varints are read from.
+     */
+    static class Source {
+        final byte[] bytes;
+        int position;
+
+        Source(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        long getVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+
+            do {
+                b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            return value;
+        }
+
+        long getZigZag() {
+            long value = getVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    /**
+     * Compresses the bytes.
+     *
+     * @param sink the bytes to compress
+     * @return the compressed bytes
+     */
+    static byte[] deflate(Sink sink) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        byte[] output = new byte[sink.size + sink.size / 100 + 64];
+        int length = 0;
+
+        try {
+            deflater.setInput(sink.bytes, 0, sink.size);
+            deflater.finish();
+
+            while (!deflater.finished()) {
+                if (length == output.length) output = Arrays.copyOf(output, output.length * 2);
+                length += deflater.deflate(output, length, output.length - length);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        return Arrays.copyOf(output, length);
+    }
+
+    /**
+     * Decompresses the bytes.
+     *
+     * @param compressed the compressed bytes
+     * @param rawLength  the length of the decompressed bytes
+     * @return the decompressed bytes
+     * @throws IllegalStateException if the bytes are corrupted
+     */
+    static byte[] inflate(byte[] compressed, int rawLength) {
+        Inflater inflater = new Inflater();
+        byte[] raw = new byte[rawLength];
+
+        try {
+            inflater.setInput(compressed);
+
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && inflater.needsInput()) break;
+                length += inflated;
+            }
+
+            if (length != rawLength) throw new IllegalStateException("Corrupted ledger block");
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted ledger block", e);
+        } finally {
+            inflater.end();
+        }
+
+        return raw;
+    }
+}
@@ -0,0 +1,186 @@
+package rs.etf.sab.solution;
+
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps a local stand-in for a read replica, by copying the primary into the replica database over and over,
+ * so that 'ReplicaRouter' can be tried without setting up SQL Server replication.
+ * <p>
+ * Every refresh saves the primary with 'DatabaseSnapshot' in one SNAPSHOT transaction, together with the beats of
+ * 'ReplicaHeartbeat', so the copy is consistent and has all the transactions committed before its beats.
+ * The beats are then removed from the replica, and the routers are given two heartbeats to see that and send
+ * their reads to the primary, before the replica is restored and gets the copied beats.
+ * <p>
+ * The replica is the one of 'ReplicaRouter', e.g. '-Donlineshop.replica.database=OnlineShop_replica', on a second
+ * local instance with '-Donlineshop.replica.port=...'. It must have the schema of 'db/create.sql'; '--provision'
+ * creates it on the primary's server, for a replica on the same instance. The tool runs in its own JVM,
+ * as a restore replaces the cached paths of the sent orders in the JVM it runs in.
+ * <p>
+ * Usage: LocalReplica [--provision] [seconds]
+ */
+public class LocalReplica {
+    private final Connection primary;
+    private final Connection replica;
+
+    /**
+     * Creates the stand-in over the given connections.
+     *
+     * @param primary the connection to the primary database
+     * @param replica the connection to the replica database
+     */
+    public LocalReplica(Connection primary, Connection replica) {
+        this.primary = primary;
+        this.replica = replica;
+    }
+
+    /**
+     * Runs the refreshes until the JVM is stopped.
+     *
+     * @param args '--provision' to create the replica on the primary's server, and the seconds between refreshes
+     * @throws InterruptedException if interrupted while waiting for the next refresh
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (!ReplicaRouter.isEnabled()) {
+            System.out.println("Usage: java -Donlineshop.replica.database=... LocalReplica [--provision] [seconds]");
+            return;
+        }
+
+        boolean provision = args.length > 0 && args[0].equals("--provision");
+        int seconds = args.length > (provision ? 1 : 0) ? Integer.parseInt(args[args.length - 1]) : 5;
+
+        if (provision) {
+            DatabaseProvisioner provisioner = new DatabaseProvisioner(Path.of("db", "create.sql"));
+            provisioner.provision(System.getProperty("onlineshop.replica.database"));
+        }
+
+        try (
+                Connection primary = DB.getInstance().newConnection();
+                Connection replica = ReplicaRouter.openReplicaConnection()
+        ) {
+            replica.setReadOnly(false);
+            LocalReplica localReplica = new LocalReplica(primary, replica);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                long start = System.nanoTime();
+                long rows = localReplica.refresh();
+
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                System.out.printf("Refreshed the replica with %d rows in %.1f s%n", rows, elapsed);
+                Thread.sleep(seconds * 1000L);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Copies the primary into the replica.
+     *
+     * @return the number of copied rows
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     * @throws UncheckedIOException if the snapshot file can not be written or read
+     * @throws InterruptedException if interrupted while waiting for the routers
+     */
+    public long refresh() throws InterruptedException {
+        Path file = null;
+
+        try {
+            file = Files.createTempFile("replica", ".snapshot");
+
+            Map<String, Timestamp> beats = save(file);
+
+            try (Statement st = replica.createStatement()) {
+                st.executeUpdate("DELETE FROM ReplicaHeartbeat");
+            }
+            Thread.sleep(2 * ReplicaRouter.HEARTBEAT_MILLIS);
+
+            long rows = new DatabaseSnapshot(replica).restore(file);
+            writeBeats(beats);
+
+            return rows;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    System.err.println("Could not delete " + file + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves the primary and reads its beats, in one SNAPSHOT transaction.
+     *
+     * @param file the snapshot file
+     * @return the beats of the nodes, by node
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    private Map<String, Timestamp> save(Path file) throws SQLException {
+        String query = "SELECT Node, Beat FROM ReplicaHeartbeat";
+        Map<String, Timestamp> beats = new LinkedHashMap<>();
+        int isolation = primary.getTransactionIsolation();
+
+        primary.setTransactionIsolation(SQLServerConnection.TRANSACTION_SNAPSHOT);
+        primary.setAutoCommit(false);
+
+        try {
+            try (
+                    PreparedStatement ps = primary.prepareStatement(query);
+                    ResultSet rs = ps.executeQuery()
+            ) {
+                while (rs.next()) {
+                    beats.put(rs.getString(1), rs.getTimestamp(2));
+                }
+            }
+
+            new DatabaseSnapshot(primary).save(file);
+            primary.commit();
+        } catch (SQLException | RuntimeException e) {
+            primary.rollback();
+            throw e;
+        } finally {
+            primary.setAutoCommit(true);
+            primary.setTransactionIsolation(isolation);
+        }
+
+        return beats;
+    }
+
+    /**
+     * Writes the copied beats into the replica.
+     *
+     * @param beats the beats of the nodes, by node
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    private void writeBeats(Map<String, Timestamp> beats) throws SQLException {
+        String query = "INSERT INTO ReplicaHeartbeat (Node, Beat) VALUES (?, ?)";
+
+        try (PreparedStatement ps = replica.prepareStatement(query)) {
+            for (Map.Entry<String, Timestamp> beat : beats.entrySet()) {
+                ps.setString(1, beat.getKey());
+                ps.setTimestamp(2, beat.getValue());
+                ps.addBatch();
+            }
+
+            ps.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.*;
+
+import java.sql.Connection;
+
+/**
+ * Groups the seven operations of one engine, so that the generators, drivers and benchmarks
+ * can run against the database or the in-memory engine alike.
+ */
+public class Marketplace {
+    private final ArticleOperations articles;
+    private final BuyerOperations buyers;
+    private final CityOperations cities;
+    private final GeneralOperations general;
+    private final OrderOperations orders;
+    private final ShopOperations shops;
+    private final TransactionOperations transactions;
+
+    /**
+     * Creates the group of the given operations.
+     *
+     * @param articles     the article operations
+     * @param buyers       the buyer operations
+     * @param cities       the city operations
+     * @param general      the general operations
+     * @param orders       the order operations
+     * @param shops        the shop operations
+     * @param transactions the transaction operations
+     */
+    public Marketplace(
+            ArticleOperations articles,
+            BuyerOperations buyers,
+            CityOperations cities,
+            GeneralOperations general,
+            OrderOperations orders,
+            ShopOperations shops,
+            TransactionOperations transactions
+    ) {
+        this.articles = articles;
+        this.buyers = buyers;
+        this.cities = cities;
+        this.general = general;
+        this.orders = orders;
+        this.shops = shops;
+        this.transactions = transactions;
+    }
+
+    /**
+     * Creates the Solution operations over the given database connection, instrumented if the metrics are enabled.
+     *
+     * @param c the database connection to use
+     * @return the operations
+     */
+    public static Marketplace database(Connection c) {
+        return new Marketplace(
+                Metrics.instrument(ArticleOperations.class, new SolutionArticleOperations(c)),
+                Metrics.instrument(BuyerOperations.class, new SolutionBuyerOperations(c)),
+                Metrics.instrument(CityOperations.class, new SolutionCityOperations(c)),
+                Metrics.instrument(GeneralOperations.class, new SolutionGeneralOperations(c)),
+                Metrics.instrument(OrderOperations.class, new SolutionOrderOperations(c)),
+                Metrics.instrument(ShopOperations.class, new SolutionShopOperations(c)),
+                Metrics.instrument(TransactionOperations.class, new SolutionTransactionOperations(c))
+        );
+    }
+
+    /**
+     * Creates the Memory operations over the given store.
+     *
+     * @param store the in-memory store to use
+     * @return the operations
+     */
+    public static Marketplace memory(MemoryStore store) {
+        return new Marketplace(
+                new MemoryArticleOperations(store),
+                new MemoryBuyerOperations(store),
+                new MemoryCityOperations(store),
+                new MemoryGeneralOperations(store),
+                new MemoryOrderOperations(store),
+                new MemoryShopOperations(store),
+                new MemoryTransactionOperations(store)
+        );
+    }
+
+    /**
+     * Retrieves the article operations.
+     *
+     * @return the article operations
+     */
+    public ArticleOperations getArticleOperations() {
+        return articles;
+    }
+
+    /**
+     * Retrieves the buyer operations.
+     *
+     * @return the buyer operations
+     */
+    public BuyerOperations getBuyerOperations() {
+        return buyers;
+    }
+
+    /**
+     * Retrieves the city operations.
+     *
+     * @return the city operations
+     */
+    public CityOperations getCityOperations() {
+        return cities;
+    }
+
+    /**
+     * Retrieves the general operations.
+     *
+     * @return the general operations
+     */
+    public GeneralOperations getGeneralOperations() {
+        return general;
+    }
+
+    /**
+     * Retrieves the order operations.
+     *
+     * @return the order operations
+     */
+    public OrderOperations getOrderOperations() {
+        return orders;
+    }
+
+    /**
+     * Retrieves the shop operations.
+     *
+     * @return the shop operations
+     */
+    public ShopOperations getShopOperations() {
+        return shops;
+    }
+
+    /**
+     * Retrieves the transaction operations.
+     *
+     * @return the transaction operations
+     */
+    public TransactionOperations getTransactionOperations() {
+        return transactions;
+    }
+}
@@ -0,0 +1,35 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.ArticleOperations;
+
+/**
+ * Implements the ArticleOperations interface over the in-memory store, with the results of 'SolutionArticleOperations'.
+ */
+public class MemoryArticleOperations implements ArticleOperations {
+    private final MemoryStore store;
+
+    /**
+     * Creates the operations over the given store.
+     *
+     * @param store the in-memory store to use
+     */
+    public MemoryArticleOperations(MemoryStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Creates an article with the specified details and quantity equal to zero and associates it with the given shop.
+     *
+     * @param idShop       the ID of the shop to associate the article with
+     * @param articleName  the name of the article
+     * @param articlePrice the price of the article
+     * @return the ID of the created article, or -1 otherwise
+     * @throws RuntimeException if the price is negative
+     */
+    @Override
+    public int createArticle(int idShop, String articleName, int articlePrice) {
+        if (!store.shopExists(idShop)) return -1;
+
+        return store.insertArticle(idShop, articleName, articlePrice * 1000L);
+    }
+}
@@ -0,0 +1,112 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.BuyerOperations;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Implements the BuyerOperations interface over the in-memory store, with the results of 'SolutionBuyerOperations'.
+ */
+public class MemoryBuyerOperations implements BuyerOperations {
+    private final MemoryStore store;
+
+    /**
+     * Creates the operations over the given store.
+     *
+     * @param store the in-memory store to use
+     */
+    public MemoryBuyerOperations(MemoryStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Creates a new buyer with the given buyerName, idCity, and balance equal to zero.
+     *
+     * @param buyerName the name of the buyer
+     * @param idCity    the ID of the city
+     * @return the ID of the created buyer, or -1 otherwise
+     */
+    @Override
+    public int createBuyer(String buyerName, int idCity) {
+        if (!store.cityExists(idCity)) return -1;
+
+        return store.insertBuyer(buyerName, idCity);
+    }
+
+    /**
+     * Sets the city of the buyer with the given idBuyer to the given idCity.
+     *
+     * @param idBuyer the ID of the buyer
+     * @param idCity  the ID of the city
+     * @return 1 if the city is set successfully, or -1 otherwise
+     */
+    @Override
+    public int setCity(int idBuyer, int idCity) {
+        if (!store.cityExists(idCity) || !store.buyerExists(idBuyer)) return -1;
+
+        store.buyerCity[idBuyer] = idCity;
+        return 1;
+    }
+
+    /**
+     * Retrieves the ID of the city for the buyer with the given idBuyer.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return the ID of the city, or -1 otherwise
+     */
+    @Override
+    public int getCity(int idBuyer) {
+        return store.buyerExists(idBuyer) ? store.buyerCity[idBuyer] : -1;
+    }
+
+    /**
+     * Increases the credit of the buyer with the given idBuyer by the specified credit amount.
+     *
+     * @param idBuyer the ID of the buyer
+     * @param credit  the credit amount to increase
+     * @return the updated balance of the buyer, or null otherwise
+     */
+    @Override
+    public BigDecimal increaseCredit(int idBuyer, BigDecimal credit) {
+        if (!store.buyerExists(idBuyer)) return null;
+
+        store.buyerBalance[idBuyer] = MemoryStore.toMoney(MemoryStore.toDecimal(store.buyerBalance[idBuyer]).add(credit));
+        return MemoryStore.toDecimal(store.buyerBalance[idBuyer]);
+    }
+
+    /**
+     * Creates a new empty order for the buyer with the given idBuyer.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return the ID of the created order, or -1 otherwise
+     */
+    @Override
+    public int createOrder(int idBuyer) {
+        if (!store.buyerExists(idBuyer)) return -1;
+
+        return store.insertOrder(idBuyer);
+    }
+
+    /**
+     * Retrieves all orders of the buyer with the given idBuyer.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return a list of order IDs, or null otherwise
+     */
+    @Override
+    public List<Integer> getOrders(int idBuyer) {
+        return store.buyerExists(idBuyer) ? store.buyerOrders[idBuyer].toListOrNull() : null;
+    }
+
+    /**
+     * Retrieves the credit balance of the buyer with the given idBuyer.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return the credit balance of the buyer, or null otherwise
+     */
+    @Override
+    public BigDecimal getCredit(int idBuyer) {
+        return store.buyerExists(idBuyer) ? MemoryStore.toDecimal(store.buyerBalance[idBuyer]) : null;
+    }
+}
@@ -0,0 +1,114 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.CityOperations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Implements the CityOperations interface over the in-memory store, with the results of 'SolutionCityOperations'.
+ */
+public class MemoryCityOperations implements CityOperations {
+    private final MemoryStore store;
+
+    /**
+     * Creates the operations over the given store.
+     *
+     * @param store the in-memory store to use
+     */
+    public MemoryCityOperations(MemoryStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Creates a new city with the specified unique name.
+     *
+     * @param cityName the name of the city to create
+     * @return the ID of the newly created city, or -1 otherwise
+     */
+    @Override
+    public int createCity(String cityName) {
+        if (store.cityIdByName.containsKey(cityName)) return -1;
+
+        return store.insertCity(cityName);
+    }
+
+    /**
+     * Retrieves a list of all city IDs.
+     *
+     * @return a list of all city IDs, or null otherwise
+     */
+    @Override
+    public List<Integer> getCities() {
+        List<Integer> allCities = new ArrayList<>(store.cityCount);
+
+        for (int id = 1; id <= store.cityCount; id++) {
+            if (store.cityExists(id)) allCities.add(id);
+        }
+
+        return allCities.isEmpty() ? null : allCities;
+    }
+
+    /**
+     * Connects two cities with the given IDs and sets the distance between them.
+     * There can be max one line between cities.
+     * <p>
+     * 'Line' has no ID, so the returned value is the position of the line in the order of creation, plus one.
+     *
+     * @param idCity1  the ID of the first city
+     * @param idCity2  the ID of the second city
+     * @param distance the distance between the cities (measured in days)
+     * @return the position of the newly created connection, or -1 otherwise
+     * @throws RuntimeException if the distance is negative or a city does not exist
+     */
+    @Override
+    public int connectCities(int idCity1, int idCity2, int distance) {
+        if (store.lineExists(idCity1, idCity2)) return -1;
+
+        return store.insertLine(idCity1, idCity2, distance) + 1;
+    }
+
+    /**
+     * Retrieves a list of IDs of cities connected to the specified city.
+     *
+     * @param idCity the ID of the specified city
+     * @return a list of IDs of cities connected to the specified city, or null otherwise
+     */
+    @Override
+    public List<Integer> getConnectedCities(int idCity) {
+        if (!store.cityExists(idCity)) return null;
+
+        List<Integer> allConnectedCities = new ArrayList<>();
+
+        for (int line : store.linesInKeyOrder(idCity)) {
+            int id1 = store.lineId1[line];
+            int id2 = store.lineId2[line];
+
+            allConnectedCities.add((id1 == idCity) ? id2 : id1);
+        }
+
+        return allConnectedCities.isEmpty() ? null : allConnectedCities;
+    }
+
+    /**
+     * Retrieves a list of shop IDs in the specified city, in ascending order.
+     *
+     * @param idCity the ID of the specified city
+     * @return a list of shop IDs in the specified city, or null otherwise
+     */
+    @Override
+    public List<Integer> getShops(int idCity) {
+        if (!store.cityExists(idCity)) return null;
+
+        MemoryIntList shops = store.cityShops[idCity];
+        int[] shopsInCity = new int[shops.size()];
+
+        for (int i = 0; i < shopsInCity.length; i++) {
+            shopsInCity[i] = shops.get(i);
+        }
+        Arrays.sort(shopsInCity); // 'setCity()' of a shop appends it to the end
+
+        return shopsInCity.length == 0 ? null : Arrays.stream(shopsInCity).boxed().toList();
+    }
+}
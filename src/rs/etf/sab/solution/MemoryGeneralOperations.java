@@ -0,0 +1,65 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.GeneralOperations;
+
+import java.util.Calendar;
+
+/**
+ * Implements the GeneralOperations interface over the in-memory store, with the results of 'SolutionGeneralOperations'.
+ * The current time is kept by the store, so every store has its own clock.
+ */
+public class MemoryGeneralOperations implements GeneralOperations {
+    private final MemoryStore store;
+
+    /**
+     * Creates the operations over the given store.
+     *
+     * @param store the in-memory store to use
+     */
+    public MemoryGeneralOperations(MemoryStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Sets the initial time to the given calendar object.
+     *
+     * @param calendar the calendar object representing the initial time
+     */
+    @Override
+    public void setInitialTime(Calendar calendar) {
+        store.currentDateTime.setTimeInMillis(calendar.getTimeInMillis());
+    }
+
+    /**
+     * Adds the specified number of days to the current time.
+     * The sent orders that have arrived by then are set to 'arrived', and the shops are paid for them.
+     *
+     * @param numberOfDays the number of days to add
+     * @return the updated current time
+     */
+    @Override
+    public Calendar time(int numberOfDays) {
+        store.currentDateTime.add(Calendar.DAY_OF_MONTH, numberOfDays);
+
+        store.arriveOrders();
+        return store.currentDateTime;
+    }
+
+    /**
+     * Returns the current time as a Calendar object.
+     *
+     * @return the current time
+     */
+    @Override
+    public Calendar getCurrentTime() {
+        return (Calendar) store.currentDateTime.clone();
+    }
+
+    /**
+     * Erases all the data of the store. The IDs start from 1 again.
+     */
+    @Override
+    public void eraseAll() {
+        store.erase();
+    }
+}
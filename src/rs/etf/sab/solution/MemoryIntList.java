@@ -0,0 +1,76 @@
+package rs.etf.sab.solution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Represents a growable list of unboxed integers, used for the per-row ID lists of 'MemoryStore'.
+ */
+class MemoryIntList {
+    private int[] values = new int[4];
+    private int size = 0;
+
+    /**
+     * Appends the value to the end of the list.
+     *
+     * @param value the value
+     */
+    void add(int value) {
+        if (size == values.length) values = Arrays.copyOf(values, size * 2);
+        values[size++] = value;
+    }
+
+    /**
+     * Removes the first occurrence of the value, keeping the order of the other values.
+     *
+     * @param value the value
+     * @return true if the value was removed, or false if it was not in the list
+     */
+    boolean remove(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                System.arraycopy(values, i + 1, values, i, size - i - 1);
+                size--;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Retrieves the value at the given position.
+     *
+     * @param index the position
+     * @return the value
+     */
+    int get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Retrieves the number of values in the list.
+     *
+     * @return the number of values
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Converts the list to a list of boxed integers, as returned by the operations interfaces.
+     *
+     * @return the boxed list, or null if the list is empty
+     */
+    List<Integer> toListOrNull() {
+        if (size == 0) return null;
+
+        List<Integer> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(values[i]);
+        }
+
+        return list;
+    }
+}
@@ -0,0 +1,279 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.OrderOperations;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implements the OrderOperations interface over the in-memory store, with the results of 'SolutionOrderOperations'.
+ * The nearest city and the path to the buyer are found with the same 'DijkstraAlgorithm', over the store's lines.
+ */
+public class MemoryOrderOperations implements OrderOperations {
+    private final MemoryStore store;
+
+    /**
+     * Creates the operations over the given store.
+     *
+     * @param store the in-memory store to use
+     */
+    public MemoryOrderOperations(MemoryStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Adds an article to an order, only if there are sufficient quantities available in the shop.
+     * If the article is already included in the order, it increases the quantity of the ordered article.
+     *
+     * @param idOrder   the ID of the order
+     * @param idArticle the ID of the article
+     * @param quantity  the quantity of the article
+     * @return the ID of the newly added item if successful, or -1 otherwise
+     */
+    @Override
+    public int addArticle(int idOrder, int idArticle, int quantity) {
+        if (quantity <= 0 || !MemoryStore.STATUS[MemoryStore.CREATED].equals(getState(idOrder))) return -1;
+
+        int availableQuantity = store.articleExists(idArticle) ? store.articleQuantity[idArticle] : 0;
+        int idItem = findItem(idOrder, idArticle);
+        int existingItemQuantity = idItem == -1 ? 0 : store.itemQuantity[idItem];
+
+        if (availableQuantity < existingItemQuantity + quantity) return -1;
+
+        if (idItem == -1) return store.insertItem(idOrder, idArticle, quantity);
+
+        store.itemQuantity[idItem] += quantity;
+        return idItem;
+    }
+
+    /**
+     * Removes an article from an order, only while the order is in the 'created' state.
+     *
+     * @param idOrder   the ID of the order
+     * @param idArticle the ID of the article
+     * @return 1 if successful, or -1 otherwise
+     */
+    @Override
+    public int removeArticle(int idOrder, int idArticle) {
+        if (!MemoryStore.STATUS[MemoryStore.CREATED].equals(getState(idOrder))) return -1;
+
+        int idItem = findItem(idOrder, idArticle);
+        if (idItem == -1) return -1;
+
+        store.deleteItem(idItem);
+        return 1;
+    }
+
+    /**
+     * Retrieves all items in an order.
+     *
+     * @param idOrder the ID of the order
+     * @return a list of item IDs if items exist, or null otherwise
+     */
+    @Override
+    public List<Integer> getItems(int idOrder) {
+        return store.orderExists(idOrder) ? store.orderItems[idOrder].toListOrNull() : null;
+    }
+
+    /**
+     * Completes an order.
+     * <p>
+     * It reduces the quantity of each article by the quantity request in the order,
+     * sets all the required fields when completing the order,
+     * withdraws money from the buyer's account and creates transaction for money withdrawal.
+     *
+     * @param idOrder the ID of the order
+     * @return 1 if successful, or -1 otherwise
+     */
+    @Override
+    public int completeOrder(int idOrder) {
+        if (!MemoryStore.STATUS[MemoryStore.CREATED].equals(getState(idOrder))) return -1;
+        if (store.orderItems[idOrder].size() == 0) return -1;
+
+        int idBuyer = store.orderBuyer[idOrder];
+        if (store.buyerBalance[idBuyer] * 100 < store.shopDiscountedSum(idOrder, MemoryStore.NULL)) return -1;
+
+        // Reduce the quantity of each article by the quantity requested in the order
+        MemoryIntList items = store.orderItems[idOrder];
+        for (int i = 0; i < items.size(); i++) {
+            int idItem = items.get(i);
+            int idArticle = store.itemArticle[idItem];
+
+            store.setArticleQuantity(idArticle, store.articleQuantity[idArticle] - store.itemQuantity[idItem]);
+        }
+
+        // Set all the required fields when completing the order
+        DijkstraAlgorithm da = new DijkstraAlgorithm(store.graph());
+        store.orderPath[idOrder] = da.dijkstraAlgorithm(store.buyerCity[idBuyer], idOrder)
+                .stream()
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        Calendar dateTime = (Calendar) store.currentDateTime.clone();
+        long dateSent = MemoryStore.toDatetime(dateTime.getTimeInMillis());
+
+        int daysToAssemble = da.getMaxDistanceToNearestCity();
+        dateTime.add(Calendar.DAY_OF_MONTH, daysToAssemble);
+        long dateNearest = MemoryStore.toDatetime(dateTime.getTimeInMillis());
+
+        dateTime.add(Calendar.DAY_OF_MONTH, da.getMinDistanceFromBuyerToNearestCity());
+        long dateArrived = MemoryStore.toDatetime(dateTime.getTimeInMillis());
+
+        store.orderStatus[idOrder] = MemoryStore.SENT;
+        store.orderDateSent[idOrder] = dateSent;
+        store.orderDateNearest[idOrder] = dateNearest;
+        store.orderDateArrived[idOrder] = dateArrived;
+        store.orderDaysToAssemble[idOrder] = daysToAssemble;
+        store.orderNearestCity[idOrder] = da.getIdNearestCity();
+        store.sentOrders.add(idOrder);
+
+        // Withdraw money from the buyer's account and create the transaction for it
+        long amount = store.orderDiscountedPrice[idOrder] == MemoryStore.NULL_MONEY
+                ? store.calculateFinalPrice(idOrder)
+                : store.orderDiscountedPrice[idOrder];
+
+        store.buyerBalance[idBuyer] -= amount;
+        store.insertTransaction(dateSent, amount, idOrder, MemoryStore.NULL, idBuyer);
+
+        return 1;
+    }
+
+    /**
+     * Retrieves the final price of an order after all the discounts.
+     * It is calculated on the first call and stored, like 'SP_FINAL_PRICE' does.
+     *
+     * @param idOrder the ID of the order
+     * @return the final price if successful, or -1 otherwise
+     */
+    @Override
+    public BigDecimal getFinalPrice(int idOrder) {
+        if (!store.orderExists(idOrder)) return BigDecimal.valueOf(-1).setScale(3);
+
+        long discountedPrice = store.orderDiscountedPrice[idOrder];
+        if (discountedPrice == MemoryStore.NULL_MONEY) discountedPrice = store.calculateFinalPrice(idOrder);
+
+        return discountedPrice == MemoryStore.NULL_MONEY
+                ? BigDecimal.valueOf(-1).setScale(3) // The order has no items
+                : MemoryStore.toDecimal(discountedPrice);
+    }
+
+    /**
+     * Retrieves the discount sum of an order.
+     *
+     * @param idOrder the ID of the order
+     * @return the discount sum if successful, or -1 otherwise
+     */
+    @Override
+    public BigDecimal getDiscountSum(int idOrder) {
+        if (!store.orderExists(idOrder) || store.orderStatus[idOrder] == MemoryStore.CREATED) {
+            return BigDecimal.valueOf(-1).setScale(3);
+        }
+
+        return MemoryStore.toDecimal(store.orderTotalPrice[idOrder] - store.orderDiscountedPrice[idOrder]);
+    }
+
+    /**
+     * Retrieves the status of an order.
+     *
+     * @param idOrder the ID of the order
+     * @return the state of the order if successful, or null otherwise
+     */
+    @Override
+    public String getState(int idOrder) {
+        return store.orderExists(idOrder) ? MemoryStore.STATUS[store.orderStatus[idOrder]] : null;
+    }
+
+    /**
+     * Retrieves the sent time of an order.
+     *
+     * @param idOrder the ID of the order
+     * @return the sent time of the order if successful, or null otherwise
+     */
+    @Override
+    public Calendar getSentTime(int idOrder) {
+        return store.orderExists(idOrder) ? MemoryStore.toCalendar(store.orderDateSent[idOrder]) : null;
+    }
+
+    /**
+     * Retrieves the received time of an order.
+     *
+     * @param idOrder the ID of the order
+     * @return the received time of the order if successful, or null otherwise
+     */
+    @Override
+    public Calendar getRecievedTime(int idOrder) {
+        if (!store.orderExists(idOrder) || store.orderStatus[idOrder] != MemoryStore.ARRIVED) return null;
+
+        return MemoryStore.toCalendar(store.orderDateArrived[idOrder]);
+    }
+
+    /**
+     * Retrieves the buyer of an order.
+     *
+     * @param idOrder the ID of the order
+     * @return the ID of the buyer if successful, or -1 otherwise
+     */
+    @Override
+    public int getBuyer(int idOrder) {
+        return store.orderExists(idOrder) ? store.orderBuyer[idOrder] : -1;
+    }
+
+    /**
+     * Retrieves the location of an order.
+     * <p>
+     * If order is assembled and order is moving from city C1 to city C2 then location of an order is city C1.
+     * If order is not yet assembled then location of the order is location of the shop closest to buyer's city.
+     * If order is in state "created" then location is -1.
+     *
+     * @param idOrder the ID of the order
+     * @return the ID of the location if successful, or -1 otherwise
+     */
+    @Override
+    public int getLocation(int idOrder) {
+        if (!store.orderExists(idOrder) || store.orderStatus[idOrder] == MemoryStore.CREATED) return -1;
+
+        // Order has arrived
+        if (store.orderStatus[idOrder] == MemoryStore.ARRIVED) return store.buyerCity[store.orderBuyer[idOrder]];
+
+        // Situation 1: If order is not yet assembled then location of the order is the nearest city
+        int idCity = store.orderNearestCity[idOrder];
+        long dateTimeNearest = store.orderDateNearest[idOrder];
+        long dateTimeCurrent = store.currentDateTime.getTimeInMillis();
+
+        if (dateTimeNearest < dateTimeCurrent) {
+            // Situation 2: Order is somewhere between the nearest city and the buyer city
+            long diffInDays = TimeUnit.DAYS.convert(dateTimeCurrent - dateTimeNearest, TimeUnit.MILLISECONDS);
+            int[] path = store.orderPath[idOrder];
+
+            for (int i = 0; i < path.length - 1; i++) {
+                int distance = store.getDistances().get(path[i]).get(path[i + 1]);
+
+                if (distance > diffInDays) break;
+
+                diffInDays -= distance;
+                idCity = path[i] == idCity ? path[i + 1] : path[i];
+            }
+        }
+
+        return idCity;
+    }
+
+    /**
+     * Finds the item of the order with the given article.
+     *
+     * @param idOrder   the ID of the order
+     * @param idArticle the ID of the article
+     * @return the ID of the item, or -1 otherwise
+     */
+    private int findItem(int idOrder, int idArticle) {
+        MemoryIntList items = store.orderItems[idOrder];
+
+        for (int i = 0; i < items.size(); i++) {
+            if (store.itemArticle[items.get(i)] == idArticle) return items.get(i);
+        }
+
+        return -1;
+    }
+}
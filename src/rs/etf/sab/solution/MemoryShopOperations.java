@@ -0,0 +1,140 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.ShopOperations;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Implements the ShopOperations interface over the in-memory store, with the results of 'SolutionShopOperations'.
+ */
+public class MemoryShopOperations implements ShopOperations {
+    private final MemoryStore store;
+
+    /**
+     * Creates the operations over the given store.
+     *
+     * @param store the in-memory store to use
+     */
+    public MemoryShopOperations(MemoryStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Creates a new shop with the specified unique name and city, and with 0% discount.
+     *
+     * @param shopName the name of the shop
+     * @param cityName the name of the city
+     * @return the ID of the newly created shop, or -1 otherwise
+     */
+    @Override
+    public int createShop(String shopName, String cityName) {
+        Integer idCity = store.cityIdByName.get(cityName);
+
+        if (store.shopIdByName.containsKey(shopName) || idCity == null) return -1;
+
+        return store.insertShop(shopName, idCity);
+    }
+
+    /**
+     * Sets the city of the specified shop.
+     *
+     * @param idShop   the ID of the shop
+     * @param cityName the name of the city
+     * @return 1 if the city is set, or -1 otherwise
+     */
+    @Override
+    public int setCity(int idShop, String cityName) {
+        Integer idCity = store.cityIdByName.get(cityName);
+
+        if (idCity == null || !store.shopExists(idShop)) return -1;
+
+        store.moveShop(idShop, idCity);
+        return 1;
+    }
+
+    /**
+     * Retrieves the city ID associated with the specified shop.
+     *
+     * @param idShop the ID of the shop
+     * @return the ID of the city associated with the shop, or -1 otherwise
+     */
+    @Override
+    public int getCity(int idShop) {
+        return store.shopExists(idShop) ? store.shopCity[idShop] : -1;
+    }
+
+    /**
+     * Sets the discount percentage for the specified shop.
+     *
+     * @param idShop             the ID of the shop
+     * @param discountPercentage the discount percentage to set
+     * @return 1 if the discount is set, or -1 otherwise
+     */
+    @Override
+    public int setDiscount(int idShop, int discountPercentage) {
+        if (discountPercentage < 0 || discountPercentage > 100 || !store.shopExists(idShop)) return -1;
+
+        store.shopDiscount[idShop] = discountPercentage;
+        return 1;
+    }
+
+    /**
+     * Increases the article count of the specified article.
+     *
+     * @param idArticle the ID of the article
+     * @param increment the amount to increase the article count by
+     * @return the new article count, or -1 otherwise
+     * @throws RuntimeException if the new article count would be negative
+     */
+    @Override
+    public int increaseArticleCount(int idArticle, int increment) {
+        if (!store.articleExists(idArticle)) return -1;
+
+        store.setArticleQuantity(idArticle, store.articleQuantity[idArticle] + increment);
+        return store.articleQuantity[idArticle];
+    }
+
+    /**
+     * Retrieves the article count for the specified article.
+     *
+     * @param idArticle the ID of the article
+     * @return the article count, or -1 otherwise
+     */
+    @Override
+    public int getArticleCount(int idArticle) {
+        return store.articleExists(idArticle) ? store.articleQuantity[idArticle] : -1;
+    }
+
+    /**
+     * Retrieves the list of articles associated with the specified shop.
+     *
+     * @param idShop the ID of the shop
+     * @return the list of article IDs, or null otherwise
+     */
+    @Override
+    public List<Integer> getArticles(int idShop) {
+        return store.shopExists(idShop) ? store.shopArticles[idShop].toListOrNull() : null;
+    }
+
+    /**
+     * Retrieves the discount percentage for the specified shop.
+     *
+     * @param idShop the ID of the shop
+     * @return the discount percentage, or -1 otherwise
+     */
+    @Override
+    public int getDiscount(int idShop) {
+        return store.shopExists(idShop) ? store.shopDiscount[idShop] : -1;
+    }
+
+    /**
+     * Retrieves the account balance of the specified shop.
+     *
+     * @param idShop the ID of the shop
+     * @return the account balance of the shop, or -1 otherwise
+     */
+    public BigDecimal getBalance(int idShop) {
+        return store.shopExists(idShop) ? MemoryStore.toDecimal(store.shopBalance[idShop]) : BigDecimal.valueOf(-1).setScale(3);
+    }
+}
@@ -0,0 +1,968 @@
+package rs.etf.sab.solution;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Holds all the data of the in-memory engine, and implements the stored procedure and the trigger of 'create.sql'.
+ * <p>
+ * Every table is a set of arrays indexed by the ID of the row, so the IDs start from 1 like the identity columns.
+ * The nullable integer columns use -1 for NULL. The money columns are stored as longs in thousandths,
+ * the scale of 'DECIMAL(10,3)', and rounded half up wherever SQL Server rounds them.
+ * The dates are stored as milliseconds, rounded like 'datetime'.
+ * <p>
+ * The store is not thread-safe. It is shared by the Memory operations classes, which have to be used
+ * from one thread at a time.
+ */
+public class MemoryStore {
+    static final int NULL = -1;
+    static final long NULL_MONEY = Long.MIN_VALUE;
+    static final long NULL_DATE = Long.MIN_VALUE;
+
+    static final byte CREATED = 0, SENT = 1, ARRIVED = 2;
+    static final String[] STATUS = {"created", "sent", "arrived"};
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // 'SP_FINAL_PRICE': a payment over 10000 in the last 30 days gives the buyer a 2% discount
+    private static final long DISCOUNT_THRESHOLD = 10_000_000;
+    private static final int DISCOUNT_DAYS = 30;
+
+    final Calendar currentDateTime = Calendar.getInstance();
+
+    // City
+    int cityCount;
+    String[] cityName;
+    MemoryIntList[] cityShops;
+    MemoryIntList[] cityLines;
+    HashMap<String, Integer> cityIdByName;
+
+    // Line, indexed by the order of creation as it has no ID
+    int lineCount;
+    int[] lineId1;
+    int[] lineId2;
+    int[] lineDistance;
+    HashSet<Long> lineKeys;
+    private HashMap<Integer, HashMap<Integer, Integer>> distances;
+
+    // Shop
+    int shopCount;
+    String[] shopName;
+    int[] shopCity;
+    int[] shopDiscount;
+    long[] shopBalance;
+    MemoryIntList[] shopArticles;
+    MemoryIntList[] shopTransactions;
+    HashMap<String, Integer> shopIdByName;
+
+    // Article
+    int articleCount;
+    String[] articleName;
+    int[] articleShop;
+    long[] articlePrice;
+    int[] articleQuantity;
+
+    // Buyer
+    int buyerCount;
+    String[] buyerName;
+    int[] buyerCity;
+    long[] buyerBalance;
+    MemoryIntList[] buyerOrders;
+    MemoryIntList[] buyerTransactions;
+
+    // Order
+    int orderCount;
+    byte[] orderStatus;
+    int[] orderBuyer;
+    long[] orderTotalPrice;
+    long[] orderDiscountedPrice;
+    int[] orderBuyerDiscount;
+    long[] orderDateSent;
+    long[] orderDateNearest;
+    long[] orderDateArrived;
+    int[] orderNearestCity;
+    int[] orderDaysToAssemble;
+    int[][] orderPath;
+    MemoryIntList[] orderItems;
+    MemoryIntList[] orderTransactions;
+    MemoryIntList sentOrders;
+
+    // OrderItem
+    int itemCount;
+    int[] itemOrder;
+    int[] itemArticle;
+    int[] itemQuantity;
+
+    // Transaction
+    int transactionCount;
+    long[] transactionAmount;
+    long[] transactionDate;
+    int[] transactionOrder;
+    int[] transactionShop;
+    int[] transactionBuyer;
+
+    /**
+     * Creates an empty store.
+     */
+    public MemoryStore() {
+        erase();
+    }
+
+    /**
+     * Erases all the data and restarts the IDs from 1. The current time is kept, like in 'eraseAll()'.
+     */
+    void erase() {
+        cityCount = 0;
+        cityName = new String[INITIAL_CAPACITY];
+        cityShops = new MemoryIntList[INITIAL_CAPACITY];
+        cityLines = new MemoryIntList[INITIAL_CAPACITY];
+        cityIdByName = new HashMap<>();
+
+        lineCount = 0;
+        lineId1 = new int[INITIAL_CAPACITY];
+        lineId2 = new int[INITIAL_CAPACITY];
+        lineDistance = new int[INITIAL_CAPACITY];
+        lineKeys = new HashSet<>();
+        distances = null;
+
+        shopCount = 0;
+        shopName = new String[INITIAL_CAPACITY];
+        shopCity = new int[INITIAL_CAPACITY];
+        shopDiscount = new int[INITIAL_CAPACITY];
+        shopBalance = new long[INITIAL_CAPACITY];
+        shopArticles = new MemoryIntList[INITIAL_CAPACITY];
+        shopTransactions = new MemoryIntList[INITIAL_CAPACITY];
+        shopIdByName = new HashMap<>();
+
+        articleCount = 0;
+        articleName = new String[INITIAL_CAPACITY];
+        articleShop = new int[INITIAL_CAPACITY];
+        articlePrice = new long[INITIAL_CAPACITY];
+        articleQuantity = new int[INITIAL_CAPACITY];
+
+        buyerCount = 0;
+        buyerName = new String[INITIAL_CAPACITY];
+        buyerCity = new int[INITIAL_CAPACITY];
+        buyerBalance = new long[INITIAL_CAPACITY];
+        buyerOrders = new MemoryIntList[INITIAL_CAPACITY];
+        buyerTransactions = new MemoryIntList[INITIAL_CAPACITY];
+
+        orderCount = 0;
+        orderStatus = new byte[INITIAL_CAPACITY];
+        orderBuyer = new int[INITIAL_CAPACITY];
+        orderTotalPrice = new long[INITIAL_CAPACITY];
+        orderDiscountedPrice = new long[INITIAL_CAPACITY];
+        orderBuyerDiscount = new int[INITIAL_CAPACITY];
+        orderDateSent = new long[INITIAL_CAPACITY];
+        orderDateNearest = new long[INITIAL_CAPACITY];
+        orderDateArrived = new long[INITIAL_CAPACITY];
+        orderNearestCity = new int[INITIAL_CAPACITY];
+        orderDaysToAssemble = new int[INITIAL_CAPACITY];
+        orderPath = new int[INITIAL_CAPACITY][];
+        orderItems = new MemoryIntList[INITIAL_CAPACITY];
+        orderTransactions = new MemoryIntList[INITIAL_CAPACITY];
+        sentOrders = new MemoryIntList();
+
+        itemCount = 0;
+        itemOrder = new int[INITIAL_CAPACITY];
+        itemArticle = new int[INITIAL_CAPACITY];
+        itemQuantity = new int[INITIAL_CAPACITY];
+
+        transactionCount = 0;
+        transactionAmount = new long[INITIAL_CAPACITY];
+        transactionDate = new long[INITIAL_CAPACITY];
+        transactionOrder = new int[INITIAL_CAPACITY];
+        transactionShop = new int[INITIAL_CAPACITY];
+        transactionBuyer = new int[INITIAL_CAPACITY];
+    }
+
+    /* ---------------------------------------------------------------------------------------------------------------
+     * Existence checks, which skip the gaps in the IDs a restored database snapshot can have
+     */
+
+    boolean cityExists(int idCity) {
+        return idCity >= 1 && idCity <= cityCount && cityName[idCity] != null;
+    }
+
+    boolean shopExists(int idShop) {
+        return idShop >= 1 && idShop <= shopCount && shopName[idShop] != null;
+    }
+
+    boolean articleExists(int idArticle) {
+        return idArticle >= 1 && idArticle <= articleCount && articleName[idArticle] != null;
+    }
+
+    boolean buyerExists(int idBuyer) {
+        return idBuyer >= 1 && idBuyer <= buyerCount && buyerName[idBuyer] != null;
+    }
+
+    boolean orderExists(int idOrder) {
+        return idOrder >= 1 && idOrder <= orderCount && orderItems[idOrder] != null;
+    }
+
+    boolean itemExists(int idItem) {
+        return idItem >= 1 && idItem <= itemCount && itemOrder[idItem] > 0;
+    }
+
+    boolean transactionExists(int idTransaction) {
+        return idTransaction >= 1 && idTransaction <= transactionCount && transactionOrder[idTransaction] != 0;
+    }
+
+    /* ---------------------------------------------------------------------------------------------------------------
+     * Inserts, checking the constraints of 'create.sql' like the database does
+     */
+
+    int insertCity(String name) {
+        int id = ++cityCount;
+
+        if (id >= cityName.length) {
+            int capacity = id * 2;
+            cityName = Arrays.copyOf(cityName, capacity);
+            cityShops = Arrays.copyOf(cityShops, capacity);
+            cityLines = Arrays.copyOf(cityLines, capacity);
+        }
+
+        cityName[id] = name;
+        cityShops[id] = new MemoryIntList();
+        cityLines[id] = new MemoryIntList();
+        cityIdByName.putIfAbsent(name, id);
+
+        return id;
+    }
+
+    int insertLine(int idCity1, int idCity2, int distance) {
+        check(distance >= 0, "POSITIVE_VALUE_CHECK_1816472920");
+        check(cityExists(idCity1), "R_10");
+        check(cityExists(idCity2), "R_12");
+
+        int index = lineCount++;
+
+        if (lineCount >= lineId1.length) {
+            int capacity = lineCount * 2;
+            lineId1 = Arrays.copyOf(lineId1, capacity);
+            lineId2 = Arrays.copyOf(lineId2, capacity);
+            lineDistance = Arrays.copyOf(lineDistance, capacity);
+        }
+
+        lineId1[index] = idCity1;
+        lineId2[index] = idCity2;
+        lineDistance[index] = distance;
+        lineKeys.add(lineKey(idCity1, idCity2));
+
+        cityLines[idCity1].add(index);
+        if (idCity2 != idCity1) cityLines[idCity2].add(index);
+
+        distances = null; // The cached lines are stale now
+        return index;
+    }
+
+    int insertShop(String name, int idCity) {
+        int id = ++shopCount;
+
+        if (id >= shopName.length) {
+            int capacity = id * 2;
+            shopName = Arrays.copyOf(shopName, capacity);
+            shopCity = Arrays.copyOf(shopCity, capacity);
+            shopDiscount = Arrays.copyOf(shopDiscount, capacity);
+            shopBalance = Arrays.copyOf(shopBalance, capacity);
+            shopArticles = Arrays.copyOf(shopArticles, capacity);
+            shopTransactions = Arrays.copyOf(shopTransactions, capacity);
+        }
+
+        shopName[id] = name;
+        shopCity[id] = idCity;
+        shopDiscount[id] = 0;
+        shopBalance[id] = 0;
+        shopArticles[id] = new MemoryIntList();
+        shopTransactions[id] = new MemoryIntList();
+        shopIdByName.putIfAbsent(name, id);
+        cityShops[idCity].add(id);
+
+        return id;
+    }
+
+    int insertArticle(int idShop, String name, long price) {
+        check(price >= 0, "POSITIVE_VALUE_CHECK_642198397");
+
+        int id = ++articleCount;
+
+        if (id >= articleName.length) {
+            int capacity = id * 2;
+            articleName = Arrays.copyOf(articleName, capacity);
+            articleShop = Arrays.copyOf(articleShop, capacity);
+            articlePrice = Arrays.copyOf(articlePrice, capacity);
+            articleQuantity = Arrays.copyOf(articleQuantity, capacity);
+        }
+
+        articleName[id] = name;
+        articleShop[id] = idShop;
+        articlePrice[id] = price;
+        articleQuantity[id] = 0;
+        shopArticles[idShop].add(id);
+
+        return id;
+    }
+
+    int insertBuyer(String name, int idCity) {
+        int id = ++buyerCount;
+
+        if (id >= buyerName.length) {
+            int capacity = id * 2;
+            buyerName = Arrays.copyOf(buyerName, capacity);
+            buyerCity = Arrays.copyOf(buyerCity, capacity);
+            buyerBalance = Arrays.copyOf(buyerBalance, capacity);
+            buyerOrders = Arrays.copyOf(buyerOrders, capacity);
+            buyerTransactions = Arrays.copyOf(buyerTransactions, capacity);
+        }
+
+        buyerName[id] = name;
+        buyerCity[id] = idCity;
+        buyerBalance[id] = 0;
+        buyerOrders[id] = new MemoryIntList();
+        buyerTransactions[id] = new MemoryIntList();
+
+        return id;
+    }
+
+    int insertOrder(int idBuyer) {
+        int id = ++orderCount;
+
+        if (id >= orderStatus.length) {
+            int capacity = id * 2;
+            orderStatus = Arrays.copyOf(orderStatus, capacity);
+            orderBuyer = Arrays.copyOf(orderBuyer, capacity);
+            orderTotalPrice = Arrays.copyOf(orderTotalPrice, capacity);
+            orderDiscountedPrice = Arrays.copyOf(orderDiscountedPrice, capacity);
+            orderBuyerDiscount = Arrays.copyOf(orderBuyerDiscount, capacity);
+            orderDateSent = Arrays.copyOf(orderDateSent, capacity);
+            orderDateNearest = Arrays.copyOf(orderDateNearest, capacity);
+            orderDateArrived = Arrays.copyOf(orderDateArrived, capacity);
+            orderNearestCity = Arrays.copyOf(orderNearestCity, capacity);
+            orderDaysToAssemble = Arrays.copyOf(orderDaysToAssemble, capacity);
+            orderPath = Arrays.copyOf(orderPath, capacity);
+            orderItems = Arrays.copyOf(orderItems, capacity);
+            orderTransactions = Arrays.copyOf(orderTransactions, capacity);
+        }
+
+        orderStatus[id] = CREATED;
+        orderBuyer[id] = idBuyer;
+        orderTotalPrice[id] = NULL_MONEY;
+        orderDiscountedPrice[id] = NULL_MONEY;
+        orderBuyerDiscount[id] = 0;
+        orderDateSent[id] = NULL_DATE;
+        orderDateNearest[id] = NULL_DATE;
+        orderDateArrived[id] = NULL_DATE;
+        orderNearestCity[id] = NULL;
+        orderDaysToAssemble[id] = NULL;
+        orderPath[id] = null;
+        orderItems[id] = new MemoryIntList();
+        orderTransactions[id] = new MemoryIntList();
+        buyerOrders[idBuyer].add(id);
+
+        return id;
+    }
+
+    int insertItem(int idOrder, int idArticle, int quantity) {
+        check(quantity >= 0, "POSITIVE_VALUE_CHECK_590425728");
+        check(articleExists(idArticle), "R_8");
+
+        int id = ++itemCount;
+
+        if (id >= itemOrder.length) {
+            int capacity = id * 2;
+            itemOrder = Arrays.copyOf(itemOrder, capacity);
+            itemArticle = Arrays.copyOf(itemArticle, capacity);
+            itemQuantity = Arrays.copyOf(itemQuantity, capacity);
+        }
+
+        itemOrder[id] = idOrder;
+        itemArticle[id] = idArticle;
+        itemQuantity[id] = quantity;
+        orderItems[idOrder].add(id);
+
+        return id;
+    }
+
+    void moveShop(int idShop, int idCity) {
+        check(cityExists(idCity), "R_1");
+
+        cityShops[shopCity[idShop]].remove(idShop);
+        cityShops[idCity].add(idShop);
+        shopCity[idShop] = idCity;
+    }
+
+    void deleteItem(int idItem) {
+        orderItems[itemOrder[idItem]].remove(idItem);
+        itemOrder[idItem] = NULL;
+    }
+
+    int insertTransaction(long date, long amount, int idOrder, int idShop, int idBuyer) {
+        check(amount >= 0, "POSITIVE_VALUE_CHECK_1411522684");
+
+        int id = ++transactionCount;
+
+        if (id >= transactionAmount.length) {
+            int capacity = id * 2;
+            transactionAmount = Arrays.copyOf(transactionAmount, capacity);
+            transactionDate = Arrays.copyOf(transactionDate, capacity);
+            transactionOrder = Arrays.copyOf(transactionOrder, capacity);
+            transactionShop = Arrays.copyOf(transactionShop, capacity);
+            transactionBuyer = Arrays.copyOf(transactionBuyer, capacity);
+        }
+
+        transactionAmount[id] = amount;
+        transactionDate[id] = toDatetime(date);
+        transactionOrder[id] = idOrder;
+        transactionShop[id] = idShop;
+        transactionBuyer[id] = idBuyer;
+
+        orderTransactions[idOrder].add(id);
+        if (idShop != NULL) shopTransactions[idShop].add(id);
+        if (idBuyer != NULL) buyerTransactions[idBuyer].add(id);
+
+        return id;
+    }
+
+    /* ---------------------------------------------------------------------------------------------------------------
+     * Lookups
+     */
+
+    boolean lineExists(int idCity1, int idCity2) {
+        return lineKeys.contains(lineKey(idCity1, idCity2)) || lineKeys.contains(lineKey(idCity2, idCity1));
+    }
+
+    /**
+     * Retrieves the lines of a city in the order of the clustered key of 'Line', (Id1, Id2).
+     *
+     * @param idCity the ID of the city
+     * @return the indexes of the lines
+     */
+    int[] linesInKeyOrder(int idCity) {
+        MemoryIntList lines = cityLines[idCity];
+        Integer[] sorted = new Integer[lines.size()];
+
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = lines.get(i);
+        }
+        Arrays.sort(sorted, (a, b) -> Long.compare(lineKey(lineId1[a], lineId2[a]), lineKey(lineId1[b], lineId2[b])));
+
+        return Arrays.stream(sorted).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Retrieves the distances between the connected cities, built like 'CityGraph' builds them from the database,
+     * so the algorithm visits the neighbors in the same order.
+     *
+     * @return the map (idCity -> (idNeighborCity -> distance, ...), ...)
+     */
+    HashMap<Integer, HashMap<Integer, Integer>> getDistances() {
+        if (distances == null) {
+            Integer[] sorted = new Integer[lineCount];
+
+            for (int i = 0; i < lineCount; i++) {
+                sorted[i] = i;
+            }
+            Arrays.sort(sorted, (a, b) -> Long.compare(lineKey(lineId1[a], lineId2[a]), lineKey(lineId1[b], lineId2[b])));
+
+            HashMap<Integer, HashMap<Integer, Integer>> loaded = new HashMap<>();
+            for (int line : sorted) {
+                loaded.computeIfAbsent(lineId1[line], k -> new HashMap<>()).put(lineId2[line], lineDistance[line]);
+                loaded.computeIfAbsent(lineId2[line], k -> new HashMap<>()).put(lineId1[line], lineDistance[line]);
+            }
+
+            distances = loaded;
+        }
+
+        return distances;
+    }
+
+    /**
+     * Retrieves the graph for 'DijkstraAlgorithm'.
+     *
+     * @return the graph over the store
+     */
+    DijkstraAlgorithm.Graph graph() {
+        return new DijkstraAlgorithm.Graph() {
+            @Override
+            public HashMap<Integer, HashMap<Integer, Integer>> getDistances() {
+                return MemoryStore.this.getDistances();
+            }
+
+            @Override
+            public List<Integer> getCities() {
+                List<Integer> cities = new ArrayList<>(cityCount);
+                for (int id = 1; id <= cityCount; id++) {
+                    if (cityExists(id)) cities.add(id);
+                }
+                return cities.isEmpty() ? null : cities;
+            }
+
+            @Override
+            public boolean hasShops(int idCity) {
+                return cityShops[idCity].size() > 0;
+            }
+
+            @Override
+            public List<Integer> getOrderCities(int idOrder) {
+                List<Integer> cities = new ArrayList<>();
+                MemoryIntList items = orderItems[idOrder];
+
+                for (int i = 0; i < items.size(); i++) {
+                    Integer idCity = shopCity[articleShop[itemArticle[items.get(i)]]];
+                    if (!cities.contains(idCity)) cities.add(idCity);
+                }
+
+                return cities;
+            }
+        };
+    }
+
+    /* ---------------------------------------------------------------------------------------------------------------
+     * 'SP_FINAL_PRICE' and 'TR_TRANSFER_MONEY_TO_SHOPS'
+     */
+
+    /**
+     * Sums 'Quantity * Price * (100 - Discount)' over the items of the order, with the current shop discounts.
+     * Dividing the sum by 100 gives the price with the shop discounts, in thousandths.
+     *
+     * @param idOrder the ID of the order
+     * @param idShop  the ID of the shop whose items are summed, or -1 for all the items
+     * @return the sum, in hundred-thousandths
+     */
+    long shopDiscountedSum(int idOrder, int idShop) {
+        MemoryIntList items = orderItems[idOrder];
+        long sum = 0;
+
+        for (int i = 0; i < items.size(); i++) {
+            int idArticle = itemArticle[items.get(i)];
+            int idArticleShop = articleShop[idArticle];
+
+            if (idShop == NULL || idShop == idArticleShop) {
+                sum += itemQuantity[items.get(i)] * articlePrice[idArticle] * (100 - shopDiscount[idArticleShop]);
+            }
+        }
+
+        return sum;
+    }
+
+    /**
+     * Calculates and stores the prices of the order, like 'SP_FINAL_PRICE'.
+     *
+     * @param idOrder the ID of the order
+     * @return the discounted price, or 'NULL_MONEY' if the order has no items
+     */
+    long calculateFinalPrice(int idOrder) {
+        MemoryIntList items = orderItems[idOrder];
+        boolean hasItems = items.size() > 0;
+        long totalPrice = 0;
+
+        for (int i = 0; i < items.size(); i++) {
+            totalPrice += itemQuantity[items.get(i)] * articlePrice[itemArticle[items.get(i)]];
+        }
+
+        boolean buyerDiscount = hasRecentLargePayment(orderBuyer[idOrder], orderDateSent[idOrder]);
+        long discountedPrice = divideHalfUp(shopDiscountedSum(idOrder, NULL), 100);
+        if (buyerDiscount) discountedPrice = divideHalfUp(discountedPrice * 98, 100);
+
+        orderTotalPrice[idOrder] = hasItems ? totalPrice : NULL_MONEY;
+        orderDiscountedPrice[idOrder] = hasItems ? discountedPrice : NULL_MONEY;
+        orderBuyerDiscount[idOrder] = buyerDiscount ? 2 : 0;
+
+        return orderDiscountedPrice[idOrder];
+    }
+
+    /**
+     * Checks if the buyer paid more than 10000 in one transaction, from 30 days before the day the order was sent.
+     *
+     * @param idBuyer  the ID of the buyer
+     * @param dateSent the date the order was sent, or 'NULL_DATE'
+     * @return true if the buyer gets the discount, or false otherwise
+     */
+    private boolean hasRecentLargePayment(int idBuyer, long dateSent) {
+        if (dateSent == NULL_DATE) return false; // 'DATEADD()' of NULL compares as unknown
+
+        Calendar from = Calendar.getInstance();
+        from.setTimeInMillis(dateSent);
+        from.set(Calendar.HOUR_OF_DAY, 0);
+        from.set(Calendar.MINUTE, 0);
+        from.set(Calendar.SECOND, 0);
+        from.set(Calendar.MILLISECOND, 0);
+        from.add(Calendar.DAY_OF_MONTH, -DISCOUNT_DAYS);
+
+        MemoryIntList transactions = buyerTransactions[idBuyer];
+        for (int i = 0; i < transactions.size(); i++) {
+            int id = transactions.get(i);
+
+            if (transactionAmount[id] > DISCOUNT_THRESHOLD && transactionDate[id] >= from.getTimeInMillis()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Sets the status of the sent orders that have arrived by the current time to 'arrived',
+     * and transfers the money to the shops like 'TR_TRANSFER_MONEY_TO_SHOPS'.
+     */
+    void arriveOrders() {
+        long now = currentDateTime.getTimeInMillis();
+        MemoryIntList stillSent = new MemoryIntList();
+        List<Integer> arrived = new ArrayList<>();
+
+        for (int i = 0; i < sentOrders.size(); i++) {
+            int idOrder = sentOrders.get(i);
+
+            if (orderDateArrived[idOrder] <= now) {
+                arrived.add(idOrder);
+            } else {
+                stillSent.add(idOrder);
+            }
+        }
+
+        sentOrders = stillSent;
+        arrived.sort(null);
+
+        for (int idOrder : arrived) {
+            orderStatus[idOrder] = ARRIVED;
+            transferMoneyToShops(idOrder);
+        }
+    }
+
+    /**
+     * Pays each shop of the order 95% of its items' price, or 97% if the buyer got the discount.
+     *
+     * @param idOrder the ID of the order
+     */
+    private void transferMoneyToShops(int idOrder) {
+        MemoryIntList items = orderItems[idOrder];
+        int[] shops = new int[items.size()];
+
+        for (int i = 0; i < items.size(); i++) {
+            shops[i] = articleShop[itemArticle[items.get(i)]];
+        }
+        Arrays.sort(shops);
+
+        for (int i = 0; i < shops.length; i++) {
+            if (i > 0 && shops[i] == shops[i - 1]) continue; // 'GROUP BY S.Id'
+
+            long shopItemsPrice = divideHalfUp(shopDiscountedSum(idOrder, shops[i]), 100);
+            long amount = divideHalfUp(shopItemsPrice * (orderBuyerDiscount[idOrder] == 0 ? 95 : 97), 100);
+
+            shopBalance[shops[i]] += amount;
+            insertTransaction(orderDateArrived[idOrder], amount, idOrder, shops[i], NULL);
+        }
+    }
+
+    /* ---------------------------------------------------------------------------------------------------------------
+     * Snapshots, in the format of 'SnapshotFormat'
+     */
+
+    /**
+     * Writes all the data of the store to a snapshot file.
+     *
+     * @param file the snapshot file, overwritten if it exists
+     * @throws java.io.UncheckedIOException if the file can not be written
+     */
+    public void save(Path file) {
+        try (SnapshotFormat.Writer writer = new SnapshotFormat.Writer(file)) {
+            writer.startSection(SnapshotFormat.CITY);
+            for (int id = 1; id <= cityCount; id++) {
+                if (!cityExists(id)) continue;
+
+                writer.startRow(Integer.BYTES + SnapshotFormat.Writer.maxLength(cityName[id]));
+                writer.putInt(id);
+                writer.putString(cityName[id]);
+            }
+
+            writer.startSection(SnapshotFormat.LINE);
+            Integer[] lines = new Integer[lineCount];
+            for (int i = 0; i < lineCount; i++) {
+                lines[i] = i;
+            }
+            Arrays.sort(lines, (a, b) -> Long.compare(lineKey(lineId1[a], lineId2[a]), lineKey(lineId1[b], lineId2[b])));
+
+            for (int line : lines) {
+                writer.startRow(3 * Integer.BYTES);
+                writer.putInt(lineId1[line]);
+                writer.putInt(lineId2[line]);
+                writer.putInt(lineDistance[line]);
+            }
+
+            writer.startSection(SnapshotFormat.SHOP);
+            for (int id = 1; id <= shopCount; id++) {
+                if (!shopExists(id)) continue;
+
+                writer.startRow(2 * Integer.BYTES + 2 * Long.BYTES + SnapshotFormat.Writer.maxLength(shopName[id]));
+                writer.putInt(id);
+                writer.putString(shopName[id]);
+                writer.putLong(shopDiscount[id] * 1000L);
+                writer.putInt(shopCity[id]);
+                writer.putLong(shopBalance[id]);
+            }
+
+            writer.startSection(SnapshotFormat.ARTICLE);
+            for (int id = 1; id <= articleCount; id++) {
+                if (!articleExists(id)) continue;
+
+                writer.startRow(3 * Integer.BYTES + Long.BYTES + SnapshotFormat.Writer.maxLength(articleName[id]));
+                writer.putInt(id);
+                writer.putString(articleName[id]);
+                writer.putLong(articlePrice[id]);
+                writer.putInt(articleQuantity[id]);
+                writer.putInt(articleShop[id]);
+            }
+
+            writer.startSection(SnapshotFormat.BUYER);
+            for (int id = 1; id <= buyerCount; id++) {
+                if (!buyerExists(id)) continue;
+
+                writer.startRow(2 * Integer.BYTES + Long.BYTES + SnapshotFormat.Writer.maxLength(buyerName[id]));
+                writer.putInt(id);
+                writer.putString(buyerName[id]);
+                writer.putInt(buyerCity[id]);
+                writer.putLong(buyerBalance[id]);
+            }
+
+            writer.startSection(SnapshotFormat.ORDER);
+            for (int id = 1; id <= orderCount; id++) {
+                if (!orderExists(id)) continue;
+
+                int pathLength = orderPath[id] == null ? 0 : orderPath[id].length;
+
+                writer.startRow(1 + 5 * Integer.BYTES + 5 * Long.BYTES + Short.BYTES + pathLength * Integer.BYTES);
+                writer.putInt(id);
+                writer.putByte(orderStatus[id]);
+                writer.putInt(orderBuyer[id]);
+                writer.putLong(orderTotalPrice[id]);
+                writer.putLong(orderDiscountedPrice[id]);
+                writer.putInt(orderBuyerDiscount[id]);
+                writer.putLong(orderDateSent[id]);
+                writer.putLong(orderDateNearest[id]);
+                writer.putLong(orderDateArrived[id]);
+                writer.putInt(orderNearestCity[id]);
+                writer.putInt(orderDaysToAssemble[id]);
+                writer.putPath(orderPath[id]);
+            }
+
+            writer.startSection(SnapshotFormat.ITEM);
+            for (int id = 1; id <= itemCount; id++) {
+                if (!itemExists(id)) continue;
+
+                writer.startRow(4 * Integer.BYTES);
+                writer.putInt(id);
+                writer.putInt(itemOrder[id]);
+                writer.putInt(itemArticle[id]);
+                writer.putInt(itemQuantity[id]);
+            }
+
+            writer.startSection(SnapshotFormat.TRANSACTION);
+            for (int id = 1; id <= transactionCount; id++) {
+                if (!transactionExists(id)) continue;
+
+                writer.startRow(4 * Integer.BYTES + 2 * Long.BYTES);
+                writer.putInt(id);
+                writer.putLong(transactionAmount[id]);
+                writer.putInt(transactionOrder[id]);
+                writer.putInt(transactionShop[id]);
+                writer.putInt(transactionBuyer[id]);
+                writer.putLong(transactionDate[id]);
+            }
+        }
+    }
+
+    /**
+     * Replaces all the data of the store with the data of a snapshot file.
+     * The IDs are kept, and the name maps, the per-row ID lists and the lines are rebuilt as the rows are read.
+     * The current time is kept, like in 'erase()'.
+     *
+     * @param file the snapshot file
+     * @throws java.io.UncheckedIOException if the file can not be read
+     * @throws RuntimeException if the snapshot violates a constraint
+     */
+    public void load(Path file) {
+        erase();
+
+        try (SnapshotFormat.Reader reader = new SnapshotFormat.Reader(file)) {
+            reader.openSection(SnapshotFormat.CITY);
+            for (long i = reader.count(SnapshotFormat.CITY); i > 0; i--) {
+                cityCount = reader.getInt() - 1;
+                insertCity(reader.getString());
+            }
+
+            reader.openSection(SnapshotFormat.LINE);
+            for (long i = reader.count(SnapshotFormat.LINE); i > 0; i--) {
+                insertLine(reader.getInt(), reader.getInt(), reader.getInt());
+            }
+
+            reader.openSection(SnapshotFormat.SHOP);
+            for (long i = reader.count(SnapshotFormat.SHOP); i > 0; i--) {
+                shopCount = reader.getInt() - 1;
+
+                String name = reader.getString();
+                int discount = (int) (reader.getLong() / 1000);
+                int id = insertShop(name, reader.getInt());
+
+                shopDiscount[id] = discount;
+                shopBalance[id] = reader.getLong();
+            }
+
+            reader.openSection(SnapshotFormat.ARTICLE);
+            for (long i = reader.count(SnapshotFormat.ARTICLE); i > 0; i--) {
+                articleCount = reader.getInt() - 1;
+
+                String name = reader.getString();
+                long price = reader.getLong();
+                int quantity = reader.getInt();
+                int id = insertArticle(reader.getInt(), name, price);
+
+                setArticleQuantity(id, quantity);
+            }
+
+            reader.openSection(SnapshotFormat.BUYER);
+            for (long i = reader.count(SnapshotFormat.BUYER); i > 0; i--) {
+                buyerCount = reader.getInt() - 1;
+
+                String name = reader.getString();
+                int id = insertBuyer(name, reader.getInt());
+
+                buyerBalance[id] = reader.getLong();
+            }
+
+            reader.openSection(SnapshotFormat.ORDER);
+            for (long i = reader.count(SnapshotFormat.ORDER); i > 0; i--) {
+                orderCount = reader.getInt() - 1;
+
+                byte status = reader.getByte();
+                int id = insertOrder(reader.getInt());
+
+                orderStatus[id] = status;
+                orderTotalPrice[id] = reader.getLong();
+                orderDiscountedPrice[id] = reader.getLong();
+                orderBuyerDiscount[id] = reader.getInt();
+                orderDateSent[id] = reader.getLong();
+                orderDateNearest[id] = reader.getLong();
+                orderDateArrived[id] = reader.getLong();
+                orderNearestCity[id] = reader.getInt();
+                orderDaysToAssemble[id] = reader.getInt();
+                orderPath[id] = reader.getPath();
+
+                if (status == SENT) sentOrders.add(id);
+            }
+
+            reader.openSection(SnapshotFormat.ITEM);
+            for (long i = reader.count(SnapshotFormat.ITEM); i > 0; i--) {
+                itemCount = reader.getInt() - 1;
+                insertItem(reader.getInt(), reader.getInt(), reader.getInt());
+            }
+
+            reader.openSection(SnapshotFormat.TRANSACTION);
+            for (long i = reader.count(SnapshotFormat.TRANSACTION); i > 0; i--) {
+                transactionCount = reader.getInt() - 1;
+
+                long amount = reader.getLong();
+                int idOrder = reader.getInt();
+                int idShop = reader.getInt();
+                int idBuyer = reader.getInt();
+
+                insertTransaction(reader.getLong(), amount, idOrder, idShop, idBuyer);
+            }
+        }
+    }
+
+    /* ---------------------------------------------------------------------------------------------------------------
+     * Conversions
+     */
+
+    /**
+     * Rounds the milliseconds like 'datetime', to increments of .000, .003 or .007 seconds.
+     *
+     * @param millis the milliseconds
+     * @return the rounded milliseconds
+     */
+    static long toDatetime(long millis) {
+        long seconds = Math.floorDiv(millis, 1000);
+        long ticks = Math.round(Math.floorMod(millis, 1000) * 0.3); // 1/300 of a second
+
+        return seconds * 1000 + (ticks * 10 + 1) / 3;
+    }
+
+    /**
+     * Converts the decimal to thousandths, rounding it like a 'DECIMAL(10,3)' column.
+     *
+     * @param value the decimal
+     * @return the value in thousandths
+     */
+    static long toMoney(BigDecimal value) {
+        return value.setScale(3, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Converts the thousandths to a decimal with scale 3.
+     *
+     * @param money the value in thousandths
+     * @return the decimal
+     */
+    static BigDecimal toDecimal(long money) {
+        return BigDecimal.valueOf(money, 3);
+    }
+
+    /**
+     * Converts the milliseconds to a calendar.
+     *
+     * @param millis the milliseconds, or 'NULL_DATE'
+     * @return the calendar, or null for 'NULL_DATE'
+     */
+    static Calendar toCalendar(long millis) {
+        if (millis == NULL_DATE) return null;
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        return calendar;
+    }
+
+    /**
+     * Divides the non-negative value, rounding half up.
+     *
+     * @param value   the value
+     * @param divisor the divisor
+     * @return the rounded quotient
+     */
+    static long divideHalfUp(long value, long divisor) {
+        return (value + divisor / 2) / divisor;
+    }
+
+    private static long lineKey(int idCity1, int idCity2) {
+        return ((long) idCity1 << 32) | (idCity2 & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Sets the quantity of the article, checking it like the 'Article.Quantity' column.
+     *
+     * @param idArticle the ID of the article
+     * @param quantity  the new quantity
+     * @throws RuntimeException if the quantity is negative
+     */
+    void setArticleQuantity(int idArticle, int quantity) {
+        check(quantity >= 0, "POSITIVE_VALUE_CHECK_870434508");
+        articleQuantity[idArticle] = quantity;
+    }
+
+    /**
+     * Fails like a violated constraint of the database.
+     *
+     * @param condition  the condition of the constraint
+     * @param constraint the name of the constraint in 'create.sql'
+     * @throws RuntimeException if the condition does not hold
+     */
+    private static void check(boolean condition, String constraint) {
+        if (!condition) throw new RuntimeException("The statement conflicted with the constraint '" + constraint + "'");
+    }
+}
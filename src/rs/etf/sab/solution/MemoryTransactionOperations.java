@@ -0,0 +1,214 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.TransactionOperations;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Implements the TransactionOperations interface over the in-memory store,
+ * with the results of 'SolutionTransactionOperations'.
+ */
+public class MemoryTransactionOperations implements TransactionOperations {
+    private final MemoryStore store;
+
+    /**
+     * Creates the operations over the given store.
+     *
+     * @param store the in-memory store to use
+     */
+    public MemoryTransactionOperations(MemoryStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Retrieves the sum of the amounts of all the buyer's transactions.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return the sum, 0 if there are no transactions
+     */
+    @Override
+    public BigDecimal getBuyerTransactionsAmmount(int idBuyer) {
+        return sum(store.buyerExists(idBuyer) ? store.buyerTransactions[idBuyer] : null);
+    }
+
+    /**
+     * Retrieves the sum of the amounts of all the shop's transactions.
+     *
+     * @param idShop the ID of the shop
+     * @return the sum, 0 if there are no transactions
+     */
+    @Override
+    public BigDecimal getShopTransactionsAmmount(int idShop) {
+        return sum(store.shopExists(idShop) ? store.shopTransactions[idShop] : null);
+    }
+
+    /**
+     * Retrieves the IDs of all the buyer's transactions.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return the list of transaction IDs, or null otherwise
+     */
+    @Override
+    public List<Integer> getTransationsForBuyer(int idBuyer) {
+        return store.buyerExists(idBuyer) ? store.buyerTransactions[idBuyer].toListOrNull() : null;
+    }
+
+    /**
+     * Retrieves the ID of the transaction in which the buyer paid for the order.
+     *
+     * @param idOrder the ID of the order
+     * @return the ID of the transaction, or -1 otherwise
+     */
+    @Override
+    public int getTransactionForBuyersOrder(int idOrder) {
+        return findTransaction(idOrder, MemoryStore.NULL);
+    }
+
+    /**
+     * Retrieves the ID of the transaction in which the shop was paid for the order.
+     *
+     * @param idOrder the ID of the order
+     * @param idShop  the ID of the shop
+     * @return the ID of the transaction, or -1 otherwise
+     */
+    @Override
+    public int getTransactionForShopAndOrder(int idOrder, int idShop) {
+        return idShop == MemoryStore.NULL ? -1 : findTransaction(idOrder, idShop);
+    }
+
+    /**
+     * Retrieves the IDs of all the shop's transactions.
+     *
+     * @param idShop the ID of the shop
+     * @return the list of transaction IDs, or null otherwise
+     */
+    @Override
+    public List<Integer> getTransationsForShop(int idShop) {
+        return store.shopExists(idShop) ? store.shopTransactions[idShop].toListOrNull() : null;
+    }
+
+    /**
+     * Retrieves the time the transaction was executed.
+     *
+     * @param idTransaction the ID of the transaction
+     * @return the time of execution, or null otherwise
+     */
+    @Override
+    public Calendar getTimeOfExecution(int idTransaction) {
+        return store.transactionExists(idTransaction) ? MemoryStore.toCalendar(store.transactionDate[idTransaction]) : null;
+    }
+
+    /**
+     * Retrieves the amount the buyer paid for the order.
+     *
+     * @param idOrder the ID of the order
+     * @return the amount, or -1 otherwise
+     */
+    @Override
+    public BigDecimal getAmmountThatBuyerPayedForOrder(int idOrder) {
+        return amount(findTransaction(idOrder, MemoryStore.NULL));
+    }
+
+    /**
+     * Retrieves the amount the shop received for the order.
+     *
+     * @param idShop  the ID of the shop
+     * @param idOrder the ID of the order
+     * @return the amount, or -1 otherwise
+     */
+    @Override
+    public BigDecimal getAmmountThatShopRecievedForOrder(int idShop, int idOrder) {
+        return amount(idShop == MemoryStore.NULL ? -1 : findTransaction(idOrder, idShop));
+    }
+
+    /**
+     * Retrieves the amount of the transaction.
+     *
+     * @param idTransaction the ID of the transaction
+     * @return the amount, or -1 otherwise
+     */
+    @Override
+    public BigDecimal getTransactionAmount(int idTransaction) {
+        return amount(store.transactionExists(idTransaction) ? idTransaction : -1);
+    }
+
+    /**
+     * Retrieves the profit of the system from the arrived orders: 5% of the price with the shop discounts,
+     * minus the 2% buyer discount when it was given.
+     *
+     * @return the system profit
+     */
+    @Override
+    public BigDecimal getSystemProfit() {
+        BigDecimal systemProfit = BigDecimal.ZERO;
+
+        for (int id = 1; id <= store.transactionCount; id++) {
+            if (!store.transactionExists(id)) continue;
+
+            int idOrder = store.transactionOrder[id];
+
+            if (store.transactionShop[id] != MemoryStore.NULL || store.orderStatus[idOrder] != MemoryStore.ARRIVED) {
+                continue;
+            }
+
+            // Amount * (1 / (1 - BuyerDiscount / 100)) * (0.05 - BuyerDiscount / 100)
+            BigDecimal discount = BigDecimal.valueOf(store.orderBuyerDiscount[idOrder], 2);
+            BigDecimal fullPrice = BigDecimal.ONE.divide(BigDecimal.ONE.subtract(discount), 19, RoundingMode.HALF_UP);
+
+            systemProfit = systemProfit.add(MemoryStore.toDecimal(store.transactionAmount[id])
+                    .multiply(fullPrice)
+                    .multiply(new BigDecimal("0.05").subtract(discount)));
+        }
+
+        return systemProfit.setScale(3, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Finds the transaction of the order, made by the buyer or to the shop.
+     *
+     * @param idOrder the ID of the order
+     * @param idShop  the ID of the shop, or -1 for the buyer's transaction
+     * @return the ID of the transaction, or -1 otherwise
+     */
+    private int findTransaction(int idOrder, int idShop) {
+        if (!store.orderExists(idOrder)) return -1;
+
+        MemoryIntList transactions = store.orderTransactions[idOrder];
+        for (int i = 0; i < transactions.size(); i++) {
+            if (store.transactionShop[transactions.get(i)] == idShop) return transactions.get(i);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Retrieves the amount of the transaction.
+     *
+     * @param idTransaction the ID of the transaction, or -1
+     * @return the amount, or -1 otherwise
+     */
+    private BigDecimal amount(int idTransaction) {
+        if (idTransaction == -1) return BigDecimal.valueOf(-1).setScale(3);
+
+        return MemoryStore.toDecimal(store.transactionAmount[idTransaction]);
+    }
+
+    /**
+     * Sums the amounts of the transactions.
+     *
+     * @param transactions the IDs of the transactions, or null
+     * @return the sum
+     */
+    private BigDecimal sum(MemoryIntList transactions) {
+        long sum = 0;
+
+        for (int i = 0; transactions != null && i < transactions.size(); i++) {
+            sum += store.transactionAmount[transactions.get(i)];
+        }
+
+        return MemoryStore.toDecimal(sum);
+    }
+}
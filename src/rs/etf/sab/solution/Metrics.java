@@ -0,0 +1,318 @@
+package rs.etf.sab.solution;
+
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records the latency, the errors and the SQL work of every operation, and exposes them through JMX
+ * and a Prometheus text endpoint.
+ * <p>
+ * The metrics are enabled with '-Donlineshop.metrics.port=...', e.g. 9404. The database connections and the
+ * operations are then wrapped, every operation gets an 'OperationRecorder' registered as the MBean
+ * 'rs.etf.sab.solution:type=Operation,name=...', and 'http://localhost:port/metrics' serves all of them.
+ * The SQL work done outside an operation, e.g. by the tools, is recorded for the operation 'none'.
+ * Without the property, nothing is wrapped and the calls cost nothing.
+ */
+public class Metrics {
+    private static final int PORT = Integer.getInteger("onlineshop.metrics.port", -1);
+    private static final boolean ENABLED = PORT >= 0;
+
+    // '-Donlineshop.jfr.sql=true' wraps the connections for the SQL flight recorder events only
+    private static final boolean SQL_EVENTS = Boolean.getBoolean("onlineshop.jfr.sql");
+
+    // The powers of two of nanoseconds exported as the 'le' bounds, from about 1 us to about 69 s
+    private static final int LOWEST_BOUND_EXPONENT = 10;
+    private static final int HIGHEST_BOUND_EXPONENT = 36;
+
+    private static final Map<String, OperationRecorder> recorders = new ConcurrentHashMap<>();
+    private static final OperationRecorder none = recorder("none");
+
+    // The recorder of the operation running on each thread, in an array so that switching it does not allocate
+    private static final ThreadLocal<OperationRecorder[]> current = ThreadLocal.withInitial(() -> new OperationRecorder[1]);
+
+    static {
+        if (ENABLED) startServer(PORT);
+    }
+
+    /**
+     * Private constructor, as the class only has static methods.
+     */
+    private Metrics() {
+
+    }
+
+    /**
+     * Checks if the metrics are enabled.
+     *
+     * @return true if the metrics are enabled, or false otherwise
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Wraps the connection so that its SQL work is recorded, if the metrics, the SQL events, the slow query log
+     * or the replica routing are enabled.
+     *
+     * @param connection the connection
+     * @return the wrapped connection, or the connection itself if all of them are disabled
+     */
+    public static Connection instrument(Connection connection) {
+        boolean wrapped = ENABLED || SQL_EVENTS || SlowQueryLog.isEnabled() || ReplicaRouter.isEnabled();
+        return wrapped ? InstrumentedJdbc.wrap(connection) : connection;
+    }
+
+    /**
+     * Wraps the operations so that every call is recorded, if the metrics are enabled.
+     * The calls are recorded as '<interface>.<method>', e.g. 'OrderOperations.completeOrder'.
+     *
+     * @param type       the interface of the operations
+     * @param operations the operations
+     * @param <T>        the type of the operations
+     * @return the wrapped operations, or the operations themselves if the metrics are disabled
+     */
+    public static <T> T instrument(Class<T> type, T operations) {
+        if (!ENABLED) return operations;
+
+        Map<Method, OperationRecorder> byMethod = new ConcurrentHashMap<>();
+        for (Method method : type.getMethods()) {
+            byMethod.put(method, recorder(type.getSimpleName() + "." + method.getName()));
+        }
+
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (p, method, args) -> {
+            OperationRecorder recorder = byMethod.get(method);
+
+            // 'equals', 'hashCode' and 'toString' are not operations
+            if (recorder == null) return method.invoke(operations, args);
+
+            OperationRecorder[] running = current.get();
+            OperationRecorder previous = running[0];
+            running[0] = recorder;
+            long start = System.nanoTime();
+
+            try {
+                return method.invoke(operations, args);
+            } catch (InvocationTargetException e) {
+                recorder.recordError();
+                throw e.getCause();
+            } finally {
+                recorder.record(System.nanoTime() - start);
+                running[0] = previous;
+            }
+        });
+
+        return type.cast(proxy);
+    }
+
+    /**
+     * Retrieves the recorder of the operation running on the current thread.
+     *
+     * @return the recorder, or the recorder 'none' outside an operation
+     */
+    static OperationRecorder current() {
+        OperationRecorder recorder = current.get()[0];
+        return recorder == null ? none : recorder;
+    }
+
+    /**
+     * Retrieves the recorder of the operation, creating and registering it on the first use.
+     *
+     * @param name the name of the operation
+     * @return the recorder
+     */
+    public static OperationRecorder recorder(String name) {
+        OperationRecorder recorder = recorders.get(name);
+        if (recorder != null) return recorder;
+
+        return recorders.computeIfAbsent(name, key -> {
+            OperationRecorder created = new OperationRecorder(key);
+            if (ENABLED) register(created);
+            return created;
+        });
+    }
+
+    /**
+     * Retrieves all the recorders.
+     *
+     * @return the recorders
+     */
+    public static Collection<OperationRecorder> recorders() {
+        return recorders.values();
+    }
+
+    /**
+     * Registers the recorder as an MBean.
+     *
+     * @param recorder the recorder
+     */
+    private static void register(OperationRecorder recorder) {
+        try {
+            ObjectName name = new ObjectName("rs.etf.sab.solution:type=Operation,name=" + recorder.getName());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(recorder, name);
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Formats all the metrics in the Prometheus text format.
+     *
+     * @return the metrics
+     */
+    public static String scrape() {
+        StringBuilder out = new StringBuilder();
+
+        out.append("# HELP onlineshop_operation_duration_seconds The latency of the operations.\n");
+        out.append("# TYPE onlineshop_operation_duration_seconds histogram\n");
+        for (OperationRecorder recorder : recorders.values()) {
+            long cumulative = 0;
+            int index = 0;
+
+            // A bucket never straddles a power of two, so the counts below each bound are exact
+            for (int exponent = LOWEST_BOUND_EXPONENT; exponent <= HIGHEST_BOUND_EXPONENT; exponent++) {
+                for (; index < 4 * (exponent - 1); index++) {
+                    cumulative += recorder.getBucket(index);
+                }
+
+                sample(out, "onlineshop_operation_duration_seconds_bucket", recorder,
+                        ",le=\"" + (1L << exponent) / 1e9 + "\"", cumulative);
+            }
+            for (; index < OperationRecorder.BUCKETS; index++) {
+                cumulative += recorder.getBucket(index);
+            }
+
+            sample(out, "onlineshop_operation_duration_seconds_bucket", recorder, ",le=\"+Inf\"", cumulative);
+            out.append("onlineshop_operation_duration_seconds_sum{operation=\"").append(recorder.getName())
+                    .append("\"} ").append(recorder.getTotalNanos() / 1e9).append('\n');
+            sample(out, "onlineshop_operation_duration_seconds_count", recorder, "", cumulative);
+        }
+
+        counter(out, "onlineshop_operation_errors_total", "The calls that threw an exception.");
+        for (OperationRecorder recorder : recorders.values()) {
+            sample(out, "onlineshop_operation_errors_total", recorder, "", recorder.getErrors());
+        }
+
+        counter(out, "onlineshop_sql_statements_total", "The SQL statements executed, batched ones included.");
+        for (OperationRecorder recorder : recorders.values()) {
+            sample(out, "onlineshop_sql_statements_total", recorder, "", recorder.getStatements());
+        }
+
+        counter(out, "onlineshop_sql_round_trips_total", "The round-trips to the database.");
+        for (OperationRecorder recorder : recorders.values()) {
+            sample(out, "onlineshop_sql_round_trips_total", recorder, "", recorder.getRoundTrips());
+        }
+
+        counter(out, "onlineshop_sql_rows_read_total", "The result set rows read.");
+        for (OperationRecorder recorder : recorders.values()) {
+            sample(out, "onlineshop_sql_rows_read_total", recorder, "", recorder.getRowsRead());
+        }
+
+        counter(out, "onlineshop_transaction_commits_total", "The transactions committed by 'TransactionTemplate'.");
+        out.append("onlineshop_transaction_commits_total ").append(TransactionTemplate.getCommits()).append('\n');
+
+        counter(out, "onlineshop_transaction_retries_total", "The attempts retried after a deadlock or a lock timeout.");
+        out.append("onlineshop_transaction_retries_total ").append(TransactionTemplate.getRetries()).append('\n');
+
+        counter(out, "onlineshop_transaction_aborts_total", "The transactions that still failed after the last attempt.");
+        out.append("onlineshop_transaction_aborts_total ").append(TransactionTemplate.getAborts()).append('\n');
+
+        if (ReplicaRouter.isEnabled()) {
+            counter(out, "onlineshop_replica_routed_reads_total", "The reads routed by 'ReplicaRouter', by route.");
+            out.append("onlineshop_replica_routed_reads_total{route=\"replica\"} ")
+                    .append(ReplicaRouter.getReplicaReads()).append('\n');
+            out.append("onlineshop_replica_routed_reads_total{route=\"pinned\"} ")
+                    .append(ReplicaRouter.getPinnedReads()).append('\n');
+            out.append("onlineshop_replica_routed_reads_total{route=\"stale\"} ")
+                    .append(ReplicaRouter.getStaleReads()).append('\n');
+
+            out.append("# HELP onlineshop_replica_lag_seconds The age of the last beat read from the replica.\n");
+            out.append("# TYPE onlineshop_replica_lag_seconds gauge\n");
+            out.append("onlineshop_replica_lag_seconds ").append(ReplicaRouter.getLagMillis() / 1e3).append('\n');
+        }
+
+        if (InvalidationBus.isEnabled()) {
+            counter(out, "onlineshop_invalidations_total", "The invalidations published by 'InvalidationBus'.");
+            out.append("onlineshop_invalidations_total ").append(InvalidationBus.getInvalidations()).append('\n');
+
+            out.append("# HELP onlineshop_invalidation_lag_seconds The time since the last successful poll.\n");
+            out.append("# TYPE onlineshop_invalidation_lag_seconds gauge\n");
+            out.append("onlineshop_invalidation_lag_seconds ")
+                    .append(InvalidationBus.getLagMillis() / 1e3).append('\n');
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * Appends the header of a counter.
+     *
+     * @param out  the output
+     * @param name the name of the counter
+     * @param help the description of the counter
+     */
+    private static void counter(StringBuilder out, String name, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+    }
+
+    /**
+     * Appends a sample of the operation.
+     *
+     * @param out      the output
+     * @param name     the name of the sample
+     * @param recorder the recorder of the operation
+     * @param labels   the labels after the operation, starting with a comma, or empty
+     * @param value    the value of the sample
+     */
+    private static void sample(StringBuilder out, String name, OperationRecorder recorder, String labels, long value) {
+        out.append(name).append("{operation=\"").append(recorder.getName()).append('"').append(labels).append("} ")
+                .append(value).append('\n');
+    }
+
+    /**
+     * Serves the metrics on 'http://localhost:port/metrics'.
+     *
+     * @param port the port, or 0 for any free one
+     * @throws RuntimeException if the server can not be started
+     */
+    private static void startServer(int port) {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+
+            server.createContext("/metrics", exchange -> {
+                byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+
+            // The dispatcher thread inherits the daemon flag, so that the server does not keep the JVM running
+            Thread starter = new Thread(server::start);
+            starter.setDaemon(true);
+            starter.start();
+            starter.join();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package rs.etf.sab.solution;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the latencies, the errors and the SQL work of one operation, from any number of threads.
+ * <p>
+ * Recording is lock-free and does not allocate: the latencies are counted in an atomic array of buckets,
+ * four per power of two of nanoseconds, so a percentile is within 19% of the true value.
+ * The other counters are 'LongAdder's.
+ */
+public class OperationRecorder implements OperationRecorderMBean {
+    // Four buckets per power of two, up to 2^40 ns (about 18 minutes), the last one takes all the longer ones
+    static final int BUCKETS = 4 * 40;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder roundTrips = new LongAdder();
+    private final LongAdder rowsRead = new LongAdder();
+
+    /**
+     * Creates an empty recorder.
+     *
+     * @param name the name of the operation, e.g. 'OrderOperations.completeOrder'
+     */
+    OperationRecorder(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Retrieves the name of the operation.
+     *
+     * @return the name of the operation
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records the latency of a call.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    void record(long nanos) {
+        buckets.incrementAndGet(index(nanos));
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    /**
+     * Records a call that threw an exception. Its latency is recorded separately.
+     */
+    void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * Records an SQL statement, executed on its own or added to a batch.
+     */
+    void recordStatement() {
+        statements.increment();
+    }
+
+    /**
+     * Records a round-trip to the database: an execution, a batch or a commit.
+     */
+    void recordRoundTrip() {
+        roundTrips.increment();
+    }
+
+    /**
+     * Records a result set row read.
+     */
+    void recordRow() {
+        rowsRead.increment();
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getStatements() {
+        return statements.sum();
+    }
+
+    @Override
+    public long getRoundTrips() {
+        return roundTrips.sum();
+    }
+
+    @Override
+    public long getRowsRead() {
+        return rowsRead.sum();
+    }
+
+    @Override
+    public double getRoundTripsPerCall() {
+        long calls = count.sum();
+        return calls == 0 ? 0 : (double) roundTrips.sum() / calls;
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long calls = count.sum();
+        return calls == 0 ? 0 : totalNanos.sum() / 1e6 / calls;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return getValueAtPercentile(50) / 1e6;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return getValueAtPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return getValueAtPercentile(99.9) / 1e6;
+    }
+
+    /**
+     * Retrieves the sum of the recorded latencies.
+     *
+     * @return the sum in nanoseconds
+     */
+    long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * Retrieves the number of latencies counted in the bucket.
+     *
+     * @param index the index of the bucket
+     * @return the number of latencies
+     */
+    long getBucket(int index) {
+        return buckets.get(index);
+    }
+
+    /**
+     * Retrieves the latency at the given percentile, as the upper bound of its bucket.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the latency in nanoseconds, 0 if nothing was recorded
+     */
+    long getValueAtPercentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+
+        // The buckets are read once, so that the counts agree with the total while calls are recorded
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+
+        long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+        long cumulative = 0;
+
+        for (int i = 0; i < BUCKETS && total > 0; i++) {
+            cumulative += counts[i];
+            if (cumulative >= countAtPercentile) return upperBound(i) - 1;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Retrieves the index of the bucket the latency is counted in.
+     * The latencies below 4 ns have a bucket each, and every next power of two is split into 4 buckets.
+     *
+     * @param nanos the latency in nanoseconds
+     * @return the index of the bucket
+     */
+    static int index(long nanos) {
+        if (nanos < 4) return (int) Math.max(nanos, 0);
+
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - 2)) & 3;
+
+        return Math.min(4 * (exponent - 1) + subBucket, BUCKETS - 1);
+    }
+
+    /**
+     * Retrieves the exclusive upper bound of the bucket.
+     *
+     * @param index the index of the bucket
+     * @return the upper bound in nanoseconds
+     */
+    static long upperBound(int index) {
+        if (index < 4) return index + 1;
+
+        int exponent = index / 4 + 1;
+        return (long) (4 + index % 4 + 1) << (exponent - 2);
+    }
+}
@@ -0,0 +1,76 @@
+package rs.etf.sab.solution;
+
+/**
+ * Exposes the metrics of one operation through JMX.
+ */
+public interface OperationRecorderMBean {
+    /**
+     * Retrieves the number of calls.
+     *
+     * @return the number of calls
+     */
+    long getCount();
+
+    /**
+     * Retrieves the number of calls that threw an exception.
+     *
+     * @return the number of failed calls
+     */
+    long getErrors();
+
+    /**
+     * Retrieves the number of SQL statements executed by the calls, batched ones included.
+     *
+     * @return the number of statements
+     */
+    long getStatements();
+
+    /**
+     * Retrieves the number of round-trips to the database made by the calls.
+     *
+     * @return the number of round-trips
+     */
+    long getRoundTrips();
+
+    /**
+     * Retrieves the number of result set rows read by the calls.
+     *
+     * @return the number of rows
+     */
+    long getRowsRead();
+
+    /**
+     * Retrieves the mean number of round-trips per call.
+     *
+     * @return the round-trips per call, 0 if there were no calls
+     */
+    double getRoundTripsPerCall();
+
+    /**
+     * Retrieves the mean latency.
+     *
+     * @return the mean latency in milliseconds, 0 if there were no calls
+     */
+    double getMeanMillis();
+
+    /**
+     * Retrieves the median latency.
+     *
+     * @return the latency in milliseconds
+     */
+    double getP50Millis();
+
+    /**
+     * Retrieves the 99th percentile of the latency.
+     *
+     * @return the latency in milliseconds
+     */
+    double getP99Millis();
+
+    /**
+     * Retrieves the 99.9th percentile of the latency.
+     *
+     * @return the latency in milliseconds
+     */
+    double getP999Millis();
+}
@@ -0,0 +1,69 @@
+package rs.etf.sab.solution;
+
+import java.sql.*;
+import java.util.Calendar;
+
+/**
+ * Moves old arrived orders, their items and their transactions into the archive tables.
+ * <p>
+ * The hot tables only keep the recent orders, so the queries and the indexes over them stay small.
+ * All the reads of the Solution classes go through the 'V_ORDER', 'V_ORDER_ITEM' and 'V_TRANSACTION'
+ * views, so the archived rows are still visible to them.
+ */
+public class OrderArchiveJob {
+    // 'SP_FINAL_PRICE' looks at the buyer's transactions of the last 30 days
+    public static final int MIN_RETENTION_DAYS = 30;
+
+    private final Connection c;
+    private final int retentionDays;
+
+    /**
+     * Creates the job over the given connection.
+     *
+     * @param c             the database connection to use
+     * @param retentionDays the number of days an arrived order stays in the hot tables
+     */
+    public OrderArchiveJob(Connection c, int retentionDays) {
+        if (retentionDays < MIN_RETENTION_DAYS) {
+            throw new IllegalArgumentException("The retention must be at least " + MIN_RETENTION_DAYS + " days");
+        }
+
+        this.c = c;
+        this.retentionDays = retentionDays;
+    }
+
+    /**
+     * Archives the orders that arrived more than the retention days before the current simulated time.
+     *
+     * @return the number of archived orders
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public int archive() {
+        Calendar before = new SolutionGeneralOperations(c).getCurrentTime();
+        before.add(Calendar.DAY_OF_MONTH, -retentionDays);
+
+        return archive(before);
+    }
+
+    /**
+     * Archives the orders that arrived before the given time.
+     *
+     * @param before the time before which the archived orders arrived
+     * @return the number of archived orders
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private int archive(Calendar before) {
+        String callableQuery = "{ call SP_ARCHIVE_ORDERS (?, ?) }";
+
+        try (CallableStatement cs = c.prepareCall(callableQuery)) {
+            cs.setTimestamp(1, new Timestamp(before.getTimeInMillis()));
+            cs.registerOutParameter(2, Types.INTEGER);
+
+            cs.execute();
+
+            return cs.getInt(2);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
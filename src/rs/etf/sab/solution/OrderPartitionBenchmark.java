@@ -0,0 +1,108 @@
+package rs.etf.sab.solution;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Measures how the throughput of 'completeOrder()' scales with the number of order partitions, see 'OrderPartitions'.
+ * <p>
+ * For 1, 2, 4, ... partitions, up to the given maximum, the benchmark generates the dataset again, creates the orders
+ * of sampled buyers with 1 to 3 sampled articles each, and then completes all of them through the partitions at once.
+ * Only the completion is measured. The speedup is given against one partition, which completes the orders one by one
+ * like a single connection does.
+ * <p>
+ * Usage: OrderPartitionBenchmark [scaleFactor] [orders] [maxPartitions] [buyer|nearest]
+ */
+public class OrderPartitionBenchmark {
+    private static final long SEED = 42;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the scale factor of the dataset, the number of orders, the maximum number of partitions
+     *             and the city the orders are partitioned by
+     * @throws SQLException if the connection can not be closed
+     */
+    public static void main(String[] args) throws SQLException {
+        if (args.length > 0 && args[0].equals("--help")) {
+            System.out.println("Usage: OrderPartitionBenchmark [scaleFactor] [orders] [maxPartitions] [buyer|nearest]");
+            return;
+        }
+
+        int scaleFactor = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int orders = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int maxPartitions = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        OrderPartitions.Key key = OrderPartitions.Key.of(args.length > 3 ? args[3] : "buyer");
+
+        try (Connection connection = DB.getInstance().newConnection()) {
+            Marketplace marketplace = Marketplace.database(connection);
+            double baseline = -1;
+
+            System.out.printf("scale=%d, orders=%d, key=%s%n", scaleFactor, orders, key);
+            for (int partitions = 1; partitions <= maxPartitions; partitions *= 2) {
+                double throughput = run(marketplace, scaleFactor, orders, partitions, key);
+                if (baseline < 0) baseline = throughput;
+
+                System.out.printf("%2d partitions: %8.1f orders/s, speedup %.2fx%n",
+                        partitions, throughput, throughput / baseline);
+            }
+        }
+    }
+
+    /**
+     * Runs the benchmark with the given number of partitions.
+     *
+     * @param marketplace the operations used to generate the dataset and create the orders
+     * @param scaleFactor the scale factor of the dataset
+     * @param orders      the number of orders
+     * @param partitions  the number of partitions
+     * @param key         the city the orders are partitioned by
+     * @return the number of orders completed per second
+     */
+    private static double run(Marketplace marketplace, int scaleFactor, int orders, int partitions,
+                              OrderPartitions.Key key) {
+        DatasetGenerator.Dataset dataset = new DatasetGenerator(marketplace, SEED).generate(scaleFactor, 1.0);
+        Random random = new Random(SEED);
+
+        // The orders are created up front, so that only their completion is measured
+        int[] idOrders = new int[orders];
+        int[] idBuyerCities = new int[orders];
+        for (int i = 0; i < orders; i++) {
+            int idBuyer = dataset.sampleBuyer(random);
+            marketplace.getBuyerOperations().increaseCredit(idBuyer, BigDecimal.valueOf(1000));
+
+            idOrders[i] = marketplace.getBuyerOperations().createOrder(idBuyer);
+            idBuyerCities[i] = marketplace.getBuyerOperations().getCity(idBuyer);
+
+            for (int items = 1 + random.nextInt(3); items > 0; items--) {
+                marketplace.getOrderOperations().addArticle(idOrders[i], dataset.sampleArticle(random), 1);
+            }
+        }
+
+        try (OrderPartitions orderPartitions = new OrderPartitions(partitions, key)) {
+            List<CompletableFuture<Integer>> results = new ArrayList<>();
+            long startTime = System.nanoTime();
+
+            for (int i = 0; i < orders; i++) {
+                results.add(orderPartitions.completeOrder(idOrders[i], idBuyerCities[i]));
+            }
+
+            int sent = 0;
+            for (CompletableFuture<Integer> result : results) {
+                if (result.join() == 1) sent++;
+            }
+
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            System.out.printf("%2d partitions: %d of %d orders sent, %d local, %d cross-partition, %d forwarded%n",
+                    partitions, sent, orders, orderPartitions.getLocalOrders(),
+                    orderPartitions.getCrossPartitionOrders(), orderPartitions.getForwardedOrders());
+
+            return orders / seconds;
+        }
+    }
+}
@@ -0,0 +1,672 @@
+package rs.etf.sab.solution;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Processes the orders on partitions keyed by city, each a single-threaded event loop that owns its slice of the
+ * routing and stock state, so that the orders of a partition never wait for each other's locks.
+ * <p>
+ * An order is completed by the partition of its buyer's city, or of the nearest shop city of its buyer's city.
+ * The partition of a city owns:
+ * <ul>
+ *     <li>the nearest shop city of its buyer cities, which picks the partition with the second key,</li>
+ *     <li>the stock ledger of the articles of its shops: their quantity in the database, and how much of it
+ *     the orders being completed have reserved.</li>
+ * </ul>
+ * The state of a partition is only touched on its thread, so it is kept in plain maps, without locks.
+ * <p>
+ * An order whose shops are in other partitions is completed with a reservation protocol: the partition of the order
+ * sends a reservation of the items to the partition of every shop, and keeps processing other orders meanwhile.
+ * Once all the partitions have answered, it completes the order in the database with 'SolutionOrderOperations' if
+ * all of them reserved their items, and then sends each a confirmation, which takes the items from its ledger,
+ * or a cancellation, which returns them. As every reservation goes through the partition of the article,
+ * a reserved order always finds its stock in the database.
+ * <p>
+ * The arrivals are settled by every partition for the orders of its nearest cities, which never change once
+ * the orders are sent, so every order arrives on exactly one partition. The ledgers and the routes are dropped
+ * on the changes published by the 'InvalidationBus'. Otherwise, a reservation that finds too little stock reloads
+ * it from the database when no reservation of the article is in flight, e.g. after 'increaseArticleCount()'.
+ * <p>
+ * The partitions are used by the Solution classes once they are set with 'SolutionOrderOperations.setOrderPartitions()'
+ * and 'SolutionGeneralOperations.setOrderPartitions()'. With '-Donlineshop.partitions=N', 'Main' sets N partitions,
+ * keyed by '-Donlineshop.partitions.key=buyer|nearest' (buyer by default).
+ */
+public class OrderPartitions implements AutoCloseable {
+    private static final int PARTITIONS = Integer.getInteger("onlineshop.partitions", -1);
+    private static final String KEY = System.getProperty("onlineshop.partitions.key", "buyer");
+
+    private static OrderPartitions orderPartitions = null;
+
+    private static final ThreadLocal<Boolean> partitionThread = ThreadLocal.withInitial(() -> false);
+
+    private final Key key;
+    private final Partition[] partitions;
+
+    // The listeners registered with the 'InvalidationBus', unregistered by 'close()'
+    private final Map<InvalidationBus.Table, InvalidationBus.Listener> listeners =
+            new EnumMap<>(InvalidationBus.Table.class);
+
+    private final LongAdder localOrders = new LongAdder();
+    private final LongAdder crossPartitionOrders = new LongAdder();
+    private final LongAdder forwardedOrders = new LongAdder();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Represents the city an order is partitioned by.
+     */
+    public enum Key {
+        /**
+         * The city of the buyer, so that the orders with the same route are completed by one partition.
+         */
+        BUYER_CITY,
+
+        /**
+         * The nearest shop city of the buyer's city, so that the orders assembled in the same city,
+         * which mostly take from the same shops, are completed by one partition.
+         */
+        NEAREST_SHOP_CITY;
+
+        /**
+         * Parses the key from its name.
+         *
+         * @param name 'buyer' or 'nearest'
+         * @return the key
+         * @throws IllegalArgumentException if the name is not a key
+         */
+        public static Key of(String name) {
+            return switch (name) {
+                case "buyer" -> BUYER_CITY;
+                case "nearest" -> NEAREST_SHOP_CITY;
+                default -> throw new IllegalArgumentException("Unknown partition key: " + name);
+            };
+        }
+    }
+
+    /**
+     * Represents an item of an order, with the city of its shop.
+     */
+    private static class Item {
+        private final int idArticle;
+        private final int quantity;
+        private final int idShopCity;
+
+        Item(int idArticle, int quantity, int idShopCity) {
+            this.idArticle = idArticle;
+            this.quantity = quantity;
+            this.idShopCity = idShopCity;
+        }
+    }
+
+    /**
+     * Represents the entry of an article in a stock ledger.
+     */
+    private static class Stock {
+        private int quantity;
+        private int reserved = 0;
+
+        Stock(int quantity) {
+            this.quantity = quantity;
+        }
+    }
+
+    /**
+     * Represents a partition: a single thread, its database connection and its slice of the state.
+     */
+    private class Partition {
+        private final int index;
+        private final ExecutorService loop;
+        private final Connection connection;
+        private final SolutionOrderOperations operations;
+
+        // idBuyerCity -> idNearestShopCity, for the buyer cities of the partition
+        private final Map<Integer, Integer> routes = new HashMap<>();
+
+        // idArticle -> stock, for the articles of the shops of the partition
+        private final Map<Integer, Stock> ledger = new HashMap<>();
+
+        Partition(int index) {
+            this.index = index;
+            this.connection = DB.getInstance().newConnection();
+            this.operations = new SolutionOrderOperations(connection);
+            this.loop = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(() -> {
+                    partitionThread.set(true);
+                    runnable.run();
+                }, "order-partition-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        /**
+         * Runs the event on the thread of the partition, after the events posted before it.
+         * Once the partitions are closed, the event is dropped.
+         *
+         * @param event the event
+         */
+        void post(Runnable event) {
+            post(event, null);
+        }
+
+        /**
+         * Runs the event on the thread of the partition, after the events posted before it.
+         * If the event can not be run, e.g. once the partitions are closed, the future waiting for it is failed.
+         *
+         * @param event   the event
+         * @param waiting the future completed by the event, or null if nothing waits for it
+         */
+        void post(Runnable event, CompletableFuture<?> waiting) {
+            try {
+                loop.execute(event);
+            } catch (RejectedExecutionException e) {
+                if (waiting != null) {
+                    waiting.completeExceptionally(closed ? new IllegalStateException("The partitions are closed") : e);
+                } else if (!closed) {
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Runs the event on the thread of the partition, after the events posted before it.
+         *
+         * @param event the event, which returns its result
+         * @param <T>   the type of the result
+         * @return a future completed with the result of the event, or failed if the event fails or can not be run
+         */
+        <T> CompletableFuture<T> submit(Supplier<T> event) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+
+            post(() -> {
+                try {
+                    result.complete(event.get());
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }, result);
+
+            return result;
+        }
+
+        /**
+         * Completes the order on this partition, or forwards it to the partition of its nearest shop city.
+         *
+         * @param idOrder     the ID of the order
+         * @param idBuyerCity the ID of the buyer's city
+         * @param result      the future completed with the result of 'completeOrder()'
+         */
+        void dispatch(int idOrder, int idBuyerCity, CompletableFuture<Integer> result) {
+            if (key == Key.NEAREST_SHOP_CITY) {
+                Partition owner = partitionOf(routes.computeIfAbsent(idBuyerCity, this::nearestShopCity));
+
+                if (owner != this) {
+                    forwardedOrders.increment();
+                    owner.post(() -> owner.complete(idOrder, result), result);
+                    return;
+                }
+            }
+
+            complete(idOrder, result);
+        }
+
+        /**
+         * Starts completing the order: reserves its items in the ledgers of their partitions, this one directly,
+         * and finishes the order once all of them have answered.
+         *
+         * @param idOrder the ID of the order
+         * @param result  the future completed with the result of 'completeOrder()'
+         */
+        void complete(int idOrder, CompletableFuture<Integer> result) {
+            Map<Partition, Map<Integer, Integer>> reservations = new HashMap<>();
+
+            try {
+                for (Item item : readItems(idOrder)) {
+                    reservations.computeIfAbsent(partitionOf(item.idShopCity), p -> new TreeMap<>())
+                            .merge(item.idArticle, item.quantity, Integer::sum);
+                }
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            if (reservations.keySet().stream().allMatch(p -> p == this)) {
+                localOrders.increment();
+
+                Map<Integer, Integer> items = reservations.get(this);
+                boolean reserved = items == null || reserve(items);
+                finish(idOrder, reserved ? reservations : Map.of(), reserved, result);
+                return;
+            }
+
+            crossPartitionOrders.increment();
+
+            List<Partition> owners = new ArrayList<>(reservations.keySet());
+            List<CompletableFuture<Boolean>> answers = new ArrayList<>();
+            for (Partition owner : owners) {
+                answers.add(owner.submit(() -> owner.reserve(reservations.get(owner))));
+            }
+
+            // The answers are handled on this partition too, so that it keeps processing other orders meanwhile
+            CompletableFuture.allOf(answers.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, failure) ->
+                    post(() -> {
+                        Map<Partition, Map<Integer, Integer>> reserved = new HashMap<>();
+                        for (int i = 0; i < owners.size(); i++) {
+                            if (!answers.get(i).isCompletedExceptionally() && answers.get(i).join()) {
+                                reserved.put(owners.get(i), reservations.get(owners.get(i)));
+                            }
+                        }
+
+                        finish(idOrder, reserved, reserved.size() == owners.size(), result);
+                    }, result));
+        }
+
+        /**
+         * Completes the order in the database if all its items are reserved, and then confirms or cancels
+         * the reservations.
+         *
+         * @param idOrder      the ID of the order
+         * @param reservations the reserved items of the order, by partition
+         * @param reserved     whether all the items are reserved
+         * @param result       the future completed with the result of 'completeOrder()'
+         */
+        void finish(int idOrder, Map<Partition, Map<Integer, Integer>> reservations, boolean reserved,
+                    CompletableFuture<Integer> result) {
+            int sent;
+
+            try {
+                sent = reserved ? operations.completeOrder(idOrder) : -1;
+            } catch (RuntimeException e) {
+                settle(reservations, false);
+                result.completeExceptionally(e);
+                return;
+            }
+
+            settle(reservations, sent == 1);
+            result.complete(sent);
+        }
+
+        /**
+         * Confirms or cancels the reservations in the ledgers of their partitions.
+         *
+         * @param reservations the reserved items, by partition
+         * @param confirmed    whether the order was sent
+         */
+        void settle(Map<Partition, Map<Integer, Integer>> reservations, boolean confirmed) {
+            for (Map.Entry<Partition, Map<Integer, Integer>> reservation : reservations.entrySet()) {
+                Partition owner = reservation.getKey();
+
+                if (owner == this) {
+                    release(reservation.getValue(), confirmed);
+                } else {
+                    owner.post(() -> owner.release(reservation.getValue(), confirmed));
+                }
+            }
+        }
+
+        /**
+         * Reserves the items in the ledger, all of them or none.
+         *
+         * @param items the map (idArticle -> quantity) of the articles of this partition
+         * @return true if the items are reserved, or false if an article is out of stock
+         */
+        boolean reserve(Map<Integer, Integer> items) {
+            Map<Integer, Integer> done = new TreeMap<>();
+
+            try {
+                for (Map.Entry<Integer, Integer> item : items.entrySet()) {
+                    Stock stock = ledger.computeIfAbsent(item.getKey(), id -> new Stock(readQuantity(id)));
+
+                    // The stock may have been increased outside the partitions, it is exact when nothing is in flight
+                    if (stock.quantity - stock.reserved < item.getValue() && stock.reserved == 0) {
+                        stock.quantity = readQuantity(item.getKey());
+                    }
+
+                    if (stock.quantity - stock.reserved < item.getValue()) {
+                        release(done, false);
+                        return false;
+                    }
+
+                    stock.reserved += item.getValue();
+                    done.put(item.getKey(), item.getValue());
+                }
+            } catch (RuntimeException e) {
+                release(done, false);
+                throw e;
+            }
+
+            return true;
+        }
+
+        /**
+         * Ends the reservation of the items, taking them from the ledger if the order was sent.
+         *
+         * @param items     the map (idArticle -> quantity) of the reserved articles
+         * @param confirmed whether the order was sent
+         */
+        void release(Map<Integer, Integer> items, boolean confirmed) {
+            for (Map.Entry<Integer, Integer> item : items.entrySet()) {
+                Stock stock = ledger.get(item.getKey());
+                if (stock == null) continue;
+
+                stock.reserved -= item.getValue();
+                if (confirmed) stock.quantity -= item.getValue();
+            }
+        }
+
+        /**
+         * Drops the ledger entry of the article, unless a reservation of it is in flight.
+         *
+         * @param idArticle the ID of the article, or -1 for all the articles
+         */
+        void evict(int idArticle) {
+            if (idArticle < 0) {
+                ledger.values().removeIf(stock -> stock.reserved == 0);
+            } else {
+                Stock stock = ledger.get(idArticle);
+                if (stock != null && stock.reserved == 0) ledger.remove(idArticle);
+            }
+        }
+
+        /**
+         * Finds the nearest shop city of the buyer city, the city the orders of its buyers are assembled in.
+         *
+         * @param idBuyerCity the ID of the buyer city
+         * @return the ID of the nearest shop city, or the buyer city if there is none
+         */
+        int nearestShopCity(int idBuyerCity) {
+            try {
+                DijkstraAlgorithm da = new DijkstraAlgorithm(connection);
+                da.dijkstraAlgorithm(idBuyerCity, -1);
+
+                return da.getIdNearestCity() < 0 ? idBuyerCity : da.getIdNearestCity();
+            } catch (RuntimeException e) {
+                // The city is not connected to any shop
+                return idBuyerCity;
+            }
+        }
+
+        /**
+         * Reads the items of the order, with the cities of their shops.
+         *
+         * @param idOrder the ID of the order
+         * @return the items
+         * @throws RuntimeException if an SQL exception occurs during the operation
+         */
+        List<Item> readItems(int idOrder) {
+            String query = """
+                    SELECT OI.IdArticle, OI.Quantity, S.IdCity
+                    FROM OrderItem OI
+                        JOIN Article A ON (OI.IdArticle = A.Id)
+                        JOIN Shop S ON (A.IdShop = S.Id)
+                    WHERE OI.IdOrder = ?""";
+            List<Item> items = new ArrayList<>();
+
+            try (PreparedStatement ps = connection.prepareStatement(query)) {
+                ps.setInt(1, idOrder);
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        items.add(new Item(rs.getInt(1), rs.getInt(2), rs.getInt(3)));
+                    }
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+
+            return items;
+        }
+
+        /**
+         * Reads the quantity of the article in the database.
+         *
+         * @param idArticle the ID of the article
+         * @return the quantity, or 0 if there is no such article
+         * @throws RuntimeException if an SQL exception occurs during the operation
+         */
+        int readQuantity(int idArticle) {
+            String query = "SELECT Quantity FROM Article WHERE Id = ?";
+
+            try (PreparedStatement ps = connection.prepareStatement(query)) {
+                ps.setInt(1, idArticle);
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Lets the sent orders of the partition's nearest cities arrive, up to the given time.
+         *
+         * @param time the current time
+         * @return the number of orders that arrived
+         * @throws RuntimeException if an SQL exception occurs during the operation
+         */
+        int arrive(Timestamp time) {
+            String query = """
+                    UPDATE [Order]
+                    SET Status = 'arrived'
+                    WHERE Status = 'sent' AND DateArrived <= ? AND IdNearestCity % ? = ?""";
+
+            try (PreparedStatement ps = connection.prepareStatement(query)) {
+                ps.setTimestamp(1, time);
+                ps.setInt(2, partitions.length);
+                ps.setInt(3, index);
+
+                return ps.executeUpdate();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Stops the thread of the partition and closes its connection, once the posted events are run.
+         */
+        void close() {
+            loop.execute(() -> {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    System.err.println("Could not close a partition connection: " + e.getMessage());
+                }
+            });
+            loop.shutdown();
+        }
+    }
+
+    /**
+     * Creates the partitions, each with its own thread and database connection.
+     *
+     * @param partitions the number of partitions, e.g. the number of cores
+     * @param key        the city the orders are partitioned by
+     */
+    public OrderPartitions(int partitions, Key key) {
+        if (partitions <= 0) throw new IllegalArgumentException("There must be at least one partition");
+
+        this.key = key;
+        this.partitions = new Partition[partitions];
+        for (int i = 0; i < partitions; i++) {
+            this.partitions[i] = new Partition(i);
+        }
+
+        listeners.put(InvalidationBus.Table.ARTICLE,
+                (table, changed) -> postAll(p -> p.evict(changed == null ? -1 : changed[0])));
+        listeners.put(InvalidationBus.Table.LINE, (table, changed) -> postAll(p -> p.routes.clear()));
+        listeners.put(InvalidationBus.Table.SHOP, (table, changed) -> postAll(p -> p.routes.clear()));
+        listeners.forEach(InvalidationBus::register);
+    }
+
+    /**
+     * Checks if the partitions are configured with '-Donlineshop.partitions'.
+     *
+     * @return true if the partitions are configured, or false otherwise
+     */
+    public static boolean isEnabled() {
+        return PARTITIONS > 0;
+    }
+
+    /**
+     * Returns the configured partitions, creating them on the first call.
+     *
+     * @return the order partitions
+     */
+    public static synchronized OrderPartitions getInstance() {
+        if (orderPartitions == null) {
+            orderPartitions = new OrderPartitions(PARTITIONS, Key.of(KEY));
+        }
+
+        return orderPartitions;
+    }
+
+    /**
+     * Checks if the current thread is the thread of a partition.
+     *
+     * @return true if it is a partition thread, or false otherwise
+     */
+    public static boolean isPartitionThread() {
+        return partitionThread.get();
+    }
+
+    /**
+     * Completes the order on its partition.
+     *
+     * @param idOrder     the ID of the order
+     * @param idBuyerCity the ID of the city of the order's buyer
+     * @return a future completed with 1 if the order is sent, or -1 otherwise, and failed if the partitions are closed
+     */
+    public CompletableFuture<Integer> completeOrder(int idOrder, int idBuyerCity) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        Partition partition = partitionOf(idBuyerCity);
+
+        partition.post(() -> partition.dispatch(idOrder, idBuyerCity, result), result);
+        return result;
+    }
+
+    /**
+     * Lets the sent orders arrive up to the given time, every partition for its own orders.
+     *
+     * @param time the current time
+     * @return a future completed with the number of orders that arrived
+     */
+    public CompletableFuture<Integer> arrive(Timestamp time) {
+        List<CompletableFuture<Integer>> arrived = new ArrayList<>();
+
+        for (Partition partition : partitions) {
+            arrived.add(partition.submit(() -> partition.arrive(time)));
+        }
+
+        return CompletableFuture.allOf(arrived.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> arrived.stream().mapToInt(CompletableFuture::join).sum());
+    }
+
+    /**
+     * Drops the routes and the ledgers of all the partitions, e.g. after all the data is erased.
+     *
+     * @return a future completed once every partition has dropped them
+     */
+    public CompletableFuture<Void> reset() {
+        List<CompletableFuture<Void>> dropped = new ArrayList<>();
+
+        for (Partition partition : partitions) {
+            dropped.add(partition.submit(() -> {
+                partition.routes.clear();
+                partition.ledger.clear();
+                return null;
+            }));
+        }
+
+        return CompletableFuture.allOf(dropped.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Retrieves the number of partitions.
+     *
+     * @return the number of partitions
+     */
+    public int size() {
+        return partitions.length;
+    }
+
+    /**
+     * Retrieves the number of orders whose items were all reserved on the partition completing them.
+     *
+     * @return the number of local orders
+     */
+    public long getLocalOrders() {
+        return localOrders.sum();
+    }
+
+    /**
+     * Retrieves the number of orders whose items were reserved on other partitions too.
+     *
+     * @return the number of cross-partition orders
+     */
+    public long getCrossPartitionOrders() {
+        return crossPartitionOrders.sum();
+    }
+
+    /**
+     * Retrieves the number of orders forwarded from the partition of the buyer city to the partition
+     * of the nearest shop city.
+     *
+     * @return the number of forwarded orders
+     */
+    public long getForwardedOrders() {
+        return forwardedOrders.sum();
+    }
+
+    /**
+     * Stops the partitions once the posted events are run, and closes their connections.
+     * The orders completed afterwards fail, and the invalidations are no longer received.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        listeners.forEach(InvalidationBus::unregister);
+
+        for (Partition partition : partitions) {
+            partition.close();
+        }
+    }
+
+    /**
+     * Retrieves the partition of the city.
+     *
+     * @param idCity the ID of the city
+     * @return the partition
+     */
+    private Partition partitionOf(int idCity) {
+        return partitions[Math.floorMod(idCity, partitions.length)];
+    }
+
+    /**
+     * Posts the event to every partition, e.g. to drop the state changed by another JVM.
+     *
+     * @param event the event, given the partition
+     */
+    private void postAll(Consumer<Partition> event) {
+        for (Partition partition : partitions) {
+            partition.post(() -> event.accept(partition));
+        }
+    }
+}
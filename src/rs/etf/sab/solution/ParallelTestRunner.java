@@ -0,0 +1,201 @@
+package rs.etf.sab.solution;
+
+import org.junit.runner.Description;
+import org.junit.runner.Request;
+import rs.etf.sab.tests.TestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the tests of 'TestRunner' in parallel, sharded across worker JVMs with isolated databases.
+ * <p>
+ * Every worker gets its own database, 'OnlineShop_w0', 'OnlineShop_w1' and so on, created from 'db/create.sql'.
+ * The test methods of all the test classes are dealt round-robin to the workers, and every worker
+ * runs its shard with 'TestWorker'. The output of every worker is printed once it is done,
+ * followed by the totals. The temporary files of the workers are deleted at the end.
+ */
+public class ParallelTestRunner {
+    // The fields of 'TestRunner' with the test classes, in the order they are run
+    private static final String[] TEST_CLASS_FIELDS = {
+            "UNIT_TEST_CLASSES", "MODULE_TEST_CLASSES", "UNIT_TEST_CLASSES_PRIVATE", "MODULE_TEST_CLASSES_PRIVATE"
+    };
+
+    private final int workers;
+    private final DatabaseProvisioner provisioner;
+
+    /**
+     * Creates a runner with the given number of workers.
+     *
+     * @param workers the number of worker JVMs and databases
+     * @param script  the path to the schema script, e.g. 'db/create.sql'
+     */
+    public ParallelTestRunner(int workers, Path script) {
+        if (workers <= 0) throw new IllegalArgumentException("The number of workers must be positive");
+
+        this.workers = workers;
+        this.provisioner = new DatabaseProvisioner(script);
+    }
+
+    /**
+     * Provisions the databases, runs the workers and drops the databases.
+     *
+     * @return true if all the tests passed, or false otherwise
+     * @throws RuntimeException if a database can not be provisioned or a worker can not be started
+     */
+    public boolean run() {
+        List<List<String>> shards = shard(collectTests());
+        List<Process> processes = new ArrayList<>();
+        List<Path> outputs = new ArrayList<>();
+        List<Path> temporaryFiles = new ArrayList<>();
+        int run = 0, failed = 0;
+        boolean passed = true;
+
+        try {
+            for (int i = 0; i < shards.size(); i++) {
+                String database = "OnlineShop_w" + i;
+                provisioner.provision(database);
+
+                Path tests = Files.createTempFile("tests-w" + i + "-", ".txt");
+                temporaryFiles.add(tests);
+                Path output = Files.createTempFile("tests-w" + i + "-", ".log");
+                temporaryFiles.add(output);
+                Files.write(tests, shards.get(i), StandardCharsets.UTF_8);
+
+                processes.add(startWorker(database, tests, output));
+                outputs.add(output);
+            }
+
+            for (int i = 0; i < processes.size(); i++) {
+                passed &= processes.get(i).waitFor() == 0;
+
+                for (String line : Files.readAllLines(outputs.get(i), StandardCharsets.UTF_8)) {
+                    if (line.startsWith(TestWorker.RESULT_PREFIX)) {
+                        String[] counts = line.substring(TestWorker.RESULT_PREFIX.length()).split(" ");
+                        run += Integer.parseInt(counts[0]);
+                        failed += Integer.parseInt(counts[1]);
+                    } else {
+                        System.out.println("[w" + i + "] " + line);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            processes.forEach(Process::destroy);
+            throw new RuntimeException(e);
+        } finally {
+            for (int i = 0; i < shards.size(); i++) {
+                provisioner.drop("OnlineShop_w" + i);
+            }
+
+            deleteAll(temporaryFiles);
+        }
+
+        System.out.println("Tests run: " + run + ", failed: " + failed + ", workers: " + shards.size());
+        return passed && failed == 0;
+    }
+
+    /**
+     * Deletes the temporary files of the workers. A file that can not be deleted is reported and skipped.
+     *
+     * @param files the files
+     */
+    private static void deleteAll(List<Path> files) {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.err.println("Could not delete " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Collects the test methods of all the test classes of 'TestRunner'.
+     *
+     * @return the tests, as 'ClassName#methodName'
+     */
+    private static List<String> collectTests() {
+        List<String> tests = new ArrayList<>();
+
+        for (String fieldName : TEST_CLASS_FIELDS) {
+            for (Class<?> testClass : testClasses(fieldName)) {
+                for (Description test : Request.aClass(testClass).getRunner().getDescription().getChildren()) {
+                    tests.add(testClass.getName() + "#" + test.getMethodName());
+                }
+            }
+        }
+
+        return tests;
+    }
+
+    /**
+     * Reads the test classes from a private field of 'TestRunner'.
+     *
+     * @param fieldName the name of the field
+     * @return the test classes
+     */
+    private static Class<?>[] testClasses(String fieldName) {
+        try {
+            Field field = TestRunner.class.getDeclaredField(fieldName);
+            field.setAccessible(true);
+            return (Class<?>[]) field.get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Deals the tests round-robin into at most as many shards as there are workers.
+     *
+     * @param tests the tests
+     * @return the shards
+     */
+    private List<List<String>> shard(List<String> tests) {
+        List<List<String>> shards = new ArrayList<>();
+
+        for (int i = 0; i < Math.min(workers, tests.size()); i++) {
+            shards.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < tests.size(); i++) {
+            shards.get(i % shards.size()).add(tests.get(i));
+        }
+
+        return shards;
+    }
+
+    /**
+     * Starts a worker JVM with the same classpath, connected to the given database.
+     *
+     * @param database the name of the worker's database
+     * @param tests    the file with the worker's tests
+     * @param output   the file the worker's output is written to
+     * @return the worker process
+     * @throws IOException if the process can not be started
+     */
+    private static Process startWorker(String database, Path tests, Path output) throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+
+        return new ProcessBuilder(
+                java,
+                "-cp", System.getProperty("java.class.path"),
+                "-Donlineshop.database=" + database,
+                TestWorker.class.getName(),
+                tests.toString()
+        )
+                .redirectErrorStream(true)
+                .redirectOutput(output.toFile())
+                .directory(new File(System.getProperty("user.dir")))
+                .start();
+    }
+}
@@ -0,0 +1,181 @@
+package rs.etf.sab.solution;
+
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Provides the connections the query-only operations read on, so that they do not wait for the locks of the writers.
+ * <p>
+ * The isolation of the reads is set with '-Donlineshop.read.isolation=...':
+ * <ul>
+ *     <li>'locking', the default, reads on the connection of the operations, under READ COMMITTED with shared locks,</li>
+ *     <li>'snapshot' reads on a separate pool of read-only connections under SNAPSHOT isolation,</li>
+ *     <li>'rcsi' reads on the same pool under READ COMMITTED, for a database with 'READ_COMMITTED_SNAPSHOT' on.</li>
+ * </ul>
+ * Both versioned modes read the last committed versions of the rows, which 'db/create.sql' keeps by allowing
+ * snapshot isolation. 'READ_COMMITTED_SNAPSHOT' is left to the administrator, as it changes the reads of the writers
+ * too. The pool has 4 connections, or '-Donlineshop.read.pool=...', and is opened on the first read.
+ * <p>
+ * A read inside a running transaction stays on the connection of the operations, so that it sees its own writes.
+ * With a read replica, see 'ReplicaRouter', the other reads go to the replica whenever it can serve them.
+ * The pool and the replica are of the database of 'DB', so the reads of a shard stay on the shard, see 'ShardMap'.
+ */
+public class ReadConnections {
+    private static final Isolation ISOLATION = Isolation.of(System.getProperty("onlineshop.read.isolation", "locking"));
+    private static final int POOL_SIZE = Integer.getInteger("onlineshop.read.pool", 4);
+
+    private static volatile ConnectionPool pool = null;
+
+    private final Connection c;
+
+    /**
+     * Represents the isolation of the reads.
+     */
+    public enum Isolation {
+        LOCKING, SNAPSHOT, RCSI;
+
+        /**
+         * Parses the isolation from the value of the property.
+         *
+         * @param value the value, e.g. 'snapshot'
+         * @return the isolation
+         * @throws IllegalArgumentException if the value is not an isolation
+         */
+        static Isolation of(String value) {
+            return valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * Creates the read connections of the operations running on the given connection.
+     *
+     * @param c the database connection of the operations
+     */
+    public ReadConnections(Connection c) {
+        this.c = c;
+    }
+
+    /**
+     * Retrieves the configured isolation of the reads.
+     *
+     * @return the isolation
+     */
+    public static Isolation getIsolation() {
+        return ISOLATION;
+    }
+
+    /**
+     * Borrows the connection to read on. It must be released with 'release()', also when the read fails.
+     *
+     * @return a replica connection, a connection of the read pool, or the connection of the operations
+     * in the locking mode, inside a running transaction or on a shard
+     * @throws RuntimeException if an SQL exception occurs while opening the pool
+     */
+    public Connection borrow() {
+        if (ISOLATION == Isolation.LOCKING && !ReplicaRouter.isEnabled()) return c;
+        if (ShardMap.isShardConnection(c)) return c;
+
+        try {
+            if (!c.getAutoCommit()) return c;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        Connection replica = ReplicaRouter.borrow();
+        if (replica != null) return replica;
+
+        return ISOLATION == Isolation.LOCKING ? c : pool().borrow();
+    }
+
+    /**
+     * Releases the connection borrowed with 'borrow()'.
+     *
+     * @param connection the borrowed connection
+     */
+    public void release(Connection connection) {
+        if (connection != c && !ReplicaRouter.release(connection)) pool.release(connection);
+    }
+
+    /**
+     * Retrieves the read pool, opening it on the first use.
+     *
+     * @return the read pool
+     */
+    private static ConnectionPool pool() {
+        ConnectionPool opened = pool;
+        if (opened != null) return opened;
+
+        synchronized (ReadConnections.class) {
+            if (pool == null) {
+                ConnectionPool created = new ConnectionPool(POOL_SIZE, ReadConnections::openReadConnection);
+
+                try {
+                    checkVersioning(created);
+                } catch (RuntimeException e) {
+                    created.close();
+                    throw e;
+                }
+
+                pool = created;
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Opens a read-only connection with the isolation of the reads.
+     *
+     * @return the connection
+     * @throws RuntimeException if an SQL exception occurs while setting up the connection
+     */
+    private static Connection openReadConnection() {
+        Connection connection = DB.getInstance().newConnection();
+
+        try {
+            connection.setReadOnly(true);
+            connection.setTransactionIsolation(ISOLATION == Isolation.SNAPSHOT
+                    ? SQLServerConnection.TRANSACTION_SNAPSHOT
+                    : Connection.TRANSACTION_READ_COMMITTED);
+        } catch (SQLException e) {
+            try {
+                connection.close();
+            } catch (SQLException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            throw new RuntimeException(e);
+        }
+
+        return connection;
+    }
+
+    /**
+     * Checks that the database keeps the row versions the isolation reads, as the reads would otherwise fail
+     * with SNAPSHOT, or silently take shared locks with RCSI.
+     *
+     * @param pool the opened pool
+     * @throws IllegalStateException if the row versioning is not enabled
+     */
+    private static void checkVersioning(ConnectionPool pool) {
+        String query = ISOLATION == Isolation.SNAPSHOT
+                ? "SELECT snapshot_isolation_state FROM sys.databases WHERE database_id = DB_ID()"
+                : "SELECT CAST(is_read_committed_snapshot_on AS INT) FROM sys.databases WHERE database_id = DB_ID()";
+        Connection connection = pool.borrow();
+
+        try (
+                PreparedStatement ps = connection.prepareStatement(query);
+                ResultSet rs = ps.executeQuery()
+        ) {
+            if (!rs.next() || rs.getInt(1) != 1) {
+                throw new IllegalStateException("The database does not have row versioning enabled for " + ISOLATION);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.release(connection);
+        }
+    }
+}
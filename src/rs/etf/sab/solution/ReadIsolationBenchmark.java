@@ -0,0 +1,201 @@
+package rs.etf.sab.solution;
+
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the latency of the query-only operations while writers hold row locks on the rows they read.
+ * <p>
+ * Every writer runs, on its own connection, transactions that update the stock of the shop's articles
+ * and hold their locks for a while before committing, like 'completeOrder()' does between its statements.
+ * The updated quantity is the same, so the data is not changed, but the exclusive locks are taken all the same.
+ * Every reader reads the stock of one of the articles and the shop's transaction total, like 'getArticleCount()'
+ * and 'getShopTransactionsAmmount()' do. The benchmark compares the locking reads under READ COMMITTED against
+ * the versioned reads under SNAPSHOT, see 'ReadConnections', which needs the row versioning of 'db/create.sql'.
+ * <p>
+ * Usage: ReadIsolationBenchmark idShop [readers] [writers] [seconds] [holdMillis]
+ */
+public class ReadIsolationBenchmark {
+    private static final String WRITE_QUERY = "UPDATE Article SET Quantity = Quantity + 0 WHERE IdShop = ?";
+    private static final String ARTICLE_COUNT_QUERY = "SELECT Quantity FROM Article WHERE Id = ?";
+    private static final String SHOP_AMOUNT_QUERY = "SELECT COALESCE(SUM(Amount), 0) FROM V_TRANSACTION WHERE IdShop = ?";
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the ID of an existing shop with articles, the number of reader and writer threads,
+     *             the duration of each mode in seconds and how long a writer holds its locks in milliseconds
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: ReadIsolationBenchmark idShop [readers] [writers] [seconds] [holdMillis]");
+            return;
+        }
+
+        int idShop = Integer.parseInt(args[0]);
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int writers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int holdMillis = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+        List<Integer> articles = new SolutionShopOperations().getArticles(idShop);
+        if (articles == null) {
+            System.out.println("The shop " + idShop + " has no articles");
+            return;
+        }
+
+        System.out.printf("readers=%d, writers=%d, hold=%d ms%n", readers, writers, holdMillis);
+        run("READ COMMITTED", Connection.TRANSACTION_READ_COMMITTED, idShop, articles, readers, writers, seconds, holdMillis);
+        run("SNAPSHOT", SQLServerConnection.TRANSACTION_SNAPSHOT, idShop, articles, readers, writers, seconds, holdMillis);
+    }
+
+    /**
+     * Runs one mode of the benchmark and prints the latency of its reads.
+     *
+     * @param name       the name of the mode
+     * @param isolation  the isolation of the reader connections
+     * @param idShop     the ID of the shop
+     * @param articles   the IDs of the shop's articles
+     * @param readers    the number of reader threads
+     * @param writers    the number of writer threads
+     * @param seconds    the duration in seconds
+     * @param holdMillis how long a writer holds its locks in milliseconds
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    private static void run(String name, int isolation, int idShop, List<Integer> articles,
+                            int readers, int writers, int seconds, int holdMillis) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder commits = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<LatencyHistogram> histograms = new ArrayList<>();
+
+        // Connections are opened up front, so that the connection setup is not measured
+        List<Connection> readerConnections = new ArrayList<>();
+        List<Connection> writerConnections = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            readerConnections.add(DB.getInstance().newConnection());
+        }
+        for (int i = 0; i < writers; i++) {
+            writerConnections.add(DB.getInstance().newConnection());
+        }
+
+        for (Connection connection : writerConnections) {
+            workers.add(start(() -> {
+                try (
+                        connection;
+                        PreparedStatement ps = connection.prepareStatement(WRITE_QUERY)
+                ) {
+                    connection.setAutoCommit(false);
+                    start.await();
+
+                    while (running.get()) {
+                        ps.setInt(1, idShop);
+                        ps.executeUpdate();
+
+                        Thread.sleep(holdMillis);
+                        connection.commit();
+                        commits.increment();
+                    }
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+
+        for (Connection connection : readerConnections) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histograms.add(histogram);
+
+            workers.add(start(() -> {
+                try (
+                        connection;
+                        PreparedStatement articleCount = connection.prepareStatement(ARTICLE_COUNT_QUERY);
+                        PreparedStatement shopAmount = connection.prepareStatement(SHOP_AMOUNT_QUERY)
+                ) {
+                    connection.setTransactionIsolation(isolation);
+                    start.await();
+
+                    for (boolean even = true; running.get(); even = !even) {
+                        long startTime = System.nanoTime();
+
+                        if (even) {
+                            articleCount.setInt(1, articles.get(ThreadLocalRandom.current().nextInt(articles.size())));
+                            read(articleCount);
+                        } else {
+                            shopAmount.setInt(1, idShop);
+                            read(shopAmount);
+                        }
+
+                        histogram.record(System.nanoTime() - startTime);
+                    }
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+
+        for (Thread thread : workers) {
+            thread.join();
+        }
+
+        double elapsed = (System.nanoTime() - startTime) / 1e9;
+        LatencyHistogram total = new LatencyHistogram();
+        for (LatencyHistogram histogram : histograms) {
+            total.add(histogram);
+        }
+
+        System.out.printf("%-15s %9.0f reads/s  p50 %8.3f ms  p99 %8.3f ms  p99.9 %8.3f ms  max %8.3f ms  %6.0f commits/s%n",
+                name, total.getTotalCount() / elapsed,
+                total.getValueAtPercentile(50) / 1e6, total.getValueAtPercentile(99) / 1e6,
+                total.getValueAtPercentile(99.9) / 1e6, total.getMax() / 1e6, commits.sum() / elapsed);
+    }
+
+    /**
+     * Runs the query and reads its result.
+     *
+     * @param ps the query
+     * @throws SQLException if an SQL exception occurs during the query
+     */
+    private static void read(PreparedStatement ps) throws SQLException {
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                rs.getObject(1);
+            }
+        }
+    }
+
+    /**
+     * Starts a worker thread.
+     *
+     * @param worker the work of the thread
+     * @return the started thread
+     */
+    private static Thread start(Runnable worker) {
+        Thread thread = new Thread(worker);
+        thread.start();
+
+        return thread;
+    }
+}
@@ -0,0 +1,335 @@
+package rs.etf.sab.solution;
+
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Copies the reference data, the cities, lines, shops and articles, from the reference database into every shard,
+ * see 'ShardMap', so that the buyer and order operations of a shard can join them locally.
+ * <p>
+ * Every run reads the rows changed since the last run from the Change Tracking of 'db/create.sql', in one SNAPSHOT
+ * transaction, and merges them into the shards with their IDs. The first run, and a run whose changes are lost,
+ * e.g. after a truncate, copies the whole tables. The rows are only inserted and updated, as the reference data is
+ * not deleted by the operations, and 'eraseAll()' erases the shards too.
+ * <p>
+ * The copies of the shop balances stay 0, as the balances are only kept in the reference database. The copies of the
+ * article quantities are only a hint for 'addArticle()': 'ShardedOrderOperations' reserves the stock of an order
+ * in the reference database.
+ */
+public class ReferenceReplicator {
+    private final ShardMap shards;
+
+    // The connections are opened on the first run, and only used under the lock of the replicator
+    private Connection reference = null;
+    private final List<Connection> connections = new ArrayList<>();
+    private long version = -1;
+
+    /**
+     * Represents a replicated table, in the order of its foreign keys.
+     */
+    private enum Table {
+        CITY("City", true, new String[]{"Id"}, "Name"),
+        LINE("Line", false, new String[]{"Id1", "Id2"}, "Distance"),
+        SHOP("Shop", true, new String[]{"Id"}, "Name", "Discount", "IdCity"),
+        ARTICLE("Article", true, new String[]{"Id"}, "Price", "Quantity", "IdShop", "Name");
+
+        private final String name;
+        private final boolean identity;
+        private final String[] key;
+        private final String[] columns;
+
+        Table(String name, boolean identity, String[] key, String... columns) {
+            this.name = name;
+            this.identity = identity;
+            this.key = key;
+            this.columns = columns;
+        }
+
+        /**
+         * Creates the query reading the rows of the table, with the key columns first.
+         *
+         * @param changed whether only the rows changed since a version are read
+         * @return the query
+         */
+        String selectQuery(boolean changed) {
+            String columnList = "T." + String.join(", T.", allColumns());
+            if (!changed) return "SELECT " + columnList + " FROM [" + name + "] T";
+
+            String join = Arrays.stream(key).map(column -> "T." + column + " = CT." + column)
+                    .collect(Collectors.joining(" AND "));
+            return "SELECT " + columnList + " FROM CHANGETABLE(CHANGES [" + name + "], ?) AS CT"
+                    + " JOIN [" + name + "] T ON (" + join + ")";
+        }
+
+        /**
+         * Creates the query merging one row into the copy of the table. A new shop gets the balance 0.
+         *
+         * @return the query
+         */
+        String mergeQuery() {
+            String[] all = allColumns();
+            String parameters = String.join(", ", Collections.nCopies(all.length, "?"));
+            String on = Arrays.stream(key).map(column -> "T." + column + " = S." + column)
+                    .collect(Collectors.joining(" AND "));
+            String set = Arrays.stream(columns).map(column -> column + " = S." + column)
+                    .collect(Collectors.joining(", "));
+            String insertColumns = String.join(", ", all) + (this == SHOP ? ", Balance" : "");
+            String insertValues = "S." + String.join(", S.", all) + (this == SHOP ? ", 0" : "");
+
+            return "MERGE [" + name + "] AS T USING (VALUES (" + parameters + ")) AS S (" + String.join(", ", all) + ")"
+                    + " ON (" + on + ")"
+                    + " WHEN MATCHED THEN UPDATE SET " + set
+                    + " WHEN NOT MATCHED THEN INSERT (" + insertColumns + ") VALUES (" + insertValues + ");";
+        }
+
+        /**
+         * Retrieves the key columns followed by the other columns.
+         *
+         * @return the columns
+         */
+        String[] allColumns() {
+            String[] all = Arrays.copyOf(key, key.length + columns.length);
+            System.arraycopy(columns, 0, all, key.length, columns.length);
+            return all;
+        }
+    }
+
+    /**
+     * Creates the replicator of the reference data into the shards of the map.
+     *
+     * @param shards the shard map
+     */
+    public ReferenceReplicator(ShardMap shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * Wraps the operations on the reference data, so that the changes of every operation, other than the getters,
+     * are replicated into the shards before it returns.
+     *
+     * @param type       the interface of the operations, e.g. ShopOperations.class
+     * @param operations the operations
+     * @param <T>        the type of the operations
+     * @return the replicating operations
+     */
+    public <T> T replicating(Class<T> type, T operations) {
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (p, method, args) -> {
+            Object result;
+
+            try {
+                result = method.invoke(operations, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+
+            if (method.getDeclaringClass() == type && !method.getName().startsWith("get")) replicate();
+            return result;
+        });
+
+        return type.cast(proxy);
+    }
+
+    /**
+     * Copies the reference data changed since the last run into every shard.
+     *
+     * @return the number of copied rows, per shard
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public synchronized int replicate() {
+        try {
+            open();
+
+            List<List<Object[]>> changes = new ArrayList<>();
+            long current = readChanges(changes);
+
+            int copied = 0;
+            for (Table table : Table.values()) {
+                copied += copy(table, changes.get(table.ordinal()));
+            }
+
+            version = current;
+            return copied;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Copies the whole reference data on the next run, e.g. after the databases are erased.
+     */
+    public synchronized void reset() {
+        version = -1;
+    }
+
+    /**
+     * Opens the connections of the replicator, if they are not open yet.
+     *
+     * @throws SQLException if an SQL exception occurs while setting up the reference connection
+     */
+    private void open() throws SQLException {
+        if (reference != null) return;
+
+        reference = DB.getInstance().newConnection();
+        reference.setTransactionIsolation(SQLServerConnection.TRANSACTION_SNAPSHOT);
+
+        for (int k = 0; k < shards.size(); k++) {
+            connections.add(shards.getShard(k).connect());
+        }
+    }
+
+    /**
+     * Reads the rows of every table changed since the last run, in one SNAPSHOT transaction, so that the tables
+     * are read up to the same version and their foreign keys hold in the copies.
+     *
+     * @param changes the list the changed rows of the tables are added to, in the order of the tables
+     * @return the version the rows are read up to
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    private long readChanges(List<List<Object[]>> changes) throws SQLException {
+        reference.setAutoCommit(false);
+
+        try {
+            long current = currentVersion();
+
+            for (Table table : Table.values()) {
+                changes.add(readRows(table, version < 0 || changesLost(table)));
+            }
+
+            reference.commit();
+            return current;
+        } catch (SQLException | RuntimeException e) {
+            reference.rollback();
+            throw e;
+        } finally {
+            reference.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Reads the rows of the table changed since the last run, or all of them.
+     *
+     * @param table the table
+     * @param all   whether all the rows are read
+     * @return the rows, with the values in the order of the columns of the table
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    private List<Object[]> readRows(Table table, boolean all) throws SQLException {
+        List<Object[]> rows = new ArrayList<>();
+
+        try (PreparedStatement ps = reference.prepareStatement(table.selectQuery(!all))) {
+            if (!all) ps.setLong(1, version);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                int columns = rs.getMetaData().getColumnCount();
+
+                while (rs.next()) {
+                    Object[] row = new Object[columns];
+                    for (int i = 0; i < columns; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+
+        return rows;
+    }
+
+    /**
+     * Checks if the changes of the table since the last run are lost, e.g. after a truncate or when the retention
+     * ran out.
+     *
+     * @param table the table
+     * @return true if the changes are lost, or false otherwise
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    private boolean changesLost(Table table) throws SQLException {
+        String query = "SELECT CHANGE_TRACKING_MIN_VALID_VERSION(OBJECT_ID(?))";
+
+        try (PreparedStatement ps = reference.prepareStatement(query)) {
+            ps.setString(1, table.name);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                long minValidVersion = rs.getLong(1);
+
+                return rs.wasNull() || minValidVersion > version;
+            }
+        }
+    }
+
+    /**
+     * Reads the current Change Tracking version of the reference database.
+     *
+     * @return the current version
+     * @throws SQLException if an SQL exception occurs during the operation
+     * @throws IllegalStateException if the Change Tracking is not enabled
+     */
+    private long currentVersion() throws SQLException {
+        String query = "SELECT CHANGE_TRACKING_CURRENT_VERSION()";
+
+        try (
+                PreparedStatement ps = reference.prepareStatement(query);
+                ResultSet rs = ps.executeQuery()
+        ) {
+            rs.next();
+            long current = rs.getLong(1);
+            if (rs.wasNull()) throw new IllegalStateException("The database does not have Change Tracking enabled");
+
+            return current;
+        }
+    }
+
+    /**
+     * Merges the rows into the copies of the table in every shard, in one transaction per shard.
+     *
+     * @param table the table
+     * @param rows  the rows
+     * @return the number of copied rows
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    private int copy(Table table, List<Object[]> rows) throws SQLException {
+        if (rows.isEmpty()) return 0;
+
+        for (Connection connection : connections) {
+            new TransactionTemplate(connection).execute(() -> {
+                try (
+                        Statement st = connection.createStatement();
+                        PreparedStatement ps = connection.prepareStatement(table.mergeQuery())
+                ) {
+                    // The copies keep the IDs of the reference rows
+                    if (table.identity) st.execute("SET IDENTITY_INSERT [" + table.name + "] ON");
+
+                    try {
+                        for (Object[] row : rows) {
+                            for (int i = 0; i < row.length; i++) {
+                                ps.setObject(i + 1, row[i]);
+                            }
+                            ps.addBatch();
+                        }
+
+                        ps.executeBatch();
+                    } finally {
+                        if (table.identity) st.execute("SET IDENTITY_INSERT [" + table.name + "] OFF");
+                    }
+                }
+
+                return null;
+            });
+        }
+
+        return rows.size();
+    }
+}
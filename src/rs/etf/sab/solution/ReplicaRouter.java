@@ -0,0 +1,269 @@
+package rs.etf.sab.solution;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Routes the query-only operations to a read replica of the database, when the replica is fresh enough
+ * and has the recent writes of the calling thread.
+ * <p>
+ * The routing is enabled with '-Donlineshop.replica.database=...', e.g. 'OnlineShop_replica', on the server
+ * '-Donlineshop.replica.server=...' and port '-Donlineshop.replica.port=...', 'localhost' and 1433 by default.
+ * The replica connections are a pool of 4 read-only connections, or '-Donlineshop.replica.pool=...'.
+ * <p>
+ * Every JVM writes its own row of 'ReplicaHeartbeat' on the primary every second, or every
+ * '-Donlineshop.replica.heartbeat=...' milliseconds, and reads the row back from the replica. A replica that holds
+ * a beat has all the transactions committed before it. So the replica is used only if:
+ * <ul>
+ *     <li>its beat is at most 5 seconds old, or '-Donlineshop.replica.maxStaleness=...' milliseconds,</li>
+ *     <li>its beat is newer than the last write of the calling thread, so that the thread reads its own writes.</li>
+ * </ul>
+ * Otherwise the read goes to the primary. The writes are seen on the instrumented connections, see 'Metrics',
+ * which are instrumented whenever the routing is enabled. 'LocalReplica' keeps a local stand-in replica.
+ * <p>
+ * The last write is kept per thread, so a write made on another thread pins the reads of that thread only.
+ * The synchronous operations that hand their writes to 'OrderPartitions' record them for the caller once they are
+ * done. The calls of 'AsyncExecutor' and 'CreditTopUpPipeline' do not: the reads of the caller that follow their
+ * futures may still go to a replica without their writes, until the replica catches up.
+ */
+public class ReplicaRouter {
+    private static final String DATABASE = System.getProperty("onlineshop.replica.database");
+    private static final String SERVER = System.getProperty("onlineshop.replica.server", "localhost");
+    private static final int PORT = Integer.getInteger("onlineshop.replica.port", 1433);
+    private static final boolean ENABLED = DATABASE != null;
+
+    private static final int POOL_SIZE = Integer.getInteger("onlineshop.replica.pool", 4);
+    static final long HEARTBEAT_MILLIS = Long.getLong("onlineshop.replica.heartbeat", 1000);
+    private static final long MAX_STALENESS_MILLIS = Long.getLong("onlineshop.replica.maxStaleness", 5000);
+
+    // The heartbeat row of this JVM, e.g. '12345@host'
+    private static final String NODE = ManagementFactory.getRuntimeMXBean().getName();
+
+    // The time of the last write of each thread, in an array so that updating it does not allocate
+    private static final ThreadLocal<long[]> lastWrite = ThreadLocal.withInitial(() -> new long[1]);
+
+    private static final LongAdder replicaReads = new LongAdder();
+    private static final LongAdder pinnedReads = new LongAdder();
+    private static final LongAdder staleReads = new LongAdder();
+
+    // The last beat read back from the replica, or 0 if there is none
+    private static volatile long replicaBeat = 0;
+    private static volatile ConnectionPool pool = null;
+
+    // The connection the beats are written on, only used by the heartbeat thread
+    private static Connection primary = null;
+
+    /**
+     * Private constructor, as the class only has static methods.
+     */
+    private ReplicaRouter() {
+
+    }
+
+    /**
+     * Checks if the routing to the replica is enabled.
+     *
+     * @return true if the routing is enabled, or false otherwise
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Records that the current thread has written to the primary, so that its next reads are pinned to the primary
+     * until the replica has the write. Only the current thread is pinned, not the one that handed it the work.
+     */
+    static void recordWrite() {
+        if (ENABLED) lastWrite.get()[0] = System.currentTimeMillis();
+    }
+
+    /**
+     * Borrows a replica connection for a read of the current thread, if the replica can serve it.
+     * It must be released with 'release()', also when the read fails.
+     *
+     * @return the replica connection, or null if the read must go to the primary
+     */
+    public static Connection borrow() {
+        if (!ENABLED) return null;
+
+        ConnectionPool replicas = pool();
+        long beat = replicaBeat;
+
+        if (System.currentTimeMillis() - beat > MAX_STALENESS_MILLIS) {
+            staleReads.increment();
+            return null;
+        }
+
+        if (beat <= lastWrite.get()[0]) {
+            pinnedReads.increment();
+            return null;
+        }
+
+        replicaReads.increment();
+        return replicas.borrow();
+    }
+
+    /**
+     * Releases the connection, if it was borrowed with 'borrow()'.
+     *
+     * @param connection the connection
+     * @return true if it was a replica connection, or false otherwise
+     */
+    public static boolean release(Connection connection) {
+        ConnectionPool opened = pool;
+        if (opened == null || !opened.owns(connection)) return false;
+
+        opened.release(connection);
+        return true;
+    }
+
+    /**
+     * Retrieves how far the replica is behind the primary, as the age of its last beat.
+     *
+     * @return the lag in milliseconds, or -1 if the replica has no beat
+     */
+    public static long getLagMillis() {
+        long beat = replicaBeat;
+        return beat == 0 ? -1 : System.currentTimeMillis() - beat;
+    }
+
+    /**
+     * Retrieves the number of reads served by the replica.
+     *
+     * @return the number of replica reads
+     */
+    public static long getReplicaReads() {
+        return replicaReads.sum();
+    }
+
+    /**
+     * Retrieves the number of reads sent to the primary, as the replica did not have the thread's writes yet.
+     *
+     * @return the number of pinned reads
+     */
+    public static long getPinnedReads() {
+        return pinnedReads.sum();
+    }
+
+    /**
+     * Retrieves the number of reads sent to the primary, as the replica was behind by more than the bound.
+     *
+     * @return the number of stale reads
+     */
+    public static long getStaleReads() {
+        return staleReads.sum();
+    }
+
+    /**
+     * Retrieves the replica pool, opening it and starting the heartbeat on the first use.
+     * The replica is not used before its first beat is read.
+     *
+     * @return the replica pool
+     */
+    private static ConnectionPool pool() {
+        ConnectionPool opened = pool;
+        if (opened != null) return opened;
+
+        synchronized (ReplicaRouter.class) {
+            if (pool == null) {
+                pool = new ConnectionPool(POOL_SIZE, ReplicaRouter::openReplicaConnection);
+                startHeartbeat();
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Opens a read-only connection to the replica.
+     *
+     * @return the connection
+     * @throws RuntimeException if an SQL exception occurs during the connection process
+     */
+    static Connection openReplicaConnection() {
+        Connection connection = DB.connect(SERVER, PORT, DATABASE);
+
+        try {
+            connection.setReadOnly(true);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return connection;
+    }
+
+    /**
+     * Starts the daemon thread that writes the beats on the primary and reads them back from the replica.
+     * A failed beat is skipped, as the replica then just looks older, and the reads go to the primary.
+     */
+    private static void startHeartbeat() {
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        heartbeat.scheduleWithFixedDelay(() -> {
+            try {
+                beat();
+            } catch (RuntimeException e) {
+                System.err.println("Replica heartbeat failed: " + e.getMessage());
+            }
+        }, 0, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes a beat on the primary and reads the last beat the replica has.
+     *
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private static void beat() {
+        String query1 = """
+                UPDATE ReplicaHeartbeat SET Beat = ? WHERE Node = ?
+                IF @@ROWCOUNT = 0 INSERT INTO ReplicaHeartbeat (Node, Beat) VALUES (?, ?)""";
+        String query2 = "SELECT Beat FROM ReplicaHeartbeat WHERE Node = ?";
+
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+
+        if (primary == null) primary = DB.getInstance().newConnection();
+
+        try (PreparedStatement ps = primary.prepareStatement(query1)) {
+            ps.setTimestamp(1, now);
+            ps.setString(2, NODE);
+            ps.setString(3, NODE);
+            ps.setTimestamp(4, now);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            // The connection is opened again on the next beat, in case it was broken
+            try {
+                primary.close();
+            } catch (SQLException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            primary = null;
+            throw new RuntimeException(e);
+        }
+
+        Connection connection = pool().borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(query2)) {
+            ps.setString(1, NODE);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                replicaBeat = rs.next() ? rs.getTimestamp(1).getTime() : 0;
+            }
+        } catch (SQLException e) {
+            replicaBeat = 0;
+            throw new RuntimeException(e);
+        } finally {
+            pool.release(connection);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package rs.etf.sab.solution;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Credits the shop balances in the reference database with the payouts of the arrived orders of the shards,
+ * see 'ShardMap'.
+ * <p>
+ * An arrived order pays its shops in its own shard, with the shop transactions of 'TR_TRANSFER_MONEY_TO_SHOPS'.
+ * The transactions of a shard are the queue of its payouts: 'SettlementCursor' keeps the last one credited,
+ * and every run credits the newer ones to the balance stripes of their shops, picked by the order like the trigger
+ * does, and moves the cursor in the same transaction of the reference database. A payout is thus credited
+ * exactly once, even if a run fails halfway, and the runs can overlap across JVMs.
+ * <p>
+ * The payouts are read under locking READ COMMITTED, so that a payout still being written is waited for,
+ * and not skipped by the cursor. The runs are made by 'ShardedGeneralOperations.time()', right after the orders
+ * arrive, and by the synchronization thread of 'ShardMap'.
+ */
+public class SettlementQueue {
+    private final ShardMap shards;
+    private final LongAdder settled = new LongAdder();
+
+    // The connections are opened on the first run, and only used under the lock of the queue
+    private Connection reference = null;
+    private final List<Connection> connections = new ArrayList<>();
+
+    /**
+     * Represents a shop payout of a shard.
+     */
+    private static class Payout {
+        private final int idTransaction;
+        private final int idOrder;
+        private final int idShop;
+        private final BigDecimal amount;
+
+        Payout(int idTransaction, int idOrder, int idShop, BigDecimal amount) {
+            this.idTransaction = idTransaction;
+            this.idOrder = idOrder;
+            this.idShop = idShop;
+            this.amount = amount;
+        }
+    }
+
+    /**
+     * Creates the settlement queue of the shards of the map.
+     *
+     * @param shards the shard map
+     */
+    public SettlementQueue(ShardMap shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * Credits the payouts of every shard that are not credited yet.
+     *
+     * @return the number of credited payouts
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public synchronized int settleAll() {
+        open();
+
+        int credited = 0;
+        for (int k = 0; k < shards.size(); k++) {
+            credited += settle(k);
+        }
+
+        return credited;
+    }
+
+    /**
+     * Retrieves the number of payouts credited by this queue.
+     *
+     * @return the number of credited payouts
+     */
+    public long getSettled() {
+        return settled.sum();
+    }
+
+    /**
+     * Opens the connections of the queue, if they are not open yet.
+     */
+    private void open() {
+        if (reference != null) return;
+
+        reference = DB.getInstance().newConnection();
+
+        for (int k = 0; k < shards.size(); k++) {
+            connections.add(shards.getShard(k).connect());
+        }
+    }
+
+    /**
+     * Credits the payouts of the shard that are not credited yet, in one transaction of the reference database.
+     * The cursor of the shard stays locked until the commit, so that the runs of other JVMs wait for it.
+     *
+     * @param k the index of the shard
+     * @return the number of credited payouts
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private int settle(int k) {
+        String query1 = """
+                UPDATE ShopBalanceStripe
+                SET Balance = Balance + ?
+                WHERE IdShop = ? AND Stripe = ? % 8""";
+        String query2 = """
+                UPDATE SettlementCursor SET LastIdTransaction = ? WHERE Shard = ?
+                IF @@ROWCOUNT = 0 INSERT INTO SettlementCursor (Shard, LastIdTransaction) VALUES (?, ?)""";
+
+        return new TransactionTemplate(reference).execute(() -> {
+            List<Payout> payouts = readPayouts(k, lockCursor(k));
+            if (payouts.isEmpty()) return 0;
+
+            try (
+                    PreparedStatement ps1 = reference.prepareStatement(query1);
+                    PreparedStatement ps2 = reference.prepareStatement(query2)
+            ) {
+                for (Payout payout : payouts) {
+                    ps1.setBigDecimal(1, payout.amount);
+                    ps1.setInt(2, payout.idShop);
+                    ps1.setInt(3, payout.idOrder);
+                    ps1.addBatch();
+                }
+                ps1.executeBatch();
+
+                int last = payouts.get(payouts.size() - 1).idTransaction;
+                ps2.setInt(1, last);
+                ps2.setInt(2, k);
+                ps2.setInt(3, k);
+                ps2.setInt(4, last);
+                ps2.executeUpdate();
+            }
+
+            settled.add(payouts.size());
+            return payouts.size();
+        });
+    }
+
+    /**
+     * Locks the cursor of the shard until the end of the transaction, and retrieves it.
+     *
+     * @param k the index of the shard
+     * @return the ID of the last credited transaction of the shard, or 0 if there is none
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    private int lockCursor(int k) throws SQLException {
+        String query = "SELECT LastIdTransaction FROM SettlementCursor WITH (UPDLOCK, HOLDLOCK) WHERE Shard = ?";
+
+        try (PreparedStatement ps = reference.prepareStatement(query)) {
+            ps.setInt(1, k);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Reads the payouts of the shard after the cursor, in the order of their IDs.
+     * The archived payouts are read too, as an order can be archived before its payouts are credited.
+     *
+     * @param k     the index of the shard
+     * @param after the ID of the last credited transaction
+     * @return the payouts
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    private List<Payout> readPayouts(int k, int after) throws SQLException {
+        String query = """
+                SELECT Id, IdOrder, IdShop, Amount
+                FROM V_TRANSACTION WITH (READCOMMITTEDLOCK)
+                WHERE IdShop IS NOT NULL AND Id > ?
+                ORDER BY Id""";
+        List<Payout> payouts = new ArrayList<>();
+
+        try (PreparedStatement ps = connections.get(k).prepareStatement(query)) {
+            ps.setInt(1, after);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    payouts.add(new Payout(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getBigDecimal(4)));
+                }
+            }
+        }
+
+        return payouts;
+    }
+}
@@ -0,0 +1,298 @@
+package rs.etf.sab.solution;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps the buyers and their orders, order items and transactions to the shard databases they are stored in.
+ * <p>
+ * The shards are set with '-Donlineshop.shards=...', a comma separated list of '[server[:port]/]database',
+ * e.g. 'OnlineShop_0,localhost:1434/OnlineShop_1', each created by 'ShardProvisioner'. The database of 'DB' is then
+ * the reference database: it keeps the cities, lines, shops and articles, which 'ReferenceReplicator' copies into
+ * every shard, and the shop balances, which 'SettlementQueue' credits with the payouts of the shards.
+ * <p>
+ * The shard of a row is given by its ID, as the identity values of the shard k of N are k + 1, k + 1 + N, ...
+ * An order is created on the shard of its buyer, so its items and transactions are there too.
+ * <p>
+ * Every second, or every '-Donlineshop.shards.sync=...' milliseconds, a daemon thread replicates the changes of the
+ * reference data made by other JVMs, settles the payouts of the arrived orders, and settles the stock reservations
+ * left behind by the orders that failed to complete, see 'StockReservations'.
+ */
+public class ShardMap {
+    private static final String SHARDS = System.getProperty("onlineshop.shards");
+    private static final boolean ENABLED = SHARDS != null;
+    private static final long SYNC_MILLIS = Long.getLong("onlineshop.shards.sync", 1000);
+
+    private static ShardMap shardMap = null;
+
+    // The shard connections of all the maps, which 'ReadConnections' leaves to read on
+    private static final Set<Connection> shardConnections = Collections.synchronizedSet(
+            Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    private final Connection reference;
+    private final List<Shard> shards;
+    private final List<Connection> connections = new ArrayList<>();
+
+    private ReferenceReplicator replicator = null;
+    private SettlementQueue settlement = null;
+    private StockReservations reservations = null;
+
+    /**
+     * Represents the location of a shard database.
+     */
+    public static class Shard {
+        private final String server;
+        private final int port;
+        private final String database;
+
+        /**
+         * Creates the location of a shard.
+         *
+         * @param server   the name of the server
+         * @param port     the port of the server
+         * @param database the name of the database
+         */
+        public Shard(String server, int port, String database) {
+            this.server = server;
+            this.port = port;
+            this.database = database;
+        }
+
+        /**
+         * Parses the location of a shard, '[server[:port]/]database'.
+         *
+         * @param value the location, e.g. 'localhost:1434/OnlineShop_1'
+         * @return the shard
+         * @throws NumberFormatException if the port is not a number
+         */
+        static Shard of(String value) {
+            String location = value.trim();
+            int slash = location.indexOf('/');
+            if (slash < 0) return new Shard("localhost", 1433, location);
+
+            String server = location.substring(0, slash);
+            int colon = server.indexOf(':');
+            int port = colon < 0 ? 1433 : Integer.parseInt(server.substring(colon + 1));
+
+            return new Shard(colon < 0 ? server : server.substring(0, colon), port, location.substring(slash + 1));
+        }
+
+        /**
+         * Retrieves the name of the server.
+         *
+         * @return the name of the server
+         */
+        public String getServer() {
+            return server;
+        }
+
+        /**
+         * Retrieves the port of the server.
+         *
+         * @return the port of the server
+         */
+        public int getPort() {
+            return port;
+        }
+
+        /**
+         * Retrieves the name of the database.
+         *
+         * @return the name of the database
+         */
+        public String getDatabase() {
+            return database;
+        }
+
+        /**
+         * Opens a new connection to the shard. The caller is responsible for closing it.
+         *
+         * @return the new connection object
+         * @throws RuntimeException if an SQL exception occurs during the connection process
+         */
+        public Connection connect() {
+            return DB.connect(server, port, database);
+        }
+
+        @Override
+        public String toString() {
+            return server + ":" + port + "/" + database;
+        }
+    }
+
+    /**
+     * Creates the map over the given reference connection and shards, opening a connection to every shard.
+     *
+     * @param reference the connection to the reference database
+     * @param shards    the shards, in the order of their identity values
+     * @throws RuntimeException if an SQL exception occurs while connecting to a shard
+     */
+    public ShardMap(Connection reference, List<Shard> shards) {
+        if (shards.isEmpty()) throw new IllegalArgumentException("There must be at least one shard");
+
+        this.reference = reference;
+        this.shards = List.copyOf(shards);
+
+        for (Shard shard : this.shards) {
+            Connection connection = shard.connect();
+            connections.add(connection);
+            shardConnections.add(connection);
+        }
+    }
+
+    /**
+     * Checks if the sharding is enabled.
+     *
+     * @return true if the sharding is enabled, or false otherwise
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Returns the map of the configured shards over the shared reference connection.
+     * If the instance does not exist, it creates it and starts the synchronization thread.
+     *
+     * @return the shard map
+     * @throws IllegalStateException if the sharding is not enabled
+     */
+    public static synchronized ShardMap getInstance() {
+        if (shardMap != null) return shardMap;
+        if (!ENABLED) throw new IllegalStateException("The shards are not set, see '-Donlineshop.shards'");
+
+        shardMap = new ShardMap(DB.getInstance().getConnection(), parseShards());
+        shardMap.startSync();
+
+        return shardMap;
+    }
+
+    /**
+     * Parses the configured shards.
+     *
+     * @return the shards, in the order of their identity values
+     */
+    static List<Shard> parseShards() {
+        List<Shard> parsed = new ArrayList<>();
+
+        for (String value : SHARDS.split(",")) {
+            if (!value.isBlank()) parsed.add(Shard.of(value));
+        }
+
+        return parsed;
+    }
+
+    /**
+     * Checks if the connection is a shard connection of a map.
+     *
+     * @param connection the connection
+     * @return true if it is a shard connection, or false otherwise
+     */
+    static boolean isShardConnection(Connection connection) {
+        return shardConnections.contains(connection);
+    }
+
+    /**
+     * Retrieves the number of shards.
+     *
+     * @return the number of shards
+     */
+    public int size() {
+        return shards.size();
+    }
+
+    /**
+     * Retrieves the connection to the reference database.
+     *
+     * @return the reference connection
+     */
+    public Connection getReference() {
+        return reference;
+    }
+
+    /**
+     * Retrieves the location of a shard.
+     *
+     * @param shard the index of the shard
+     * @return the shard
+     */
+    public Shard getShard(int shard) {
+        return shards.get(shard);
+    }
+
+    /**
+     * Retrieves the shared connection to a shard.
+     *
+     * @param shard the index of the shard
+     * @return the shard connection
+     */
+    public Connection getConnection(int shard) {
+        return connections.get(shard);
+    }
+
+    /**
+     * Retrieves the index of the shard a buyer, order, order item or transaction is stored in.
+     * Any ID maps to a shard, where a non-existing row is then just not found.
+     *
+     * @param id the ID of the row
+     * @return the index of the shard
+     */
+    public int shardOf(int id) {
+        return Math.floorMod(id - 1, shards.size());
+    }
+
+    /**
+     * Retrieves the replicator of the reference data, creating it on the first use.
+     *
+     * @return the replicator
+     */
+    public synchronized ReferenceReplicator getReplicator() {
+        return replicator == null ? (replicator = new ReferenceReplicator(this)) : replicator;
+    }
+
+    /**
+     * Retrieves the settlement queue of the shop payouts, creating it on the first use.
+     *
+     * @return the settlement queue
+     */
+    public synchronized SettlementQueue getSettlement() {
+        return settlement == null ? (settlement = new SettlementQueue(this)) : settlement;
+    }
+
+    /**
+     * Retrieves the reconciler of the stock reservations, creating it on the first use.
+     *
+     * @return the stock reservations
+     */
+    public synchronized StockReservations getReservations() {
+        return reservations == null ? (reservations = new StockReservations(this)) : reservations;
+    }
+
+    /**
+     * Starts the daemon thread that replicates the reference data, settles the payouts and the stock reservations.
+     * A failed run is skipped, as the next one catches up.
+     */
+    private void startSync() {
+        ScheduledExecutorService sync = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        sync.scheduleWithFixedDelay(() -> {
+            try {
+                getReplicator().replicate();
+                getSettlement().settleAll();
+                getReservations().reconcileAll();
+            } catch (RuntimeException e) {
+                System.err.println("Shard synchronization failed: " + e.getMessage());
+            }
+        }, SYNC_MILLIS, SYNC_MILLIS, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,103 @@
+package rs.etf.sab.solution;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+
+/**
+ * Creates the shard databases of 'ShardMap' with the schema of 'db/create.sql'.
+ * <p>
+ * The sharded tables of the shard k of N get the identity values k + 1, k + 1 + N, ..., so that the ID of a buyer,
+ * order, order item or transaction tells its shard, and the IDs stay unique across the shards.
+ * The shards can be on several local instances, e.g.
+ * '-Donlineshop.shards=localhost:1433/OnlineShop_0,localhost:1434/OnlineShop_1'.
+ * <p>
+ * Usage: java -Donlineshop.shards=... ShardProvisioner [--drop]
+ */
+public class ShardProvisioner {
+    // The 'CREATE TABLE' batches of the sharded tables
+    private static final Pattern SHARDED_TABLE = Pattern.compile(
+            "CREATE TABLE \\[(Buyer|Order|OrderItem|Transaction)]\\s.*", Pattern.DOTALL);
+    private static final Pattern IDENTITY = Pattern.compile("\\bIDENTITY\\b");
+
+    private final Path script;
+
+    /**
+     * Creates a provisioner using the given schema script.
+     *
+     * @param script the path to the schema script, e.g. 'db/create.sql'
+     */
+    public ShardProvisioner(Path script) {
+        this.script = script;
+    }
+
+    /**
+     * Provisions or drops the configured shards.
+     *
+     * @param args '--drop' to drop the shards instead
+     */
+    public static void main(String[] args) {
+        if (!ShardMap.isEnabled()) {
+            System.out.println("Usage: java -Donlineshop.shards=... ShardProvisioner [--drop]");
+            return;
+        }
+
+        ShardProvisioner provisioner = new ShardProvisioner(Path.of("db", "create.sql"));
+        List<ShardMap.Shard> shards = ShardMap.parseShards();
+
+        if (args.length > 0 && args[0].equals("--drop")) {
+            provisioner.drop(shards);
+            System.out.println("Dropped " + shards.size() + " shards");
+        } else {
+            provisioner.provision(shards);
+            System.out.println("Provisioned " + shards.size() + " shards");
+        }
+    }
+
+    /**
+     * Creates the shard databases if they do not exist and runs the schema script in them.
+     *
+     * @param shards the shards, in the order of their identity values
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     * @throws UncheckedIOException if the script can not be read
+     */
+    public void provision(List<ShardMap.Shard> shards) {
+        for (int k = 0; k < shards.size(); k++) {
+            ShardMap.Shard shard = shards.get(k);
+
+            new DatabaseProvisioner(script, identityOf(k, shards.size()))
+                    .provision(shard.getServer(), shard.getPort(), shard.getDatabase());
+        }
+    }
+
+    /**
+     * Drops the shard databases.
+     *
+     * @param shards the shards
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public void drop(List<ShardMap.Shard> shards) {
+        DatabaseProvisioner provisioner = new DatabaseProvisioner(script);
+
+        for (ShardMap.Shard shard : shards) {
+            provisioner.drop(shard.getServer(), shard.getPort(), shard.getDatabase());
+        }
+    }
+
+    /**
+     * Creates the rewrite giving the sharded tables the identity values of a shard.
+     *
+     * @param k the index of the shard
+     * @param n the number of shards
+     * @return the rewrite of a batch
+     */
+    static UnaryOperator<String> identityOf(int k, int n) {
+        String identity = "IDENTITY(" + (k + 1) + ", " + n + ")";
+
+        return batch -> SHARDED_TABLE.matcher(batch).matches()
+                ? IDENTITY.matcher(batch).replaceFirst(identity)
+                : batch;
+    }
+}
@@ -0,0 +1,131 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.BuyerOperations;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implements the BuyerOperations interface over the shards of a 'ShardMap', by running every operation
+ * on the shard of its buyer.
+ * <p>
+ * The new buyers are spread over the shards in turn, and the shard of an existing buyer is given by its ID.
+ * The orders of a buyer are created on its shard, so that an order can be routed by its ID too.
+ */
+public class ShardedBuyerOperations implements BuyerOperations {
+    private final ShardMap shards;
+    private final List<SolutionBuyerOperations> operations = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * Creates the operations over the configured shards.
+     */
+    public ShardedBuyerOperations() {
+        this(ShardMap.getInstance());
+    }
+
+    /**
+     * Creates the operations over the shards of the given map.
+     *
+     * @param shards the shard map
+     */
+    public ShardedBuyerOperations(ShardMap shards) {
+        this.shards = shards;
+
+        for (int k = 0; k < shards.size(); k++) {
+            operations.add(new SolutionBuyerOperations(shards.getConnection(k)));
+        }
+    }
+
+    /**
+     * Creates a new buyer on the next shard, with the given buyerName, idCity, and balance equal to zero.
+     *
+     * @param buyerName the name of the buyer
+     * @param idCity    the ID of the city
+     * @return the generated key of the created buyer, or -1 otherwise
+     */
+    @Override
+    public int createBuyer(String buyerName, int idCity) {
+        return operations.get(Math.floorMod(next.getAndIncrement(), shards.size())).createBuyer(buyerName, idCity);
+    }
+
+    /**
+     * Sets the city of the buyer with the given idBuyer to the given idCity.
+     *
+     * @param idBuyer the ID of the buyer
+     * @param idCity  the ID of the city
+     * @return 1 if the city is set successfully, or -1 otherwise
+     */
+    @Override
+    public int setCity(int idBuyer, int idCity) {
+        return shardOf(idBuyer).setCity(idBuyer, idCity);
+    }
+
+    /**
+     * Retrieves the ID of the city for the buyer with the given idBuyer.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return the ID of the city, or -1 otherwise
+     */
+    @Override
+    public int getCity(int idBuyer) {
+        return shardOf(idBuyer).getCity(idBuyer);
+    }
+
+    /**
+     * Increases the credit of the buyer with the given idBuyer by the specified credit amount.
+     *
+     * @param idBuyer the ID of the buyer
+     * @param credit  the credit amount to increase
+     * @return the updated balance of the buyer, or null otherwise
+     */
+    @Override
+    public BigDecimal increaseCredit(int idBuyer, BigDecimal credit) {
+        return shardOf(idBuyer).increaseCredit(idBuyer, credit);
+    }
+
+    /**
+     * Creates a new empty order for the buyer with the given idBuyer, on the shard of the buyer.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return the generated key of the created order, or -1 otherwise
+     */
+    @Override
+    public int createOrder(int idBuyer) {
+        return shardOf(idBuyer).createOrder(idBuyer);
+    }
+
+    /**
+     * Retrieves all orders of the buyer with the given idBuyer.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return a list of order IDs, or null otherwise
+     */
+    @Override
+    public List<Integer> getOrders(int idBuyer) {
+        return shardOf(idBuyer).getOrders(idBuyer);
+    }
+
+    /**
+     * Retrieves the credit balance of the buyer with the given idBuyer.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return the credit balance of the buyer, or null otherwise
+     */
+    @Override
+    public BigDecimal getCredit(int idBuyer) {
+        return shardOf(idBuyer).getCredit(idBuyer);
+    }
+
+    /**
+     * Retrieves the operations of the shard of the buyer.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return the operations of the shard
+     */
+    private SolutionBuyerOperations shardOf(int idBuyer) {
+        return operations.get(shards.shardOf(idBuyer));
+    }
+}
@@ -0,0 +1,96 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.GeneralOperations;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Implements the GeneralOperations interface over the reference database and the shards of a 'ShardMap'.
+ * <p>
+ * The time is the one of 'SolutionGeneralOperations', shared by all the databases. Moving it checks the arrivals
+ * on every shard, and then settles the payouts of the arrived orders, see 'SettlementQueue', so that the shop
+ * balances are up to date when 'time()' returns. Only the 'TRUNCATE' erase mode keeps the identity values
+ * of the shards, see 'ShardProvisioner'.
+ */
+public class ShardedGeneralOperations implements GeneralOperations {
+    private final ShardMap shards;
+    private final SolutionGeneralOperations reference;
+    private final List<SolutionGeneralOperations> operations = new ArrayList<>();
+
+    /**
+     * Creates the operations over the configured shards.
+     */
+    public ShardedGeneralOperations() {
+        this(ShardMap.getInstance());
+    }
+
+    /**
+     * Creates the operations over the reference database and the shards of the given map.
+     *
+     * @param shards the shard map
+     */
+    public ShardedGeneralOperations(ShardMap shards) {
+        this.shards = shards;
+        this.reference = new SolutionGeneralOperations(shards.getReference());
+
+        for (int k = 0; k < shards.size(); k++) {
+            operations.add(new SolutionGeneralOperations(shards.getConnection(k)));
+        }
+    }
+
+    /**
+     * Sets the initial time to the given calendar object.
+     *
+     * @param calendar the calendar object representing the initial time
+     */
+    @Override
+    public void setInitialTime(Calendar calendar) {
+        reference.setInitialTime(calendar);
+    }
+
+    /**
+     * Adds the specified number of days to the current time, lets the orders of every shard arrive
+     * and settles their payouts.
+     *
+     * @param numberOfDays the number of days to add
+     * @return the updated current time
+     */
+    @Override
+    public Calendar time(int numberOfDays) {
+        Calendar current = reference.time(numberOfDays);
+
+        // The time is shared, so the shards only check the arrivals
+        for (SolutionGeneralOperations shard : operations) {
+            shard.time(0);
+        }
+
+        shards.getSettlement().settleAll();
+        return current;
+    }
+
+    /**
+     * Returns the current time as a Calendar object.
+     *
+     * @return the current time
+     */
+    @Override
+    public Calendar getCurrentTime() {
+        return reference.getCurrentTime();
+    }
+
+    /**
+     * Erases all data from the reference database and the shards.
+     */
+    @Override
+    public void eraseAll() {
+        reference.eraseAll();
+
+        for (SolutionGeneralOperations shard : operations) {
+            shard.eraseAll();
+        }
+
+        shards.getReplicator().reset();
+    }
+}
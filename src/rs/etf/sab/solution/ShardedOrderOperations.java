@@ -0,0 +1,355 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.OrderOperations;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Implements the OrderOperations interface over the shards of a 'ShardMap', by running every operation
+ * on the shard of its order, which is the shard of its buyer.
+ * <p>
+ * The stock of the articles is kept in the reference database, as the orders of all the shards take from it.
+ * 'completeOrder()' reserves the stock of the order there first, by ascending article ID, and then sends the order
+ * on its shard, with the copies of the articles set to the stock before the reservation, so that the shard takes
+ * the order from them like it does without shards. The reservation is recorded with the stock, and settled by
+ * the state of the order on its shard, see 'StockReservations', so that no stock is lost or returned twice when
+ * the order is not sent, the JVM crashes between the two commits, or the commit of the shard is not acknowledged.
+ */
+public class ShardedOrderOperations implements OrderOperations {
+    private static final String LOCK_ARTICLE_QUERY = "SELECT Id FROM Article WITH (UPDLOCK, ROWLOCK) WHERE Id = ?";
+
+    private final ShardMap shards;
+    private final List<SolutionOrderOperations> operations = new ArrayList<>();
+    private final List<TransactionTemplate> transactions = new ArrayList<>();
+    private final TransactionTemplate referenceTransactions;
+
+    /**
+     * Creates the operations over the configured shards.
+     */
+    public ShardedOrderOperations() {
+        this(ShardMap.getInstance());
+    }
+
+    /**
+     * Creates the operations over the shards of the given map.
+     *
+     * @param shards the shard map
+     */
+    public ShardedOrderOperations(ShardMap shards) {
+        this.shards = shards;
+        this.referenceTransactions = new TransactionTemplate(shards.getReference());
+
+        for (int k = 0; k < shards.size(); k++) {
+            operations.add(new SolutionOrderOperations(shards.getConnection(k)));
+            transactions.add(new TransactionTemplate(shards.getConnection(k)));
+        }
+    }
+
+    /**
+     * Adds an article to an order, checked against the shard's copy of the stock.
+     *
+     * @param idOrder   the ID of the order
+     * @param idArticle the ID of the article
+     * @param quantity  the quantity of the article
+     * @return the ID of the newly added item if successful, or -1 otherwise
+     */
+    @Override
+    public int addArticle(int idOrder, int idArticle, int quantity) {
+        return shardOf(idOrder).addArticle(idOrder, idArticle, quantity);
+    }
+
+    /**
+     * Removes an article from an order.
+     *
+     * @param idOrder   the ID of the order
+     * @param idArticle the ID of the article
+     * @return 1 if successful, or -1 otherwise
+     */
+    @Override
+    public int removeArticle(int idOrder, int idArticle) {
+        return shardOf(idOrder).removeArticle(idOrder, idArticle);
+    }
+
+    /**
+     * Retrieves all items in an order.
+     *
+     * @param idOrder the ID of the order
+     * @return a list of item IDs if items exist, or null otherwise
+     */
+    @Override
+    public List<Integer> getItems(int idOrder) {
+        return shardOf(idOrder).getItems(idOrder);
+    }
+
+    /**
+     * Completes an order, taking its stock from the reference database.
+     * <p>
+     * In the transaction of the shard, the articles and the order are locked, so that the items can not change,
+     * the stock is reserved in its own transaction of the reference database, and the order is sent.
+     * The reservation is returned if the order is not sent, and deleted once it is. A reservation left by an earlier
+     * attempt, or by a commit that failed, is settled by the state of the order, read again under its lock.
+     *
+     * @param idOrder the ID of the order
+     * @return 1 if successful, or -1 otherwise
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    @Override
+    public int completeOrder(int idOrder) {
+        int k = shards.shardOf(idOrder);
+        Connection c = shards.getConnection(k);
+        TransactionTemplate shardTransactions = transactions.get(k);
+        int sent;
+
+        try {
+            sent = shardTransactions.execute(() -> {
+                Map<Integer, Integer> items = readItems(c, idOrder);
+                shardTransactions.lockInOrder(LOCK_ARTICLE_QUERY, items.keySet());
+
+                // A reservation left by an earlier attempt is settled by the state of the order, now that it is locked
+                String state = StockReservations.lockOrder(c, idOrder);
+                settle(idOrder, state);
+
+                // The items are read again under the lock of the order, as they could change before it
+                if (!"created".equals(state) || items.isEmpty() || !items.equals(readItems(c, idOrder))) {
+                    shardTransactions.setRollbackOnly();
+                    return -1;
+                }
+
+                Map<Integer, Integer> stock = reserve(idOrder, items);
+                if (stock == null) {
+                    shardTransactions.setRollbackOnly();
+                    return -1;
+                }
+
+                writeStock(c, stock);
+
+                if (operations.get(k).completeOrder(idOrder) == -1) {
+                    settle(idOrder, state);
+                    shardTransactions.setRollbackOnly();
+                    return -1;
+                }
+
+                return 1;
+            });
+        } catch (RuntimeException e) {
+            // The commit may have failed after the order was sent, so only its state tells what to do with the stock
+            try {
+                shardTransactions.execute(() -> settle(idOrder, StockReservations.lockOrder(c, idOrder)));
+            } catch (RuntimeException settleFailure) {
+                // The reservation is left to 'StockReservations.reconcileAll()'
+                e.addSuppressed(settleFailure);
+            }
+            throw e;
+        }
+
+        if (sent == 1) {
+            try {
+                settle(idOrder, "sent");
+            } catch (RuntimeException e) {
+                // The order is sent, and the reservation is left to 'StockReservations.reconcileAll()'
+                System.err.println("Could not settle the reservation of order " + idOrder + ": " + e.getMessage());
+            }
+        }
+
+        return sent;
+    }
+
+    /**
+     * Reads the items of an order on its shard.
+     *
+     * @param c       the shard connection
+     * @param idOrder the ID of the order
+     * @return the map (idArticle -> quantity), by ascending article ID
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    private static Map<Integer, Integer> readItems(Connection c, int idOrder) throws SQLException {
+        String query = "SELECT IdArticle, Quantity FROM OrderItem WHERE IdOrder = ?";
+        Map<Integer, Integer> items = new TreeMap<>();
+
+        try (PreparedStatement ps = c.prepareStatement(query)) {
+            ps.setInt(1, idOrder);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    items.merge(rs.getInt(1), rs.getInt(2), Integer::sum);
+                }
+            }
+        }
+
+        return items;
+    }
+
+    /**
+     * Takes the quantities of the items from the stock of the reference database, by ascending article ID,
+     * and records the reservation of the order, in one transaction.
+     *
+     * @param idOrder the ID of the order
+     * @param items   the map (idArticle -> quantity), by ascending article ID
+     * @return the map (idArticle -> stock before the reservation), or null if an article is out of stock
+     */
+    private Map<Integer, Integer> reserve(int idOrder, Map<Integer, Integer> items) {
+        String query = """
+                UPDATE Article
+                SET Quantity = Quantity - ?
+                OUTPUT deleted.Quantity
+                WHERE Id = ? AND Quantity >= ?""";
+        Connection reference = shards.getReference();
+
+        return referenceTransactions.execute(() -> {
+            Map<Integer, Integer> stock = new TreeMap<>();
+
+            try (PreparedStatement ps = reference.prepareStatement(query)) {
+                for (Map.Entry<Integer, Integer> item : items.entrySet()) {
+                    ps.setInt(1, item.getValue());
+                    ps.setInt(2, item.getKey());
+                    ps.setInt(3, item.getValue());
+
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next()) {
+                            referenceTransactions.setRollbackOnly();
+                            return null;
+                        }
+                        stock.put(item.getKey(), rs.getInt(1));
+                    }
+                }
+            }
+
+            StockReservations.reserve(reference, idOrder, items);
+            return stock;
+        });
+    }
+
+    /**
+     * Settles the reservation of the order, if it has one, in its own transaction of the reference database.
+     * Must be called under the lock of the order, see 'StockReservations.lockOrder()', unless the order is sent,
+     * as a sent order does not change its state back.
+     *
+     * @param idOrder the ID of the order
+     * @param state   the state of the order, 'sent' once it took the reserved stock
+     * @return true if the order had a reservation, or false otherwise
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private boolean settle(int idOrder, String state) {
+        Connection reference = shards.getReference();
+
+        return referenceTransactions.execute(
+                () -> StockReservations.settle(reference, idOrder, StockReservations.isSent(state)));
+    }
+
+    /**
+     * Sets the shard's copies of the articles to the given stock, inside the transaction of 'completeOrder()'.
+     *
+     * @param c     the shard connection
+     * @param stock the map (idArticle -> stock)
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    private static void writeStock(Connection c, Map<Integer, Integer> stock) throws SQLException {
+        String query = "UPDATE Article SET Quantity = ? WHERE Id = ?";
+
+        try (PreparedStatement ps = c.prepareStatement(query)) {
+            for (Map.Entry<Integer, Integer> article : stock.entrySet()) {
+                ps.setInt(1, article.getValue());
+                ps.setInt(2, article.getKey());
+                ps.addBatch();
+            }
+
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Retrieves the final price of an order after all the discounts.
+     *
+     * @param idOrder the ID of the order
+     * @return the final price if successful, or -1 otherwise
+     */
+    @Override
+    public BigDecimal getFinalPrice(int idOrder) {
+        return shardOf(idOrder).getFinalPrice(idOrder);
+    }
+
+    /**
+     * Retrieves the discount sum of an order.
+     *
+     * @param idOrder the ID of the order
+     * @return the discount sum if successful, or -1 otherwise
+     */
+    @Override
+    public BigDecimal getDiscountSum(int idOrder) {
+        return shardOf(idOrder).getDiscountSum(idOrder);
+    }
+
+    /**
+     * Retrieves the state of an order.
+     *
+     * @param idOrder the ID of the order
+     * @return the state of the order, or null otherwise
+     */
+    @Override
+    public String getState(int idOrder) {
+        return shardOf(idOrder).getState(idOrder);
+    }
+
+    /**
+     * Retrieves the time when an order was sent.
+     *
+     * @param idOrder the ID of the order
+     * @return the time when the order was sent, or null otherwise
+     */
+    @Override
+    public Calendar getSentTime(int idOrder) {
+        return shardOf(idOrder).getSentTime(idOrder);
+    }
+
+    /**
+     * Retrieves the time when an order was received.
+     *
+     * @param idOrder the ID of the order
+     * @return the time when the order was received, or null otherwise
+     */
+    @Override
+    public Calendar getRecievedTime(int idOrder) {
+        return shardOf(idOrder).getRecievedTime(idOrder);
+    }
+
+    /**
+     * Retrieves the ID of the buyer of an order.
+     *
+     * @param idOrder the ID of the order
+     * @return the ID of the buyer, or -1 otherwise
+     */
+    @Override
+    public int getBuyer(int idOrder) {
+        return shardOf(idOrder).getBuyer(idOrder);
+    }
+
+    /**
+     * Retrieves the ID of the city an order is in.
+     *
+     * @param idOrder the ID of the order
+     * @return the ID of the city, or -1 otherwise
+     */
+    @Override
+    public int getLocation(int idOrder) {
+        return shardOf(idOrder).getLocation(idOrder);
+    }
+
+    /**
+     * Retrieves the operations of the shard of the order.
+     *
+     * @param idOrder the ID of the order
+     * @return the operations of the shard
+     */
+    private SolutionOrderOperations shardOf(int idOrder) {
+        return operations.get(shards.shardOf(idOrder));
+    }
+}
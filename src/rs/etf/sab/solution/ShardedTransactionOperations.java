@@ -0,0 +1,190 @@
+package rs.etf.sab.solution;
+
+import rs.etf.sab.operations.TransactionOperations;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Implements the TransactionOperations interface over the shards of a 'ShardMap'.
+ * <p>
+ * The operations of a buyer, an order or a transaction run on its shard, given by its ID. The operations of a shop
+ * and the system profit gather the results of all the shards, as the orders of a shop are spread over them.
+ */
+public class ShardedTransactionOperations implements TransactionOperations {
+    private final ShardMap shards;
+    private final List<SolutionTransactionOperations> operations = new ArrayList<>();
+
+    /**
+     * Creates the operations over the configured shards.
+     */
+    public ShardedTransactionOperations() {
+        this(ShardMap.getInstance());
+    }
+
+    /**
+     * Creates the operations over the shards of the given map.
+     *
+     * @param shards the shard map
+     */
+    public ShardedTransactionOperations(ShardMap shards) {
+        this.shards = shards;
+
+        for (int k = 0; k < shards.size(); k++) {
+            operations.add(new SolutionTransactionOperations(shards.getConnection(k)));
+        }
+    }
+
+    /**
+     * Retrieves the total amount paid by the buyer in all the transactions.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return the total amount paid in the transactions, or -1 otherwise
+     */
+    @Override
+    public BigDecimal getBuyerTransactionsAmmount(int idBuyer) {
+        return shardOf(idBuyer).getBuyerTransactionsAmmount(idBuyer);
+    }
+
+    /**
+     * Retrieves the total amount of the transactions of the shop, over all the shards.
+     *
+     * @param idShop the ID of the shop
+     * @return the total amount of transactions made by the shop
+     */
+    @Override
+    public BigDecimal getShopTransactionsAmmount(int idShop) {
+        BigDecimal amount = BigDecimal.ZERO.setScale(3);
+
+        for (SolutionTransactionOperations shard : operations) {
+            amount = amount.add(shard.getShopTransactionsAmmount(idShop));
+        }
+
+        return amount;
+    }
+
+    /**
+     * Retrieves the IDs of the transactions of the buyer.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return the list of transaction IDs for the buyer, or null otherwise
+     */
+    @Override
+    public List<Integer> getTransationsForBuyer(int idBuyer) {
+        return shardOf(idBuyer).getTransationsForBuyer(idBuyer);
+    }
+
+    /**
+     * Retrieves the ID of the transaction in which the buyer paid for the order.
+     *
+     * @param idOrder the ID of the order
+     * @return the transaction ID for the buyer's order, or -1 otherwise
+     */
+    @Override
+    public int getTransactionForBuyersOrder(int idOrder) {
+        return shardOf(idOrder).getTransactionForBuyersOrder(idOrder);
+    }
+
+    /**
+     * Retrieves the ID of the transaction in which the shop was paid for the order.
+     *
+     * @param idOrder the ID of the order
+     * @param idShop  the ID of the shop
+     * @return the transaction ID for the shop and order, or -1 otherwise
+     */
+    @Override
+    public int getTransactionForShopAndOrder(int idOrder, int idShop) {
+        return shardOf(idOrder).getTransactionForShopAndOrder(idOrder, idShop);
+    }
+
+    /**
+     * Retrieves the IDs of the transactions of the shop, over all the shards.
+     *
+     * @param idShop the ID of the shop
+     * @return the list of transaction IDs for the shop, or null otherwise
+     */
+    @Override
+    public List<Integer> getTransationsForShop(int idShop) {
+        List<Integer> shopTransactions = new ArrayList<>();
+
+        for (SolutionTransactionOperations shard : operations) {
+            List<Integer> transactions = shard.getTransationsForShop(idShop);
+            if (transactions != null) shopTransactions.addAll(transactions);
+        }
+
+        return shopTransactions.isEmpty() ? null : shopTransactions;
+    }
+
+    /**
+     * Retrieves the date and time of execution of the transaction.
+     *
+     * @param idTransaction the ID of the transaction
+     * @return the date and time of execution, or null otherwise
+     */
+    @Override
+    public Calendar getTimeOfExecution(int idTransaction) {
+        return shardOf(idTransaction).getTimeOfExecution(idTransaction);
+    }
+
+    /**
+     * Retrieves the amount the buyer paid for the order.
+     *
+     * @param idOrder the ID of the order
+     * @return the amount paid by the buyer for the order, or -1 otherwise
+     */
+    @Override
+    public BigDecimal getAmmountThatBuyerPayedForOrder(int idOrder) {
+        return shardOf(idOrder).getAmmountThatBuyerPayedForOrder(idOrder);
+    }
+
+    /**
+     * Retrieves the amount the shop received for the order.
+     *
+     * @param idShop  the ID of the shop
+     * @param idOrder the ID of the order
+     * @return the amount received by the shop for the order, or -1 otherwise
+     */
+    @Override
+    public BigDecimal getAmmountThatShopRecievedForOrder(int idShop, int idOrder) {
+        return shardOf(idOrder).getAmmountThatShopRecievedForOrder(idShop, idOrder);
+    }
+
+    /**
+     * Retrieves the amount of the transaction.
+     *
+     * @param idTransaction the ID of the transaction
+     * @return the amount of the transaction, or -1 otherwise
+     */
+    @Override
+    public BigDecimal getTransactionAmount(int idTransaction) {
+        return shardOf(idTransaction).getTransactionAmount(idTransaction);
+    }
+
+    /**
+     * Retrieves the system profit, over all the shards.
+     *
+     * @return the system profit
+     */
+    @Override
+    public BigDecimal getSystemProfit() {
+        BigDecimal systemProfit = BigDecimal.ZERO.setScale(3);
+
+        for (SolutionTransactionOperations shard : operations) {
+            systemProfit = systemProfit.add(shard.getSystemProfit());
+        }
+
+        return systemProfit;
+    }
+
+    /**
+     * Retrieves the operations of the shard of a buyer, an order or a transaction.
+     *
+     * @param id the ID of the buyer, the order or the transaction
+     * @return the operations of the shard
+     */
+    private SolutionTransactionOperations shardOf(int id) {
+        return operations.get(shards.shardOf(id));
+    }
+}
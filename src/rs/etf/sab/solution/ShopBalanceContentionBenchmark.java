@@ -0,0 +1,118 @@
+package rs.etf.sab.solution;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the throughput of concurrent shop balance credits for a single shop.
+ * <p>
+ * Every worker runs, on its own connection, transactions that credit the shop's balance,
+ * the same way the settlement trigger does. The benchmark compares crediting the single 'Shop' row
+ * against crediting one of the shop's balance stripes. The credited amount is zero,
+ * so the balances are not changed, but the row locks are taken all the same.
+ * <p>
+ * Usage: ShopBalanceContentionBenchmark idShop [threads] [seconds]
+ */
+public class ShopBalanceContentionBenchmark {
+    private static final int STRIPES = 8;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the ID of an existing shop, the number of threads and the duration of each mode in seconds
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: ShopBalanceContentionBenchmark idShop [threads] [seconds]");
+            return;
+        }
+
+        int idShop = Integer.parseInt(args[0]);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        String singleRowQuery = "UPDATE Shop SET Balance = Balance + 0 WHERE Id = ?";
+        String stripedQuery = "UPDATE ShopBalanceStripe SET Balance = Balance + 0 WHERE IdShop = ? AND Stripe = ?";
+
+        double singleRow = run(singleRowQuery, false, idShop, threads, seconds);
+        double striped = run(stripedQuery, true, idShop, threads, seconds);
+
+        System.out.printf("threads=%d, single row: %.0f credits/s, %d stripes: %.0f credits/s (x%.2f)%n",
+                threads, singleRow, STRIPES, striped, striped / singleRow);
+    }
+
+    /**
+     * Runs one mode of the benchmark.
+     *
+     * @param query   the credit query
+     * @param striped whether the query credits a stripe
+     * @param idShop  the ID of the shop
+     * @param threads the number of threads
+     * @param seconds the duration in seconds
+     * @return the number of committed credits per second
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    private static double run(String query, boolean striped, int idShop, int threads, int seconds)
+            throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder credits = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+
+        // Connections are opened up front, so that the connection setup is not measured
+        List<Connection> connections = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            connections.add(DB.getInstance().newConnection());
+        }
+
+        for (int i = 0; i < threads; i++) {
+            int worker = i;
+            Connection connection = connections.get(i);
+
+            Thread thread = new Thread(() -> {
+                try (
+                        connection;
+                        PreparedStatement ps = connection.prepareStatement(query)
+                ) {
+                    connection.setAutoCommit(false);
+                    start.await();
+
+                    for (long n = worker; running.get(); n += threads) {
+                        ps.setInt(1, idShop);
+                        if (striped) ps.setInt(2, (int) (n % STRIPES)); // Like 'IdOrder % 8' in the trigger
+
+                        ps.executeUpdate();
+                        connection.commit();
+                        credits.increment();
+                    }
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            workers.add(thread);
+            thread.start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+
+        for (Thread thread : workers) {
+            thread.join();
+        }
+
+        return credits.sum() / ((System.nanoTime() - startTime) / 1e9);
+    }
+}
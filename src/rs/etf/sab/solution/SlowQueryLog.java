@@ -0,0 +1,254 @@
+package rs.etf.sab.solution;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerConnection;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Logs the SQL executions slower than a threshold, with their parameters and, for the first few of every statement,
+ * the execution plan, and keeps the total time of every statement to list the top offenders.
+ * <p>
+ * The log is enabled with '-Donlineshop.slowquery.threshold=...' in milliseconds, e.g. 100.
+ * The connections are then instrumented, see 'Metrics', and the log is written to 'logs/slow-queries.0.log',
+ * rotated at 10 MB over 5 files. '-Donlineshop.slowquery.plans=...' sets how many slow executions of a statement
+ * get their plan captured, 3 by default.
+ * <p>
+ * A plan is read from the plan cache of the server, on a separate connection, by the handle of the last request
+ * of the statement's connection, so the statement is not run again and its transaction is not touched.
+ * It is the last actual plan when 'LAST_QUERY_PLAN_STATS' is on (SQL Server 2019+), or the cached plan otherwise.
+ */
+public class SlowQueryLog {
+    private static final long THRESHOLD_NANOS = Long.getLong("onlineshop.slowquery.threshold", -1) * 1_000_000;
+    private static final boolean ENABLED = THRESHOLD_NANOS >= 0;
+    private static final int PLANS = Integer.getInteger("onlineshop.slowquery.plans", 3);
+
+    private static final String LOG_DIRECTORY = "logs";
+    private static final int LOG_LIMIT = 10 * 1024 * 1024;
+    private static final int LOG_FILES = 5;
+
+    private static final Map<String, Offender> offenders = new ConcurrentHashMap<>();
+    private static final Logger logger = ENABLED ? createLogger() : null;
+
+    /**
+     * Represents the executions of one statement.
+     */
+    public static class Offender {
+        private final String sql;
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder slowExecutions = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicInteger capturedPlans = new AtomicInteger();
+
+        Offender(String sql) {
+            this.sql = sql;
+        }
+
+        /**
+         * Retrieves the text of the statement.
+         *
+         * @return the text of the statement
+         */
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * Retrieves the number of executions.
+         *
+         * @return the number of executions
+         */
+        public long getExecutions() {
+            return executions.sum();
+        }
+
+        /**
+         * Retrieves the number of executions over the threshold.
+         *
+         * @return the number of slow executions
+         */
+        public long getSlowExecutions() {
+            return slowExecutions.sum();
+        }
+
+        /**
+         * Retrieves the total time of the executions.
+         *
+         * @return the total time in milliseconds
+         */
+        public double getTotalMillis() {
+            return totalNanos.sum() / 1e6;
+        }
+
+        /**
+         * Retrieves the time of the slowest execution.
+         *
+         * @return the time in milliseconds
+         */
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%10.1f ms total %8d executions %6d slow %8.1f ms max  %s",
+                    getTotalMillis(), getExecutions(), getSlowExecutions(), getMaxMillis(), collapse(sql));
+        }
+    }
+
+    /**
+     * Private constructor, as the class only has static methods.
+     */
+    private SlowQueryLog() {
+
+    }
+
+    /**
+     * Checks if the slow query log is enabled.
+     *
+     * @return true if the log is enabled, or false otherwise
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Records an execution, and logs it if it is slower than the threshold.
+     *
+     * @param connection the unwrapped connection the statement ran on, to capture the plan of
+     * @param sql        the text of the statement
+     * @param parameters the parameters of the statement, by index from 1, or null
+     * @param method     the JDBC method that ran the statement, e.g. 'executeUpdate'
+     * @param nanos      the elapsed time in nanoseconds
+     */
+    static void record(Connection connection, String sql, List<Object> parameters, String method, long nanos) {
+        Offender offender = offenders.get(sql);
+        if (offender == null) offender = offenders.computeIfAbsent(sql, Offender::new);
+
+        offender.executions.increment();
+        offender.totalNanos.add(nanos);
+        offender.maxNanos.accumulate(nanos);
+
+        if (nanos < THRESHOLD_NANOS) return;
+        offender.slowExecutions.increment();
+
+        StringBuilder entry = new StringBuilder()
+                .append(Instant.now()).append(" SLOW ").append(String.format("%.1f ms ", nanos / 1e6)).append(method)
+                .append("\n  SQL: ").append(collapse(sql))
+                .append("\n  Parameters: ").append(parameters == null ? "[]" : parameters.subList(1, parameters.size()));
+
+        if (offender.capturedPlans.getAndIncrement() < PLANS) {
+            entry.append("\n  Plan: ").append(capturePlan(connection));
+        }
+
+        logger.log(Level.WARNING, entry.toString());
+    }
+
+    /**
+     * Retrieves the statements with the highest total time.
+     *
+     * @param limit the highest number of statements to list
+     * @return the statements, from the highest total time down
+     */
+    public static List<Offender> topOffenders(int limit) {
+        return offenders.values().stream()
+                .sorted(Comparator.comparingLong((Offender offender) -> offender.totalNanos.sum()).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Reads the plan of the last request of the connection from the plan cache, on a separate connection
+     * to the same server. Must be called right after the request, before the connection runs another one.
+     *
+     * @param c the unwrapped connection the request ran on
+     * @return the XML of the plan, or the reason it was not captured
+     */
+    private static String capturePlan(Connection c) {
+        String query = """
+                SELECT TOP (1) PS.query_plan, P.query_plan
+                FROM sys.dm_exec_connections C
+                    JOIN sys.dm_exec_query_stats QS ON (QS.sql_handle = C.most_recent_sql_handle)
+                    OUTER APPLY sys.dm_exec_query_plan_stats(QS.plan_handle) PS
+                    OUTER APPLY sys.dm_exec_query_plan(QS.plan_handle) P
+                WHERE C.connection_id = ?
+                ORDER BY QS.last_execution_time DESC""";
+
+        try {
+            String connectionId = c.unwrap(ISQLServerConnection.class).getClientConnectionId().toString();
+
+            try (
+                    Connection inspector = DB.connectUninstrumented(c.getMetaData().getURL());
+                    PreparedStatement ps = inspector.prepareStatement(query)
+            ) {
+                ps.setString(1, connectionId);
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) return "(not in the plan cache)";
+
+                    String actual = rs.getString(1);
+                    return actual != null ? actual : rs.getString(2);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            return "(not captured: " + e.getMessage() + ")";
+        }
+    }
+
+    /**
+     * Collapses the whitespace of the statement, so that it fits on one line.
+     *
+     * @param sql the text of the statement
+     * @return the statement on one line
+     */
+    private static String collapse(String sql) {
+        return sql.strip().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Creates the logger writing to the rotating log files.
+     *
+     * @return the logger
+     */
+    private static Logger createLogger() {
+        try {
+            Files.createDirectories(Path.of(LOG_DIRECTORY));
+
+            FileHandler handler = new FileHandler(LOG_DIRECTORY + "/slow-queries.%g.log", LOG_LIMIT, LOG_FILES, true);
+            handler.setFormatter(new Formatter() {
+                @Override
+                public String format(LogRecord record) {
+                    return record.getMessage() + System.lineSeparator();
+                }
+            });
+
+            Logger created = Logger.getLogger(SlowQueryLog.class.getName());
+            created.setUseParentHandlers(false);
+            created.addHandler(handler);
+
+            return created;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package rs.etf.sab.solution;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Provides the file format shared by 'DatabaseSnapshot' and 'MemoryStore' for the snapshots of the marketplace.
+ * <p>
+ * A snapshot file has one section per table, in the order of the table constants, and a fixed size footer
+ * with the offset and the row count of every section, followed by the 4 magic bytes 'MKS1'.
+ * Every section holds its rows in ascending order of the IDs, with fixed layouts:
+ * <ul>
+ *     <li>City - Id, Name</li>
+ *     <li>Line - Id1, Id2, Distance</li>
+ *     <li>Shop - Id, Name, Discount, IdCity, Balance</li>
+ *     <li>Article - Id, Name, Price, Quantity, IdShop</li>
+ *     <li>Buyer - Id, Name, IdCity, Balance</li>
+ *     <li>Order - Id, Status, IdBuyer, TotalPrice, DiscountedPrice, BuyerDiscount, DateSent, DateNearest,
+ *     DateArrived, IdNearestCity, DaysToAssemble, then the cached path from the nearest city to the buyer</li>
+ *     <li>OrderItem - Id, IdOrder, IdArticle, Quantity</li>
+ *     <li>Transaction - Id, Amount, IdOrder, IdShop, IdBuyer, Date</li>
+ * </ul>
+ * The integers are 4 bytes and the money and the dates 8 bytes, little-endian. The money is the unscaled value
+ * at scale 3 and the dates are milliseconds. The status is one byte, the index into 'MemoryStore.STATUS'.
+ * The strings are a 2 byte length followed by the UTF-8 bytes, and the path is a 2 byte length followed by the IDs.
+ * A NULL is -1 for an integer and 'Long.MIN_VALUE' for money and dates, the same as in 'MemoryStore'.
+ * <p>
+ * The rows are written in the order of the IDs and nothing else is written, so the same data always gives
+ * the same file.
+ */
+class SnapshotFormat {
+    static final byte[] MAGIC = {'M', 'K', 'S', '1'};
+
+    // The order of the sections in the file
+    static final int CITY = 0, LINE = 1, SHOP = 2, ARTICLE = 3, BUYER = 4, ORDER = 5, ITEM = 6, TRANSACTION = 7;
+    static final int TABLES = 8;
+
+    static final int FOOTER_SIZE = TABLES * 2 * Long.BYTES + MAGIC.length;
+
+    static final int NULL_INT = -1;
+    static final long NULL_LONG = Long.MIN_VALUE;
+
+    private SnapshotFormat() {
+    }
+
+    /**
+     * Represents a snapshot file being written through a memory-mapped window, which is moved along the file
+     * as it fills up. The file is cut to the written length when it is closed.
+     */
+    static class Writer implements AutoCloseable {
+        private static final int WINDOW_SIZE = 64 << 20;
+
+        private final FileChannel channel;
+        private final long[] offsets = new long[TABLES];
+        private final long[] counts = new long[TABLES];
+
+        private MappedByteBuffer window;
+        private long windowStart;
+        private int section = -1;
+
+        Writer(Path file) {
+            try {
+                channel = FileChannel.open(
+                        file,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE
+                );
+                map(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Starts the section of the next table. The sections have to be started in the order of the constants.
+         *
+         * @param table the table constant
+         */
+        void startSection(int table) {
+            if (table != section + 1) throw new IllegalStateException("The sections must be written in order");
+
+            section = table;
+            offsets[table] = position();
+        }
+
+        /**
+         * Starts the next row of the current section.
+         *
+         * @param maxLength the maximum number of bytes the row takes
+         */
+        void startRow(int maxLength) {
+            ensure(maxLength);
+            counts[section]++;
+        }
+
+        void putByte(int value) {
+            window.put((byte) value);
+        }
+
+        void putInt(int value) {
+            window.putInt(value);
+        }
+
+        void putLong(long value) {
+            window.putLong(value);
+        }
+
+        void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+            window.putShort((short) bytes.length);
+            window.put(bytes);
+        }
+
+        void putPath(int[] path) {
+            int length = path == null ? 0 : path.length;
+
+            window.putShort((short) length);
+            for (int i = 0; i < length; i++) {
+                window.putInt(path[i]);
+            }
+        }
+
+        /**
+         * Retrieves the maximum number of bytes a string takes.
+         *
+         * @param value the string
+         * @return the maximum number of bytes
+         */
+        static int maxLength(String value) {
+            return Short.BYTES + value.length() * 3;
+        }
+
+        /**
+         * Writes the footer and cuts the file to its length.
+         *
+         * @throws UncheckedIOException if the file can not be written
+         */
+        @Override
+        public void close() {
+            try {
+                if (section != TABLES - 1) throw new IllegalStateException("Not all the sections were written");
+
+                ensure(FOOTER_SIZE);
+                for (int i = 0; i < TABLES; i++) {
+                    window.putLong(offsets[i]);
+                    window.putLong(counts[i]);
+                }
+                window.put(MAGIC);
+
+                long length = position();
+                window.force();
+                window = null;
+                channel.truncate(length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        private long position() {
+            return windowStart + window.position();
+        }
+
+        private void ensure(int length) {
+            if (window.remaining() >= length) return;
+
+            try {
+                window.force();
+                map(position());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void map(long start) throws IOException {
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_WRITE, start, WINDOW_SIZE);
+            window.order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Represents a snapshot file being read. Every section is memory-mapped on its own,
+     * so only the section being read has to fit into one mapping.
+     */
+    static class Reader implements AutoCloseable {
+        private final FileChannel channel;
+        private final long[] offsets = new long[TABLES + 1];
+        private final long[] counts = new long[TABLES];
+
+        private MappedByteBuffer section;
+
+        Reader(Path file) {
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.READ);
+
+                long footerStart = channel.size() - FOOTER_SIZE;
+                if (footerStart < 0) throw new IllegalArgumentException("Not a snapshot file: " + file);
+
+                MappedByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, footerStart, FOOTER_SIZE);
+                footer.order(ByteOrder.LITTLE_ENDIAN);
+
+                for (int i = 0; i < TABLES; i++) {
+                    offsets[i] = footer.getLong();
+                    counts[i] = footer.getLong();
+                }
+                offsets[TABLES] = footerStart;
+
+                byte[] magic = new byte[MAGIC.length];
+                footer.get(magic);
+                if (!Arrays.equals(magic, MAGIC)) throw new IllegalArgumentException("Not a snapshot file: " + file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Retrieves the number of rows of the table.
+         *
+         * @param table the table constant
+         * @return the number of rows
+         */
+        long count(int table) {
+            return counts[table];
+        }
+
+        /**
+         * Maps the section of the table, positioned at its first row.
+         *
+         * @param table the table constant
+         * @throws UncheckedIOException if the file can not be read
+         */
+        void openSection(int table) {
+            try {
+                section = channel.map(FileChannel.MapMode.READ_ONLY, offsets[table], offsets[table + 1] - offsets[table]);
+                section.order(ByteOrder.LITTLE_ENDIAN);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        byte getByte() {
+            return section.get();
+        }
+
+        int getInt() {
+            return section.getInt();
+        }
+
+        long getLong() {
+            return section.getLong();
+        }
+
+        String getString() {
+            byte[] bytes = new byte[section.getShort() & 0xFFFF];
+
+            section.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int[] getPath() {
+            int[] path = new int[section.getShort() & 0xFFFF];
+
+            for (int i = 0; i < path.length; i++) {
+                path[i] = section.getInt();
+            }
+
+            return path.length == 0 ? null : path;
+        }
+
+        @Override
+        public void close() {
+            try {
+                section = null;
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
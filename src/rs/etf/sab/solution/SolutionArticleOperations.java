@@ -9,7 +9,23 @@ import java.sql.*;
  * Implements the ArticleOperations interface and provides methods related to articles.
  */
 public class SolutionArticleOperations implements ArticleOperations {
-    private static final Connection c = DB.getInstance().getConnection();
+    private final Connection c;
+
+    /**
+     * Creates the operations over the shared database connection.
+     */
+    public SolutionArticleOperations() {
+        this(DB.getInstance().getConnection());
+    }
+
+    /**
+     * Creates the operations over the given database connection.
+     *
+     * @param c the database connection to use
+     */
+    public SolutionArticleOperations(Connection c) {
+        this.c = c;
+    }
 
     /**
      * Creates an article with the specified details and quantity equal to zero and associates it with the given shop.
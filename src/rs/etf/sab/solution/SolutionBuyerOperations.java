@@ -6,12 +6,36 @@ import java.math.BigDecimal;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * Implements the BuyerOperations interface and provides methods related to buyers.
  */
 public class SolutionBuyerOperations implements BuyerOperations {
-    private static final Connection c = DB.getInstance().getConnection();
+    private final Connection c;
+    private final IdPager buyerOrders;
+    private final TransactionTemplate transactions;
+    private final ReadConnections reads;
+
+    /**
+     * Creates the operations over the shared database connection.
+     */
+    public SolutionBuyerOperations() {
+        this(DB.getInstance().getConnection());
+    }
+
+    /**
+     * Creates the operations over the given database connection.
+     *
+     * @param c the database connection to use
+     */
+    public SolutionBuyerOperations(Connection c) {
+        this.c = c;
+        this.buyerOrders = new IdPager(c, "V_ORDER", "IdBuyer");
+        this.transactions = new TransactionTemplate(c);
+        this.reads = new ReadConnections(c);
+    }
 
     /**
      * Creates a new buyer with the given buyerName, idCity, and balance equal to zero.
@@ -108,32 +132,19 @@ public class SolutionBuyerOperations implements BuyerOperations {
      */
     @Override
     public BigDecimal increaseCredit(int idBuyer, BigDecimal credit) {
-        String query1 = "UPDATE Buyer SET Balance = Balance + ? WHERE Id = ?";
-        String query2 = "SELECT Balance FROM Buyer WHERE Id = ?";
-        BigDecimal updatedBalance = null;
-
-        try (
-                PreparedStatement ps1 = c.prepareStatement(query1);
-                PreparedStatement ps2 = c.prepareStatement(query2)
-        ) {
-            ps1.setBigDecimal(1, credit);
-            ps1.setInt(2, idBuyer);
-
-            int rowsAffected = ps1.executeUpdate();
-            if (rowsAffected > 0) {
-                ps2.setInt(1, idBuyer);
+        String query = "UPDATE Buyer SET Balance = Balance + ? OUTPUT inserted.Balance WHERE Id = ?";
 
-                try (ResultSet rs = ps2.executeQuery()) {
-                    if (rs.next()) {
-                        updatedBalance = rs.getBigDecimal("Balance");
-                    }
+        // A single statement is atomic on its own, so it is only retried if it deadlocks
+        return transactions.retrying(() -> {
+            try (PreparedStatement ps = c.prepareStatement(query)) {
+                ps.setBigDecimal(1, credit);
+                ps.setInt(2, idBuyer);
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getBigDecimal(1) : null;
                 }
             }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-
-        return updatedBalance;
+        });
     }
 
     /**
@@ -176,10 +187,12 @@ public class SolutionBuyerOperations implements BuyerOperations {
      */
     @Override
     public List<Integer> getOrders(int idBuyer) {
-        String query = "SELECT Id FROM [Order] WHERE IdBuyer = ?";
+        String query = "SELECT Id FROM V_ORDER WHERE IdBuyer = ?";
         List<Integer> allOrders = new ArrayList<>();
 
-        try (PreparedStatement ps = c.prepareStatement(query)) {
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
             ps.setInt(1, idBuyer);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -189,6 +202,8 @@ public class SolutionBuyerOperations implements BuyerOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return allOrders.isEmpty() ? null : allOrders;
@@ -221,6 +236,41 @@ public class SolutionBuyerOperations implements BuyerOperations {
         return balance;
     }
 
+    /**
+     * Retrieves a page of the order IDs of the buyer, in ascending order.
+     *
+     * @param idBuyer the ID of the buyer
+     * @param afterId the ID after which the page starts, any negative value for the first page
+     * @param limit   the maximum number of IDs in the page
+     * @return the order IDs of the page, empty after the last page
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public int[] getOrders(int idBuyer, int afterId, int limit) {
+        return buyerOrders.page(idBuyer, afterId, limit);
+    }
+
+    /**
+     * Creates a lazy stream of all the order IDs of the buyer, in ascending order.
+     * The IDs are read one page at a time, as the stream is consumed.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return the stream of the order IDs
+     */
+    public IntStream streamOrders(int idBuyer) {
+        return buyerOrders.stream(idBuyer, IdPager.PAGE_SIZE);
+    }
+
+    /**
+     * Passes all the order IDs of the buyer to the consumer, in ascending order.
+     *
+     * @param idBuyer  the ID of the buyer
+     * @param consumer the consumer of the order IDs
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public void forEachOrder(int idBuyer, IntConsumer consumer) {
+        buyerOrders.forEach(idBuyer, consumer);
+    }
+
     /**
      * Checks if the city with the given idCity does not exist.
      *
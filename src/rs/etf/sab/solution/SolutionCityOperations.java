@@ -5,12 +5,34 @@ import rs.etf.sab.operations.CityOperations;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * Implements the CityOperations interface and provides methods related to cities.
  */
 public class SolutionCityOperations implements CityOperations {
-    private static final Connection c = DB.getInstance().getConnection();
+    private final Connection c;
+    private final IdPager allCities;
+    private final ReadConnections reads;
+
+    /**
+     * Creates the operations over the shared database connection.
+     */
+    public SolutionCityOperations() {
+        this(DB.getInstance().getConnection());
+    }
+
+    /**
+     * Creates the operations over the given database connection.
+     *
+     * @param c the database connection to use
+     */
+    public SolutionCityOperations(Connection c) {
+        this.c = c;
+        this.allCities = new IdPager(c, "City", null);
+        this.reads = new ReadConnections(c);
+    }
 
     /**
      * Creates a new city with the specified unique name.
@@ -55,8 +77,10 @@ public class SolutionCityOperations implements CityOperations {
         String query = "SELECT Id FROM City";
         List<Integer> allCities = new ArrayList<>();
 
+        Connection connection = reads.borrow();
+
         try (
-                PreparedStatement ps = c.prepareStatement(query);
+                PreparedStatement ps = connection.prepareStatement(query);
                 ResultSet rs = ps.executeQuery()
         ) {
             while (rs.next()) {
@@ -64,6 +88,8 @@ public class SolutionCityOperations implements CityOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return allCities.isEmpty() ? null : allCities;
@@ -93,6 +119,8 @@ public class SolutionCityOperations implements CityOperations {
 
             int rowsAffected = ps.executeUpdate();
             if (rowsAffected > 0) {
+                CityGraph.getInstance().invalidate(); // The cached lines are stale now
+
                 try (ResultSet rs = ps.getGeneratedKeys()) {
                     if (rs.next()) {
                         generatedKey = rs.getInt(1);
@@ -118,7 +146,9 @@ public class SolutionCityOperations implements CityOperations {
         String query = "SELECT Id1, Id2 FROM Line WHERE Id1 = ? OR Id2 = ?";
         List<Integer> allConnectedCities = new ArrayList<>();
 
-        try (PreparedStatement ps = c.prepareStatement(query)) {
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
             ps.setInt(1, idCity);
             ps.setInt(2, idCity);
 
@@ -133,6 +163,8 @@ public class SolutionCityOperations implements CityOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return allConnectedCities.isEmpty() ? null : allConnectedCities;
@@ -165,6 +197,38 @@ public class SolutionCityOperations implements CityOperations {
         return shopsInCity.isEmpty() ? null : shopsInCity;
     }
 
+    /**
+     * Retrieves a page of the city IDs, in ascending order.
+     *
+     * @param afterId the ID after which the page starts, any negative value for the first page
+     * @param limit   the maximum number of IDs in the page
+     * @return the city IDs of the page, empty after the last page
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public int[] getCities(int afterId, int limit) {
+        return allCities.page(0, afterId, limit);
+    }
+
+    /**
+     * Creates a lazy stream of all the city IDs, in ascending order.
+     * The IDs are read one page at a time, as the stream is consumed.
+     *
+     * @return the stream of the city IDs
+     */
+    public IntStream streamCities() {
+        return allCities.stream(0, IdPager.PAGE_SIZE);
+    }
+
+    /**
+     * Passes all the city IDs to the consumer, in ascending order.
+     *
+     * @param consumer the consumer of the city IDs
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public void forEachCity(IntConsumer consumer) {
+        allCities.forEach(0, consumer);
+    }
+
     /**
      * Checks if a city with the given name exists.
      *
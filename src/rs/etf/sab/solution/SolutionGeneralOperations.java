@@ -9,8 +9,47 @@ import java.util.Calendar;
  * Implements the GeneralOperations interface and provides methods for general operations on the database.
  */
 public class SolutionGeneralOperations implements GeneralOperations {
-    private static final Connection c = DB.getInstance().getConnection();
+    private final Connection c;
+
+    // The clock is shared by all the instances and their threads, so it is only used while holding its lock
     private static final Calendar currentDateTime = Calendar.getInstance();
+    private static volatile EraseMode eraseMode = EraseMode.TRUNCATE;
+
+    // When set, the arrivals are settled by the order partitions, see 'OrderPartitions'
+    private static volatile OrderPartitions orderPartitions = null;
+
+    /**
+     * Represents the ways 'eraseAll()' can erase the data.
+     */
+    public enum EraseMode {
+        /**
+         * Truncates all the tables with 'SP_ERASE_ALL', dropping and creating again the foreign keys around it.
+         * It takes the same time no matter how much data there is. The IDs start from 1 again.
+         */
+        TRUNCATE,
+
+        /**
+         * Deletes the rows of all the tables with the triggers and the constraints disabled, then reseeds the IDs.
+         * It is logged row by row, so it takes longer the more data there is.
+         */
+        DELETE
+    }
+
+    /**
+     * Creates the operations over the shared database connection.
+     */
+    public SolutionGeneralOperations() {
+        this(DB.getInstance().getConnection());
+    }
+
+    /**
+     * Creates the operations over the given database connection.
+     *
+     * @param c the database connection to use
+     */
+    public SolutionGeneralOperations(Connection c) {
+        this.c = c;
+    }
 
     /**
      * Sets the initial time to the given calendar object.
@@ -19,7 +58,9 @@ public class SolutionGeneralOperations implements GeneralOperations {
      */
     @Override
     public void setInitialTime(Calendar calendar) {
-        currentDateTime.setTimeInMillis(calendar.getTimeInMillis());
+        synchronized (currentDateTime) {
+            currentDateTime.setTimeInMillis(calendar.getTimeInMillis());
+        }
     }
 
     /**
@@ -27,14 +68,24 @@ public class SolutionGeneralOperations implements GeneralOperations {
      * Adjusts the status of orders accordingly.
      *
      * @param numberOfDays the number of days to add
-     * @return the updated currentDateTime object
+     * @return a copy of the updated currentDateTime object
      */
     @Override
     public Calendar time(int numberOfDays) {
-        currentDateTime.add(Calendar.DAY_OF_MONTH, numberOfDays);
+        FlightEvents.ArrivalBatch event = new FlightEvents.ArrivalBatch();
+        event.begin();
 
-        adjustOrdersStatus();
-        return currentDateTime;
+        Calendar current;
+        synchronized (currentDateTime) {
+            currentDateTime.add(Calendar.DAY_OF_MONTH, numberOfDays);
+            current = (Calendar) currentDateTime.clone();
+        }
+
+        event.days = numberOfDays;
+        event.arrivedOrders = adjustOrdersStatus(new Timestamp(current.getTimeInMillis()));
+        event.commit();
+
+        return current;
     }
 
     /**
@@ -44,18 +95,71 @@ public class SolutionGeneralOperations implements GeneralOperations {
      */
     @Override
     public Calendar getCurrentTime() {
-        return (Calendar) currentDateTime.clone();
+        synchronized (currentDateTime) {
+            return (Calendar) currentDateTime.clone();
+        }
     }
 
     /**
-     * Erases all data from the database.
-     * Disables triggers and constraints, deletes data from all tables,
-     * enables constraints and triggers, and resets identity values for the tables, respectively.
+     * Sets the way 'eraseAll()' erases the data.
+     *
+     * @param mode the erase mode
+     */
+    public static void setEraseMode(EraseMode mode) {
+        eraseMode = mode;
+    }
+
+    /**
+     * Sets the partitions which settle the arrivals of the orders they complete, see 'OrderPartitions'.
+     *
+     * @param partitions the order partitions, or null to settle the arrivals on the calling thread
+     */
+    public static void setOrderPartitions(OrderPartitions partitions) {
+        orderPartitions = partitions;
+    }
+
+    /**
+     * Erases all data from the database, in the way set by 'setEraseMode()'.
      *
      * @throws RuntimeException if a SQLException occurs during the erasure process
      */
     @Override
     public void eraseAll() {
+        if (eraseMode == EraseMode.TRUNCATE) {
+            truncateAll();
+        } else {
+            deleteAll();
+        }
+
+        CityGraph.getInstance().invalidate();
+
+        OrderPartitions partitions = orderPartitions;
+        if (partitions != null) partitions.reset().join();
+    }
+
+    /**
+     * Erases all data from the database by truncating all the tables.
+     *
+     * @throws RuntimeException if a SQLException occurs during the erasure process
+     */
+    private void truncateAll() {
+        String callableQuery = "{ call SP_ERASE_ALL }";
+
+        try (CallableStatement cs = c.prepareCall(callableQuery)) {
+            cs.execute();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Erases all data from the database by deleting the rows.
+     * Disables triggers and constraints, deletes data from all tables,
+     * enables constraints and triggers, and resets identity values for the tables, respectively.
+     *
+     * @throws RuntimeException if a SQLException occurs during the erasure process
+     */
+    private void deleteAll() {
         String query1 = "EXEC sp_MSforeachtable 'DISABLE TRIGGER ALL ON ?'";
         String query2 = "EXEC sp_MSForEachTable 'ALTER TABLE ? NOCHECK CONSTRAINT ALL'";
         String query3 = "EXEC sp_MSForEachTable 'DELETE FROM ?'";
@@ -82,19 +186,29 @@ public class SolutionGeneralOperations implements GeneralOperations {
     }
 
     /**
-     * Adjusts the status of orders based on the currentDateTime.
-     * Orders with a 'sent' status and a DateArrived before or equal to the currentDateTime
+     * Adjusts the status of orders based on the given current time.
+     * Orders with a 'sent' status and a DateArrived before or equal to the current time
      * will have their status updated to 'arrived'.
      *
+     * @param current the current time
+     * @return the number of orders that arrived
      * @throws RuntimeException if a SQLException occurs during the adjustment process
      */
-    private void adjustOrdersStatus() {
+    private int adjustOrdersStatus(Timestamp current) {
+        OrderPartitions partitions = orderPartitions;
+        if (partitions != null) {
+            // The orders are written on the partition threads, so the write is recorded for this thread's reads too
+            int arrived = partitions.arrive(current).join();
+            ReplicaRouter.recordWrite();
+            return arrived;
+        }
+
         String query = "UPDATE [Order] SET Status = 'arrived' WHERE Status = 'sent' AND DateArrived <= ?";
 
         try (PreparedStatement ps = c.prepareStatement(query)) {
-            ps.setTimestamp(1, new Timestamp(currentDateTime.getTimeInMillis()));
+            ps.setTimestamp(1, current);
 
-            ps.executeUpdate();
+            return ps.executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -7,18 +7,76 @@ import java.math.BigDecimal;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Implements the OrderOperations interface and provides methods related to orders.
  */
 public class SolutionOrderOperations implements OrderOperations {
-    private static final Connection c = DB.getInstance().getConnection();
-    private static final GeneralOperations go = new SolutionGeneralOperations();
+    private static final String LOCK_ARTICLE_QUERY = "SELECT Id FROM Article WITH (UPDLOCK, ROWLOCK) WHERE Id = ?";
 
-    private static final HashMap<Integer, List<Integer>> pathFromNearestToBuyerCity = new HashMap<>();
+    private final Connection c;
+    private final GeneralOperations go;
+    private final TransactionTemplate transactions;
+    private final ReadConnections reads;
+
+    private static final ConcurrentHashMap<Integer, List<Integer>> pathFromNearestToBuyerCity = new ConcurrentHashMap<>();
+
+    // When set, the orders are completed on the partition of their city instead of on the calling thread
+    private static volatile OrderPartitions orderPartitions = null;
+
+    /**
+     * Creates the operations over the shared database connection.
+     */
+    public SolutionOrderOperations() {
+        this(DB.getInstance().getConnection());
+    }
+
+    /**
+     * Creates the operations over the given database connection.
+     *
+     * @param c the database connection to use
+     */
+    public SolutionOrderOperations(Connection c) {
+        this.c = c;
+        this.go = new SolutionGeneralOperations(c);
+        this.transactions = new TransactionTemplate(c);
+        this.reads = new ReadConnections(c);
+    }
+
+    /**
+     * Sets the partitions on which 'completeOrder()' completes the orders, see 'OrderPartitions'.
+     * An order completed inside a running transaction, or on a partition thread, is still completed directly.
+     * The partitions use the database of 'DB', so they are not used with shards.
+     *
+     * @param partitions the order partitions, or null to complete the orders on the calling thread
+     */
+    public static void setOrderPartitions(OrderPartitions partitions) {
+        orderPartitions = partitions;
+    }
+
+    /**
+     * Retrieves the cached path from the nearest city to the buyer's city of a sent order.
+     *
+     * @param idOrder the ID of the order
+     * @return the IDs of the cities on the path, or null if the path is not cached
+     */
+    static List<Integer> getPath(int idOrder) {
+        return pathFromNearestToBuyerCity.get(idOrder);
+    }
+
+    /**
+     * Replaces all the cached paths, e.g. with the ones of a restored snapshot.
+     *
+     * @param paths the map (idOrder -> the IDs of the cities on the path)
+     */
+    static void replacePaths(Map<Integer, List<Integer>> paths) {
+        pathFromNearestToBuyerCity.clear();
+        pathFromNearestToBuyerCity.putAll(paths);
+    }
 
     /**
      * Adds an article to an order.
@@ -36,8 +94,27 @@ public class SolutionOrderOperations implements OrderOperations {
      */
     @Override
     public int addArticle(int idOrder, int idArticle, int quantity) {
-        if (quantity <= 0 || !getState(idOrder).equals("created")) return -1;
+        if (quantity <= 0) return -1;
+
+        // Only the order is locked: the article is only read, and its shared lock is compatible with the update
+        // locks 'completeOrder()' takes on the articles first
+        return transactions.execute(() -> {
+            if (!"created".equals(lockOrder(idOrder))) return -1;
 
+            return addItem(idOrder, idArticle, quantity);
+        });
+    }
+
+    /**
+     * Adds an article to an order, or increases its quantity, inside the transaction of 'addArticle()'.
+     *
+     * @param idOrder   the ID of the order
+     * @param idArticle the ID of the article
+     * @param quantity  the quantity of the article
+     * @return the ID of the item if successful, or -1 otherwise
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private int addItem(int idOrder, int idArticle, int quantity) {
         String query1 = "SELECT Quantity FROM Article WHERE Id = ?";
         String query2 = "SELECT Id, Quantity FROM OrderItem WHERE IdOrder = ? AND IdArticle = ?";
         String query3 = "INSERT INTO OrderItem (Quantity, IdOrder, IdArticle) VALUES (?, ?, ?)";
@@ -113,18 +190,19 @@ public class SolutionOrderOperations implements OrderOperations {
      */
     @Override
     public int removeArticle(int idOrder, int idArticle) {
-        if (!getState(idOrder).equals("created")) return -1; // Order has been sent, can't delete item now
-
         String query = "DELETE FROM OrderItem WHERE IdOrder = ? AND IdArticle = ?";
 
-        try (PreparedStatement ps = c.prepareStatement(query)) {
-            ps.setInt(1, idOrder);
-            ps.setInt(2, idArticle);
+        // The order stays locked from the state check to the delete, so that it can not be sent in between
+        return transactions.execute(() -> {
+            if (!"created".equals(lockOrder(idOrder))) return -1; // Order has been sent, can't delete item now
 
-            return ps.executeUpdate() > 0 ? 1 : -1;
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+            try (PreparedStatement ps = c.prepareStatement(query)) {
+                ps.setInt(1, idOrder);
+                ps.setInt(2, idArticle);
+
+                return ps.executeUpdate() > 0 ? 1 : -1;
+            }
+        });
     }
 
     /**
@@ -135,7 +213,7 @@ public class SolutionOrderOperations implements OrderOperations {
      */
     @Override
     public List<Integer> getItems(int idOrder) {
-        String query = "SELECT Id FROM OrderItem WHERE IdOrder = ?";
+        String query = "SELECT Id FROM V_ORDER_ITEM WHERE IdOrder = ?";
         List<Integer> allItems = new ArrayList<>();
 
         try (PreparedStatement ps = c.prepareStatement(query)) {
@@ -162,6 +240,8 @@ public class SolutionOrderOperations implements OrderOperations {
      * <p>
      * It is assumed there is no 'OrderItem' instance with Quantity greater than Quantity of related Article.
      * That is prevented in 'addArticle()' and 'removeArticle()' methods.
+     * <p>
+     * All the changes are made in one transaction, retried if it deadlocks, see 'TransactionTemplate'.
      *
      * @param idOrder the ID of the order
      * @return 1 if successful, or -1 otherwise
@@ -169,9 +249,41 @@ public class SolutionOrderOperations implements OrderOperations {
      */
     @Override
     public int completeOrder(int idOrder) {
-        if (!getState(idOrder).equals("created")) return -1;
-        if (getItems(idOrder) == null) return -1; // isEmpty() has been checked inside 'getItems()'
-        if (canAffordPurchase(idOrder) < 0) return -1;
+        OrderPartitions partitions = orderPartitions;
+        if (partitions != null && !OrderPartitions.isPartitionThread() && isAutoCommit()) {
+            int idBuyer = getBuyer(idOrder);
+            if (idBuyer == -1) return -1;
+
+            // The order is written on a partition thread, so the write is recorded for this thread's reads too
+            int sent = partitions.completeOrder(idOrder, getBuyerCity(idBuyer)).join();
+            ReplicaRouter.recordWrite();
+            return sent;
+        }
+
+        Integer sent = transactions.execute(() -> sendOrder(idOrder));
+        return sent == null ? -1 : sent;
+    }
+
+    /**
+     * Sends an order, inside the transaction of 'completeOrder()'.
+     * The articles of the order are locked first, by ascending ID, and then the order, see 'TransactionTemplate'.
+     *
+     * @param idOrder the ID of the order
+     * @return 1 if successful, or null otherwise
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    private Integer sendOrder(int idOrder) throws SQLException {
+        // Every phase is timed by a flight recorder event, see 'FlightEvents'
+        FlightEvents.CheckoutPhase phase = FlightEvents.CheckoutPhase.begin(idOrder, "validation");
+
+        List<Integer> articles = getArticles(idOrder);
+        transactions.lockInOrder(LOCK_ARTICLE_QUERY, articles);
+
+        if (!"created".equals(lockOrder(idOrder))) return failed(phase);
+        if (articles.isEmpty()) return failed(phase);
+        if (canAffordPurchase(idOrder) < 0) return failed(phase);
+
+        phase.end(true);
 
         String query1 = """
                 UPDATE Article
@@ -205,13 +317,19 @@ public class SolutionOrderOperations implements OrderOperations {
                 PreparedStatement ps4 = c.prepareStatement(query4)
         ) {
             // Query 1: Reduce the quantity of each article by the quantity requested in the order
+            phase = FlightEvents.CheckoutPhase.begin(idOrder, "stock");
+
             ps1.setInt(1, idOrder);
             ps1.setInt(2, idOrder);
-            if (ps1.executeUpdate() == 0) return -1;
+            if (ps1.executeUpdate() == 0) return failed(phase);
+
+            phase.end(true);
 
             // Query 2: Set all the required fields when completing the order
-            DijkstraAlgorithm da = new DijkstraAlgorithm();
-            pathFromNearestToBuyerCity.put(idOrder, da.dijkstraAlgorithm(getBuyerCity(idBuyer), idOrder));
+            phase = FlightEvents.CheckoutPhase.begin(idOrder, "routing");
+
+            DijkstraAlgorithm da = new DijkstraAlgorithm(c);
+            List<Integer> path = da.dijkstraAlgorithm(getBuyerCity(idBuyer), idOrder);
 
             // Calculate the 'DateSent', 'DateNearest' and the 'DateArrived'
             Calendar dateTime = go.getCurrentTime();
@@ -233,15 +351,21 @@ public class SolutionOrderOperations implements OrderOperations {
             ps2.setInt(5, da.getIdNearestCity());
             ps2.setInt(6, idOrder);
 
-            if (ps2.executeUpdate() == 0) return -1;
+            if (ps2.executeUpdate() == 0) return failed(phase);
+
+            phase.end(true);
 
             // Query 3: Withdraw money from the buyer's account
+            phase = FlightEvents.CheckoutPhase.begin(idOrder, "pricing");
             BigDecimal amount = getFinalPrice(idOrder);
+            phase.end(true);
+
+            phase = FlightEvents.CheckoutPhase.begin(idOrder, "debit");
 
             ps3.setBigDecimal(1, amount);
             ps3.setInt(2, idBuyer);
 
-            if (ps3.executeUpdate() == 0) return -1;
+            if (ps3.executeUpdate() == 0) return failed(phase);
 
             // Query 4: Create transaction for money withdrawal
             ps4.setTimestamp(1, dateSent);
@@ -249,12 +373,70 @@ public class SolutionOrderOperations implements OrderOperations {
             ps4.setInt(3, idOrder);
             ps4.setInt(4, idBuyer);
 
-            if (ps4.executeUpdate() == 0) return -1;
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+            if (ps4.executeUpdate() == 0) return failed(phase);
+
+            phase.end(true);
+
+            // The path is cached only once the order is sent, as a retried attempt routes the order again
+            pathFromNearestToBuyerCity.put(idOrder, path);
+
+            return 1;
+        }
+    }
+
+    /**
+     * Ends a failed phase of 'completeOrder()', and rolls back the transaction.
+     *
+     * @param phase the event of the phase
+     * @return null, the result of the failed 'sendOrder()'
+     */
+    private Integer failed(FlightEvents.CheckoutPhase phase) {
+        phase.end(false);
+        transactions.setRollbackOnly();
+        return null;
+    }
+
+    /**
+     * Retrieves the IDs of the articles of an order.
+     *
+     * @param idOrder the ID of the order
+     * @return the list of article IDs, empty if there are no items
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    private List<Integer> getArticles(int idOrder) throws SQLException {
+        String query = "SELECT IdArticle FROM OrderItem WHERE IdOrder = ?";
+        List<Integer> articles = new ArrayList<>();
+
+        try (PreparedStatement ps = c.prepareStatement(query)) {
+            ps.setInt(1, idOrder);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    articles.add(rs.getInt(1));
+                }
+            }
         }
 
-        return 1;
+        return articles;
+    }
+
+    /**
+     * Locks the order row until the end of the transaction, and retrieves its state.
+     *
+     * @param idOrder the ID of the order
+     * @return the state of the order, or null if there is no such order
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    private String lockOrder(int idOrder) throws SQLException {
+        String query = "SELECT Status FROM [Order] WITH (UPDLOCK, ROWLOCK) WHERE Id = ?";
+
+        try (PreparedStatement ps = c.prepareStatement(query)) {
+            ps.setInt(1, idOrder);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
     }
 
     /**
@@ -267,7 +449,7 @@ public class SolutionOrderOperations implements OrderOperations {
      */
     @Override
     public BigDecimal getFinalPrice(int idOrder) {
-        String query = "SELECT DiscountedPrice FROM [Order] WHERE Id = ?";
+        String query = "SELECT DiscountedPrice FROM V_ORDER WHERE Id = ?";
         String callableQuery = "{ call SP_FINAL_PRICE (?, ?) }";
         BigDecimal discountedPrice = BigDecimal.valueOf(-1);
 
@@ -312,7 +494,7 @@ public class SolutionOrderOperations implements OrderOperations {
             return BigDecimal.valueOf(-1).setScale(3);
         }
 
-        String query = "SELECT TotalPrice, DiscountedPrice FROM [Order] WHERE Id = ?";
+        String query = "SELECT TotalPrice, DiscountedPrice FROM V_ORDER WHERE Id = ?";
         BigDecimal discountSum = BigDecimal.valueOf(-1);
 
         try (PreparedStatement ps = c.prepareStatement(query)) {
@@ -342,10 +524,12 @@ public class SolutionOrderOperations implements OrderOperations {
      */
     @Override
     public String getState(int idOrder) {
-        String query = "SELECT Status FROM [Order] Where Id = ?";
+        String query = "SELECT Status FROM V_ORDER Where Id = ?";
         String status = null;
 
-        try (PreparedStatement ps = c.prepareStatement(query)) {
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
             ps.setInt(1, idOrder);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -355,6 +539,8 @@ public class SolutionOrderOperations implements OrderOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return status;
@@ -372,7 +558,7 @@ public class SolutionOrderOperations implements OrderOperations {
      */
     @Override
     public Calendar getSentTime(int idOrder) {
-        String query = "SELECT DateSent FROM [Order] Where Id = ?";
+        String query = "SELECT DateSent FROM V_ORDER Where Id = ?";
         Calendar dateTimeCreated = null;
 
         try (PreparedStatement ps = c.prepareStatement(query)) {
@@ -406,7 +592,7 @@ public class SolutionOrderOperations implements OrderOperations {
     public Calendar getRecievedTime(int idOrder) {
         if (!getState(idOrder).equals("arrived")) return null;
 
-        String query = "SELECT DateArrived FROM [Order] Where Id = ?";
+        String query = "SELECT DateArrived FROM V_ORDER Where Id = ?";
         Calendar dateTimeArrived = null;
 
         try (PreparedStatement ps = c.prepareStatement(query)) {
@@ -438,7 +624,7 @@ public class SolutionOrderOperations implements OrderOperations {
      */
     @Override
     public int getBuyer(int idOrder) {
-        String query = "SELECT IdBuyer FROM [Order] Where Id = ?";
+        String query = "SELECT IdBuyer FROM V_ORDER Where Id = ?";
         int idBuyer = -1;
 
         try (PreparedStatement ps = c.prepareStatement(query)) {
@@ -469,20 +655,24 @@ public class SolutionOrderOperations implements OrderOperations {
      */
     @Override
     public int getLocation(int idOrder) {
-        if (getState(idOrder).equals("created")) return -1;
+        // The state is read first, so that the read connection is not borrowed twice at once
+        String state = getState(idOrder);
+        if (state.equals("created")) return -1;
 
-        String query = "SELECT DateNearest, IdNearestCity FROM [Order] WHERE Id = ?";
+        String query = "SELECT DateNearest, IdNearestCity FROM V_ORDER WHERE Id = ?";
         Timestamp dateTimeCurrent = new Timestamp(go.getCurrentTime().getTimeInMillis());
         int idCity = -1;
 
-        try (PreparedStatement ps = c.prepareStatement(query)) {
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
             ps.setInt(1, idOrder);
 
             ResultSet rs = ps.executeQuery();
             if (rs.next()) {
                 Timestamp dateTimeNearest = rs.getTimestamp("DateNearest");
 
-                if (getState(idOrder).equals("arrived")) { //'DateArrived' <= 'DateCurrent'
+                if (state.equals("arrived")) { //'DateArrived' <= 'DateCurrent'
                     // Order has arrived
                     idCity = getBuyerCity(getBuyer(idOrder));
                 } else {
@@ -511,6 +701,8 @@ public class SolutionOrderOperations implements OrderOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return idCity;
@@ -542,6 +734,20 @@ public class SolutionOrderOperations implements OrderOperations {
         return idCity;
     }
 
+    /**
+     * Checks if the connection is outside a transaction.
+     *
+     * @return true if the connection is in auto-commit mode, or false otherwise
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private boolean isAutoCommit() {
+        try {
+            return c.getAutoCommit();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Retrieves the distance between two cities.
      *
@@ -0,0 +1,344 @@
+package rs.etf.sab.solution;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Provides the reports over the daily rollups of the transactions.
+ * <p>
+ * The rollups are kept in 'ShopDailyRevenue' and 'BuyerDailySpend', up to 8 stripes per shop or buyer per day,
+ * and are updated by the 'TR_ROLL_UP_TRANSACTIONS' trigger whenever a transaction is written. The stripe is picked
+ * by the order, like the stripe of the shop's balance, so the reports sum the stripes of every day.
+ * A report over a date range reads at most 8 rows per day of the range, instead of all the transactions.
+ * <p>
+ * The profit is the part of the price kept by the system: 5% of the full price,
+ * or 3% if the buyer got the discount. For the shops it is realized when the order arrives,
+ * for the buyers it is the profit expected from their payments.
+ */
+public class SolutionReportOperations {
+    private final Connection c;
+
+    /**
+     * Represents the totals of one shop or buyer for one day.
+     */
+    public static class DailyTotal {
+        private final Calendar day;
+        private final BigDecimal amount;
+        private final int orderCount;
+        private final BigDecimal profit;
+
+        DailyTotal(Calendar day, BigDecimal amount, int orderCount, BigDecimal profit) {
+            this.day = day;
+            this.amount = amount;
+            this.orderCount = orderCount;
+            this.profit = profit;
+        }
+
+        public Calendar getDay() {
+            return (Calendar) day.clone();
+        }
+
+        public BigDecimal getAmount() {
+            return amount;
+        }
+
+        public int getOrderCount() {
+            return orderCount;
+        }
+
+        public BigDecimal getProfit() {
+            return profit;
+        }
+    }
+
+    /**
+     * Creates the operations over the shared database connection.
+     */
+    public SolutionReportOperations() {
+        this(DB.getInstance().getConnection());
+    }
+
+    /**
+     * Creates the operations over the given database connection.
+     *
+     * @param c the database connection to use
+     */
+    public SolutionReportOperations(Connection c) {
+        this.c = c;
+    }
+
+    /**
+     * Retrieves the total amount transferred to a shop in the given date range.
+     *
+     * @param idShop the ID of the shop
+     * @param from   the first day of the range
+     * @param to     the last day of the range
+     * @return the total amount transferred to the shop
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public BigDecimal getShopRevenue(int idShop, Calendar from, Calendar to) {
+        String query = "SELECT COALESCE(SUM(Amount), 0) FROM ShopDailyRevenue WHERE IdShop = ? AND Day BETWEEN ? AND ?";
+        return sum(query, idShop, from, to);
+    }
+
+    /**
+     * Retrieves the profit made by the system on the orders of a shop in the given date range.
+     *
+     * @param idShop the ID of the shop
+     * @param from   the first day of the range
+     * @param to     the last day of the range
+     * @return the profit made on the orders of the shop
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public BigDecimal getShopProfit(int idShop, Calendar from, Calendar to) {
+        String query = "SELECT COALESCE(SUM(Profit), 0) FROM ShopDailyRevenue WHERE IdShop = ? AND Day BETWEEN ? AND ?";
+        return sum(query, idShop, from, to);
+    }
+
+    /**
+     * Retrieves the number of orders for which a shop was paid in the given date range.
+     *
+     * @param idShop the ID of the shop
+     * @param from   the first day of the range
+     * @param to     the last day of the range
+     * @return the number of orders, or -1 otherwise
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public int getShopOrderCount(int idShop, Calendar from, Calendar to) {
+        String query = "SELECT COALESCE(SUM(OrderCount), 0) FROM ShopDailyRevenue WHERE IdShop = ? AND Day BETWEEN ? AND ?";
+        return count(query, idShop, from, to);
+    }
+
+    /**
+     * Retrieves the daily totals of a shop in the given date range.
+     *
+     * @param idShop the ID of the shop
+     * @param from   the first day of the range
+     * @param to     the last day of the range
+     * @return the totals of the days with transactions, in ascending order of the days
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public List<DailyTotal> getShopDailyTotals(int idShop, Calendar from, Calendar to) {
+        String query = """
+                SELECT Day, SUM(Amount), SUM(OrderCount), SUM(Profit)
+                FROM ShopDailyRevenue
+                WHERE IdShop = ? AND Day BETWEEN ? AND ?
+                GROUP BY Day
+                ORDER BY Day""";
+        return dailyTotals(query, idShop, from, to);
+    }
+
+    /**
+     * Retrieves the total amount paid by a buyer in the given date range.
+     *
+     * @param idBuyer the ID of the buyer
+     * @param from    the first day of the range
+     * @param to      the last day of the range
+     * @return the total amount paid by the buyer
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public BigDecimal getBuyerSpend(int idBuyer, Calendar from, Calendar to) {
+        String query = "SELECT COALESCE(SUM(Amount), 0) FROM BuyerDailySpend WHERE IdBuyer = ? AND Day BETWEEN ? AND ?";
+        return sum(query, idBuyer, from, to);
+    }
+
+    /**
+     * Retrieves the profit expected by the system from the payments of a buyer in the given date range.
+     *
+     * @param idBuyer the ID of the buyer
+     * @param from    the first day of the range
+     * @param to      the last day of the range
+     * @return the profit expected from the payments of the buyer
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public BigDecimal getBuyerProfit(int idBuyer, Calendar from, Calendar to) {
+        String query = "SELECT COALESCE(SUM(Profit), 0) FROM BuyerDailySpend WHERE IdBuyer = ? AND Day BETWEEN ? AND ?";
+        return sum(query, idBuyer, from, to);
+    }
+
+    /**
+     * Retrieves the number of orders paid by a buyer in the given date range.
+     *
+     * @param idBuyer the ID of the buyer
+     * @param from    the first day of the range
+     * @param to      the last day of the range
+     * @return the number of orders, or -1 otherwise
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public int getBuyerOrderCount(int idBuyer, Calendar from, Calendar to) {
+        String query = "SELECT COALESCE(SUM(OrderCount), 0) FROM BuyerDailySpend WHERE IdBuyer = ? AND Day BETWEEN ? AND ?";
+        return count(query, idBuyer, from, to);
+    }
+
+    /**
+     * Retrieves the daily totals of a buyer in the given date range.
+     *
+     * @param idBuyer the ID of the buyer
+     * @param from    the first day of the range
+     * @param to      the last day of the range
+     * @return the totals of the days with transactions, in ascending order of the days
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public List<DailyTotal> getBuyerDailyTotals(int idBuyer, Calendar from, Calendar to) {
+        String query = """
+                SELECT Day, SUM(Amount), SUM(OrderCount), SUM(Profit)
+                FROM BuyerDailySpend
+                WHERE IdBuyer = ? AND Day BETWEEN ? AND ?
+                GROUP BY Day
+                ORDER BY Day""";
+        return dailyTotals(query, idBuyer, from, to);
+    }
+
+    /**
+     * Retrieves the profit realized by the system on the orders that arrived in the given date range.
+     *
+     * @param from the first day of the range
+     * @param to   the last day of the range
+     * @return the profit realized by the system
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public BigDecimal getSystemProfit(Calendar from, Calendar to) {
+        String query = "SELECT COALESCE(SUM(Profit), 0) FROM ShopDailyRevenue WHERE Day BETWEEN ? AND ?";
+        BigDecimal profit = BigDecimal.valueOf(-1);
+
+        try (PreparedStatement ps = c.prepareStatement(query)) {
+            ps.setDate(1, toDate(from));
+            ps.setDate(2, toDate(to));
+
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    profit = rs.getBigDecimal(1);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return profit.setScale(3);
+    }
+
+    /**
+     * Recomputes all the rollups from the transactions, including the archived ones.
+     * It is only needed for the data written before the rollups existed.
+     *
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public void rebuild() {
+        String callableQuery = "{ call SP_REBUILD_ROLLUPS }";
+
+        try (CallableStatement cs = c.prepareCall(callableQuery)) {
+            cs.execute();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Executes a sum query over a date range for one shop or buyer.
+     *
+     * @param query the query, with the ID and the range as the parameters
+     * @param id    the ID of the shop or the buyer
+     * @param from  the first day of the range
+     * @param to    the last day of the range
+     * @return the sum, or -1 otherwise
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private BigDecimal sum(String query, int id, Calendar from, Calendar to) {
+        BigDecimal sum = BigDecimal.valueOf(-1);
+
+        try (PreparedStatement ps = c.prepareStatement(query)) {
+            ps.setInt(1, id);
+            ps.setDate(2, toDate(from));
+            ps.setDate(3, toDate(to));
+
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    sum = rs.getBigDecimal(1);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return sum.setScale(3);
+    }
+
+    /**
+     * Executes a count query over a date range for one shop or buyer.
+     *
+     * @param query the query, with the ID and the range as the parameters
+     * @param id    the ID of the shop or the buyer
+     * @param from  the first day of the range
+     * @param to    the last day of the range
+     * @return the count, or -1 otherwise
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private int count(String query, int id, Calendar from, Calendar to) {
+        try (PreparedStatement ps = c.prepareStatement(query)) {
+            ps.setInt(1, id);
+            ps.setDate(2, toDate(from));
+            ps.setDate(3, toDate(to));
+
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Executes a daily totals query over a date range for one shop or buyer.
+     *
+     * @param query the query, with the ID and the range as the parameters
+     * @param id    the ID of the shop or the buyer
+     * @param from  the first day of the range
+     * @param to    the last day of the range
+     * @return the daily totals
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private List<DailyTotal> dailyTotals(String query, int id, Calendar from, Calendar to) {
+        List<DailyTotal> totals = new ArrayList<>();
+
+        try (PreparedStatement ps = c.prepareStatement(query)) {
+            ps.setInt(1, id);
+            ps.setDate(2, toDate(from));
+            ps.setDate(3, toDate(to));
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Calendar day = Calendar.getInstance();
+                    day.setTime(rs.getDate(1));
+
+                    totals.add(new DailyTotal(
+                            day,
+                            rs.getBigDecimal(2).setScale(3),
+                            rs.getInt(3),
+                            rs.getBigDecimal(4).setScale(3)
+                    ));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return totals;
+    }
+
+    /**
+     * Converts the calendar to the SQL date of its day.
+     *
+     * @param calendar the calendar
+     * @return the SQL date
+     */
+    private static Date toDate(Calendar calendar) {
+        return new Date(calendar.getTimeInMillis());
+    }
+}
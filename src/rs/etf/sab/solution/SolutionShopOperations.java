@@ -3,18 +3,41 @@ package rs.etf.sab.solution;
 import rs.etf.sab.operations.ShopOperations;
 
 import java.math.BigDecimal;
+import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * Implements the ShopOperations interface and provides methods related to shops.
  */
 public class SolutionShopOperations implements ShopOperations {
-    private static final Connection c = DB.getInstance().getConnection();
+    private final Connection c;
+    private final IdPager shopArticles;
+    private final ReadConnections reads;
+
+    /**
+     * Creates the operations over the shared database connection.
+     */
+    public SolutionShopOperations() {
+        this(DB.getInstance().getConnection());
+    }
+
+    /**
+     * Creates the operations over the given database connection.
+     *
+     * @param c the database connection to use
+     */
+    public SolutionShopOperations(Connection c) {
+        this.c = c;
+        this.shopArticles = new IdPager(c, "Article", "IdShop");
+        this.reads = new ReadConnections(c);
+    }
 
     /**
      * Creates a new shop with the specified unique name and city, and with 0% discount.
@@ -167,7 +190,9 @@ public class SolutionShopOperations implements ShopOperations {
         String query = "SELECT Quantity FROM Article WHERE Id = ?";
         int returnValue = -1;
 
-        try (PreparedStatement ps = c.prepareStatement(query)) {
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
             ps.setInt(1, idArticle);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -177,6 +202,8 @@ public class SolutionShopOperations implements ShopOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return returnValue;
@@ -194,7 +221,9 @@ public class SolutionShopOperations implements ShopOperations {
         String query = "SELECT Id FROM Article WHERE IdShop = ?";
         List<Integer> articlesInShop = new ArrayList<>();
 
-        try (PreparedStatement ps = c.prepareStatement(query)) {
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
             ps.setInt(1, idShop);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -204,6 +233,8 @@ public class SolutionShopOperations implements ShopOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return articlesInShop.isEmpty() ? null : articlesInShop;
@@ -235,6 +266,84 @@ public class SolutionShopOperations implements ShopOperations {
         return discount;
     }
 
+    /**
+     * Retrieves the account balance of the specified shop.
+     * The balance is the folded 'Shop.Balance' plus the sum of all the shop's balance stripes.
+     *
+     * @param idShop the ID of the shop
+     * @return the account balance of the shop, or -1 otherwise
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public BigDecimal getBalance(int idShop) {
+        String query = "SELECT Balance FROM V_SHOP_BALANCE WHERE IdShop = ?";
+        BigDecimal balance = BigDecimal.valueOf(-1);
+
+        try (PreparedStatement ps = c.prepareStatement(query)) {
+            ps.setInt(1, idShop);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    balance = rs.getBigDecimal(1);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return balance.setScale(3);
+    }
+
+    /**
+     * Folds the balance stripes of all shops into their 'Shop.Balance'.
+     * Balances returned by 'getBalance()' do not change, it only keeps the stripes small.
+     *
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public void foldBalances() {
+        String callableQuery = "{ call SP_FOLD_SHOP_BALANCES }";
+
+        try (CallableStatement cs = c.prepareCall(callableQuery)) {
+            cs.execute();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Retrieves a page of the article IDs associated with the shop, in ascending order.
+     *
+     * @param idShop  the ID of the shop
+     * @param afterId the ID after which the page starts, any negative value for the first page
+     * @param limit   the maximum number of IDs in the page
+     * @return the article IDs of the page, empty after the last page
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public int[] getArticles(int idShop, int afterId, int limit) {
+        return shopArticles.page(idShop, afterId, limit);
+    }
+
+    /**
+     * Creates a lazy stream of all the article IDs associated with the shop, in ascending order.
+     * The IDs are read one page at a time, as the stream is consumed.
+     *
+     * @param idShop the ID of the shop
+     * @return the stream of the article IDs
+     */
+    public IntStream streamArticles(int idShop) {
+        return shopArticles.stream(idShop, IdPager.PAGE_SIZE);
+    }
+
+    /**
+     * Passes all the article IDs associated with the shop to the consumer, in ascending order.
+     *
+     * @param idShop   the ID of the shop
+     * @param consumer the consumer of the article IDs
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public void forEachArticle(int idShop, IntConsumer consumer) {
+        shopArticles.forEach(idShop, consumer);
+    }
+
     /**
      * Checks if a shop with the given name already exists.
      *
@@ -7,12 +7,36 @@ import java.sql.*;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * Implements the TransactionOperations interface and provides methods related to transactions.
  */
 public class SolutionTransactionOperations implements TransactionOperations {
-    private static final Connection c = DB.getInstance().getConnection();
+    private final Connection c;
+    private final IdPager buyerTransactions;
+    private final IdPager shopTransactions;
+    private final ReadConnections reads;
+
+    /**
+     * Creates the operations over the shared database connection.
+     */
+    public SolutionTransactionOperations() {
+        this(DB.getInstance().getConnection());
+    }
+
+    /**
+     * Creates the operations over the given database connection.
+     *
+     * @param c the database connection to use
+     */
+    public SolutionTransactionOperations(Connection c) {
+        this.c = c;
+        this.buyerTransactions = new IdPager(c, "V_TRANSACTION", "IdBuyer");
+        this.shopTransactions = new IdPager(c, "V_TRANSACTION", "IdShop");
+        this.reads = new ReadConnections(c);
+    }
 
     /**
      * Retrieves the total amount paid in the transactions made by a buyer.
@@ -23,10 +47,12 @@ public class SolutionTransactionOperations implements TransactionOperations {
      */
     @Override
     public BigDecimal getBuyerTransactionsAmmount(int idBuyer) {
-        String query = "SELECT COALESCE(SUM(Amount), 0) FROM [Transaction] WHERE IdBuyer = ?";
+        String query = "SELECT COALESCE(SUM(Amount), 0) FROM V_TRANSACTION WHERE IdBuyer = ?";
         BigDecimal balance = BigDecimal.valueOf(-1);
 
-        try (PreparedStatement ps = c.prepareStatement(query)) {
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
             ps.setInt(1, idBuyer);
 
             ResultSet rs = ps.executeQuery();
@@ -35,6 +61,8 @@ public class SolutionTransactionOperations implements TransactionOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return balance.setScale(3);
@@ -49,10 +77,12 @@ public class SolutionTransactionOperations implements TransactionOperations {
      */
     @Override
     public BigDecimal getShopTransactionsAmmount(int idShop) {
-        String query = "SELECT COALESCE(SUM(Amount), 0) FROM [Transaction] WHERE IdShop = ?";
+        String query = "SELECT COALESCE(SUM(Amount), 0) FROM V_TRANSACTION WHERE IdShop = ?";
         BigDecimal balance = BigDecimal.valueOf(-1);
 
-        try (PreparedStatement ps = c.prepareStatement(query)) {
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
             ps.setInt(1, idShop);
 
             ResultSet rs = ps.executeQuery();
@@ -61,6 +91,8 @@ public class SolutionTransactionOperations implements TransactionOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return balance.setScale(3);
@@ -75,10 +107,12 @@ public class SolutionTransactionOperations implements TransactionOperations {
      */
     @Override
     public List<Integer> getTransationsForBuyer(int idBuyer) {
-        String query = "SELECT Id FROM [Transaction] WHERE IdBuyer = ?";
+        String query = "SELECT Id FROM V_TRANSACTION WHERE IdBuyer = ?";
         List<Integer> buyerTransactions = new ArrayList<>();
 
-        try (PreparedStatement ps = c.prepareStatement(query)) {
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
             ps.setInt(1, idBuyer);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -88,6 +122,8 @@ public class SolutionTransactionOperations implements TransactionOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return buyerTransactions.isEmpty() ? null : buyerTransactions;
@@ -102,10 +138,12 @@ public class SolutionTransactionOperations implements TransactionOperations {
      */
     @Override
     public int getTransactionForBuyersOrder(int idOrder) {
-        String query = "SELECT Id FROM [Transaction] WHERE IdShop IS NULL AND IdOrder = ?";
+        String query = "SELECT Id FROM V_TRANSACTION WHERE IdShop IS NULL AND IdOrder = ?";
         int idTransaction = -1;
 
-        try (PreparedStatement ps = c.prepareStatement(query)) {
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
             ps.setInt(1, idOrder);
 
             ResultSet rs = ps.executeQuery();
@@ -114,6 +152,8 @@ public class SolutionTransactionOperations implements TransactionOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return idTransaction;
@@ -129,10 +169,12 @@ public class SolutionTransactionOperations implements TransactionOperations {
      */
     @Override
     public int getTransactionForShopAndOrder(int idOrder, int idShop) {
-        String query = "SELECT Id FROM [Transaction] WHERE IdOrder = ? AND IdShop = ?";
+        String query = "SELECT Id FROM V_TRANSACTION WHERE IdOrder = ? AND IdShop = ?";
         int idTransaction = -1;
 
-        try (PreparedStatement ps = c.prepareStatement(query)) {
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
             ps.setInt(1, idOrder);
             ps.setInt(2, idShop);
 
@@ -142,6 +184,8 @@ public class SolutionTransactionOperations implements TransactionOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return idTransaction;
@@ -156,10 +200,12 @@ public class SolutionTransactionOperations implements TransactionOperations {
      */
     @Override
     public List<Integer> getTransationsForShop(int idShop) {
-        String query = "SELECT Id FROM [Transaction] WHERE IdShop = ?";
+        String query = "SELECT Id FROM V_TRANSACTION WHERE IdShop = ?";
         List<Integer> shopTransactions = new ArrayList<>();
 
-        try (PreparedStatement ps = c.prepareStatement(query)) {
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
             ps.setInt(1, idShop);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -169,6 +215,8 @@ public class SolutionTransactionOperations implements TransactionOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return shopTransactions.isEmpty() ? null : shopTransactions;
@@ -183,10 +231,12 @@ public class SolutionTransactionOperations implements TransactionOperations {
      */
     @Override
     public Calendar getTimeOfExecution(int idTransaction) {
-        String query = "SELECT Date FROM [Transaction] T WHERE Id = ?";
+        String query = "SELECT Date FROM V_TRANSACTION T WHERE Id = ?";
         Calendar dateTimeArrived = null;
 
-        try (PreparedStatement ps = c.prepareStatement(query)) {
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
             ps.setInt(1, idTransaction);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -201,6 +251,8 @@ public class SolutionTransactionOperations implements TransactionOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return dateTimeArrived;
@@ -215,10 +267,12 @@ public class SolutionTransactionOperations implements TransactionOperations {
      */
     @Override
     public BigDecimal getAmmountThatBuyerPayedForOrder(int idOrder) {
-        String query = "SELECT Amount FROM [Transaction] WHERE IdShop IS NULL AND IdOrder = ?";
+        String query = "SELECT Amount FROM V_TRANSACTION WHERE IdShop IS NULL AND IdOrder = ?";
         BigDecimal payedAmount = BigDecimal.valueOf(-1);
 
-        try (PreparedStatement ps = c.prepareStatement(query)) {
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
             ps.setInt(1, idOrder);
 
             ResultSet rs = ps.executeQuery();
@@ -227,6 +281,8 @@ public class SolutionTransactionOperations implements TransactionOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return payedAmount.setScale(3);
@@ -242,10 +298,12 @@ public class SolutionTransactionOperations implements TransactionOperations {
      */
     @Override
     public BigDecimal getAmmountThatShopRecievedForOrder(int idShop, int idOrder) {
-        String query = "SELECT Amount FROM [Transaction] WHERE IdShop = ? AND IdOrder = ?";
+        String query = "SELECT Amount FROM V_TRANSACTION WHERE IdShop = ? AND IdOrder = ?";
         BigDecimal receivedAmount = BigDecimal.valueOf(-1);
 
-        try (PreparedStatement ps = c.prepareStatement(query)) {
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
             ps.setInt(1, idShop);
             ps.setInt(2, idOrder);
 
@@ -255,6 +313,8 @@ public class SolutionTransactionOperations implements TransactionOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return receivedAmount.setScale(3);
@@ -269,10 +329,12 @@ public class SolutionTransactionOperations implements TransactionOperations {
      */
     @Override
     public BigDecimal getTransactionAmount(int idTransaction) {
-        String query = "SELECT Amount FROM [Transaction] WHERE Id = ?";
+        String query = "SELECT Amount FROM V_TRANSACTION WHERE Id = ?";
         BigDecimal receivedAmount = BigDecimal.valueOf(-1);
 
-        try (PreparedStatement ps = c.prepareStatement(query)) {
+        Connection connection = reads.borrow();
+
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
             ps.setInt(1, idTransaction);
 
             ResultSet rs = ps.executeQuery();
@@ -281,6 +343,8 @@ public class SolutionTransactionOperations implements TransactionOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return receivedAmount.setScale(3);
@@ -299,12 +363,14 @@ public class SolutionTransactionOperations implements TransactionOperations {
                     SUM (T.Amount * (1 / (1 - O.BuyerDiscount / 100.0)) * (0.05 - O.BuyerDiscount / 100.0)),
                     0
                 )
-                FROM [Transaction] T JOIN [Order] O ON (T.IdOrder = O.Id)
+                FROM V_TRANSACTION T JOIN V_ORDER O ON (T.IdOrder = O.Id)
                 WHERE T.IdShop IS NULL AND O.Status = 'arrived'""";
         BigDecimal systemProfit = BigDecimal.valueOf(-1);
 
+        Connection connection = reads.borrow();
+
         try (
-                PreparedStatement ps = c.prepareStatement(query);
+                PreparedStatement ps = connection.prepareStatement(query);
                 ResultSet rs = ps.executeQuery()
         ) {
             if (rs.next()) {
@@ -312,8 +378,80 @@ public class SolutionTransactionOperations implements TransactionOperations {
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            reads.release(connection);
         }
 
         return systemProfit.setScale(3);
     }
+
+    /**
+     * Retrieves a page of the transaction IDs associated with a buyer, in ascending order.
+     *
+     * @param idBuyer the ID of the buyer
+     * @param afterId the ID after which the page starts, any negative value for the first page
+     * @param limit   the maximum number of IDs in the page
+     * @return the transaction IDs of the page, empty after the last page
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public int[] getTransationsForBuyer(int idBuyer, int afterId, int limit) {
+        return buyerTransactions.page(idBuyer, afterId, limit);
+    }
+
+    /**
+     * Creates a lazy stream of all the transaction IDs associated with a buyer, in ascending order.
+     * The IDs are read one page at a time, as the stream is consumed.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return the stream of the transaction IDs
+     */
+    public IntStream streamTransactionsForBuyer(int idBuyer) {
+        return buyerTransactions.stream(idBuyer, IdPager.PAGE_SIZE);
+    }
+
+    /**
+     * Passes all the transaction IDs associated with a buyer to the consumer, in ascending order.
+     *
+     * @param idBuyer  the ID of the buyer
+     * @param consumer the consumer of the transaction IDs
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public void forEachTransactionForBuyer(int idBuyer, IntConsumer consumer) {
+        buyerTransactions.forEach(idBuyer, consumer);
+    }
+
+    /**
+     * Retrieves a page of the transaction IDs associated with a shop, in ascending order.
+     *
+     * @param idShop  the ID of the shop
+     * @param afterId the ID after which the page starts, any negative value for the first page
+     * @param limit   the maximum number of IDs in the page
+     * @return the transaction IDs of the page, empty after the last page
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public int[] getTransationsForShop(int idShop, int afterId, int limit) {
+        return shopTransactions.page(idShop, afterId, limit);
+    }
+
+    /**
+     * Creates a lazy stream of all the transaction IDs associated with a shop, in ascending order.
+     * The IDs are read one page at a time, as the stream is consumed.
+     *
+     * @param idShop the ID of the shop
+     * @return the stream of the transaction IDs
+     */
+    public IntStream streamTransactionsForShop(int idShop) {
+        return shopTransactions.stream(idShop, IdPager.PAGE_SIZE);
+    }
+
+    /**
+     * Passes all the transaction IDs associated with a shop to the consumer, in ascending order.
+     *
+     * @param idShop   the ID of the shop
+     * @param consumer the consumer of the transaction IDs
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public void forEachTransactionForShop(int idShop, IntConsumer consumer) {
+        shopTransactions.forEach(idShop, consumer);
+    }
 }
@@ -0,0 +1,234 @@
+package rs.etf.sab.solution;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the stock that 'ShardedOrderOperations.completeOrder()' takes for an order from the reference database,
+ * see 'ShardMap', until the order is sent on its shard or the stock is returned.
+ * <p>
+ * The stock is taken in one transaction of the reference database together with the rows of the reservation
+ * in 'StockReservation', and the order is sent afterwards in a transaction of its shard, so the two commits are not
+ * atomic. A reservation is thus settled by the state of its order on the shard: it is deleted if the order was sent,
+ * and its stock is returned otherwise. The state is read under the lock of the order row, which the attempt sending
+ * the order holds from before it takes the stock until its shard transaction ends, so a reservation is never settled
+ * while its order is being sent. Settling deletes the rows first, so a reservation returns its stock at most once,
+ * even if several JVMs settle it.
+ * <p>
+ * 'completeOrder()' settles the reservation of its order itself, also when its commit is not acknowledged.
+ * The reservations left behind by a crashed JVM, or by an attempt that lost its shard, are settled by 'reconcileAll()'
+ * once they are older than a minute, or '-Donlineshop.shards.reservationTimeout=...' milliseconds. The runs are made
+ * by the synchronization thread of 'ShardMap'.
+ */
+public class StockReservations {
+    private static final int TIMEOUT_MILLIS = Integer.getInteger("onlineshop.shards.reservationTimeout", 60000);
+
+    private final ShardMap shards;
+    private final LongAdder reconciled = new LongAdder();
+
+    // The connections are opened on the first run, and only used under the lock of the reconciler
+    private Connection reference = null;
+    private final List<Connection> connections = new ArrayList<>();
+
+    /**
+     * Creates the reconciler of the stock reservations of the shards of the map.
+     *
+     * @param shards the shard map
+     */
+    public StockReservations(ShardMap shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * Records the reservation of the items of the order, inside the transaction of the reference database
+     * that takes their stock.
+     *
+     * @param reference the reference connection
+     * @param idOrder   the ID of the order
+     * @param items     the map (idArticle -> quantity)
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    static void reserve(Connection reference, int idOrder, Map<Integer, Integer> items) throws SQLException {
+        String query = """
+                INSERT INTO StockReservation (IdOrder, IdArticle, Quantity, Created)
+                VALUES (?, ?, ?, SYSDATETIME())""";
+
+        try (PreparedStatement ps = reference.prepareStatement(query)) {
+            for (Map.Entry<Integer, Integer> item : items.entrySet()) {
+                ps.setInt(1, idOrder);
+                ps.setInt(2, item.getKey());
+                ps.setInt(3, item.getValue());
+                ps.addBatch();
+            }
+
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Settles the reservation of the order, inside a transaction of the reference database: deletes it if the order
+     * was sent, or returns its stock by ascending article ID otherwise.
+     *
+     * @param reference the reference connection
+     * @param idOrder   the ID of the order
+     * @param sent      whether the order was sent
+     * @return true if the order had a reservation, or false otherwise
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    static boolean settle(Connection reference, int idOrder, boolean sent) throws SQLException {
+        String query1 = "DELETE FROM StockReservation OUTPUT deleted.IdArticle, deleted.Quantity WHERE IdOrder = ?";
+        String query2 = "UPDATE Article SET Quantity = Quantity + ? WHERE Id = ?";
+        Map<Integer, Integer> items = new TreeMap<>();
+
+        try (PreparedStatement ps1 = reference.prepareStatement(query1)) {
+            ps1.setInt(1, idOrder);
+
+            try (ResultSet rs = ps1.executeQuery()) {
+                while (rs.next()) {
+                    items.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+        }
+
+        if (items.isEmpty() || sent) return !items.isEmpty();
+
+        try (PreparedStatement ps2 = reference.prepareStatement(query2)) {
+            for (Map.Entry<Integer, Integer> item : items.entrySet()) {
+                ps2.setInt(1, item.getValue());
+                ps2.setInt(2, item.getKey());
+                ps2.addBatch();
+            }
+
+            ps2.executeBatch();
+        }
+
+        return true;
+    }
+
+    /**
+     * Locks the order row on its shard until the end of the transaction, and retrieves its state.
+     * An archived order is not locked, as it has arrived and can not change anymore.
+     *
+     * @param shard   the shard connection
+     * @param idOrder the ID of the order
+     * @return the state of the order, or null if there is no such order
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    static String lockOrder(Connection shard, int idOrder) throws SQLException {
+        String query1 = "SELECT Status FROM [Order] WITH (UPDLOCK, ROWLOCK) WHERE Id = ?";
+        String query2 = "SELECT Status FROM OrderArchive WHERE Id = ?";
+
+        for (String query : new String[]{query1, query2}) {
+            try (PreparedStatement ps = shard.prepareStatement(query)) {
+                ps.setInt(1, idOrder);
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) return rs.getString(1);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks if an order in the given state was sent, and so took its stock.
+     *
+     * @param state the state of the order, or null if there is no such order
+     * @return true if the order was sent, or false otherwise
+     */
+    static boolean isSent(String state) {
+        return "sent".equals(state) || "arrived".equals(state);
+    }
+
+    /**
+     * Settles the reservations older than the timeout, every one by the state of its order on its shard.
+     *
+     * @return the number of settled reservations
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    public synchronized int reconcileAll() {
+        open();
+
+        int settled = 0;
+        for (int idOrder : readStale()) {
+            if (reconcile(idOrder)) settled++;
+        }
+
+        reconciled.add(settled);
+        return settled;
+    }
+
+    /**
+     * Retrieves the number of reservations settled by this reconciler.
+     *
+     * @return the number of settled reservations
+     */
+    public long getReconciled() {
+        return reconciled.sum();
+    }
+
+    /**
+     * Opens the connections of the reconciler, if they are not open yet.
+     */
+    private void open() {
+        if (reference != null) return;
+
+        reference = DB.getInstance().newConnection();
+
+        for (int k = 0; k < shards.size(); k++) {
+            connections.add(shards.getShard(k).connect());
+        }
+    }
+
+    /**
+     * Reads the orders with a reservation older than the timeout.
+     *
+     * @return the IDs of the orders
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private List<Integer> readStale() {
+        String query = """
+                SELECT DISTINCT IdOrder
+                FROM StockReservation
+                WHERE Created < DATEADD(MILLISECOND, -?, SYSDATETIME())""";
+        List<Integer> idOrders = new ArrayList<>();
+
+        try (PreparedStatement ps = reference.prepareStatement(query)) {
+            ps.setInt(1, TIMEOUT_MILLIS);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    idOrders.add(rs.getInt(1));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return idOrders;
+    }
+
+    /**
+     * Settles the reservation of the order by its state, read under the lock of the order on its shard.
+     *
+     * @param idOrder the ID of the order
+     * @return true if the order had a reservation, or false if it was settled meanwhile
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     */
+    private boolean reconcile(int idOrder) {
+        Connection shard = connections.get(shards.shardOf(idOrder));
+
+        return new TransactionTemplate(shard).execute(() -> {
+            boolean sent = isSent(lockOrder(shard, idOrder));
+            return new TransactionTemplate(reference).execute(() -> settle(reference, idOrder, sent));
+        });
+    }
+}
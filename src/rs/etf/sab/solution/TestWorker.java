@@ -0,0 +1,67 @@
+package rs.etf.sab.solution;
+
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import rs.etf.sab.tests.TestHandler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Runs one shard of the tests, in a JVM started by 'ParallelTestRunner'.
+ * <p>
+ * The Solution classes keep static state (the current time, the city graph) and 'TestHandler' is a singleton,
+ * so every worker runs in its own JVM, connected to its own database through '-Donlineshop.database=...'.
+ */
+public class TestWorker {
+    // The last line of the output, parsed by 'ParallelTestRunner'
+    static final String RESULT_PREFIX = "RESULT ";
+
+    /**
+     * Runs the tests listed in the file, one 'ClassName#methodName' per line.
+     * Exits with 0 if all the tests passed, or 1 otherwise.
+     *
+     * @param args the path to the file with the tests
+     * @throws IOException if the file can not be read
+     * @throws ClassNotFoundException if a test class does not exist
+     */
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        List<String> tests = Files.readAllLines(Path.of(args[0]), StandardCharsets.UTF_8);
+
+        TestHandler.createInstance(
+                new SolutionArticleOperations(),
+                new SolutionBuyerOperations(),
+                new SolutionCityOperations(),
+                new SolutionGeneralOperations(),
+                new SolutionOrderOperations(),
+                new SolutionShopOperations(),
+                new SolutionTransactionOperations()
+        );
+
+        JUnitCore junit = new JUnitCore();
+        int run = 0, failed = 0;
+
+        for (String test : tests) {
+            if (test.isBlank()) continue;
+
+            int separator = test.indexOf('#');
+            Class<?> testClass = Class.forName(test.substring(0, separator));
+            Result result = junit.run(Request.method(testClass, test.substring(separator + 1)));
+
+            run += result.getRunCount();
+            failed += result.getFailureCount();
+
+            for (Failure failure : result.getFailures()) {
+                System.out.println("FAILED " + failure.getTestHeader() + ": " + failure.getMessage());
+            }
+        }
+
+        System.out.println(RESULT_PREFIX + run + " " + failed);
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
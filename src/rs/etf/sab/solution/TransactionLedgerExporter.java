@@ -0,0 +1,246 @@
+package rs.etf.sab.solution;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.util.HashMap;
+
+import static rs.etf.sab.solution.LedgerEncoding.*;
+
+/**
+ * Exports the transactions to a compressed columnar ledger file, described in 'LedgerEncoding'.
+ * <p>
+ * The transactions are streamed from the database in ascending order of their row versions, with a large fetch
+ * size, and written in blocks, so only one block of rows is ever kept in memory. Exports are incremental:
+ * the transactions after the last row version already in the file, its high-water mark, are appended to it.
+ * Archived transactions are exported too, they keep their row versions.
+ * <p>
+ * The IDs can not be the high-water mark, as a transaction can commit after one with a greater ID was exported.
+ * Only the transactions below 'MIN_ACTIVE_ROWVERSION()' are exported, which are all committed, and every
+ * transaction written later gets a greater row version, so no transaction is skipped or exported twice.
+ * <p>
+ * After 'eraseAll()' the IDs start over, so the ledger of the erased data has to be moved aside first.
+ */
+public class TransactionLedgerExporter {
+    // The number of rows the driver fetches per round-trip
+    private static final int FETCH_SIZE = 10000;
+
+    private final Connection c;
+
+    // The columns of the block being built
+    private final int[] ids = new int[BLOCK_SIZE];
+    private final long[] amounts = new long[BLOCK_SIZE];
+    private final int[] orders = new int[BLOCK_SIZE];
+    private final Integer[] shops = new Integer[BLOCK_SIZE];
+    private final Integer[] buyers = new Integer[BLOCK_SIZE];
+    private final long[] dates = new long[BLOCK_SIZE];
+    private final long[] versions = new long[BLOCK_SIZE];
+
+    private final Sink[] columns = new Sink[COLUMNS];
+    private final Sink payload = new Sink(BLOCK_SIZE * 16);
+
+    /**
+     * Creates the exporter over the given connection.
+     *
+     * @param c the database connection to use
+     */
+    public TransactionLedgerExporter(Connection c) {
+        this.c = c;
+
+        for (int i = 0; i < COLUMNS; i++) {
+            columns[i] = new Sink(BLOCK_SIZE * 2);
+        }
+    }
+
+    /**
+     * Appends the transactions after the high-water mark of the file to it, creating the file if needed.
+     * A block left incomplete by an interrupted export is dropped and exported again, and so is
+     * an empty file, or one cut off inside its magic bytes.
+     *
+     * @param file the ledger file
+     * @return the number of exported transactions
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     * @throws UncheckedIOException if the file can not be read or written
+     */
+    public int export(Path file) {
+        long afterVersion = 0;
+        long validLength = 0;
+
+        if (Files.exists(file)) {
+            TransactionLedgerReader reader = new TransactionLedgerReader(file);
+            afterVersion = reader.getHighWaterMark();
+            validLength = reader.getValidLength();
+        }
+
+        return export(file, afterVersion, validLength);
+    }
+
+    /**
+     * Writes the committed transactions after the given row version to the file, after its first valid bytes.
+     *
+     * @param file         the ledger file
+     * @param afterVersion the row version after which the transactions are exported
+     * @param validLength  the number of valid bytes in the file, 0 for a new or empty file
+     * @return the number of exported transactions
+     * @throws RuntimeException if an SQL exception occurs during the operation
+     * @throws UncheckedIOException if the file can not be written
+     */
+    private int export(Path file, long afterVersion, long validLength) {
+        String query = """
+                SELECT Id, Amount, IdOrder, IdShop, IdBuyer, Date, Version
+                FROM V_TRANSACTION
+                WHERE Version > ? AND Version < MIN_ACTIVE_ROWVERSION()
+                ORDER BY Version""";
+        int exported = 0;
+
+        try (
+                FileChannel channel = FileChannel.open(
+                        file, StandardOpenOption.CREATE, StandardOpenOption.WRITE
+                );
+                PreparedStatement ps = c.prepareStatement(query)
+        ) {
+            channel.truncate(validLength);
+            channel.position(validLength);
+            if (validLength == 0) write(channel, ByteBuffer.wrap(MAGIC));
+
+            ps.setBytes(1, ByteBuffer.allocate(Long.BYTES).putLong(afterVersion).array());
+            ps.setFetchSize(FETCH_SIZE);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                int count = 0;
+
+                while (rs.next()) {
+                    ids[count] = rs.getInt(1);
+                    amounts[count] = rs.getBigDecimal(2).setScale(AMOUNT_SCALE).unscaledValue().longValueExact();
+                    orders[count] = rs.getInt(3);
+                    shops[count] = nullableInt(rs, 4);
+                    buyers[count] = nullableInt(rs, 5);
+                    dates[count] = rs.getTimestamp(6).getTime();
+                    versions[count] = ByteBuffer.wrap(rs.getBytes(7)).getLong();
+
+                    if (++count == BLOCK_SIZE) {
+                        writeBlock(channel, count);
+                        exported += count;
+                        count = 0;
+                    }
+                }
+
+                if (count > 0) {
+                    writeBlock(channel, count);
+                    exported += count;
+                }
+            }
+
+            channel.force(false);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return exported;
+    }
+
+    /**
+     * Encodes the rows of the block being built and appends the block to the file.
+     *
+     * @param channel the channel of the file
+     * @param count   the number of rows in the block
+     * @throws IOException if the block can not be written
+     */
+    private void writeBlock(FileChannel channel, int count) throws IOException {
+        for (Sink column : columns) {
+            column.reset();
+        }
+
+        long previousOrder = 0, previousDate = 0;
+
+        for (int i = 0; i < count; i++) {
+            columns[ID].putZigZag(i == 0 ? ids[0] : (long) ids[i] - ids[i - 1]);
+            columns[AMOUNT].putZigZag(amounts[i]);
+            columns[ORDER].putZigZag(orders[i] - previousOrder);
+            columns[DATE].putZigZag(dates[i] - previousDate);
+
+            previousOrder = orders[i];
+            previousDate = dates[i];
+        }
+
+        encodeDictionary(columns[SHOP], shops, count);
+        encodeDictionary(columns[BUYER], buyers, count);
+
+        payload.reset();
+        for (Sink column : columns) {
+            payload.putVarLong(column.size);
+            payload.put(column);
+        }
+
+        byte[] compressed = deflate(payload);
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+
+        header.putInt(count).putInt(payload.size).putInt(compressed.length).putLong(versions[count - 1]);
+        header.flip();
+
+        write(channel, header);
+        write(channel, ByteBuffer.wrap(compressed));
+    }
+
+    /**
+     * Encodes a nullable ID column as a dictionary of the distinct IDs and an index into it per row.
+     *
+     * @param column the column to write to
+     * @param values the IDs of the rows, null for NULL
+     * @param count  the number of rows
+     */
+    private static void encodeDictionary(Sink column, Integer[] values, int count) {
+        HashMap<Integer, Integer> indexes = new HashMap<>();
+        Sink rows = new Sink(count);
+
+        for (int i = 0; i < count; i++) {
+            if (values[i] == null) {
+                rows.putVarLong(0);
+            } else {
+                rows.putVarLong(indexes.computeIfAbsent(values[i], k -> indexes.size() + 1));
+            }
+        }
+
+        Integer[] dictionary = new Integer[indexes.size()];
+        indexes.forEach((value, index) -> dictionary[index - 1] = value);
+
+        column.putVarLong(dictionary.length);
+        for (Integer value : dictionary) {
+            column.putZigZag(value);
+        }
+        column.put(rows);
+    }
+
+    /**
+     * Retrieves a nullable integer column of the current row.
+     *
+     * @param rs     the result set
+     * @param column the index of the column
+     * @return the value, or null if it is NULL
+     * @throws SQLException if the column can not be read
+     */
+    private static Integer nullableInt(ResultSet rs, int column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * Writes the whole buffer to the channel.
+     *
+     * @param channel the channel
+     * @param buffer  the buffer
+     * @throws IOException if the buffer can not be written
+     */
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package rs.etf.sab.solution;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static rs.etf.sab.solution.LedgerEncoding.*;
+
+/**
+ * Reads a ledger file written by 'TransactionLedgerExporter', without touching the database.
+ * <p>
+ * The block headers are read when the reader is created. The sums only decode the amount column
+ * and the dictionary column they are grouped by, the other columns of a block are skipped.
+ */
+public class TransactionLedgerReader {
+    private final Path file;
+    private final List<Long> blockPositions = new ArrayList<>();
+    private long validLength;
+    private long rowCount;
+    private long highWaterMark = 0;
+
+    /**
+     * Opens the ledger file and reads its block headers.
+     * A trailing block that was not written completely is ignored. An empty file, or one cut off
+     * inside its magic bytes, is read as an empty ledger, which the exporter writes again from the start.
+     *
+     * @param file the ledger file
+     * @throws UncheckedIOException if the file can not be read
+     * @throws IllegalStateException if the file is not a ledger file of this format
+     */
+    public TransactionLedgerReader(Path file) {
+        this.file = file;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+            read(channel, magic, 0);
+
+            byte[] prefix = Arrays.copyOf(magic.array(), magic.position());
+            if (magic.hasRemaining() && Arrays.equals(prefix, Arrays.copyOf(MAGIC, prefix.length))) {
+                validLength = 0;
+                return;
+            }
+
+            if (!Arrays.equals(magic.array(), MAGIC)) {
+                throw new IllegalStateException("Not a ledger file of this format: " + file);
+            }
+
+            long position = MAGIC.length;
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+
+            while (position + BLOCK_HEADER_SIZE <= size) {
+                header.clear();
+                read(channel, header, position);
+                header.flip();
+
+                int count = header.getInt();
+                header.getInt(); // Raw length
+                int compressedLength = header.getInt();
+                long lastVersion = header.getLong();
+
+                if (position + BLOCK_HEADER_SIZE + compressedLength > size) break;
+
+                blockPositions.add(position);
+                rowCount += count;
+                highWaterMark = lastVersion;
+                position += BLOCK_HEADER_SIZE + compressedLength;
+            }
+
+            validLength = position;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Retrieves the row version of the last transaction in the file, after which the next export starts.
+     *
+     * @return the last row version, or 0 if the file has no transactions
+     */
+    public long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Retrieves the number of transactions in the file.
+     *
+     * @return the number of transactions
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Retrieves the length of the file up to the end of its last complete block.
+     *
+     * @return the number of valid bytes
+     */
+    long getValidLength() {
+        return validLength;
+    }
+
+    /**
+     * Computes the total amount paid by each buyer, like 'getBuyerTransactionsAmmount()'.
+     *
+     * @return the total amounts per buyer ID
+     * @throws UncheckedIOException if the file can not be read
+     */
+    public Map<Integer, BigDecimal> getBuyerSums() {
+        return sums(BUYER);
+    }
+
+    /**
+     * Computes the total amount transferred to each shop, like 'getShopTransactionsAmmount()'.
+     *
+     * @return the total amounts per shop ID
+     * @throws UncheckedIOException if the file can not be read
+     */
+    public Map<Integer, BigDecimal> getShopSums() {
+        return sums(SHOP);
+    }
+
+    /**
+     * Computes the total amount paid by a buyer.
+     *
+     * @param idBuyer the ID of the buyer
+     * @return the total amount paid by the buyer
+     * @throws UncheckedIOException if the file can not be read
+     */
+    public BigDecimal getBuyerSum(int idBuyer) {
+        return getBuyerSums().getOrDefault(idBuyer, BigDecimal.ZERO.setScale(AMOUNT_SCALE));
+    }
+
+    /**
+     * Computes the total amount transferred to a shop.
+     *
+     * @param idShop the ID of the shop
+     * @return the total amount transferred to the shop
+     * @throws UncheckedIOException if the file can not be read
+     */
+    public BigDecimal getShopSum(int idShop) {
+        return getShopSums().getOrDefault(idShop, BigDecimal.ZERO.setScale(AMOUNT_SCALE));
+    }
+
+    /**
+     * Sums the amounts grouped by a dictionary column, leaving out the rows where it is NULL.
+     *
+     * @param groupColumn the dictionary column, 'SHOP' or 'BUYER'
+     * @return the sums per ID
+     * @throws UncheckedIOException if the file can not be read
+     */
+    private Map<Integer, BigDecimal> sums(int groupColumn) {
+        HashMap<Integer, Long> unscaledSums = new HashMap<>();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+
+            for (long position : blockPositions) {
+                header.clear();
+                read(channel, header, position);
+                header.flip();
+
+                int count = header.getInt();
+                int rawLength = header.getInt();
+                ByteBuffer compressed = ByteBuffer.allocate(header.getInt());
+                read(channel, compressed, position + BLOCK_HEADER_SIZE);
+
+                byte[] raw = inflate(compressed.array(), rawLength);
+                int[] columnStarts = columnStarts(raw);
+
+                Source amounts = new Source(raw, columnStarts[AMOUNT]);
+                Source group = new Source(raw, columnStarts[groupColumn]);
+
+                int[] dictionary = new int[(int) group.getVarLong()];
+                long[] blockSums = new long[dictionary.length + 1];
+
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = (int) group.getZigZag();
+                }
+
+                for (int i = 0; i < count; i++) {
+                    blockSums[(int) group.getVarLong()] += amounts.getZigZag();
+                }
+
+                for (int i = 0; i < dictionary.length; i++) {
+                    unscaledSums.merge(dictionary[i], blockSums[i + 1], Long::sum);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        HashMap<Integer, BigDecimal> sums = new HashMap<>();
+        unscaledSums.forEach((id, sum) -> sums.put(id, BigDecimal.valueOf(sum, AMOUNT_SCALE)));
+
+        return sums;
+    }
+
+    /**
+     * Finds where the data of each column starts in a decompressed block.
+     *
+     * @param raw the decompressed block
+     * @return the start of each column
+     */
+    private static int[] columnStarts(byte[] raw) {
+        int[] starts = new int[COLUMNS];
+        Source source = new Source(raw, 0);
+
+        for (int i = 0; i < COLUMNS; i++) {
+            int length = (int) source.getVarLong();
+            starts[i] = source.position;
+            source.position += length;
+        }
+
+        return starts;
+    }
+
+    /**
+     * Reads from the channel until the buffer is full or the end of the file is reached.
+     *
+     * @param channel  the channel
+     * @param buffer   the buffer
+     * @param position the position in the file
+     * @throws IOException if the file can not be read
+     */
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) break;
+            position += read;
+        }
+    }
+}
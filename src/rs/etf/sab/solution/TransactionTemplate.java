@@ -0,0 +1,285 @@
+package rs.etf.sab.solution;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs units of work in explicit transactions, and retries the ones chosen as a deadlock victim (error 1205)
+ * or timed out waiting for a lock (error 1222).
+ * <p>
+ * A retried transaction waits first, for a random time up to an exponentially growing bound, so that
+ * the transactions that deadlocked each other do not collide again right away. After 5 attempts it is aborted.
+ * The work is run again from the start, so it must not keep state from a failed attempt.
+ * <p>
+ * The work takes its locks in one global order, so that most deadlocks do not happen in the first place:
+ * the articles by ascending ID, then the order, then the buyer. 'lockInOrder()' takes a set of row locks
+ * in ascending ID order.
+ * <p>
+ * The commits, retries and aborts of all the templates are counted, see 'getRetries()' and 'getAborts()'.
+ */
+public class TransactionTemplate {
+    private static final int DEADLOCK_VICTIM = 1205;
+    private static final int LOCK_REQUEST_TIMEOUT = 1222;
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 5;
+    private static final long MAX_BACKOFF_MILLIS = 250;
+
+    private static final LongAdder commits = new LongAdder();
+    private static final LongAdder retries = new LongAdder();
+    private static final LongAdder aborts = new LongAdder();
+
+    // The transactions run by the templates, by connection, so that the templates joining one can mark it
+    private static final Map<Connection, Transaction> running = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private final Connection c;
+
+    // Marked by a work joining a transaction that no template runs, see 'join()'
+    private boolean rollbackOnly = false;
+
+    /**
+     * Represents a transaction run by a template.
+     */
+    private static class Transaction {
+        private boolean rollbackOnly = false;
+    }
+
+    /**
+     * Represents a unit of work executed inside a database transaction.
+     *
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T run() throws SQLException;
+    }
+
+    /**
+     * Creates a template running the work on the given database connection.
+     *
+     * @param c the database connection to use
+     */
+    public TransactionTemplate(Connection c) {
+        this.c = c;
+    }
+
+    /**
+     * Runs the work in a transaction, and commits it, unless the work marked it with 'setRollbackOnly()'.
+     * The work is retried if the transaction is chosen as a deadlock victim or times out on a lock.
+     * If a transaction is already running on the connection, the work joins it, and the outermost one retries
+     * and rolls back if any of the works marked it with 'setRollbackOnly()'.
+     *
+     * @param work the work to run
+     * @param <T>  the type of the result
+     * @return the result of the work
+     * @throws RuntimeException if an SQL exception occurs and the transaction is not retried
+     */
+    public <T> T execute(SqlWork<T> work) {
+        try {
+            if (!c.getAutoCommit()) return join(work);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return attempt(work);
+            } catch (SQLException | RuntimeException e) {
+                retryOrThrow(e, attempt);
+            }
+        }
+    }
+
+    /**
+     * Runs a single statement work without an explicit transaction, as one statement is atomic on its own,
+     * and retries it like 'execute()'.
+     *
+     * @param work the work to run
+     * @param <T>  the type of the result
+     * @return the result of the work
+     * @throws RuntimeException if an SQL exception occurs and the work is not retried
+     */
+    public <T> T retrying(SqlWork<T> work) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return work.run();
+            } catch (SQLException | RuntimeException e) {
+                retryOrThrow(e, attempt);
+            }
+        }
+    }
+
+    /**
+     * Marks the running transaction to be rolled back instead of committed, e.g. when the work fails
+     * after it has written something. The mark is kept on the transaction, so it holds for every template
+     * that joined it.
+     */
+    public void setRollbackOnly() {
+        Transaction transaction = running.get(c);
+
+        if (transaction != null) {
+            transaction.rollbackOnly = true;
+        } else {
+            rollbackOnly = true;
+        }
+    }
+
+    /**
+     * Locks the rows in ascending ID order, with the given query taking an update lock on one row.
+     *
+     * @param lockQuery the query, e.g. 'SELECT Id FROM Article WITH (UPDLOCK, ROWLOCK) WHERE Id = ?'
+     * @param ids       the IDs of the rows
+     * @throws SQLException if an SQL exception occurs during the operation
+     */
+    public void lockInOrder(String lockQuery, Collection<Integer> ids) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(lockQuery)) {
+            for (int id : ids.stream().sorted().distinct().toList()) {
+                ps.setInt(1, id);
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        // Reading the row takes the lock
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the work in the transaction already running on the connection, which its template commits or rolls back.
+     * A transaction that no template runs, e.g. one started with 'setAutoCommit(false)', can not be marked
+     * rollback-only, so the work fails instead if it marks it.
+     *
+     * @param work the work to run
+     * @param <T>  the type of the result
+     * @return the result of the work
+     * @throws SQLException if an SQL exception occurs during the work
+     * @throws IllegalStateException if the work marks a transaction that no template runs as rollback-only
+     */
+    private <T> T join(SqlWork<T> work) throws SQLException {
+        rollbackOnly = false;
+        T result = work.run();
+
+        if (rollbackOnly) {
+            rollbackOnly = false;
+            throw new IllegalStateException("A transaction not run by a template can not be marked rollback-only");
+        }
+
+        return result;
+    }
+
+    /**
+     * Runs one attempt of the work in a transaction.
+     *
+     * @param work the work to run
+     * @param <T>  the type of the result
+     * @return the result of the work
+     * @throws SQLException if an SQL exception occurs during the transaction
+     */
+    private <T> T attempt(SqlWork<T> work) throws SQLException {
+        c.setAutoCommit(false);
+        Transaction transaction = new Transaction();
+        running.put(c, transaction);
+
+        try {
+            T result = work.run();
+
+            if (transaction.rollbackOnly) {
+                c.rollback();
+            } else {
+                c.commit();
+                commits.increment();
+            }
+
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            // A deadlock victim has already been rolled back by the server, so this can fail on its own
+            try {
+                c.rollback();
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw e;
+        } finally {
+            running.remove(c);
+            c.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Waits before the next attempt if the failure can be retried, or rethrows it otherwise.
+     *
+     * @param failure the failure of the attempt
+     * @param attempt the number of the attempt, from 1
+     * @throws RuntimeException the failure, if it is not retried
+     */
+    private static void retryOrThrow(Exception failure, int attempt) {
+        if (!isRetryable(failure) || attempt == MAX_ATTEMPTS) {
+            if (isRetryable(failure)) aborts.increment();
+            throw failure instanceof RuntimeException ? (RuntimeException) failure : new RuntimeException(failure);
+        }
+
+        retries.increment();
+
+        long bound = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << attempt);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(failure);
+        }
+    }
+
+    /**
+     * Checks if the failure, or one of its causes, is a deadlock or a lock timeout.
+     * The Solution classes wrap their SQL exceptions in runtime exceptions, so the causes are checked too.
+     *
+     * @param failure the failure
+     * @return true if the work can be retried, or false otherwise
+     */
+    static boolean isRetryable(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException) {
+                int errorCode = sqlException.getErrorCode();
+                if (errorCode == DEADLOCK_VICTIM || errorCode == LOCK_REQUEST_TIMEOUT) return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Retrieves the number of committed transactions.
+     *
+     * @return the number of commits
+     */
+    public static long getCommits() {
+        return commits.sum();
+    }
+
+    /**
+     * Retrieves the number of retried attempts.
+     *
+     * @return the number of retries
+     */
+    public static long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * Retrieves the number of transactions that still deadlocked or timed out after the last attempt.
+     *
+     * @return the number of aborts
+     */
+    public static long getAborts() {
+        return aborts.sum();
+    }
+}
@@ -0,0 +1,391 @@
+package rs.etf.sab.solution;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Runs a mix of operations against a generated dataset from several threads, and reports the throughput
+ * and the latency percentiles of every operation.
+ * <p>
+ * Every worker gets its own operations from the supplier, e.g. over its own connection, and picks the next operation
+ * at random by the weights of the mix. A worker keeps its own created and sent orders: 'addArticle' adds a popular
+ * article to one of its created orders, 'completeOrder' completes the oldest one, and 'getLocation' asks for one of
+ * its sent orders. An operation that needs an order the worker does not have yet creates one instead.
+ * The transaction queries alternate between the buyer and the shop sums.
+ * <p>
+ * Usage: WorkloadDriver [--memory] scaleFactor threads seconds [mix] [outputDirectory]
+ * <br>
+ * The mix is a list like 'addArticle=40,completeOrder=10', the operations left out keep their default weights.
+ * The in-memory engine is not thread-safe, so it is always driven by one thread.
+ */
+public class WorkloadDriver {
+    private static final int MAX_CREATED_ORDERS = 64;
+    private static final int MAX_SENT_ORDERS = 256;
+    private static final long SEED = 42;
+
+    private final Supplier<Marketplace> marketplaces;
+    private final DatasetGenerator.Dataset dataset;
+    private final int threads;
+    private final int[] mix;
+
+    /**
+     * Represents the operations of the workload.
+     */
+    public enum Operation {
+        CREATE_ORDER("createOrder", 10),
+        ADD_ARTICLE("addArticle", 40),
+        COMPLETE_ORDER("completeOrder", 10),
+        TIME("time", 1),
+        GET_LOCATION("getLocation", 20),
+        TRANSACTION_QUERY("transactionQuery", 19);
+
+        private final String label;
+        private final int defaultWeight;
+
+        Operation(String label, int defaultWeight) {
+            this.label = label;
+            this.defaultWeight = defaultWeight;
+        }
+
+        /**
+         * Retrieves the name of the operation, as used in the mix and the report.
+         *
+         * @return the name of the operation
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * Represents the results of a run.
+     */
+    public static class Report {
+        private final LatencyHistogram[] histograms;
+        private final long[] errors;
+        private final double seconds;
+
+        Report(LatencyHistogram[] histograms, long[] errors, double seconds) {
+            this.histograms = histograms;
+            this.errors = errors;
+            this.seconds = seconds;
+        }
+
+        /**
+         * Retrieves the latencies of the operation.
+         *
+         * @param operation the operation
+         * @return the histogram of the latencies
+         */
+        public LatencyHistogram getHistogram(Operation operation) {
+            return histograms[operation.ordinal()];
+        }
+
+        /**
+         * Prints the throughput and the latency percentiles of every operation, in milliseconds.
+         *
+         * @param out the stream to print to
+         */
+        public void print(PrintStream out) {
+            long total = 0;
+
+            out.printf("%-18s %10s %10s %10s %10s %10s %10s %8s%n",
+                    "operation", "count", "ops/s", "p50", "p99", "p999", "max", "errors");
+
+            for (Operation operation : Operation.values()) {
+                LatencyHistogram histogram = histograms[operation.ordinal()];
+                total += histogram.getTotalCount();
+
+                out.printf("%-18s %10d %10.1f %10.3f %10.3f %10.3f %10.3f %8d%n",
+                        operation.getLabel(),
+                        histogram.getTotalCount(),
+                        histogram.getTotalCount() / seconds,
+                        histogram.getValueAtPercentile(50) / 1e6,
+                        histogram.getValueAtPercentile(99) / 1e6,
+                        histogram.getValueAtPercentile(99.9) / 1e6,
+                        histogram.getMax() / 1e6,
+                        errors[operation.ordinal()]);
+            }
+
+            out.printf("total: %d operations in %.1f s, %.1f ops/s%n", total, seconds, total / seconds);
+        }
+
+        /**
+         * Writes the percentile distribution of every operation to '<operation>.hgrm' in the directory,
+         * in the text format of HdrHistogram, in milliseconds.
+         *
+         * @param directory the directory, created if it does not exist
+         * @throws UncheckedIOException if a file can not be written
+         */
+        public void write(Path directory) {
+            try {
+                Files.createDirectories(directory);
+
+                for (Operation operation : Operation.values()) {
+                    Path file = directory.resolve(operation.getLabel() + ".hgrm");
+
+                    try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, StandardCharsets.UTF_8)) {
+                        histograms[operation.ordinal()].outputPercentileDistribution(out, 1e6);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Creates a driver.
+     *
+     * @param marketplaces the supplier of the operations, called once per worker
+     * @param dataset      the generated dataset to run against
+     * @param threads      the number of workers
+     * @param mix          the weights of the operations, in the order of 'Operation'
+     */
+    public WorkloadDriver(Supplier<Marketplace> marketplaces, DatasetGenerator.Dataset dataset, int threads, int[] mix) {
+        if (threads <= 0) throw new IllegalArgumentException("The number of threads must be positive");
+        if (Arrays.stream(mix).sum() <= 0) throw new IllegalArgumentException("The mix must have a positive weight");
+
+        this.marketplaces = marketplaces;
+        this.dataset = dataset;
+        this.threads = threads;
+        this.mix = mix.clone();
+    }
+
+    /**
+     * Parses a mix like 'addArticle=40,completeOrder=10'. The operations left out keep their default weights.
+     *
+     * @param mix the mix, or null for the default weights
+     * @return the weights of the operations, in the order of 'Operation'
+     * @throws IllegalArgumentException if an operation is unknown
+     */
+    public static int[] parseMix(String mix) {
+        int[] weights = Arrays.stream(Operation.values()).mapToInt(operation -> operation.defaultWeight).toArray();
+        if (mix == null || mix.isBlank()) return weights;
+
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            Operation operation = Arrays.stream(Operation.values())
+                    .filter(candidate -> candidate.getLabel().equals(parts[0]))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown operation: " + parts[0]));
+
+            weights[operation.ordinal()] = Integer.parseInt(parts[1]);
+        }
+
+        return weights;
+    }
+
+    /**
+     * Runs the workload for the given time.
+     *
+     * @param duration the duration of the run
+     * @param unit     the time unit of the duration
+     * @return the results of the run
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public Report run(long duration, TimeUnit unit) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        LatencyHistogram[][] histograms = new LatencyHistogram[threads][];
+        long[][] errors = new long[threads][];
+
+        for (int i = 0; i < threads; i++) {
+            int worker = i;
+            Marketplace marketplace = marketplaces.get();
+
+            histograms[i] = new LatencyHistogram[Operation.values().length];
+            errors[i] = new long[Operation.values().length];
+            for (int j = 0; j < histograms[i].length; j++) {
+                histograms[i][j] = new LatencyHistogram();
+            }
+
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    work(marketplace, new Random(SEED + worker), running, histograms[worker], errors[worker]);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "workload-" + i);
+
+            workers.add(thread);
+            thread.start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+
+        unit.sleep(duration);
+        running.set(false);
+
+        for (Thread thread : workers) {
+            thread.join();
+        }
+
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        LatencyHistogram[] merged = new LatencyHistogram[Operation.values().length];
+        long[] mergedErrors = new long[merged.length];
+
+        for (int j = 0; j < merged.length; j++) {
+            merged[j] = new LatencyHistogram();
+
+            for (int i = 0; i < threads; i++) {
+                merged[j].add(histograms[i][j]);
+                mergedErrors[j] += errors[i][j];
+            }
+        }
+
+        return new Report(merged, mergedErrors, seconds);
+    }
+
+    /**
+     * Runs operations until the driver is stopped.
+     *
+     * @param marketplace the worker's operations
+     * @param random      the worker's random generator
+     * @param running     the flag cleared when the driver stops
+     * @param histograms  the worker's histograms, per operation
+     * @param errors      the worker's error counts, per operation
+     */
+    private void work(Marketplace marketplace, Random random, AtomicBoolean running,
+                      LatencyHistogram[] histograms, long[] errors) {
+        ArrayDeque<Integer> createdOrders = new ArrayDeque<>();
+        int[] sentOrders = new int[MAX_SENT_ORDERS];
+        int sentCount = 0;
+        long queries = 0;
+
+        while (running.get()) {
+            Operation operation = pick(random);
+
+            // Operations needing an order the worker does not have create one instead
+            if (operation == Operation.GET_LOCATION && sentCount == 0) operation = Operation.COMPLETE_ORDER;
+            if ((operation == Operation.ADD_ARTICLE || operation == Operation.COMPLETE_ORDER) && createdOrders.isEmpty()) {
+                operation = Operation.CREATE_ORDER;
+            }
+
+            long startTime = System.nanoTime();
+
+            try {
+                switch (operation) {
+                    case CREATE_ORDER -> {
+                        int idOrder = marketplace.getBuyerOperations().createOrder(dataset.sampleBuyer(random));
+
+                        if (idOrder != -1) {
+                            if (createdOrders.size() == MAX_CREATED_ORDERS) createdOrders.pollFirst();
+                            createdOrders.addLast(idOrder);
+                        }
+                    }
+                    case ADD_ARTICLE -> {
+                        int idOrder = createdOrders.peekLast();
+                        marketplace.getOrderOperations().addArticle(idOrder, dataset.sampleArticle(random), 1 + random.nextInt(3));
+                    }
+                    case COMPLETE_ORDER -> {
+                        int idOrder = createdOrders.pollFirst();
+
+                        if (marketplace.getOrderOperations().completeOrder(idOrder) == 1) {
+                            sentOrders[sentCount++ % MAX_SENT_ORDERS] = idOrder;
+                        }
+                    }
+                    case TIME -> marketplace.getGeneralOperations().time(1);
+                    case GET_LOCATION -> marketplace.getOrderOperations()
+                            .getLocation(sentOrders[random.nextInt(Math.min(sentCount, MAX_SENT_ORDERS))]);
+                    default -> {
+                        if (queries++ % 2 == 0) {
+                            marketplace.getTransactionOperations().getBuyerTransactionsAmmount(dataset.sampleBuyer(random));
+                        } else {
+                            marketplace.getTransactionOperations().getShopTransactionsAmmount(dataset.sampleShop(random));
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                errors[operation.ordinal()]++;
+            }
+
+            histograms[operation.ordinal()].record(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Picks an operation at random, by the weights of the mix.
+     *
+     * @param random the random generator to use
+     * @return the operation
+     */
+    private Operation pick(Random random) {
+        int value = random.nextInt(Arrays.stream(mix).sum());
+
+        for (Operation operation : Operation.values()) {
+            value -= mix[operation.ordinal()];
+            if (value < 0) return operation;
+        }
+
+        return Operation.TRANSACTION_QUERY;
+    }
+
+    /**
+     * Generates a dataset and runs the workload against it.
+     *
+     * @param args the arguments, see the class description
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public static void main(String[] args) throws InterruptedException {
+        boolean memory = args.length > 0 && args[0].equals("--memory");
+        String[] rest = memory ? Arrays.copyOfRange(args, 1, args.length) : args;
+
+        if (rest.length < 3) {
+            System.out.println("Usage: WorkloadDriver [--memory] scaleFactor threads seconds [mix] [outputDirectory]");
+            return;
+        }
+
+        int scaleFactor = Integer.parseInt(rest[0]);
+        int threads = memory ? 1 : Integer.parseInt(rest[1]);
+        int seconds = Integer.parseInt(rest[2]);
+        int[] mix = parseMix(rest.length > 3 ? rest[3] : null);
+
+        List<Connection> connections = new ArrayList<>();
+        MemoryStore store = new MemoryStore();
+        Supplier<Marketplace> marketplaces = memory
+                ? () -> Marketplace.memory(store)
+                : () -> {
+                    Connection connection = DB.getInstance().newConnection();
+                    connections.add(connection);
+                    return Marketplace.database(connection);
+                };
+
+        long generationStart = System.nanoTime();
+        DatasetGenerator.Dataset dataset = new DatasetGenerator(marketplaces.get(), SEED).generate(scaleFactor, 1.0);
+        System.out.printf("Generated scale factor %d in %.1f s%n", scaleFactor, (System.nanoTime() - generationStart) / 1e9);
+
+        try {
+            Report report = new WorkloadDriver(marketplaces, dataset, threads, mix).run(seconds, TimeUnit.SECONDS);
+
+            report.print(System.out);
+            if (rest.length > 4) report.write(Path.of(rest[4]));
+        } finally {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    System.err.println("Could not close a connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+}